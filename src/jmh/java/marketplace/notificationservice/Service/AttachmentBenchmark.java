@@ -0,0 +1,122 @@
+package marketplace.notificationservice.Service;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+/**
+ * Costo por envío de un email con un PDF adjunto, serializado a un stream nulo como lo haría
+ * JavaMail al enviarlo. El tiempo promedio por operación es la CPU por envío (un solo hilo);
+ * bytesRead dividido sends da los bytes leídos de disco por envío.
+ *
+ * <ul>
+ *   <li>resourcePerSend: lo que hacía EmailService, un FileSystemResource leído y codificado en
+ *       cada envío (cuenta una lectura; JavaMail además recorre el archivo para elegir el
+ *       Content-Transfer-Encoding)
+ *   <li>cachedAttachment: sendEmailWithAttachment con AttachmentCache
+ *   <li>precomposedBulk: un mensaje de sendEmailsWithAttachment, que comparte el multipart
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AttachmentBenchmark {
+
+  @Param({"262144"})
+  public int attachmentBytes;
+
+  private final Session session = Session.getInstance(new Properties());
+  private final AttachmentCache cache = new AttachmentCache(true, 64L << 20);
+  private Path pdf;
+  private String html;
+  private MimeMultipart precomposed;
+
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class Io {
+    public long bytesRead;
+    public long sends;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException, MessagingException {
+    byte[] content = new byte[attachmentBytes];
+    new Random(42).nextBytes(content);
+    pdf = Files.createTempFile("attachment-benchmark", ".pdf");
+    Files.write(pdf, content);
+    html = "<html><body>" + "<p>Tu resumen de rutas del mes. 🗺️</p>".repeat(20) + "</body></html>";
+    precomposed = EmailService.precompose(html, cache.get(pdf.toString()));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(pdf);
+  }
+
+  @Benchmark
+  public MimeMessage resourcePerSend(Io io) throws MessagingException, IOException {
+    MimeMessage message = new MimeMessage(session);
+    MimeMessageHelper helper = new MimeMessageHelper(message, true);
+    headers(helper);
+    helper.setText(html, true);
+    FileSystemResource file = new FileSystemResource(pdf);
+    helper.addAttachment(file.getFilename(), file);
+    return write(message, io, attachmentBytes);
+  }
+
+  @Benchmark
+  public MimeMessage cachedAttachment(Io io) throws MessagingException, IOException {
+    long before = cache.bytesReadCount();
+    MimeMessage message = new MimeMessage(session);
+    MimeMessageHelper helper = new MimeMessageHelper(message, true);
+    headers(helper);
+    helper.setText(html, true);
+    helper.getRootMimeMultipart().addBodyPart(cache.get(pdf.toString()).toBodyPart());
+    return write(message, io, cache.bytesReadCount() - before);
+  }
+
+  @Benchmark
+  public MimeMessage precomposedBulk(Io io) throws MessagingException, IOException {
+    MimeMessage message = new MimeMessage(session);
+    headers(new MimeMessageHelper(message, "UTF-8"));
+    message.setHeader("List-Unsubscribe", "<https://example.com/unsubscribe/user-1>");
+    message.setContent(precomposed);
+    return write(message, io, 0);
+  }
+
+  private static void headers(MimeMessageHelper helper) throws MessagingException {
+    helper.setFrom("noreply@example.com");
+    helper.setTo("user@example.com");
+    helper.setSubject("🗺️ Tu resumen de rutas");
+  }
+
+  private static MimeMessage write(MimeMessage message, Io io, long bytesRead)
+      throws MessagingException, IOException {
+    message.saveChanges();
+    message.writeTo(OutputStream.nullOutputStream());
+    io.bytesRead += bytesRead;
+    io.sends++;
+    return message;
+  }
+}
@@ -0,0 +1,73 @@
+package marketplace.notificationservice.Service;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.MimeMailMessage;
+import org.springframework.mail.javamail.MimeMessageHelper;
+
+/**
+ * Construcción de los mensajes que EmailService entrega al JavaMailSender. Los MimeMessage se
+ * serializan a un stream nulo para incluir el costo de codificación que JavaMail paga al enviar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MailMessageBenchmark {
+
+  private final Session session = Session.getInstance(new Properties());
+  private String text;
+  private String html;
+
+  @Setup
+  public void setUp() {
+    text = "¡Hola Tester! 🚀\n\n" + "Has completado una ruta increíble. 🎊\n".repeat(20);
+    html = "<html><body>" + "<p>Has completado una ruta increíble. 🎊</p>".repeat(20) + "</body></html>";
+  }
+
+  @Benchmark
+  public SimpleMailMessage simpleMailMessage() {
+    SimpleMailMessage message = new SimpleMailMessage();
+    message.setFrom("noreply@example.com");
+    message.setTo("user@example.com");
+    message.setSubject("🎉 ¡Felicidades! Has completado una ruta");
+    message.setText(text);
+    return message;
+  }
+
+  @Benchmark
+  public MimeMessage simpleMessageAsMime() throws MessagingException, IOException {
+    // Lo que hace JavaMailSenderImpl.send(SimpleMailMessage) antes de enviar
+    MimeMailMessage mimeMessage = new MimeMailMessage(new MimeMessage(session));
+    simpleMailMessage().copyTo(mimeMessage);
+    MimeMessage message = mimeMessage.getMimeMessage();
+    message.saveChanges();
+    message.writeTo(OutputStream.nullOutputStream());
+    return message;
+  }
+
+  @Benchmark
+  public MimeMessage multipartAlternative() throws MessagingException, IOException {
+    MimeMessage message = new MimeMessage(session);
+    MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+    helper.setFrom("noreply@example.com");
+    helper.setTo("user@example.com");
+    helper.setSubject("🎉 ¡Felicidades! Has completado una ruta");
+    helper.setText(text, html);
+    message.saveChanges();
+    message.writeTo(OutputStream.nullOutputStream());
+    return message;
+  }
+}
@@ -0,0 +1,97 @@
+package marketplace.notificationservice.config;
+
+import java.io.IOException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import marketplace.notificationservice.support.SmtpStubServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+/**
+ * Tiempo por email contra un servidor SMTP local (support/SmtpStubServer) cuyo handshakeMs simula
+ * lo que cuesta abrir una conexión con el proveedor real (TCP + STARTTLS + AUTH).
+ *
+ * <ul>
+ *   <li>connectionPerMessage: JavaMailSenderImpl, una conexión y un handshake por email
+ *   <li>pooled: PooledJavaMailSender, un email por send sobre una conexión reutilizada
+ *   <li>pooledBatch: PooledJavaMailSender, BATCH emails por send sobre la misma conexión
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PooledMailSenderBenchmark {
+
+  private static final int BATCH = 10;
+
+  @Param({"0", "20"})
+  public long handshakeMs;
+
+  private SmtpStubServer smtp;
+  private JavaMailSenderImpl perMessageSender;
+  private PooledJavaMailSender pooledSender;
+  private SimpleMailMessage message;
+  private SimpleMailMessage[] batch;
+
+  @Setup
+  public void setUp() {
+    smtp = SmtpStubServer.start(handshakeMs);
+    perMessageSender = configure(new JavaMailSenderImpl());
+    pooledSender = configure(new PooledJavaMailSender(1, 30_000, 600_000, 2_000));
+    message = message(0);
+    batch = new SimpleMailMessage[BATCH];
+    for (int i = 0; i < BATCH; i++) {
+      batch[i] = message(i);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    pooledSender.destroy();
+    smtp.close();
+  }
+
+  @Benchmark
+  public void connectionPerMessage() {
+    perMessageSender.send(message);
+  }
+
+  @Benchmark
+  public void pooled() {
+    pooledSender.send(message);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH)
+  public void pooledBatch() {
+    pooledSender.send(batch);
+  }
+
+  private <T extends JavaMailSenderImpl> T configure(T sender) {
+    sender.setHost(smtp.host());
+    sender.setPort(smtp.port());
+    Properties props = sender.getJavaMailProperties();
+    props.put("mail.transport.protocol", "smtp");
+    props.put("mail.smtp.auth", "false");
+    return sender;
+  }
+
+  private static SimpleMailMessage message(int i) {
+    SimpleMailMessage message = new SimpleMailMessage();
+    message.setFrom("noreply@example.com");
+    message.setTo("user" + i + "@example.com");
+    message.setSubject("🎉 ¡Felicidades! Has completado una ruta");
+    message.setText("¡Hola Tester! 🚀\n\n" + "Has completado una ruta increíble. 🎊\n".repeat(20));
+    return message;
+  }
+}
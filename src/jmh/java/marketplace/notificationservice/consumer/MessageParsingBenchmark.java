@@ -0,0 +1,49 @@
+package marketplace.notificationservice.consumer;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import marketplace.notificationservice.dtos.RouteCompleteEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+/**
+ * Parseo del payload AMQP a RouteCompleteEvent. stringPayload reproduce el camino anterior (el
+ * converter por defecto arma un String con el cuerpo y después ObjectMapper.readValue lo parsea);
+ * converter es el de consumeMessage, que lee los bytes directo. Con el profiler gc de build.gradle,
+ * gc.alloc.rate.norm da los bytes asignados por mensaje de cada uno.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageParsingBenchmark {
+
+  private final Message message =
+      new Message(
+          ("{\"eventType\":\"ROUTE_COMPLETED\",\"routeId\":\"r-123\",\"routeName\":\"Cerro de"
+                  + " Monserrate\",\"creatorId\":\"c-9\",\"userId\":\"u-42\",\"completed\":true,"
+                  + "\"score\":120,\"distanceKm\":4.537,\"estTimeMin\":60,\"actualTimeMin\":55,"
+                  + "\"timestamp\":\"2025-10-18T10:00:00Z\"}")
+              .getBytes(StandardCharsets.UTF_8),
+          new MessageProperties());
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final RouteCompleteEventConverter converter = new RouteCompleteEventConverter();
+
+  @Benchmark
+  public RouteCompleteEvent stringPayload() throws Exception {
+    String payload = new String(message.getBody(), StandardCharsets.UTF_8);
+    return objectMapper.readValue(payload, RouteCompleteEvent.class);
+  }
+
+  @Benchmark
+  public RouteCompleteEvent converter() {
+    return converter.fromMessage(message);
+  }
+}
@@ -0,0 +1,110 @@
+package marketplace.notificationservice.consumer;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import marketplace.notificationservice.dtos.RouteCompleteEvent;
+import marketplace.notificationservice.dtos.UserDTO;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.template.EmailTemplateEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compara el StringBuilder original de buildCarismaticEmail (Locale, DateTimeFormatter y
+ * String.format por mensaje) contra la plantilla precompilada de EmailTemplateEngine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RouteCompletedEmailBenchmark {
+
+  private NotificationConsumer consumer;
+  private RouteCompleteEvent event;
+  private UserDTO user;
+
+  @Setup
+  public void setUp() {
+    consumer =
+        new NotificationConsumer(
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            new RouteEventCoalescer(false, 0, 1, 1, 1, 1),
+            new EmailTemplateEngine(),
+            new NotificationMetrics(new SimpleMeterRegistry()),
+            false);
+    event =
+        new RouteCompleteEvent(
+            "ROUTE_COMPLETED", "r-1", "Cerro de Monserrate", "c-1", "u-1", true, 120, 4.537, 60,
+            55, "2025-10-18T10:00:00Z");
+    user = new UserDTO("u-1", "user@example.com", "Tester", null);
+  }
+
+  @Benchmark
+  public String legacyStringBuilder() {
+    return legacyBuildCarismaticEmail(event, user);
+  }
+
+  @Benchmark
+  public String compiledTemplate() {
+    return consumer.buildCarismaticEmail(event, user);
+  }
+
+  @Benchmark
+  public String compiledHtmlTemplate() {
+    return consumer.buildCarismaticHtmlEmail(event, user);
+  }
+
+  // Copia del builder anterior a las plantillas, sólo como línea base
+  private static String legacyBuildCarismaticEmail(RouteCompleteEvent event, UserDTO user) {
+    LocalDate today = LocalDate.now();
+    String dayName = today.getDayOfWeek().getDisplayName(TextStyle.FULL, new Locale("es", "ES"));
+    String formattedDate = today.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+
+    String greeting = user.getAlias() != null ? user.getAlias() : "Aventurero";
+
+    StringBuilder emailBuilder = new StringBuilder();
+    emailBuilder.append("¡Hola ").append(greeting).append("! 🚀\n\n");
+    emailBuilder.append("¡Qué emoción! Has completado una ruta increíble. 🎊\n\n");
+    emailBuilder.append("═══════════════════════════════\n");
+    emailBuilder.append("📍 DETALLES DE TU AVENTURA\n");
+    emailBuilder.append("═══════════════════════════════\n\n");
+    emailBuilder.append("🗺️  Ruta: ").append(event.routeName()).append("\n");
+    emailBuilder.append("⭐ Puntuación: ").append(event.score()).append(" puntos\n");
+    emailBuilder.append("📏 Distancia recorrida: ").append(String.format("%.2f", event.distanceKm())).append(" km\n");
+    emailBuilder.append("⏱️  Tiempo estimado: ").append(event.estTimeMin()).append(" minutos\n");
+    emailBuilder.append("⏰ Tiempo real: ").append(event.actualTimeMin()).append(" minutos\n");
+
+    int timeDifference = event.actualTimeMin() - event.estTimeMin();
+    if (timeDifference < 0) {
+      emailBuilder.append("🏆 ¡Increíble! Terminaste ").append(Math.abs(timeDifference))
+                  .append(" minutos antes de lo estimado. ¡Eres un campeón! 💪\n");
+    } else if (timeDifference > 0) {
+      emailBuilder.append("👏 Completaste la ruta en ").append(timeDifference)
+                  .append(" minutos adicionales. ¡Lo importante es que lo lograste! 🌟\n");
+    } else {
+      emailBuilder.append("🎯 ¡Perfecto! Terminaste exactamente en el tiempo estimado. 👌\n");
+    }
+
+    emailBuilder.append("\n📅 Fecha de logro: ").append(dayName).append(", ").append(formattedDate).append("\n\n");
+    emailBuilder.append("═══════════════════════════════\n\n");
+    emailBuilder.append("Sigue así y alcanza nuevas metas. 🌄\n");
+    emailBuilder.append("¡Nos vemos en la próxima aventura! 🚴‍♂️🏃‍♀️\n\n");
+    emailBuilder.append("Con cariño,\n");
+    emailBuilder.append("El equipo de Marketplace Routes 💙\n");
+
+    return emailBuilder.toString();
+  }
+}
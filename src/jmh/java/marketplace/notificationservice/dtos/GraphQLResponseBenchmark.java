@@ -0,0 +1,53 @@
+package marketplace.notificationservice.dtos;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Deserialización de la respuesta de listUsers según la cantidad de usuarios. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GraphQLResponseBenchmark {
+
+  @Param({"1", "100", "10000", "100000"})
+  public int users;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private byte[] payload;
+
+  @Setup
+  public void setUp() {
+    StringBuilder json = new StringBuilder(users * 120 + 64).append("{\"data\":{\"listUsers\":[");
+    for (int i = 0; i < users; i++) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("{\"id\":\"u-")
+          .append(i)
+          .append("\",\"email\":\"user")
+          .append(i)
+          .append("@example.com\",\"alias\":\"Usuario ")
+          .append(i)
+          .append("\",\"photoUrl\":\"https://cdn.example.com/u/")
+          .append(i)
+          .append(".png\"}");
+    }
+    json.append("]}}");
+    payload = json.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public GraphQLResponse deserializeListUsers() throws IOException {
+    return objectMapper.readValue(payload, GraphQLResponse.class);
+  }
+}
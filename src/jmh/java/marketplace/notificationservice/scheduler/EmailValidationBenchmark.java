@@ -0,0 +1,25 @@
+package marketplace.notificationservice.scheduler;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** Validación de email que hace la campaña de engagement antes de cada envío. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EmailValidationBenchmark {
+
+  @Param({"usuario.de.prueba@example.com", "sin-arroba.example.com"})
+  public String email;
+
+  @Benchmark
+  public boolean isValidEmail() {
+    return UserEngagementScheduler.isValidEmail(email);
+  }
+}
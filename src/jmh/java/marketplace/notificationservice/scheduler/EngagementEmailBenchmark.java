@@ -0,0 +1,118 @@
+package marketplace.notificationservice.scheduler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import marketplace.notificationservice.Service.AdaptiveConcurrency;
+import marketplace.notificationservice.dtos.UserDTO;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.template.EmailTemplateEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compara el StringBuilder original de buildFunnyEngagementEmail (arreglos de mensajes y datos
+ * recreados en cada llamada) contra la plantilla precompilada de EmailTemplateEngine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EngagementEmailBenchmark {
+
+  private final Random random = new Random();
+  private UserEngagementScheduler scheduler;
+  private UserDTO user;
+
+  @Setup
+  public void setUp() {
+    scheduler =
+        new UserEngagementScheduler(
+            null,
+            null,
+            null,
+            null,
+            new EmailTemplateEngine(),
+            new NotificationMetrics(new SimpleMeterRegistry()),
+            null,
+            null,
+            new AdaptiveConcurrency(false, 2.0, 0.9, 8, 1, 32, 16, 2, 64),
+            "local",
+            false,
+            false,
+            10,
+            10,
+            1,
+            100,
+            500,
+            24);
+    user = new UserDTO("u-1", "user@example.com", "Tester", null);
+  }
+
+  @Benchmark
+  public String legacyStringBuilder() {
+    return legacyBuildFunnyEngagementEmail(user);
+  }
+
+  @Benchmark
+  public String compiledTemplate() {
+    return scheduler.buildFunnyEngagementEmail(user);
+  }
+
+  // Copia del builder anterior a las plantillas, sólo como línea base
+  private String legacyBuildFunnyEngagementEmail(UserDTO user) {
+    String greeting = (user.getAlias() != null && !user.getAlias().isBlank())
+        ? user.getAlias()
+        : "Aventurero";
+
+    String[] funnyMessages = {
+        "¿Sigues vivo? ¡Hace tiempo que no te vemos correr por nuestra app! 🏃‍♂️💨",
+        "Tus zapatillas nos preguntaron por ti... ¿Cuándo vuelves? 👟😢",
+        "Las rutas están aburridas sin ti. ¡Vuelve a conquistarlas! 🗺️✨",
+        "¿Te perdiste en alguna ruta? ¡Porque hace rato no sabemos de ti! 🧭😅",
+        "Tus pasos nos hacen falta... ¿Cuándo vuelves a caminar con nosotros? 🚶‍♀️💚"
+    };
+
+    String randomMessage = funnyMessages[random.nextInt(funnyMessages.length)];
+
+    StringBuilder emailBuilder = new StringBuilder();
+    emailBuilder.append("¡Hola ").append(greeting).append("! 👋\n\n");
+    emailBuilder.append(randomMessage).append("\n\n");
+    emailBuilder.append("══════════════════════════════════════\n");
+    emailBuilder.append("🌟 ¡TE ESTAMOS EXTRAÑANDO!\n");
+    emailBuilder.append("══════════════════════════════════════\n\n");
+    emailBuilder.append("Sabemos que la vida está ocupada, pero tus metas no se van a cumplir solas. 💪\n\n");
+    emailBuilder.append("🔥 ¿Qué puedes hacer HOY?\n\n");
+    emailBuilder.append("   ✅ Registra tus pasos diarios\n");
+    emailBuilder.append("   ✅ Descubre nuevas rutas cerca de ti\n");
+    emailBuilder.append("   ✅ Completa desafíos y gana puntos\n");
+    emailBuilder.append("   ✅ Supera tus propios récords\n\n");
+    emailBuilder.append("No importa si son 10 minutos o una hora, ¡cada paso cuenta! 👣\n\n");
+    emailBuilder.append("══════════════════════════════════════\n");
+    emailBuilder.append("💡 DATO CURIOSO\n");
+    emailBuilder.append("══════════════════════════════════════\n");
+    emailBuilder.append(getRandomFact()).append("\n\n");
+    emailBuilder.append("Así que ya sabes... ¡abre la app y empieza a moverte! 🚀\n\n");
+    emailBuilder.append("¡Nos vemos en las rutas! 🌄🏃‍♀️\n\n");
+    emailBuilder.append("Con cariño (y un poco de preocupación 😅),\n");
+    emailBuilder.append("P.D.: Si no vuelves pronto, enviaremos a tus zapatillas a buscarte. 👟🔍");
+
+    return emailBuilder.toString();
+  }
+
+  private String getRandomFact() {
+    String[] facts = {
+        "Caminar 30 minutos al día reduce el riesgo de enfermedades cardíacas en un 35%. ❤️",
+        "El ser humano promedio camina aproximadamente 160,000 kilómetros en toda su vida. ¡Eso es 4 vueltas al mundo! 🌍",
+        "Caminar mejora tu creatividad en un 60%. ¡Las mejores ideas surgen mientras caminas! 💡",
+        "10,000 pasos al día equivalen a quemar aproximadamente 500 calorías. 🔥",
+        "Caminar descalzo por 30 minutos puede reducir el estrés significativamente. 🦶✨",
+        "Las personas que caminan regularmente tienen mejor memoria que las sedentarias. 🧠💪"
+    };
+    return facts[random.nextInt(facts.length)];
+  }
+}
@@ -0,0 +1,157 @@
+package marketplace.notificationservice.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * authentication-service falso con users usuarios (user-0 … user-(users-1)). Responde las
+ * consultas que arma GraphQLClientService: getUser, el lote con alias (u0: getUser(userId: $u0),
+ * ...) con los IDs en las variables y listUsers con y sin paginación. latencyMs se suma a cada
+ * request.
+ */
+final class GraphQLStandIn implements AutoCloseable {
+
+  static final String USER_PREFIX = "user-";
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final Pattern ALIASED_GET_USER =
+      Pattern.compile("(\\w+):\\s*getUser\\(userId:\\s*\\$(\\w+)\\)");
+  private static final Pattern GET_USER = Pattern.compile("getUser\\(userId:\\s*\"([^\"]*)\"\\)");
+  private static final Pattern LIST_USERS_PAGE =
+      Pattern.compile("listUsers\\(limit:\\s*(\\d+),\\s*offset:\\s*(\\d+)\\)");
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final int users;
+  private final long latencyMs;
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private GraphQLStandIn(int users, long latencyMs) throws IOException {
+    this.users = users;
+    this.latencyMs = latencyMs;
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 512);
+    server.setExecutor(executor);
+    server.createContext("/graphql", this::handle);
+    server.start();
+  }
+
+  static GraphQLStandIn start(int users, long latencyMs) throws IOException {
+    return new GraphQLStandIn(users, latencyMs);
+  }
+
+  String endpoint() {
+    return "http://"
+        + server.getAddress().getAddress().getHostAddress()
+        + ":"
+        + server.getAddress().getPort()
+        + "/graphql";
+  }
+
+  int requestCount() {
+    return requests.get();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    try (exchange) {
+      JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+      String query = request.path("query").asText();
+      if (latencyMs > 0) {
+        Thread.sleep(latencyMs);
+      }
+      byte[] response =
+          respond(query, request.path("variables")).getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, response.length);
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(response);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private String respond(String query, JsonNode variables) {
+    StringBuilder json = new StringBuilder(256).append("{\"data\":{");
+    Matcher page = LIST_USERS_PAGE.matcher(query);
+    if (page.find()) {
+      int limit = Integer.parseInt(page.group(1));
+      int offset = Integer.parseInt(page.group(2));
+      appendUserList(json, offset, Math.min(users, offset + limit));
+    } else if (query.contains("listUsers")) {
+      appendUserList(json, 0, users);
+    } else {
+      Matcher aliased = ALIASED_GET_USER.matcher(query);
+      boolean batch = false;
+      while (aliased.find()) {
+        if (batch) {
+          json.append(',');
+        }
+        batch = true;
+        json.append('"').append(aliased.group(1)).append("\":");
+        appendUser(json, variables.path(aliased.group(2)).asText(null));
+      }
+      if (!batch) {
+        Matcher single = GET_USER.matcher(query);
+        json.append("\"getUser\":");
+        appendUser(json, single.find() ? single.group(1) : null);
+      }
+    }
+    return json.append("}}").toString();
+  }
+
+  private void appendUserList(StringBuilder json, int from, int to) {
+    json.append("\"listUsers\":[");
+    for (int i = from; i < to; i++) {
+      if (i > from) {
+        json.append(',');
+      }
+      appendUser(json, USER_PREFIX + i);
+    }
+    json.append(']');
+  }
+
+  private void appendUser(StringBuilder json, String userId) {
+    if (!exists(userId)) {
+      json.append("null");
+      return;
+    }
+    json.append("{\"id\":\"")
+        .append(userId)
+        .append("\",\"email\":\"")
+        .append(userId)
+        .append("@loadtest.local\",\"alias\":\"Carga ")
+        .append(userId.substring(USER_PREFIX.length()))
+        .append("\",\"photoUrl\":null}");
+  }
+
+  private boolean exists(String userId) {
+    if (userId == null || !userId.startsWith(USER_PREFIX)) {
+      return false;
+    }
+    try {
+      int index = Integer.parseInt(userId.substring(USER_PREFIX.length()));
+      return index >= 0 && index < users;
+    } catch (NumberFormatException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,106 @@
+package marketplace.notificationservice.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Resultado de una corrida. La latencia de cada evento se mide desde el instante en que debía
+ * publicarse según la tasa objetivo (no desde que se publicó de verdad), así un publicador
+ * atrasado no esconde la espera: es la corrección de "coordinated omission". Los eventos de
+ * calentamiento no entran en las estadísticas.
+ */
+record LatencyReport(
+    double targetRate,
+    int measured,
+    int delivered,
+    int duplicates,
+    double p50Ms,
+    double p90Ms,
+    double p99Ms,
+    double p999Ms,
+    double maxMs,
+    double throughputPerSecond,
+    double maxPublishLagMs) {
+
+  static LatencyReport of(
+      double targetRate,
+      long[] intended,
+      AtomicLongArray delivered,
+      int warmup,
+      int duplicates,
+      long maxPublishLagNanos) {
+    long[] latencies = new long[intended.length - warmup];
+    int count = 0;
+    long lastDelivery = Long.MIN_VALUE;
+    for (int i = warmup; i < intended.length; i++) {
+      long at = delivered.get(i);
+      if (at != 0) {
+        latencies[count++] = at - intended[i];
+        lastDelivery = Math.max(lastDelivery, at);
+      }
+    }
+    Arrays.sort(latencies, 0, count);
+    double seconds =
+        count == 0 ? 0 : (lastDelivery - intended[Math.min(warmup, intended.length - 1)]) / 1e9;
+    return new LatencyReport(
+        targetRate,
+        latencies.length,
+        count,
+        duplicates,
+        percentile(latencies, count, 0.50),
+        percentile(latencies, count, 0.90),
+        percentile(latencies, count, 0.99),
+        percentile(latencies, count, 0.999),
+        count == 0 ? 0 : latencies[count - 1] / 1e6,
+        seconds > 0 ? count / seconds : 0,
+        maxPublishLagNanos / 1e6);
+  }
+
+  private static double percentile(long[] sorted, int count, double quantile) {
+    if (count == 0) {
+      return 0;
+    }
+    int index = (int) Math.ceil(quantile * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, index))] / 1e6;
+  }
+
+  String summary() {
+    return String.format(
+        """
+        ===== Prueba de carga =====
+        Tasa objetivo: %.0f eventos/s (atraso máximo del publicador: %.1f ms)
+        Entregados: %d/%d (%d sin entregar, %d duplicados)
+        Latencia de punta a punta (ms): p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f
+        Throughput sostenido: %.1f emails/s
+        """,
+        targetRate,
+        maxPublishLagMs,
+        delivered,
+        measured,
+        measured - delivered,
+        duplicates,
+        p50Ms,
+        p90Ms,
+        p99Ms,
+        p999Ms,
+        maxMs,
+        throughputPerSecond);
+  }
+
+  void write(Path path, Map<String, Object> settings) throws IOException {
+    Map<String, Object> json = new LinkedHashMap<>();
+    json.put("settings", settings);
+    json.put("result", this);
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(path.toFile(), json);
+  }
+}
@@ -0,0 +1,147 @@
+package marketplace.notificationservice.loadtest;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SMTP que acepta todo y descarta el contenido, como SmtpStubServer de los tests, pero además
+ * reconoce en cada email el marcador lt-&lt;n&gt; que LoadTestRunner pone como nombre de la ruta y
+ * avisa su llegada. latencyMs simula lo que tarda el proveedor en aceptar cada mensaje.
+ */
+final class SmtpSink implements AutoCloseable {
+
+  static final String TOKEN_PREFIX = "lt-";
+  private static final Pattern TOKEN = Pattern.compile(TOKEN_PREFIX + "(\\d+)");
+
+  private final ServerSocket serverSocket;
+  private final long latencyMs;
+  private final IntConsumer onDelivered;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final AtomicInteger connections = new AtomicInteger();
+  private final AtomicInteger messages = new AtomicInteger();
+
+  private SmtpSink(long latencyMs, IntConsumer onDelivered) throws IOException {
+    this.latencyMs = latencyMs;
+    this.onDelivered = onDelivered;
+    this.serverSocket = new ServerSocket(0, 512, InetAddress.getLoopbackAddress());
+    executor.execute(this::acceptLoop);
+  }
+
+  static SmtpSink start(long latencyMs, IntConsumer onDelivered) throws IOException {
+    return new SmtpSink(latencyMs, onDelivered);
+  }
+
+  String host() {
+    return serverSocket.getInetAddress().getHostAddress();
+  }
+
+  int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  int connectionCount() {
+    return connections.get();
+  }
+
+  int messageCount() {
+    return messages.get();
+  }
+
+  private void acceptLoop() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        executor.execute(() -> handle(socket));
+      } catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  private void handle(Socket socket) {
+    connections.incrementAndGet();
+    try (socket;
+        BufferedReader in =
+            new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        OutputStream out = socket.getOutputStream()) {
+      reply(out, "220 localhost SMTP load-test sink");
+
+      String line;
+      while ((line = in.readLine()) != null) {
+        String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line;
+        switch (command) {
+          case "DATA" -> {
+            reply(out, "354 End data with <CR><LF>.<CR><LF>");
+            StringBuilder data = new StringBuilder(2048);
+            while ((line = in.readLine()) != null && !line.equals(".")) {
+              data.append(line).append('\n');
+            }
+            if (latencyMs > 0) {
+              Thread.sleep(latencyMs);
+            }
+            messages.incrementAndGet();
+            reply(out, "250 OK");
+            notifyDelivery(data);
+          }
+          case "QUIT" -> {
+            reply(out, "221 Bye");
+            return;
+          }
+          default -> reply(out, "250 OK");
+        }
+      }
+    } catch (IOException e) {
+      // el cliente cerró la conexión
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // El cuerpo llega en quoted-printable (con cortes de línea "=") o en base64 según cuántos
+  // caracteres no ASCII tenga la plantilla
+  private void notifyDelivery(CharSequence data) {
+    String message = data.toString();
+    int bodyStart = message.indexOf("\n\n");
+    String body = bodyStart < 0 ? message : message.substring(bodyStart + 2);
+    if (message.toLowerCase().contains("content-transfer-encoding: base64")) {
+      try {
+        body =
+            new String(
+                Base64.getMimeDecoder().decode(body.replace("\n", "")), StandardCharsets.UTF_8);
+      } catch (IllegalArgumentException e) {
+        // multipart o cuerpo inesperado: se busca el marcador tal cual
+      }
+    } else {
+      body = body.replace("=\n", "");
+    }
+    Matcher matcher = TOKEN.matcher(body);
+    if (matcher.find()) {
+      onDelivered.accept(Integer.parseInt(matcher.group(1)));
+    }
+  }
+
+  private static void reply(OutputStream out, String line) throws IOException {
+    out.write((line + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,214 @@
+package marketplace.notificationservice.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import marketplace.notificationservice.config.RabbitMQConfig;
+import marketplace.notificationservice.support.EmbeddedBroker;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+/**
+ * Mide el arranque en frío del servicio empaquetado: en cada corrida deja un RouteCompleteEvent
+ * esperando en notification-queue, lanza el jar en una JVM nueva contra el broker, el SMTP y el
+ * GraphQL locales de la prueba de carga y cronometra desde que se crea el proceso hasta que el
+ * email llega al SMTP ("tiempo hasta el primer mensaje consumido"). También registra lo que
+ * Spring reporta en "Started NotificationServiceApplication in X seconds".
+ *
+ * <p>Parámetros (system properties, con ./gradlew startupBenchmark
+ * -Ploadtest.startup.&lt;nombre&gt;=...):
+ *
+ * <ul>
+ *   <li>jar: el jar a lanzar (lo pone la tarea de Gradle)
+ *   <li>jvm-args: opciones de la JVM separadas por espacios, p. ej. -XX:SharedArchiveFile=...
+ *   <li>runs: cantidad de arranques (5)
+ *   <li>timeout-seconds: espera máxima al primer email de cada arranque (120)
+ *   <li>report: archivo JSON con el resultado (build/reports/loadtest/startup.json)
+ * </ul>
+ *
+ * <p>Las propiedades -Ploadtest.app.&lt;propiedad&gt; se pasan al servicio como en LoadTestRunner.
+ */
+public final class StartupBenchmark {
+
+  private static final String PREFIX = "loadtest.startup.";
+  private static final Pattern STARTED =
+      Pattern.compile("Started \\w+ in ([\\d.]+) seconds \\(process running for ([\\d.]+)\\)");
+
+  private StartupBenchmark() {}
+
+  public static void main(String[] args) throws Exception {
+    Path jar = Path.of(setting("jar", "")).toAbsolutePath();
+    if (!Files.isRegularFile(jar)) {
+      throw new IllegalArgumentException("No existe el jar " + jar);
+    }
+    List<String> jvmArgs = splitArgs(setting("jvm-args", ""));
+    int runs = Integer.parseInt(setting("runs", "5"));
+    long timeoutSeconds = Long.parseLong(setting("timeout-seconds", "120"));
+    Path report = Path.of(setting("report", "build/reports/loadtest/startup.json"));
+    Path logs = report.toAbsolutePath().getParent();
+    Files.createDirectories(logs);
+
+    String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+    double[] firstMessageMs = new double[runs];
+    double[] startedSeconds = new double[runs];
+
+    try (EmbeddedBroker broker = EmbeddedBroker.start()) {
+      String amqpUri = broker.uri().toString();
+      CachingConnectionFactory connectionFactory =
+          new CachingConnectionFactory(URI.create(amqpUri));
+      declareNotificationQueue(connectionFactory);
+      RabbitTemplate publisher = new RabbitTemplate(connectionFactory);
+
+      for (int run = 0; run < runs; run++) {
+        CompletableFuture<Long> delivered = new CompletableFuture<>();
+        int expected = run;
+        try (SmtpSink smtp =
+                SmtpSink.start(
+                    0,
+                    seq -> {
+                      if (seq == expected) {
+                        delivered.complete(System.nanoTime());
+                      }
+                    });
+            GraphQLStandIn graphql = GraphQLStandIn.start(1, 0)) {
+          // El evento ya está en la cola cuando arranca la JVM: lo consume el primer listener
+          publisher.send(
+              RabbitMQConfig.EXCHANGE_NAME,
+              RabbitMQConfig.ROUTING_KEY,
+              LoadTestRunner.event(run, GraphQLStandIn.USER_PREFIX + 0));
+
+          Path work = Files.createTempDirectory("notification-startup");
+          Path log = logs.resolve("startup-" + run + ".log");
+          List<String> command = new ArrayList<>();
+          command.add(java);
+          command.addAll(jvmArgs);
+          command.add("-jar");
+          command.add(jar.toString());
+          command.addAll(
+              springArgs(LoadTestRunner.appProperties(amqpUri, smtp, graphql, work)));
+
+          long start = System.nanoTime();
+          Process process =
+              new ProcessBuilder(command)
+                  .directory(jar.getParent().toFile())
+                  .redirectErrorStream(true)
+                  .redirectOutput(log.toFile())
+                  .start();
+          try {
+            long at = delivered.get(timeoutSeconds, TimeUnit.SECONDS);
+            firstMessageMs[run] = (at - start) / 1e6;
+          } catch (TimeoutException e) {
+            throw new IllegalStateException(
+                "El servicio no envió el email en " + timeoutSeconds + " s, ver " + log, e);
+          } finally {
+            stop(process);
+          }
+          startedSeconds[run] = startedSeconds(log);
+          System.out.printf(
+              "Arranque %d: primer mensaje en %.0f ms (Spring: %.2f s)%n",
+              run + 1, firstMessageMs[run], startedSeconds[run]);
+        }
+      }
+      connectionFactory.destroy();
+    }
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("firstMessageMs", stats(firstMessageMs));
+    result.put("startedSeconds", stats(startedSeconds));
+    System.out.printf(
+        """
+        ===== Arranque =====
+        Tiempo hasta el primer mensaje consumido (ms): mediana=%.0f min=%.0f max=%.0f
+        Started ... in (s): mediana=%.2f min=%.2f max=%.2f
+        """,
+        median(firstMessageMs),
+        Arrays.stream(firstMessageMs).min().orElse(0),
+        Arrays.stream(firstMessageMs).max().orElse(0),
+        median(startedSeconds),
+        Arrays.stream(startedSeconds).min().orElse(0),
+        Arrays.stream(startedSeconds).max().orElse(0));
+
+    Map<String, Object> settings = new LinkedHashMap<>();
+    settings.put("jar", jar.getFileName().toString());
+    settings.put("jvmArgs", jvmArgs);
+    settings.put("runs", runs);
+    Map<String, Object> json = new LinkedHashMap<>();
+    json.put("settings", settings);
+    json.put("result", result);
+    new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(report.toFile(), json);
+    System.out.println("Resultado en " + report.toAbsolutePath());
+  }
+
+  // Misma declaración que RabbitMQConfig, para que el evento no se descarte antes de que el
+  // servicio arranque y declare su topología
+  private static void declareNotificationQueue(CachingConnectionFactory connectionFactory) {
+    RabbitMQConfig topology = new RabbitMQConfig();
+    Queue queue = topology.notificationQueue();
+    DirectExchange exchange = topology.notificationExchange();
+    RabbitAdmin admin = new RabbitAdmin(connectionFactory);
+    admin.declareQueue(queue);
+    admin.declareExchange(exchange);
+    admin.declareBinding(topology.notificationBinding(queue, exchange));
+  }
+
+  private static List<String> springArgs(Properties properties) {
+    return properties.stringPropertyNames().stream()
+        .sorted()
+        .map(name -> "--" + name + "=" + properties.getProperty(name))
+        .toList();
+  }
+
+  private static void stop(Process process) throws InterruptedException {
+    process.destroy();
+    if (!process.waitFor(30, TimeUnit.SECONDS)) {
+      process.destroyForcibly().waitFor();
+    }
+  }
+
+  private static double startedSeconds(Path log) throws Exception {
+    Matcher matcher = STARTED.matcher(Files.readString(log));
+    return matcher.find() ? Double.parseDouble(matcher.group(1)) : 0;
+  }
+
+  private static Map<String, Double> stats(double[] values) {
+    Map<String, Double> stats = new LinkedHashMap<>();
+    stats.put("median", median(values));
+    stats.put("min", Arrays.stream(values).min().orElse(0));
+    stats.put("max", Arrays.stream(values).max().orElse(0));
+    return stats;
+  }
+
+  private static double median(double[] values) {
+    if (values.length == 0) {
+      return 0;
+    }
+    double[] sorted = values.clone();
+    Arrays.sort(sorted);
+    int middle = sorted.length / 2;
+    return sorted.length % 2 == 1 ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+  }
+
+  private static List<String> splitArgs(String args) {
+    return args.isBlank() ? List.of() : List.of(args.trim().split("\\s+"));
+  }
+
+  private static String setting(String name, String defaultValue) {
+    return System.getProperty(PREFIX + name, defaultValue);
+  }
+}
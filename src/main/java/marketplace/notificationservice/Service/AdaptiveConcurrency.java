@@ -0,0 +1,68 @@
+package marketplace.notificationservice.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Límites adaptativos de los dos recursos externos: envíos SMTP (ver EmailService.send, que
+ * además ajusta la capacidad de SmtpLaneScheduler) y consultas al authentication-service (ver
+ * GraphQLClientService.post). Con enabled=false los límites quedan fijos en su valor inicial.
+ * Los consumidores del listener y el fan-out de la campaña también siguen estos límites (ver
+ * ConsumerConcurrencyTuner y UserEngagementScheduler).
+ */
+@Component
+@Slf4j
+public class AdaptiveConcurrency implements MeterBinder {
+
+  private final boolean enabled;
+  private final AdaptiveLimit smtp;
+  private final AdaptiveLimit graphql;
+
+  public AdaptiveConcurrency(
+      @Value("${notification.adaptive.enabled:true}") boolean enabled,
+      @Value("${notification.adaptive.tolerance:2.0}") double tolerance,
+      @Value("${notification.adaptive.backoff:0.9}") double backoff,
+      @Value("${notification.adaptive.smtp.initial:8}") int smtpInitial,
+      @Value("${notification.adaptive.smtp.min:1}") int smtpMin,
+      @Value("${notification.adaptive.smtp.max:32}") int smtpMax,
+      @Value("${notification.adaptive.graphql.initial:16}") int graphqlInitial,
+      @Value("${notification.adaptive.graphql.min:2}") int graphqlMin,
+      @Value("${notification.adaptive.graphql.max:64}") int graphqlMax) {
+    this.enabled = enabled;
+    this.smtp = new AdaptiveLimit("smtp", smtpInitial, smtpMin, smtpMax, tolerance, backoff);
+    this.graphql =
+        new AdaptiveLimit("graphql", graphqlInitial, graphqlMin, graphqlMax, tolerance, backoff);
+    smtp.onChange(limit -> log.info("Límite adaptativo SMTP: {}", limit));
+    graphql.onChange(limit -> log.info("Límite adaptativo GraphQL: {}", limit));
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public AdaptiveLimit smtp() {
+    return smtp;
+  }
+
+  public AdaptiveLimit graphql() {
+    return graphql;
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    for (AdaptiveLimit limit : new AdaptiveLimit[] {smtp, graphql}) {
+      Gauge.builder("notification.adaptive.limit", limit, AdaptiveLimit::getLimit)
+          .description("Límite de concurrencia adaptativo por recurso")
+          .tag("resource", limit.name())
+          .register(registry);
+      Gauge.builder("notification.adaptive.inflight", limit, AdaptiveLimit::inFlight)
+          .description("Llamadas en vuelo contadas por el límite adaptativo")
+          .tag("resource", limit.name())
+          .register(registry);
+    }
+  }
+}
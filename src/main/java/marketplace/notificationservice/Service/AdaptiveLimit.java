@@ -0,0 +1,167 @@
+package marketplace.notificationservice.Service;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Límite de concurrencia que se ajusta con la latencia observada (AIMD guiado por latencia, en
+ * la línea de los limitadores Vegas/Gradient de Netflix concurrency-limits). Se compara un
+ * promedio móvil corto de la latencia, que sigue la carga actual, con una base "sin carga": el
+ * mínimo de ese promedio.
+ *
+ * <ul>
+ *   <li>Si la latencia corta supera tolerance veces la base, o el servidor respondió con
+ *       throttling (421/4xx SMTP, 429/503 HTTP), el límite se multiplica por backoff, a lo sumo
+ *       una vez por RTT para que una ráfaga de respuestas lentas no lo hunda de golpe.
+ *   <li>Si no, y el límite se está usando (al menos la mitad en vuelo), sube 1/limit por
+ *       respuesta: +1 cada limit respuestas.
+ * </ul>
+ *
+ * <p>La base sólo baja. Se vuelve a medir cuando el límite llega al mínimo: ahí casi no hay
+ * cola propia, así que la latencia que se ve es la del servidor. Un servidor que se pone más lento
+ * de forma permanente hace bajar el límite hasta el mínimo una vez, y desde ahí la nueva
+ * latencia es la base y el límite vuelve a subir. Una base que siguiera al promedio (aunque
+ * despacio) se iría corriendo con la cola que genera el propio límite al crecer.
+ */
+public class AdaptiveLimit {
+
+  private final String name;
+  private final int minLimit;
+  private final int maxLimit;
+  private final double tolerance;
+  private final double backoff;
+  private final LongSupplier clock;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final List<IntConsumer> listeners = new CopyOnWriteArrayList<>();
+  // Serializa los avisos a los listeners, aparte del lock del cálculo (ver notifyListeners)
+  private final Object notifyLock = new Object();
+  private int notified;
+
+  private double limit;
+  private double shortRtt;
+  private double baseRtt;
+  private long lastDecrease = Long.MIN_VALUE / 2;
+  private volatile int published;
+
+  public AdaptiveLimit(
+      String name, int initialLimit, int minLimit, int maxLimit, double tolerance, double backoff) {
+    this(name, initialLimit, minLimit, maxLimit, tolerance, backoff, System::nanoTime);
+  }
+
+  AdaptiveLimit(
+      String name,
+      int initialLimit,
+      int minLimit,
+      int maxLimit,
+      double tolerance,
+      double backoff,
+      LongSupplier clock) {
+    this.name = name;
+    this.minLimit = Math.max(1, minLimit);
+    this.maxLimit = Math.max(this.minLimit, maxLimit);
+    this.tolerance = Math.max(1.0, tolerance);
+    this.backoff = Math.min(0.99, Math.max(0.1, backoff));
+    this.clock = clock;
+    this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    this.published = (int) limit;
+    this.notified = published;
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public int getLimit() {
+    return published;
+  }
+
+  public int inFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * Se llama con el nuevo límite entero cada vez que cambia, de a un aviso por vez. Si cambia más
+   * rápido de lo que se avisa, los valores intermedios pueden omitirse, pero el último aviso es
+   * siempre el límite vigente.
+   */
+  public void onChange(IntConsumer listener) {
+    listeners.add(listener);
+  }
+
+  /** Ocupa un lugar si hay; no bloquea. Quien lo obtiene debe llamar release. */
+  public boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= published) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Cuenta una llamada en vuelo sin aplicar el límite, para cuando otro mecanismo lo aplica (los
+   * envíos SMTP los acota SmtpLaneScheduler). Devuelve cuántas hay en vuelo contando ésta.
+   */
+  public int enter() {
+    return inFlight.incrementAndGet();
+  }
+
+  public void release() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * Registra una respuesta. inFlight es cuántas llamadas había en vuelo al empezar ésta (se usa
+   * para no subir el límite cuando sobra capacidad). Las fallas que no son throttling no son
+   * muestras: no dicen nada de la carga del servidor.
+   */
+  public void onSample(long rttNanos, int inFlight, boolean throttled) {
+    synchronized (this) {
+      long now = clock.getAsLong();
+      if (!throttled) {
+        shortRtt = shortRtt == 0 ? rttNanos : shortRtt * 0.8 + rttNanos * 0.2;
+        baseRtt = baseRtt == 0 || limit <= minLimit ? shortRtt : Math.min(baseRtt, shortRtt);
+      }
+
+      if (throttled || shortRtt > baseRtt * tolerance) {
+        if (now - lastDecrease >= (long) shortRtt) {
+          limit = Math.max(minLimit, limit * backoff);
+          lastDecrease = now;
+        }
+      } else if (inFlight * 2 >= limit) {
+        limit = Math.min(maxLimit, limit + 1 / limit);
+      }
+
+      int rounded = (int) limit;
+      if (rounded == published) {
+        return;
+      }
+      published = rounded;
+    }
+    notifyListeners();
+  }
+
+  /**
+   * Los listeners corren fuera del lock del cálculo (pueden tomar los suyos), pero de a uno y con
+   * el valor publicado al momento de avisar, no el que calculó este hilo: dos cambios seguidos
+   * avisados en orden invertido dejarían a SmtpLaneScheduler o al fan-out con un límite viejo.
+   */
+  private void notifyListeners() {
+    synchronized (notifyLock) {
+      int current = published;
+      if (current == notified) {
+        return;
+      }
+      notified = current;
+      for (IntConsumer listener : listeners) {
+        listener.accept(current);
+      }
+    }
+  }
+}
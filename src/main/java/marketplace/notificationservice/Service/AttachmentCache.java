@@ -0,0 +1,228 @@
+package marketplace.notificationservice.Service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.activation.DataHandler;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeBodyPart;
+import jakarta.mail.internet.PreencodedMimeBodyPart;
+import jakarta.mail.util.ByteArrayDataSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.ConfigurableMimeFileTypeMap;
+import org.springframework.stereotype.Service;
+
+/**
+ * Adjuntos ya codificados en base64, direccionados por el SHA-256 de su contenido. Cada archivo se
+ * mapea en memoria y se codifica una sola vez; los envíos siguientes sólo consultan el tamaño y la
+ * fecha de modificación del archivo y, si no cambiaron, reutilizan la codificación. Si cambiaron,
+ * se vuelve a leer; si el contenido resulta igual (o ya lo tiene otra ruta) no se vuelve a
+ * codificar.
+ *
+ * <p>max-bytes acota el total codificado que se guarda (LRU); un adjunto más grande que eso se
+ * codifica en cada envío, como antes.
+ */
+@Service
+public class AttachmentCache implements MeterBinder {
+
+  // Base64 deja 4 bytes por cada 3 más el CRLF de cada línea de 76: lo que entra en un byte[]
+  private static final long MAX_ENCODABLE_BYTES = (Integer.MAX_VALUE - 8) / 78L * 57;
+  private static final Base64.Encoder ENCODER = Base64.getMimeEncoder();
+
+  /**
+   * Adjunto codificado en base64 (líneas de 76 caracteres con CRLF). base64 es compartido entre
+   * todos los envíos del mismo contenido y no se modifica.
+   */
+  public record EncodedAttachment(
+      String fileName, String contentType, String digest, byte[] base64) {
+
+    /** Body part nuevo (barato) sobre la codificación compartida; no vuelve a leer ni codificar. */
+    public MimeBodyPart toBodyPart() throws MessagingException {
+      MimeBodyPart part = preencoded(base64, contentType);
+      part.setFileName(fileName);
+      part.setDisposition(MimeBodyPart.ATTACHMENT);
+      return part;
+    }
+  }
+
+  private record Stamp(long size, FileTime modified, Object fileKey) {}
+
+  private record Indexed(Stamp stamp, String digest) {}
+
+  private final boolean enabled;
+  private final long maxBytes;
+  private final ConfigurableMimeFileTypeMap fileTypeMap = new ConfigurableMimeFileTypeMap();
+
+  private final Map<Path, Indexed> byPath = new ConcurrentHashMap<>();
+  // LinkedHashMap en orden de acceso, protegido por sí mismo junto con cachedBytes
+  private final Map<String, byte[]> byDigest = new LinkedHashMap<>(16, 0.75f, true);
+  private long cachedBytes;
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong encodings = new AtomicLong();
+
+  public AttachmentCache(
+      @Value("${notification.attachments.cache.enabled:true}") boolean enabled,
+      @Value("${notification.attachments.cache.max-bytes:67108864}") long maxBytes) {
+    this.enabled = enabled;
+    this.maxBytes = maxBytes;
+  }
+
+  /** Devuelve el adjunto codificado, leyéndolo sólo si no está en cache o el archivo cambió. */
+  public EncodedAttachment get(String pathToAttachment) throws IOException {
+    Path path = Path.of(pathToAttachment).toAbsolutePath().normalize();
+    Stamp stamp = stamp(path);
+    if (enabled) {
+      Indexed indexed = byPath.get(path);
+      if (indexed != null && indexed.stamp().equals(stamp)) {
+        byte[] base64 = cached(indexed.digest());
+        if (base64 != null) {
+          hits.incrementAndGet();
+          return attachment(path, indexed.digest(), base64);
+        }
+      }
+    }
+    misses.incrementAndGet();
+    return load(path, stamp);
+  }
+
+  private EncodedAttachment load(Path path, Stamp stamp) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > MAX_ENCODABLE_BYTES) {
+        throw new IOException("Adjunto demasiado grande para codificar: " + path);
+      }
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      bytesRead.addAndGet(size);
+      String digest = sha256(mapped.duplicate());
+      byte[] base64 = enabled ? cached(digest) : null;
+      if (base64 == null) {
+        base64 = ENCODER.encode(mapped).array();
+        encodings.incrementAndGet();
+      }
+      // Si el archivo cambió mientras se leía, la próxima consulta lo vuelve a leer
+      if (enabled && size == stamp.size() && base64.length <= maxBytes) {
+        store(digest, base64);
+        byPath.put(path, new Indexed(stamp, digest));
+      }
+      return attachment(path, digest, base64);
+    }
+  }
+
+  private EncodedAttachment attachment(Path path, String digest, byte[] base64) {
+    String fileName = path.getFileName().toString();
+    return new EncodedAttachment(fileName, fileTypeMap.getContentType(fileName), digest, base64);
+  }
+
+  private byte[] cached(String digest) {
+    synchronized (byDigest) {
+      return byDigest.get(digest);
+    }
+  }
+
+  private void store(String digest, byte[] base64) {
+    synchronized (byDigest) {
+      byte[] previous = byDigest.put(digest, base64);
+      cachedBytes += base64.length - (previous == null ? 0 : previous.length);
+      Iterator<byte[]> eldest = byDigest.values().iterator();
+      while (cachedBytes > maxBytes && eldest.hasNext()) {
+        cachedBytes -= eldest.next().length;
+        eldest.remove();
+      }
+    }
+  }
+
+  /**
+   * Body part que escribe contentBase64 tal cual al serializar el mensaje. Con
+   * Content-Transfer-Encoding ya puesto JavaMail tampoco recorre el contenido para elegirlo.
+   */
+  static MimeBodyPart preencoded(byte[] contentBase64, String contentType)
+      throws MessagingException {
+    PreencodedMimeBodyPart part = new PreencodedMimeBodyPart("base64");
+    part.setDataHandler(new DataHandler(new ByteArrayDataSource(contentBase64, contentType)));
+    part.setHeader("Content-Type", contentType);
+    part.setHeader("Content-Transfer-Encoding", "base64");
+    return part;
+  }
+
+  static byte[] encode(byte[] content) {
+    return ENCODER.encode(content);
+  }
+
+  private static Stamp stamp(Path path) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    return new Stamp(attributes.size(), attributes.lastModifiedTime(), attributes.fileKey());
+  }
+
+  private static String sha256(ByteBuffer content) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      digest.update(content);
+      return HexFormat.of().formatHex(digest.digest());
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public long cachedBytes() {
+    synchronized (byDigest) {
+      return cachedBytes;
+    }
+  }
+
+  public long hitCount() {
+    return hits.get();
+  }
+
+  public long missCount() {
+    return misses.get();
+  }
+
+  /** Bytes leídos de disco desde el arranque. */
+  public long bytesReadCount() {
+    return bytesRead.get();
+  }
+
+  public long encodingCount() {
+    return encodings.get();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("notification.attachments.requests", hits, AtomicLong::get)
+        .tag("result", "hit")
+        .register(registry);
+    FunctionCounter.builder("notification.attachments.requests", misses, AtomicLong::get)
+        .tag("result", "miss")
+        .register(registry);
+    FunctionCounter.builder("notification.attachments.bytes_read", bytesRead, AtomicLong::get)
+        .description("Bytes de adjuntos leídos de disco")
+        .register(registry);
+    FunctionCounter.builder("notification.attachments.encodings", encodings, AtomicLong::get)
+        .description("Adjuntos codificados en base64")
+        .register(registry);
+    Gauge.builder("notification.attachments.cached_bytes", this, AttachmentCache::cachedBytes)
+        .register(registry);
+  }
+}
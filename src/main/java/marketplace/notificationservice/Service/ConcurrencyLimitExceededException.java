@@ -0,0 +1,12 @@
+package marketplace.notificationservice.Service;
+
+/**
+ * Se alcanzó el límite adaptativo de llamadas en vuelo (ver AdaptiveLimit). Como el bulkhead, se
+ * rechaza en vez de encolar: el mensaje vuelve a una cola de espera sin gastar un intento.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+  public ConcurrencyLimitExceededException(String resource, int limit) {
+    super("Límite de concurrencia de " + resource + " alcanzado (" + limit + ")");
+  }
+}
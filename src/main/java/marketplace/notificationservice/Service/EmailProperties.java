@@ -1,5 +1,7 @@
 package marketplace.notificationservice.Service;
 
+import java.util.HashMap;
+import java.util.Map;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -11,4 +13,7 @@ public class EmailProperties {
   private String host;
   private String username;
   private String password;
+  private int port = 587;
+  // spring.mail.properties.*: se aplican encima de los valores por defecto de MailConfig
+  private Map<String, String> properties = new HashMap<>();
 }
@@ -1,28 +1,188 @@
 package marketplace.notificationservice.Service;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
-import java.io.File;
+import jakarta.mail.internet.MimeMultipart;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import lombok.AllArgsConstructor;
-import org.springframework.core.io.FileSystemResource;
+import marketplace.notificationservice.Service.AttachmentCache.EncodedAttachment;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.retry.FailureClassifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 @Service
 @AllArgsConstructor
 public class EmailService {
-  private final JavaMailSender mailSender;
+  // Proxy: el sender real se crea con el primer uso (ver MailConfig y lombok.config)
+  @Lazy private final JavaMailSender mailSender;
   private final EmailProperties emailProperties;
+  private final Scheduler smtpScheduler;
+  private final NotificationMetrics metrics;
+  private final SmtpLaneScheduler lanes;
+  private final AdaptiveConcurrency adaptive;
+  private final AttachmentCache attachments;
+
+  /** Destinatario de un envío masivo con sus encabezados propios (p. ej. List-Unsubscribe). */
+  public record BulkRecipient(String to, Map<String, String> headers) {}
+
+  // La capacidad de los carriles sigue al límite adaptativo de SMTP
+  @PostConstruct
+  void followAdaptiveLimit() {
+    if (adaptive.isEnabled()) {
+      lanes.setCapacity(adaptive.smtp().getLimit());
+      adaptive.smtp().onChange(lanes::setCapacity);
+    }
+  }
+
+  /**
+   * Crea el JavaMailSender y su Session de Jakarta Mail en segundo plano cuando el servicio ya
+   * está consumiendo, para que el primer envío no pague la inicialización.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void warmUp() {
+    Thread.ofVirtual().name("smtp-warmup").start(mailSender::createMimeMessage);
+  }
 
   public void sendSimpleEmail(String to, String subject, String text) {
+    sendSimpleEmail(to, subject, text, MailLane.TRANSACTIONAL);
+  }
+
+  private void sendSimpleEmail(String to, String subject, String text, MailLane lane) {
     SimpleMailMessage message = new SimpleMailMessage();
     message.setFrom(emailProperties.getUsername());
     message.setTo(to);
     message.setSubject(subject);
     message.setText(text);
-    mailSender.send(message);
+    send(lane, () -> mailSender.send(message));
+  }
+
+  /**
+   * Todo envío pasa por acá: espera su lugar en el carril (ver SmtpLaneScheduler) y lo devuelve al
+   * terminar, haya salido bien o no. La duración del envío y las respuestas de throttling
+   * alimentan el límite adaptativo de SMTP.
+   */
+  private void send(MailLane lane, Runnable send) {
+    try {
+      lanes.acquire(lane);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MailSendException("Interrumpido esperando lugar en el carril " + lane);
+    }
+    AdaptiveLimit limit = adaptive.smtp();
+    int inFlight = limit.enter();
+    long start = System.nanoTime();
+    try {
+      metrics.timeSmtp(send);
+      if (adaptive.isEnabled()) {
+        limit.onSample(System.nanoTime() - start, inFlight, false);
+      }
+    } catch (RuntimeException e) {
+      if (adaptive.isEnabled() && FailureClassifier.isOverload(e)) {
+        limit.onSample(System.nanoTime() - start, inFlight, true);
+      }
+      throw e;
+    } finally {
+      limit.release();
+      lanes.release(lane);
+    }
+  }
+
+  /**
+   * Envía un lote de mensajes. Los mensajes sin remitente usan el configurado. Ver sendEach: cada
+   * mensaje ocupa su lugar en el carril y cuenta como una muestra del límite adaptativo.
+   */
+  public void sendSimpleEmails(List<SimpleMailMessage> messages) {
+    for (SimpleMailMessage message : messages) {
+      if (message.getFrom() == null) {
+        message.setFrom(emailProperties.getUsername());
+      }
+    }
+    sendEach(MailLane.TRANSACTIONAL, messages, mailSender::send);
+  }
+
+  /**
+   * Envía los mensajes de a uno por send: un lote entero en una sola llamada tendría un solo lugar
+   * del carril durante todo el lote y le pasaría su duración total al límite adaptativo como si
+   * fuera la latencia de un envío. Con el pool de MailConfig los mensajes siguen reutilizando las
+   * conexiones SMTP. Un mensaje que falla no corta el lote: al final se lanza una
+   * MailSendException con todos los que fallaron, como la que lanza el JavaMailSender con un lote.
+   */
+  private <M> void sendEach(MailLane lane, List<M> messages, Consumer<M> sendOne) {
+    Map<Object, Exception> failed = new LinkedHashMap<>();
+    for (M message : messages) {
+      if (Thread.currentThread().isInterrupted()) {
+        failed.put(message, new MailSendException("Interrumpido antes de enviar"));
+        continue;
+      }
+      try {
+        send(lane, () -> sendOne.accept(message));
+      } catch (MailSendException e) {
+        if (e.getFailedMessages().isEmpty()) {
+          failed.put(message, e);
+        } else {
+          failed.putAll(e.getFailedMessages());
+        }
+      }
+    }
+    if (!failed.isEmpty()) {
+      throw new MailSendException(failed);
+    }
+  }
+
+  /**
+   * Envía texto plano o, si htmlBody no es null, un multipart/alternative con ambas variantes
+   * para que el cliente de correo elija cuál mostrar.
+   */
+  public void sendEmail(String to, String subject, String text, @Nullable String htmlBody) {
+    sendEmail(to, subject, text, htmlBody, MailLane.TRANSACTIONAL);
+  }
+
+  /** Igual que {@link #sendEmail(String, String, String, String)} en el carril indicado. */
+  public void sendEmail(
+      String to, String subject, String text, @Nullable String htmlBody, MailLane lane) {
+    if (htmlBody == null) {
+      sendSimpleEmail(to, subject, text, lane);
+      return;
+    }
+
+    try {
+      MimeMessage message = mailSender.createMimeMessage();
+      MimeMessageHelper helper = new MimeMessageHelper(message, true, "UTF-8");
+      helper.setFrom(emailProperties.getUsername());
+      helper.setTo(to);
+      helper.setSubject(subject);
+      helper.setText(text, htmlBody);
+      send(lane, () -> mailSender.send(message));
+    } catch (MessagingException e) {
+      throw new MailPreparationException("No se pudo construir el email para " + to, e);
+    }
+  }
+
+  /**
+   * Igual que {@link #sendEmail} pero el envío SMTP corre en el scheduler acotado smtpScheduler
+   * (ver MailConfig), así el llamador nunca queda bloqueado esperando al servidor.
+   */
+  public Mono<Void> sendEmailAsync(
+      String to, String subject, String text, @Nullable String htmlBody) {
+    return Mono.<Void>fromRunnable(() -> sendEmail(to, subject, text, htmlBody))
+        .subscribeOn(smtpScheduler);
   }
 
   public void sendEmailWithAttachment(
@@ -37,9 +197,72 @@ public class EmailService {
     helper.setSubject(subject);
     helper.setText(htmlBody, true); // true = HTML
 
-    FileSystemResource file = new FileSystemResource(new File(pathToAttachment));
-    helper.addAttachment(file.getFilename(), file);
+    // Codificado una vez y compartido (ver AttachmentCache), en lugar de leer el archivo y
+    // codificarlo en cada envío
+    helper.getRootMimeMultipart().addBodyPart(attachment(pathToAttachment).toBodyPart());
+
+    send(MailLane.TRANSACTIONAL, () -> mailSender.send(message));
+  }
+
+  /**
+   * Envía el mismo HTML y adjunto a cada destinatario. El cuerpo multipart se arma y codifica una
+   * sola vez y todos los mensajes lo comparten; cada uno sólo agrega su destinatario, el asunto y
+   * sus encabezados. Como en sendSimpleEmails, cada mensaje se envía por separado (ver sendEach),
+   * y se arma justo antes de su envío: con muchos destinatarios no quedan todos en memoria a la
+   * vez. Un destinatario con una dirección inválida falla sólo él, como un rechazo del SMTP.
+   */
+  public void sendEmailsWithAttachment(
+      List<BulkRecipient> recipients,
+      String subject,
+      String htmlBody,
+      String pathToAttachment,
+      MailLane lane)
+      throws MessagingException {
+    if (recipients.isEmpty()) {
+      return;
+    }
+    MimeMultipart body = precompose(htmlBody, attachment(pathToAttachment));
+    sendEach(lane, recipients, recipient -> mailSender.send(compose(recipient, subject, body)));
+  }
+
+  private MimeMessage compose(BulkRecipient recipient, String subject, MimeMultipart body) {
+    MimeMessage message = mailSender.createMimeMessage();
+    try {
+      MimeMessageHelper helper = new MimeMessageHelper(message, "UTF-8");
+      helper.setFrom(emailProperties.getUsername());
+      helper.setTo(recipient.to());
+      helper.setSubject(subject);
+      for (Map.Entry<String, String> header : recipient.headers().entrySet()) {
+        message.setHeader(header.getKey(), header.getValue());
+      }
+      message.setContent(body);
+    } catch (MessagingException e) {
+      throw new MailSendException(
+          Map.of(
+              recipient,
+              new MailPreparationException(
+                  "No se pudo construir el email para " + recipient.to(), e)));
+    }
+    return message;
+  }
+
+  /** multipart/mixed con el HTML y el adjunto ya codificados en base64. */
+  static MimeMultipart precompose(String htmlBody, EncodedAttachment attachment)
+      throws MessagingException {
+    MimeMultipart body = new MimeMultipart("mixed");
+    body.addBodyPart(
+        AttachmentCache.preencoded(
+            AttachmentCache.encode(htmlBody.getBytes(StandardCharsets.UTF_8)),
+            "text/html; charset=UTF-8"));
+    body.addBodyPart(attachment.toBodyPart());
+    return body;
+  }
 
-    mailSender.send(message);
+  private EncodedAttachment attachment(String pathToAttachment) throws MessagingException {
+    try {
+      return attachments.get(pathToAttachment);
+    } catch (IOException e) {
+      throw new MessagingException("No se pudo leer el adjunto " + pathToAttachment, e);
+    }
   }
 }
@@ -1,13 +1,38 @@
 package marketplace.notificationservice.Service;
 
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.github.resilience4j.reactor.timelimiter.TimeLimiterOperator;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.netty.channel.ChannelOption;
+import marketplace.notificationservice.dtos.GraphQLBatchResponse;
 import marketplace.notificationservice.dtos.GraphQLResponse;
 import marketplace.notificationservice.dtos.UserDTO;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.retry.FailureClassifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
 import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.http.client.HttpClient;
+import reactor.util.retry.Retry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.Collections;
@@ -15,56 +40,138 @@ import java.util.Collections;
 @Service
 @Slf4j
 public class GraphQLClientService {
-  private final WebClient webClient;
+  /** Nombre de la instancia en resilience4j.circuitbreaker/bulkhead/timelimiter.instances. */
+  public static final String RESILIENCE_INSTANCE = "authentication-service";
+
+  private static final Duration MAX_PAGE_RETRY_BACKOFF = Duration.ofSeconds(5);
+
+  private final WebClient.Builder webClientBuilder;
+  private final int connectTimeoutMs;
+  private volatile WebClient webClient;
   private final String graphqlEndpoint;
+  private final int prefetchPages;
+  private final int pageRetries;
+  private final Duration pageRetryBackoff;
+  private final NotificationMetrics metrics;
+  private final CircuitBreaker circuitBreaker;
+  private final Bulkhead bulkhead;
+  private final TimeLimiter timeLimiter;
+  private final AdaptiveConcurrency adaptive;
+
+  private record UsersPage(int offset, List<UserDTO> users) {}
 
   public GraphQLClientService(
-      WebClient.Builder webClientBuilder, @Value("${graphql.endpoint}") String graphqlEndpoint) {
+      WebClient.Builder webClientBuilder,
+      @Value("${graphql.endpoint}") String graphqlEndpoint,
+      @Value("${graphql.users.prefetch-pages:1}") int prefetchPages,
+      @Value("${graphql.users.page-retries:10}") int pageRetries,
+      @Value("${graphql.users.page-retry-backoff-ms:200}") long pageRetryBackoffMs,
+      @Value("${graphql.connect-timeout-ms:1000}") int connectTimeoutMs,
+      NotificationMetrics metrics,
+      CircuitBreakerRegistry circuitBreakerRegistry,
+      BulkheadRegistry bulkheadRegistry,
+      TimeLimiterRegistry timeLimiterRegistry,
+      AdaptiveConcurrency adaptive) {
     this.graphqlEndpoint = graphqlEndpoint;
-    this.webClient = webClientBuilder.baseUrl(graphqlEndpoint).build();
+    this.webClientBuilder = webClientBuilder;
+    this.connectTimeoutMs = connectTimeoutMs;
+    this.prefetchPages = Math.max(1, prefetchPages);
+    this.pageRetries = Math.max(0, pageRetries);
+    this.pageRetryBackoff = Duration.ofMillis(Math.max(1, pageRetryBackoffMs));
+    this.metrics = metrics;
+    this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(RESILIENCE_INSTANCE);
+    this.bulkhead = bulkheadRegistry.bulkhead(RESILIENCE_INSTANCE);
+    this.timeLimiter = timeLimiterRegistry.timeLimiter(RESILIENCE_INSTANCE);
+    this.adaptive = adaptive;
   }
 
-  public UserDTO getUserData(String userId) {
-    String query =
-        """
-            query {
-              getUser(userId: "%s") {
-                id
-                email
-                alias
-                photoUrl
-              }
-            }
-        """
-            .formatted(userId);
+  // El WebClient (y con él Reactor Netty) se arma con la primera consulta o en warmUp, no al crear
+  // el bean: así no demora el arranque de los listeners
+  private WebClient webClient() {
+    WebClient client = webClient;
+    if (client == null) {
+      synchronized (this) {
+        client = webClient;
+        if (client == null) {
+          client =
+              webClientBuilder
+                  .baseUrl(graphqlEndpoint)
+                  .clientConnector(
+                      new ReactorClientHttpConnector(
+                          HttpClient.create()
+                              .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)))
+                  .build();
+          webClient = client;
+        }
+      }
+    }
+    return client;
+  }
 
-    try {
-      log.info("Consultando usuario con ID: {} en endpoint: {}", userId, graphqlEndpoint);
+  /** Arma el cliente en segundo plano cuando el servicio ya terminó de arrancar. */
+  @EventListener(ApplicationReadyEvent.class)
+  public void warmUp() {
+    Thread.ofVirtual().name("graphql-warmup").start(this::webClient);
+  }
 
-      // Crear el body como Map para asegurar serialización correcta
-      Map<String, String> requestBody = Map.of("query", query);
+  /**
+   * Todas las consultas pasan por acá. De adentro hacia afuera: timeout por llamada (la
+   * suscripción se cancela y con ella el request), circuit breaker que cuenta timeouts y errores y,
+   * abierto, falla al instante con CallNotPermittedException, y bulkhead que limita las consultas
+   * concurrentes y rechaza el excedente con BulkheadFullException en vez de encolarlo. Entre el
+   * breaker y el bulkhead, el límite adaptativo (ver AdaptiveLimit) acota las consultas en vuelo
+   * según la latencia observada. Todas estas fallas son transitorias para FailureClassifier: el
+   * mensaje vuelve a una cola de espera.
+   */
+  private <T> Mono<T> post(String operation, Object requestBody, Class<T> responseType) {
+    return metrics.timeGraphQL(
+        operation,
+        webClient()
+            .post()
+            .contentType(MediaType.APPLICATION_JSON)
+            .accept(MediaType.APPLICATION_JSON)
+            .bodyValue(requestBody)
+            .retrieve()
+            .bodyToMono(responseType)
+            .transformDeferred(TimeLimiterOperator.of(timeLimiter))
+            .transformDeferred(CircuitBreakerOperator.of(circuitBreaker))
+            .transformDeferred(this::adaptiveLimit)
+            .transformDeferred(BulkheadOperator.of(bulkhead)));
+  }
 
-      GraphQLResponse response =
-          webClient
-              .post()
-              .contentType(MediaType.APPLICATION_JSON)
-              .accept(MediaType.APPLICATION_JSON)
-              .bodyValue(requestBody)
-              .retrieve()
-              .bodyToMono(GraphQLResponse.class)
-              .doOnError(error -> log.error("Error al llamar GraphQL: {}", error.getMessage()))
-              .block();
+  // Lo que excede el límite falla al instante con ConcurrencyLimitExceededException. Las
+  // respuestas exitosas y las de sobrecarga (429/503, timeout) ajustan el límite
+  private <T> Mono<T> adaptiveLimit(Mono<T> call) {
+    if (!adaptive.isEnabled()) {
+      return call;
+    }
+    AdaptiveLimit limit = adaptive.graphql();
+    return Mono.defer(
+        () -> {
+          if (!limit.tryAcquire()) {
+            return Mono.error(new ConcurrencyLimitExceededException(limit.name(), limit.getLimit()));
+          }
+          int inFlight = limit.inFlight();
+          long start = System.nanoTime();
+          return call.doOnSuccess(
+                  value -> limit.onSample(System.nanoTime() - start, inFlight, false))
+              .doOnError(
+                  error -> {
+                    if (FailureClassifier.isOverload(error)) {
+                      limit.onSample(System.nanoTime() - start, inFlight, true);
+                    }
+                  })
+              .doFinally(signal -> limit.release());
+        });
+  }
 
-      if (response != null
-          && response.getData() != null
-          && response.getData().getGetUser() != null) {
-        UserDTO user = response.getData().getGetUser();
-        log.info("Usuario obtenido exitosamente: {} - {}", user.getAlias(), user.getEmail());
-        return user;
-      } else {
-        log.warn("La respuesta de GraphQL está vacía o no contiene datos del usuario");
-        return null;
-      }
+  public CircuitBreaker.State circuitBreakerState() {
+    return circuitBreaker.getState();
+  }
+
+  public UserDTO getUserData(String userId) {
+    try {
+      return fetchUser(userId).block();
     } catch (WebClientResponseException e) {
       log.error(
           "Error WebClient al obtener datos del usuario {}. Status: {}, Body: {}",
@@ -86,6 +193,163 @@ public class GraphQLClientService {
     }
   }
 
+  /**
+   * Versión no bloqueante de {@link #getUserData(String)}. A diferencia de ésta, distingue un
+   * usuario inexistente (Mono vacío) de una falla al consultar (Mono con error), lo que permite
+   * cachear negativos sin confundirlos con errores transitorios.
+   */
+  public Mono<UserDTO> fetchUser(String userId) {
+    String query =
+        """
+            query {
+              getUser(userId: "%s") {
+                id
+                email
+                alias
+                photoUrl
+              }
+            }
+        """
+            .formatted(userId);
+
+    log.info("Consultando usuario con ID: {} en endpoint: {}", userId, graphqlEndpoint);
+
+    // Crear el body como Map para asegurar serialización correcta
+    Map<String, String> requestBody = Map.of("query", query);
+
+    return post("getUserData", requestBody, GraphQLResponse.class)
+        .doOnError(error -> log.error("Error al llamar GraphQL: {}", error.getMessage()))
+        .flatMap(
+            response -> {
+              if (response.getData() != null && response.getData().getGetUser() != null) {
+                UserDTO user = response.getData().getGetUser();
+                log.info(
+                    "Usuario obtenido exitosamente: {} - {}", user.getAlias(), user.getEmail());
+                return Mono.just(user);
+              }
+              log.warn("La respuesta de GraphQL está vacía o no contiene datos del usuario");
+              return Mono.empty();
+            });
+  }
+
+  /**
+   * Resuelve varios usuarios en un solo POST usando alias (u0, u1, ...) sobre getUser. El mapa
+   * resultante va de userId a UserDTO; los usuarios que no existen quedan con valor null. Los IDs
+   * vienen de los eventos y van como variables ($u0, $u1, ...), no dentro del texto de la
+   * consulta: un ID con comillas o barras no puede romper el lote entero.
+   */
+  public Mono<Map<String, UserDTO>> getUsersData(Collection<String> userIds) {
+    List<String> ids = new ArrayList<>(userIds);
+    StringBuilder declarations = new StringBuilder();
+    StringBuilder selections = new StringBuilder();
+    Map<String, Object> variables = new HashMap<>(ids.size() * 2);
+    for (int i = 0; i < ids.size(); i++) {
+      String alias = "u" + i;
+      declarations.append(i > 0 ? ", " : "").append('$').append(alias).append(": String!");
+      selections
+          .append("  ")
+          .append(alias)
+          .append(": getUser(userId: $")
+          .append(alias)
+          .append(") { id email alias photoUrl }\n");
+      variables.put(alias, ids.get(i));
+    }
+    String query = "query Users(" + declarations + ") {\n" + selections + "}";
+
+    log.info("Consultando {} usuarios en lote en endpoint: {}", ids.size(), graphqlEndpoint);
+
+    return post(
+            "getUsersData",
+            Map.of("query", query, "variables", variables),
+            GraphQLBatchResponse.class)
+        .map(
+            response -> {
+              Map<String, UserDTO> users = new HashMap<>(ids.size() * 2);
+              Map<String, UserDTO> data =
+                  response.getData() != null ? response.getData() : Collections.emptyMap();
+              for (int i = 0; i < ids.size(); i++) {
+                users.put(ids.get(i), data.get("u" + i));
+              }
+              return users;
+            })
+        .doOnError(
+            error -> log.error("Error al llamar GraphQL en lote: {}", error.getMessage()));
+  }
+
+  /**
+   * Recorre listUsers página por página (limit/offset) en vez de traer todos los usuarios en una
+   * sola respuesta. Se piden a lo sumo prefetchPages páginas por delante de lo que el consumidor
+   * ya procesó, así que la memoria queda acotada por el tamaño de página. Con pageSize <= 0 se
+   * usa la consulta sin paginar de {@link #getAllUsers()}.
+   *
+   * <p>El recorrido comparte el bulkhead, el límite adaptativo y el breaker con las consultas del
+   * consumidor, que fallan al instante cuando están saturados. Una página rechazada así se vuelve
+   * a pedir con backoff exponencial (page-retries veces, desde page-retry-backoff-ms) en vez de
+   * cortar el recorrido; los demás errores lo terminan como antes.
+   */
+  public Flux<UserDTO> streamAllUsers(int pageSize) {
+    return streamAllUsers(pageSize, 0);
+  }
+
+  /**
+   * Igual que {@link #streamAllUsers(int)} pero empezando en startOffset, para retomar un
+   * recorrido. Sin paginar el offset se ignora.
+   */
+  public Flux<UserDTO> streamAllUsers(int pageSize, int startOffset) {
+    if (pageSize <= 0) {
+      return Mono.fromCallable(this::getAllUsers)
+          .subscribeOn(Schedulers.boundedElastic())
+          .flatMapIterable(users -> users);
+    }
+
+    return fetchUsersPage(Math.max(0, startOffset), pageSize)
+        .expand(
+            page ->
+                page.users().size() < pageSize
+                    ? Mono.empty()
+                    : fetchUsersPage(page.offset() + pageSize, pageSize))
+        .concatMapIterable(UsersPage::users, prefetchPages);
+  }
+
+  private Mono<UsersPage> fetchUsersPage(int offset, int limit) {
+    String query =
+        """
+            query {
+              listUsers(limit: %d, offset: %d) {
+                id
+                email
+                alias
+                photoUrl
+              }
+            }
+        """
+            .formatted(limit, offset);
+
+    log.info("Consultando usuarios {}-{} en endpoint: {}", offset, offset + limit - 1, graphqlEndpoint);
+
+    return post("listUsersPage", Map.of("query", query), GraphQLResponse.class)
+        .retryWhen(
+            Retry.backoff(pageRetries, pageRetryBackoff)
+                .maxBackoff(MAX_PAGE_RETRY_BACKOFF)
+                .filter(FailureClassifier::isBackPressure)
+                .doBeforeRetry(
+                    retry ->
+                        log.warn(
+                            "Página {} rechazada por contrapresión ({}), reintento {}",
+                            offset,
+                            retry.failure().getClass().getSimpleName(),
+                            retry.totalRetries() + 1))
+                .onRetryExhaustedThrow((spec, retry) -> retry.failure()))
+        .doOnError(error -> log.error("Error al llamar GraphQL: {}", error.getMessage()))
+        .map(
+            response ->
+                new UsersPage(
+                    offset,
+                    response.getData() != null && response.getData().getListUsers() != null
+                        ? response.getData().getListUsers()
+                        : Collections.emptyList()));
+  }
+
   public List<UserDTO> getAllUsers() {
     String query =
         """
@@ -105,13 +369,7 @@ public class GraphQLClientService {
       Map<String, String> requestBody = Map.of("query", query);
 
       GraphQLResponse response =
-          webClient
-              .post()
-              .contentType(MediaType.APPLICATION_JSON)
-              .accept(MediaType.APPLICATION_JSON)
-              .bodyValue(requestBody)
-              .retrieve()
-              .bodyToMono(GraphQLResponse.class)
+          post("getAllUsers", requestBody, GraphQLResponse.class)
               .doOnError(error -> log.error("Error al llamar GraphQL: {}", error.getMessage()))
               .block();
 
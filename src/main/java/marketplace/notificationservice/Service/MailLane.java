@@ -0,0 +1,9 @@
+package marketplace.notificationservice.Service;
+
+/** Carril de envío SMTP (ver SmtpLaneScheduler). */
+public enum MailLane {
+  /** Emails disparados por un evento del usuario (ruta completada): latencia baja. */
+  TRANSACTIONAL,
+  /** Campañas masivas (engagement): usan la capacidad que deja libre el transaccional. */
+  BULK
+}
@@ -0,0 +1,233 @@
+package marketplace.notificationservice.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reparte la capacidad SMTP (envíos simultáneos, normalmente el tamaño del pool de conexiones)
+ * entre carriles con weighted fair queuing. Cada carril tiene su cola FIFO y un tiempo virtual
+ * que avanza 1/peso por cada envío que se le concede; al liberarse un lugar se le da al carril con
+ * cola de menor tiempo virtual. Con ambos carriles saturados el transaccional recibe
+ * peso/(suma de pesos) de los envíos, y si uno está vacío el otro usa toda la capacidad.
+ *
+ * <p>Además reserved-transactional lugares nunca los ocupa BULK: un email transaccional que llega
+ * en plena campaña encuentra una conexión libre sin esperar a que termine un envío masivo.
+ *
+ * <p>La capacidad nunca supera las conexiones del pool (notification.email.pool.max-total): por
+ * encima, los envíos concedidos esperarían conexión en el semáforo del pool, por orden de llegada
+ * y sin distinguir carril, y esa espera se mediría como latencia SMTP.
+ *
+ * <p>El lugar se entrega directamente al que espera (sin que otro hilo se lo gane en el medio),
+ * así el orden dentro de cada carril es el de llegada.
+ */
+@Component
+public class SmtpLaneScheduler implements MeterBinder {
+
+  private static final class Waiter {
+    final Condition granted;
+    boolean ready;
+
+    Waiter(Condition granted) {
+      this.granted = granted;
+    }
+  }
+
+  private static final class Lane {
+    final double weight;
+    final ArrayDeque<Waiter> queue = new ArrayDeque<>();
+    double virtualTime;
+    int inUse;
+
+    Lane(double weight) {
+      this.weight = weight;
+    }
+  }
+
+  private final boolean enabled;
+  private final int reservedTransactional;
+  private final int maxCapacity;
+  private int capacity;
+  private int bulkCapacity;
+  private final NotificationMetrics metrics;
+  private final Map<MailLane, Lane> lanes = new EnumMap<>(MailLane.class);
+  private final ReentrantLock lock = new ReentrantLock();
+  private double virtualClock;
+  private int inUse;
+
+  public SmtpLaneScheduler(
+      @Value("${notification.email.lanes.enabled:true}") boolean enabled,
+      @Value("${notification.email.lanes.capacity:8}") int capacity,
+      @Value("${notification.email.lanes.reserved-transactional:2}") int reservedTransactional,
+      @Value("${notification.email.lanes.transactional-weight:4}") double transactionalWeight,
+      @Value("${notification.email.lanes.bulk-weight:1}") double bulkWeight,
+      @Value("${notification.email.pool.enabled:true}") boolean poolEnabled,
+      @Value("${notification.email.pool.max-total:8}") int poolMaxTotal,
+      NotificationMetrics metrics) {
+    this.enabled = enabled;
+    this.reservedTransactional = Math.max(0, reservedTransactional);
+    this.maxCapacity = poolEnabled ? Math.max(1, poolMaxTotal) : Integer.MAX_VALUE;
+    this.capacity = Math.min(Math.max(1, capacity), maxCapacity);
+    this.bulkCapacity = Math.max(1, this.capacity - this.reservedTransactional);
+    this.metrics = metrics;
+    lanes.put(MailLane.TRANSACTIONAL, new Lane(Math.max(1e-3, transactionalWeight)));
+    lanes.put(MailLane.BULK, new Lane(Math.max(1e-3, bulkWeight)));
+  }
+
+  /** Espera un lugar en el carril; quien lo obtiene debe devolverlo con release. */
+  public void acquire(MailLane mailLane) throws InterruptedException {
+    if (!enabled) {
+      return;
+    }
+    long start = System.nanoTime();
+    Lane lane = lanes.get(mailLane);
+    lock.lock();
+    try {
+      if (lane.queue.isEmpty() && canRun(mailLane, lane)) {
+        grant(lane);
+      } else {
+        if (lane.queue.isEmpty()) {
+          // Un carril que vuelve de estar ocioso no acumula crédito por el tiempo sin envíos
+          lane.virtualTime = Math.max(lane.virtualTime, virtualClock);
+        }
+        Waiter waiter = new Waiter(lock.newCondition());
+        lane.queue.addLast(waiter);
+        try {
+          while (!waiter.ready) {
+            waiter.granted.await();
+          }
+        } catch (InterruptedException e) {
+          if (waiter.ready) {
+            // Se le concedió justo al interrumpirse: devolver el lugar a quien sigue
+            releaseLocked(lane);
+          } else {
+            lane.queue.remove(waiter);
+          }
+          throw e;
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    metrics.recordLaneWait(laneTag(mailLane), System.nanoTime() - start);
+  }
+
+  /**
+   * Cambia la cantidad de envíos simultáneos (la sigue al límite adaptativo de SMTP), sin pasar
+   * del tamaño del pool. Al bajar, los envíos en curso terminan normalmente y no se concede ninguno
+   * nuevo hasta quedar debajo.
+   */
+  public void setCapacity(int capacity) {
+    lock.lock();
+    try {
+      this.capacity = Math.min(Math.max(1, capacity), maxCapacity);
+      this.bulkCapacity = Math.max(1, this.capacity - reservedTransactional);
+      dispatch();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void release(MailLane mailLane) {
+    if (!enabled) {
+      return;
+    }
+    lock.lock();
+    try {
+      releaseLocked(lanes.get(mailLane));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void releaseLocked(Lane lane) {
+    inUse--;
+    lane.inUse--;
+    dispatch();
+  }
+
+  private void dispatch() {
+    while (inUse < capacity) {
+      Lane next = null;
+      for (Map.Entry<MailLane, Lane> entry : lanes.entrySet()) {
+        Lane candidate = entry.getValue();
+        if (!candidate.queue.isEmpty()
+            && canRun(entry.getKey(), candidate)
+            && (next == null || candidate.virtualTime < next.virtualTime)) {
+          next = candidate;
+        }
+      }
+      if (next == null) {
+        return;
+      }
+      Waiter waiter = next.queue.pollFirst();
+      grant(next);
+      waiter.ready = true;
+      waiter.granted.signal();
+    }
+  }
+
+  private boolean canRun(MailLane mailLane, Lane lane) {
+    return inUse < capacity && (mailLane != MailLane.BULK || lane.inUse < bulkCapacity);
+  }
+
+  private void grant(Lane lane) {
+    inUse++;
+    lane.inUse++;
+    virtualClock = lane.virtualTime;
+    lane.virtualTime += 1 / lane.weight;
+  }
+
+  public int capacity() {
+    lock.lock();
+    try {
+      return capacity;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int queued(MailLane mailLane) {
+    lock.lock();
+    try {
+      return lanes.get(mailLane).queue.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int inUse(MailLane mailLane) {
+    lock.lock();
+    try {
+      return lanes.get(mailLane).inUse;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static String laneTag(MailLane lane) {
+    return lane.name().toLowerCase();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    for (MailLane lane : MailLane.values()) {
+      Gauge.builder("notification.email.lane.queued", this, scheduler -> scheduler.queued(lane))
+          .description("Envíos esperando lugar en el carril SMTP")
+          .tag("lane", laneTag(lane))
+          .register(registry);
+      Gauge.builder("notification.email.lane.inflight", this, scheduler -> scheduler.inUse(lane))
+          .description("Envíos en curso por carril SMTP")
+          .tag("lane", laneTag(lane))
+          .register(registry);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package marketplace.notificationservice.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.dtos.UserDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Agrupa las consultas de usuario al estilo DataLoader: los IDs pedidos dentro de una ventana
+ * corta (o hasta llenar el tamaño máximo) se resuelven con un solo POST a GraphQL y cada llamador
+ * recibe su propio UserDTO a través de un CompletableFuture. Si el batching está deshabilitado se
+ * delega directamente en {@link GraphQLClientService#fetchUser(String)}. En ambos casos el future
+ * se completa con null si el usuario no existe y con excepción si la consulta falla.
+ */
+@Service
+@Slf4j
+public class UserBatchLoader {
+
+  private final GraphQLClientService graphQLClientService;
+  private final boolean enabled;
+  private final long windowMs;
+  private final int maxBatchSize;
+  private final ScheduledExecutorService flushScheduler;
+
+  // Protegidos por this
+  private Map<String, CompletableFuture<UserDTO>> pending = new LinkedHashMap<>();
+  private ScheduledFuture<?> scheduledFlush;
+
+  public UserBatchLoader(
+      GraphQLClientService graphQLClientService,
+      @Value("${graphql.batch.enabled:false}") boolean enabled,
+      @Value("${graphql.batch.window-ms:10}") long windowMs,
+      @Value("${graphql.batch.max-size:100}") int maxBatchSize) {
+    this.graphQLClientService = graphQLClientService;
+    this.enabled = enabled;
+    this.windowMs = windowMs;
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    this.flushScheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "graphql-batch-flush");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  public CompletableFuture<UserDTO> load(String userId) {
+    if (!enabled) {
+      return graphQLClientService.fetchUser(userId).toFuture();
+    }
+
+    CompletableFuture<UserDTO> future;
+    Map<String, CompletableFuture<UserDTO>> fullBatch = null;
+    synchronized (this) {
+      // Pedidos concurrentes del mismo ID comparten el mismo future dentro del lote
+      future = pending.computeIfAbsent(userId, id -> new CompletableFuture<>());
+      if (pending.size() >= maxBatchSize) {
+        fullBatch = drain();
+      } else if (scheduledFlush == null) {
+        scheduledFlush = flushScheduler.schedule(this::flush, windowMs, TimeUnit.MILLISECONDS);
+      }
+    }
+
+    if (fullBatch != null) {
+      dispatch(fullBatch);
+    }
+    return future;
+  }
+
+  private void flush() {
+    Map<String, CompletableFuture<UserDTO>> batch;
+    synchronized (this) {
+      batch = drain();
+    }
+    if (!batch.isEmpty()) {
+      dispatch(batch);
+    }
+  }
+
+  private Map<String, CompletableFuture<UserDTO>> drain() {
+    Map<String, CompletableFuture<UserDTO>> batch = pending;
+    pending = new LinkedHashMap<>();
+    if (scheduledFlush != null) {
+      scheduledFlush.cancel(false);
+      scheduledFlush = null;
+    }
+    return batch;
+  }
+
+  private void dispatch(Map<String, CompletableFuture<UserDTO>> batch) {
+    log.debug("Despachando lote de {} usuarios", batch.size());
+    graphQLClientService
+        .getUsersData(batch.keySet())
+        .defaultIfEmpty(Collections.emptyMap())
+        .subscribe(
+            users -> batch.forEach((userId, future) -> future.complete(users.get(userId))),
+            error -> batch.values().forEach(future -> future.completeExceptionally(error)));
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    flush();
+    flushScheduler.shutdown();
+  }
+}
@@ -0,0 +1,176 @@
+package marketplace.notificationservice.Service;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.dtos.UserDTO;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Cache en proceso de UserDTO por userId, acotado en tamaño (LRU) y con expiración por TTL. Los
+ * usuarios inexistentes se cachean como negativos con un TTL más corto, y los misses concurrentes
+ * sobre el mismo ID comparten una sola consulta (single-flight) a través de {@link
+ * UserBatchLoader}.
+ */
+@Service
+@Slf4j
+public class UserCache implements MeterBinder {
+
+  private record Entry(UserDTO user, long expiresAtNanos) {}
+
+  private final UserBatchLoader userBatchLoader;
+  private final boolean enabled;
+  private final long ttlNanos;
+  private final long negativeTtlNanos;
+
+  // LinkedHashMap en orden de acceso: el más antiguo es el menos usado. Protegido por sí mismo.
+  private final Map<String, Entry> entries;
+  private final Map<String, CompletableFuture<UserDTO>> inFlight = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  public UserCache(
+      UserBatchLoader userBatchLoader,
+      @Value("${cache.users.enabled:true}") boolean enabled,
+      @Value("${cache.users.max-size:10000}") int maxSize,
+      @Value("${cache.users.ttl-seconds:600}") long ttlSeconds,
+      @Value("${cache.users.negative-ttl-seconds:30}") long negativeTtlSeconds) {
+    this.userBatchLoader = userBatchLoader;
+    this.enabled = enabled;
+    this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSeconds);
+    this.entries =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxSize) {
+              evictions.incrementAndGet();
+              return true;
+            }
+            return false;
+          }
+        };
+  }
+
+  /**
+   * Devuelve el usuario cacheado o lo consulta. El future se completa con null si el usuario no
+   * existe y con excepción si la consulta falla (los errores no se cachean).
+   */
+  public CompletableFuture<UserDTO> get(String userId) {
+    if (!enabled) {
+      return userBatchLoader.load(userId);
+    }
+
+    Entry entry = lookup(userId);
+    if (entry != null) {
+      hits.incrementAndGet();
+      return CompletableFuture.completedFuture(entry.user());
+    }
+    misses.incrementAndGet();
+
+    CompletableFuture<UserDTO> created = new CompletableFuture<>();
+    CompletableFuture<UserDTO> existing = inFlight.putIfAbsent(userId, created);
+    if (existing != null) {
+      return existing;
+    }
+
+    userBatchLoader
+        .load(userId)
+        .whenComplete(
+            (user, error) -> {
+              if (error == null) {
+                put(userId, user);
+              }
+              inFlight.remove(userId, created);
+              if (error != null) {
+                created.completeExceptionally(error);
+              } else {
+                created.complete(user);
+              }
+            });
+    return created;
+  }
+
+  /** Precarga el cache, por ejemplo con el resultado de listUsers en la corrida de engagement. */
+  public void putAll(Collection<UserDTO> users) {
+    if (!enabled) {
+      return;
+    }
+    for (UserDTO user : users) {
+      put(user);
+    }
+    log.info("Cache de usuarios precargado con {} usuarios", users.size());
+  }
+
+  public void put(UserDTO user) {
+    if (enabled && user.getId() != null) {
+      put(user.getId(), user);
+    }
+  }
+
+  private Entry lookup(String userId) {
+    synchronized (entries) {
+      Entry entry = entries.get(userId);
+      if (entry == null) {
+        return null;
+      }
+      if (entry.expiresAtNanos() - System.nanoTime() <= 0) {
+        entries.remove(userId);
+        evictions.incrementAndGet();
+        return null;
+      }
+      return entry;
+    }
+  }
+
+  private void put(String userId, UserDTO user) {
+    long ttl = user != null ? ttlNanos : negativeTtlNanos;
+    Entry entry = new Entry(user, System.nanoTime() + ttl);
+    synchronized (entries) {
+      entries.put(userId, entry);
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    FunctionCounter.builder("notification.user_cache.requests", hits, AtomicLong::get)
+        .tag("result", "hit")
+        .register(registry);
+    FunctionCounter.builder("notification.user_cache.requests", misses, AtomicLong::get)
+        .tag("result", "miss")
+        .register(registry);
+    FunctionCounter.builder("notification.user_cache.evictions", evictions, AtomicLong::get)
+        .register(registry);
+    Gauge.builder("notification.user_cache.size", this, UserCache::size).register(registry);
+  }
+
+  public long hitCount() {
+    return hits.get();
+  }
+
+  public long missCount() {
+    return misses.get();
+  }
+
+  public long evictionCount() {
+    return evictions.get();
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+}
@@ -0,0 +1,267 @@
+package marketplace.notificationservice.activity;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.index.Hash64;
+import marketplace.notificationservice.index.IndexSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Última actividad conocida de cada usuario (userId → epoch), alimentada por los
+ * RouteCompleteEvents que procesa NotificationConsumer. UserEngagementScheduler la consulta para
+ * no mandar el email de engagement a quien acaba de completar una ruta.
+ *
+ * <p>Es una tabla hash de direccionamiento abierto sobre arreglos primitivos: la clave es un hash
+ * de 64 bits del userId y el valor los segundos epoch (sin signo, alcanza hasta 2106), 12 bytes
+ * por entrada sin objetos por usuario. Dos userIds con el mismo hash comparten entrada; con 64
+ * bits es improbable y a lo sumo un usuario inactivo se queda sin un email de engagement.
+ *
+ * <p>Las entradas más viejas que retention-days se descartan al crecer la tabla y al cargar el
+ * snapshot. Si snapshot-path está configurado, el índice se guarda periódicamente y al apagar.
+ *
+ * <p>Con varias réplicas cada una sólo ve los eventos que consumió: un usuario activo en otra
+ * réplica cuenta como inactivo acá, así que el filtro puede dejar pasar de más pero nunca de
+ * menos.
+ */
+@Component
+@Slf4j
+public class UserActivityIndex implements MeterBinder {
+
+  private static final int SNAPSHOT_MAGIC = 0x4E414354; // "NACT"
+  private static final int SNAPSHOT_VERSION = 1;
+  private static final long EMPTY = 0;
+
+  private final boolean enabled;
+  private final int minCapacity;
+  private final long retentionSeconds;
+  private final IndexSnapshot snapshots;
+  private final long snapshotIntervalSeconds;
+
+  // Todo acceso bajo el lock de this; keys[i] == EMPTY marca un lugar libre
+  private long[] keys;
+  private int[] seen;
+  private int size;
+
+  public UserActivityIndex(
+      @Value("${notification.activity.enabled:true}") boolean enabled,
+      @Value("${notification.activity.expected-users:100000}") int expectedUsers,
+      @Value("${notification.activity.retention-days:30}") long retentionDays,
+      @Value("${notification.activity.snapshot-path:}") String snapshotPath,
+      @Value("${notification.activity.snapshot-interval-seconds:60}")
+          long snapshotIntervalSeconds) {
+    this.enabled = enabled;
+    this.minCapacity = tableSizeFor(Math.max(8, expectedUsers) * 2L);
+    this.retentionSeconds = Duration.ofDays(Math.max(1, retentionDays)).toSeconds();
+    this.snapshots =
+        snapshotPath.isBlank()
+            ? null
+            : new IndexSnapshot(
+                Path.of(snapshotPath), SNAPSHOT_MAGIC, SNAPSHOT_VERSION, "activity-snapshot");
+    this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    this.keys = new long[enabled ? minCapacity : 0];
+    this.seen = new int[keys.length];
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    if (snapshots != null) {
+      load(System.currentTimeMillis());
+      snapshots.scheduleEvery(snapshotIntervalSeconds, this::snapshot);
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Registra actividad del usuario ahora. */
+  public void recordActivity(String userId) {
+    recordActivity(userId, System.currentTimeMillis());
+  }
+
+  public void recordActivity(String userId, long epochMillis) {
+    if (!enabled || userId == null) {
+      return;
+    }
+    long key = key(userId);
+    int seconds = (int) (epochMillis / 1000);
+    synchronized (this) {
+      if ((size + 1) * 4L > keys.length * 3L) {
+        rehash(epochMillis / 1000);
+      }
+      insert(key, seconds);
+    }
+  }
+
+  /** Última actividad registrada en epoch millis, o 0 si el índice no vio al usuario. */
+  public long lastActivity(String userId) {
+    if (!enabled || userId == null) {
+      return 0;
+    }
+    long key = key(userId);
+    synchronized (this) {
+      int mask = keys.length - 1;
+      for (int i = slot(key, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+        if (keys[i] == key) {
+          return Integer.toUnsignedLong(seen[i]) * 1000;
+        }
+      }
+      return 0;
+    }
+  }
+
+  /**
+   * true si el usuario no tiene actividad registrada desde cutoffMillis. Un usuario que el índice
+   * no conoce (o con el índice apagado) cuenta como inactivo.
+   */
+  public boolean isInactiveSince(String userId, long cutoffMillis) {
+    return lastActivity(userId) < cutoffMillis;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  synchronized int capacity() {
+    return keys.length;
+  }
+
+  // Se guarda el máximo: un reintento atrasado no hace retroceder la última actividad
+  private void insert(long key, int seconds) {
+    int mask = keys.length - 1;
+    int i = slot(key, mask);
+    while (keys[i] != EMPTY) {
+      if (keys[i] == key) {
+        if (Integer.compareUnsigned(seconds, seen[i]) > 0) {
+          seen[i] = seconds;
+        }
+        return;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    seen[i] = seconds;
+    size++;
+  }
+
+  /**
+   * Reconstruye la tabla sin las entradas vencidas, con lugar para que quede a lo sumo a la mitad.
+   * Borrar sólo acá evita las lápidas del direccionamiento abierto.
+   */
+  private void rehash(long nowSeconds) {
+    long[] oldKeys = keys;
+    int[] oldSeen = seen;
+    long cutoff = nowSeconds - retentionSeconds;
+    int live = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY && Integer.toUnsignedLong(oldSeen[i]) >= cutoff) {
+        live++;
+      }
+    }
+    keys = new long[Math.max(minCapacity, tableSizeFor((live + 1) * 2L))];
+    seen = new int[keys.length];
+    size = 0;
+    for (int i = 0; i < oldKeys.length; i++) {
+      if (oldKeys[i] != EMPTY && Integer.toUnsignedLong(oldSeen[i]) >= cutoff) {
+        insert(oldKeys[i], oldSeen[i]);
+      }
+    }
+  }
+
+  private static int slot(long key, int mask) {
+    return (int) (key ^ (key >>> 32)) & mask;
+  }
+
+  private static int tableSizeFor(long entries) {
+    long size = Long.highestOneBit(Math.max(16, entries - 1)) << 1;
+    return (int) Math.min(1 << 30, size);
+  }
+
+  static long key(String userId) {
+    long h = Hash64.hash(userId);
+    return h == EMPTY ? 1 : h;
+  }
+
+  /** Guarda las entradas en snapshot-path (ver IndexSnapshot). */
+  public void snapshot() {
+    if (!enabled || snapshots == null) {
+      return;
+    }
+    long[] keysCopy;
+    int[] seenCopy;
+    int count;
+    synchronized (this) {
+      keysCopy = keys.clone();
+      seenCopy = seen.clone();
+      count = size;
+    }
+    try {
+      snapshots.write(
+          out -> {
+            out.writeInt(count);
+            for (int i = 0; i < keysCopy.length; i++) {
+              if (keysCopy[i] != EMPTY) {
+                out.writeLong(keysCopy[i]);
+                out.writeInt(seenCopy[i]);
+              }
+            }
+          });
+    } catch (IOException e) {
+      log.warn("No se pudo guardar el índice de actividad: {}", e.getMessage());
+    }
+  }
+
+  private synchronized void load(long now) {
+    try {
+      boolean loaded =
+          snapshots.read(
+              in -> {
+                int count = in.readInt();
+                long cutoff = now / 1000 - retentionSeconds;
+                keys = new long[Math.max(minCapacity, tableSizeFor(count * 2L))];
+                seen = new int[keys.length];
+                for (int i = 0; i < count; i++) {
+                  long key = in.readLong();
+                  int seconds = in.readInt();
+                  if (Integer.toUnsignedLong(seconds) >= cutoff) {
+                    insert(key, seconds);
+                  }
+                }
+              });
+      if (loaded) {
+        log.info("Índice de actividad cargado: {} usuarios", size);
+      }
+    } catch (IOException e) {
+      log.warn("No se pudo leer el índice de actividad: {}", e.getMessage());
+      keys = new long[minCapacity];
+      seen = new int[keys.length];
+      size = 0;
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (snapshots != null) {
+      snapshots.stop();
+    }
+    snapshot();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("notification.activity.tracked_users", this, UserActivityIndex::size)
+        .description("Usuarios con actividad registrada en el índice")
+        .register(registry);
+  }
+}
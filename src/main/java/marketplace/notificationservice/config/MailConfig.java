@@ -1,22 +1,41 @@
 package marketplace.notificationservice.config;
 
 import marketplace.notificationservice.Service.EmailProperties;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.JavaMailSenderImpl;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.Properties;
 
 @Configuration
 public class MailConfig {
 
+  // Lazy junto con la inyección en EmailService: no se crea al arrancar sino con el primer envío
+  // o con EmailService.warmUp, así no demora el inicio de los listeners
   @Bean
-  public JavaMailSender javaMailSender(EmailProperties emailProperties) {
-    JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+  @Lazy
+  public JavaMailSender javaMailSender(
+      EmailProperties emailProperties,
+      @Value("${notification.email.pool.enabled:true}") boolean poolEnabled,
+      @Value("${notification.email.pool.max-total:8}") int poolMaxTotal,
+      @Value("${notification.email.pool.max-idle-ms:30000}") long poolMaxIdleMs,
+      @Value("${notification.email.pool.max-lifetime-ms:600000}") long poolMaxLifetimeMs,
+      @Value("${notification.email.pool.validate-after-idle-ms:2000}") long poolValidateAfterIdleMs) {
+    // Con el pool, cada envío reutiliza una conexión ya autenticada en vez de repetir
+    // TCP + STARTTLS + AUTH (ver PooledJavaMailSender)
+    JavaMailSenderImpl mailSender =
+        poolEnabled
+            ? new PooledJavaMailSender(
+                poolMaxTotal, poolMaxIdleMs, poolMaxLifetimeMs, poolValidateAfterIdleMs)
+            : new JavaMailSenderImpl();
 
     mailSender.setHost(emailProperties.getHost());
-    mailSender.setPort(587);
+    mailSender.setPort(emailProperties.getPort());
     mailSender.setUsername(emailProperties.getUsername());
     mailSender.setPassword(emailProperties.getPassword());
 
@@ -26,8 +45,17 @@ public class MailConfig {
     props.put("mail.smtp.starttls.enable", "true");
     props.put("mail.smtp.starttls.required", "true");
     props.put("mail.debug", "true");
+    props.putAll(emailProperties.getProperties());
 
     return mailSender;
   }
-}
 
+  // Hilos dedicados a los envíos SMTP bloqueantes del modo reactivo. Es acotado en hilos y en
+  // tareas encoladas para que una caída del servidor SMTP no acumule trabajo sin límite.
+  @Bean(destroyMethod = "dispose")
+  public Scheduler smtpScheduler(
+      @Value("${notification.email.smtp-threads:16}") int threads,
+      @Value("${notification.email.smtp-queue-capacity:1000}") int queueCapacity) {
+    return Schedulers.newBoundedElastic(threads, queueCapacity, "smtp");
+  }
+}
@@ -0,0 +1,191 @@
+package marketplace.notificationservice.config;
+
+import jakarta.mail.Address;
+import jakarta.mail.AuthenticationFailedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.lang.Nullable;
+import org.springframework.mail.MailAuthenticationException;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+/**
+ * JavaMailSenderImpl que reutiliza conexiones SMTP ya autenticadas en vez de abrir una nueva (TCP
+ * + STARTTLS + AUTH) por cada send. Cada llamada a send toma una conexión del pool, envía todos
+ * sus mensajes por ella y la devuelve, así que send(SimpleMailMessage...) con varios mensajes es
+ * un lote sobre una sola conexión.
+ *
+ * <p>Las conexiones se descartan al superar max-idle sin uso o max-lifetime desde que se abrieron,
+ * y las que llevan más de validate-after-idle sin uso se validan con un NOOP antes de reutilizarse.
+ * max-total limita las conexiones simultáneas contra el servidor.
+ */
+@Slf4j
+public class PooledJavaMailSender extends JavaMailSenderImpl implements DisposableBean {
+
+  private static final String HEADER_MESSAGE_ID = "Message-ID";
+
+  private static final class PooledTransport {
+    private final Transport transport;
+    private final long createdAtNanos;
+    private long lastUsedAtNanos;
+
+    private PooledTransport(Transport transport, long now) {
+      this.transport = transport;
+      this.createdAtNanos = now;
+      this.lastUsedAtNanos = now;
+    }
+  }
+
+  private final long maxIdleNanos;
+  private final long maxLifetimeNanos;
+  private final long validateAfterIdleNanos;
+  private final Semaphore permits;
+  // LIFO: la conexión usada más recientemente es la que tiene menos probabilidad de estar caída
+  private final BlockingDeque<PooledTransport> idle = new LinkedBlockingDeque<>();
+
+  public PooledJavaMailSender(
+      int maxTotal, long maxIdleMillis, long maxLifetimeMillis, long validateAfterIdleMillis) {
+    this.permits = new Semaphore(Math.max(1, maxTotal), true);
+    this.maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleMillis);
+    this.maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(maxLifetimeMillis);
+    this.validateAfterIdleNanos = TimeUnit.MILLISECONDS.toNanos(validateAfterIdleMillis);
+  }
+
+  @Override
+  protected void doSend(MimeMessage[] mimeMessages, @Nullable Object[] originalMessages)
+      throws MailException {
+    Map<Object, Exception> failedMessages = new LinkedHashMap<>();
+
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MailSendException("Interrumpido esperando una conexión SMTP del pool", e);
+    }
+
+    PooledTransport pooled = null;
+    try {
+      for (int i = 0; i < mimeMessages.length; i++) {
+        if (pooled == null) {
+          try {
+            pooled = borrow();
+          } catch (AuthenticationFailedException ex) {
+            throw new MailAuthenticationException(ex);
+          } catch (Exception ex) {
+            for (int j = i; j < mimeMessages.length; j++) {
+              Object original = (originalMessages != null ? originalMessages[j] : mimeMessages[j]);
+              failedMessages.put(original, ex);
+            }
+            throw new MailSendException("Mail server connection failed", ex, failedMessages);
+          }
+        }
+
+        MimeMessage mimeMessage = mimeMessages[i];
+        try {
+          if (mimeMessage.getSentDate() == null) {
+            mimeMessage.setSentDate(new Date());
+          }
+          String messageId = mimeMessage.getMessageID();
+          mimeMessage.saveChanges();
+          if (messageId != null) {
+            // Conservar el Message-ID explícito, saveChanges genera uno nuevo
+            mimeMessage.setHeader(HEADER_MESSAGE_ID, messageId);
+          }
+          Address[] addresses = mimeMessage.getAllRecipients();
+          pooled.transport.sendMessage(
+              mimeMessage, (addresses != null ? addresses : new Address[0]));
+        } catch (Exception ex) {
+          Object original = (originalMessages != null ? originalMessages[i] : mimeMessage);
+          failedMessages.put(original, ex);
+          // Un rechazo del mensaje deja la conexión usable; si se cayó, abrir otra para el resto
+          if (!pooled.transport.isConnected()) {
+            close(pooled);
+            pooled = null;
+          }
+        }
+      }
+    } finally {
+      if (pooled != null) {
+        release(pooled);
+      }
+      permits.release();
+    }
+
+    if (!failedMessages.isEmpty()) {
+      throw new MailSendException(failedMessages);
+    }
+  }
+
+  private PooledTransport borrow() throws MessagingException {
+    PooledTransport pooled;
+    while ((pooled = idle.pollFirst()) != null) {
+      if (isReusable(pooled, System.nanoTime())) {
+        return pooled;
+      }
+      close(pooled);
+    }
+    log.debug("Abriendo nueva conexión SMTP hacia {}:{}", getHost(), getPort());
+    return new PooledTransport(connectTransport(), System.nanoTime());
+  }
+
+  private boolean isReusable(PooledTransport pooled, long now) {
+    if (now - pooled.createdAtNanos >= maxLifetimeNanos
+        || now - pooled.lastUsedAtNanos >= maxIdleNanos) {
+      return false;
+    }
+    // isConnected() de SMTPTransport envía un NOOP: sólo pagarlo si la conexión estuvo inactiva
+    return now - pooled.lastUsedAtNanos < validateAfterIdleNanos || pooled.transport.isConnected();
+  }
+
+  private void release(PooledTransport pooled) {
+    long now = System.nanoTime();
+    pooled.lastUsedAtNanos = now;
+    if (now - pooled.createdAtNanos >= maxLifetimeNanos) {
+      close(pooled);
+    } else {
+      idle.offerFirst(pooled);
+    }
+    evictIdle(now);
+  }
+
+  // Las conexiones más viejas quedan al final de la deque
+  private void evictIdle(long now) {
+    PooledTransport oldest;
+    while ((oldest = idle.peekLast()) != null && now - oldest.lastUsedAtNanos >= maxIdleNanos) {
+      if (idle.removeLastOccurrence(oldest)) {
+        close(oldest);
+      }
+    }
+  }
+
+  private void close(PooledTransport pooled) {
+    try {
+      pooled.transport.close();
+    } catch (MessagingException e) {
+      log.debug("Error cerrando conexión SMTP: {}", e.getMessage());
+    }
+  }
+
+  public int idleConnections() {
+    return idle.size();
+  }
+
+  @Override
+  public void destroy() {
+    PooledTransport pooled;
+    while ((pooled = idle.pollFirst()) != null) {
+      close(pooled);
+    }
+  }
+}
@@ -1,23 +1,56 @@
 package marketplace.notificationservice.config;
 
+import java.util.ArrayList;
+import java.util.List;
+import marketplace.notificationservice.scheduler.EngagementCampaignCoordinator;
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.DirectExchange;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.core.QueueBuilder;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 
 @Configuration
 public class RabbitMQConfig {
   public static final String QUEUE_NAME = "notification-queue";
   public static final String EXCHANGE_NAME = "notification-exchange";
   public static final String ROUTING_KEY = "notification-routing-key";
-
+  public static final String RETRY_EXCHANGE_NAME = "notification-retry-exchange";
+  public static final String RETRY_QUEUE_PREFIX = QUEUE_NAME + ".retry.";
+  public static final String DEAD_LETTER_QUEUE_NAME = QUEUE_NAME + ".dlq";
+  public static final String PARKING_QUEUE_NAME = QUEUE_NAME + ".parking";
 
   @Bean
   public Queue notificationQueue () {
     return new Queue(QUEUE_NAME,true);
   }
 
+  @Bean
+  public Queue campaignQueue() {
+    return QueueBuilder.durable(EngagementCampaignCoordinator.CAMPAIGN_QUEUE_NAME).build();
+  }
+
+  // Espera de los shards de campaña que fallaron: sin consumidores, al vencer el TTL el shard
+  // vuelve a notification-campaign por el exchange por defecto (ver EngagementCampaignCoordinator)
+  @Bean
+  public Queue campaignRetryQueue(
+      @Value("${scheduler.engagement.shard-retry-delay-ms:30000}") long delay) {
+    return QueueBuilder.durable(EngagementCampaignCoordinator.RETRY_QUEUE_NAME)
+        .ttl((int) delay)
+        .deadLetterExchange("")
+        .deadLetterRoutingKey(EngagementCampaignCoordinator.CAMPAIGN_QUEUE_NAME)
+        .build();
+  }
+
   @Bean
   public DirectExchange notificationExchange(){
     return new DirectExchange(EXCHANGE_NAME);
@@ -25,9 +58,122 @@ public class RabbitMQConfig {
 
   @Bean
   public Binding notificationBinding(Queue notificationQueue, DirectExchange notificationExchange){
-    return org.springframework.amqp.core.BindingBuilder
+    return BindingBuilder
       .bind(notificationQueue)
       .to(notificationExchange)
       .with(ROUTING_KEY);
   }
+
+  /**
+   * Topología de reintentos. Cada nivel de espera es una cola sin consumidores con x-message-ttl
+   * fijo; al vencer, RabbitMQ devuelve el mensaje a notification-exchange y vuelve a
+   * notification-queue. Usar una cola por nivel (y no sólo expiración por mensaje) evita que un
+   * mensaje con espera larga bloquee a los de espera corta que quedan detrás. La DLQ guarda lo
+   * que agotó los intentos o falló de forma permanente (ver NotificationRetryPublisher); el
+   * parking queue, los mensajes cuyo cuerpo no es un evento válido.
+   *
+   * <p>notification-queue no cambia: redeclarar una cola durable con otros argumentos falla con
+   * PRECONDITION_FAILED en los brokers donde ya existe.
+   */
+  @Bean
+  public Declarables retryTopology(
+      @Value("${notification.retry.delays-ms:1000,5000,30000,120000,600000}") long[] delays) {
+    DirectExchange retryExchange = new DirectExchange(RETRY_EXCHANGE_NAME);
+    Queue deadLetterQueue = QueueBuilder.durable(DEAD_LETTER_QUEUE_NAME).build();
+
+    List<Declarable> declarables = new ArrayList<>();
+    declarables.add(retryExchange);
+    declarables.add(deadLetterQueue);
+    declarables.add(
+        BindingBuilder.bind(deadLetterQueue).to(retryExchange).with(DEAD_LETTER_QUEUE_NAME));
+    Queue parkingQueue = QueueBuilder.durable(PARKING_QUEUE_NAME).build();
+    declarables.add(parkingQueue);
+    declarables.add(BindingBuilder.bind(parkingQueue).to(retryExchange).with(PARKING_QUEUE_NAME));
+    for (long delay : delays) {
+      Queue tier =
+          QueueBuilder.durable(retryQueueName(delay))
+              .ttl((int) delay)
+              .deadLetterExchange(EXCHANGE_NAME)
+              .deadLetterRoutingKey(ROUTING_KEY)
+              .build();
+      declarables.add(tier);
+      declarables.add(BindingBuilder.bind(tier).to(retryExchange).with(tier.getName()));
+    }
+    return new Declarables(declarables);
+  }
+
+  public static String retryQueueName(long delayMs) {
+    return RETRY_QUEUE_PREFIX + delayMs + "ms";
+  }
+
+  // Reemplaza la factory por defecto de Spring Boot: cada mensaje bloquea en GraphQL + SMTP,
+  // así que el throughput depende de cuántos consumidores corren en paralelo. Ack manual: el
+  // listener devuelve un future y el mensaje se confirma al completarse (ver NotificationConsumer).
+  @Bean
+  public SimpleRabbitListenerContainerFactory rabbitListenerContainerFactory(
+      SimpleRabbitListenerContainerFactoryConfigurer configurer,
+      ConnectionFactory connectionFactory,
+      @Value("${notification.consumer.concurrency:1}") int concurrency,
+      @Value("${notification.consumer.max-concurrency:1}") int maxConcurrency,
+      @Value("${notification.consumer.prefetch:250}") int prefetch,
+      @Value("${notification.consumer.virtual-threads:false}") boolean virtualThreads,
+      @Value("${notification.digest.enabled:false}") boolean digestEnabled,
+      @Value("${notification.digest.max-buffered-events:1000}") int maxBufferedEvents) {
+    SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+    configurer.configure(factory, connectionFactory);
+    factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+    factory.setConcurrentConsumers(concurrency);
+    factory.setMaxConcurrentConsumers(Math.max(concurrency, maxConcurrency));
+    factory.setPrefetchCount(digestPrefetch(prefetch, digestEnabled, maxBufferedEvents));
+
+    if (virtualThreads) {
+      // Los consumidores pasan casi todo el tiempo esperando I/O, un hilo virtual por consumidor
+      // permite subir la concurrencia sin reservar un hilo de plataforma para cada uno.
+      SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("notification-consumer-");
+      executor.setVirtualThreads(true);
+      factory.setTaskExecutor(executor);
+    }
+
+    return factory;
+  }
+
+  // Factory del modo reactivo: un solo consumidor alcanza porque el listener retorna un Mono sin
+  // bloquear. Con ack manual Spring AMQP confirma cada mensaje al completarse su Mono, y el
+  // prefetch es el tope de mensajes en vuelo (backpressure desde el broker).
+  @Bean
+  public SimpleRabbitListenerContainerFactory reactiveListenerContainerFactory(
+      SimpleRabbitListenerContainerFactoryConfigurer configurer,
+      ConnectionFactory connectionFactory,
+      @Value("${notification.consumer.reactive-max-in-flight:64}") int maxInFlight,
+      @Value("${notification.digest.enabled:false}") boolean digestEnabled,
+      @Value("${notification.digest.max-buffered-events:1000}") int maxBufferedEvents) {
+    SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+    configurer.configure(factory, connectionFactory);
+    factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+    factory.setConcurrentConsumers(1);
+    factory.setMaxConcurrentConsumers(1);
+    factory.setPrefetchCount(digestPrefetch(maxInFlight, digestEnabled, maxBufferedEvents));
+    return factory;
+  }
+
+  // Los mensajes agrupados por RouteEventCoalescer siguen sin confirmar hasta que se despacha su
+  // resumen: sin este margen llenarían el prefetch y el consumidor dejaría de recibir
+  static int digestPrefetch(int prefetch, boolean digestEnabled, int maxBufferedEvents) {
+    return digestEnabled ? prefetch + Math.max(1, maxBufferedEvents) : prefetch;
+  }
+
+  // Factory de los shards de la campaña (ver EngagementCampaignCoordinator): prefetch 1 para que
+  // cada réplica tome un shard a la vez y los demás queden disponibles para el resto.
+  @Bean
+  public SimpleRabbitListenerContainerFactory campaignListenerContainerFactory(
+      SimpleRabbitListenerContainerFactoryConfigurer configurer,
+      ConnectionFactory connectionFactory,
+      @Value("${scheduler.engagement.shard-concurrency:1}") int concurrency) {
+    SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+    configurer.configure(factory, connectionFactory);
+    factory.setConcurrentConsumers(Math.max(1, concurrency));
+    factory.setMaxConcurrentConsumers(Math.max(1, concurrency));
+    factory.setPrefetchCount(1);
+    return factory;
+  }
 }
@@ -0,0 +1,80 @@
+package marketplace.notificationservice.consumer;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.Service.AdaptiveConcurrency;
+import marketplace.notificationservice.outbox.EmailOutbox;
+import org.springframework.amqp.rabbit.listener.MessageListenerContainer;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistry;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ajusta los consumidores del listener bloqueante a los límites adaptativos: cada consumidor hace
+ * una consulta GraphQL y (sin outbox) un envío SMTP por mensaje, así que tener más consumidores
+ * que el menor de esos límites sólo agrega mensajes esperando o rechazados. El resultado queda
+ * entre notification.consumer.concurrency y max-concurrency.
+ */
+@Component
+@Slf4j
+public class ConsumerConcurrencyTuner {
+
+  private final RabbitListenerEndpointRegistry registry;
+  private final AdaptiveConcurrency adaptive;
+  private final EmailOutbox outbox;
+  private final int minConsumers;
+  private final int maxConsumers;
+  // El container arranca con concurrency consumidores (ver RabbitMQConfig)
+  private int current;
+
+  public ConsumerConcurrencyTuner(
+      RabbitListenerEndpointRegistry registry,
+      AdaptiveConcurrency adaptive,
+      EmailOutbox outbox,
+      @Value("${notification.consumer.concurrency:1}") int minConsumers,
+      @Value("${notification.consumer.max-concurrency:1}") int maxConsumers) {
+    this.registry = registry;
+    this.adaptive = adaptive;
+    this.outbox = outbox;
+    this.minConsumers = Math.max(1, minConsumers);
+    this.maxConsumers = Math.max(this.minConsumers, maxConsumers);
+    this.current = this.minConsumers;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (adaptive.isEnabled()) {
+      adaptive.smtp().onChange(limit -> adjust());
+      adaptive.graphql().onChange(limit -> adjust());
+    }
+  }
+
+  int targetConsumers() {
+    int limit = adaptive.graphql().getLimit();
+    if (!outbox.isEnabled()) {
+      // Con outbox el consumidor no envía: el SMTP lo acotan los carriles
+      limit = Math.min(limit, adaptive.smtp().getLimit());
+    }
+    return Math.min(maxConsumers, Math.max(minConsumers, limit));
+  }
+
+  synchronized void adjust() {
+    MessageListenerContainer container =
+        registry.getListenerContainer(NotificationConsumer.LISTENER_ID);
+    int target = targetConsumers();
+    if (!(container instanceof SimpleMessageListenerContainer simple) || target == current) {
+      return;
+    }
+    // El container exige concurrent <= max en todo momento: el orden depende de si sube o baja
+    if (target > current) {
+      simple.setMaxConcurrentConsumers(target);
+      simple.setConcurrentConsumers(target);
+    } else {
+      simple.setConcurrentConsumers(target);
+      simple.setMaxConcurrentConsumers(target);
+    }
+    current = target;
+    log.info("Consumidores de {}: {}", NotificationConsumer.LISTENER_ID, target);
+  }
+}
@@ -0,0 +1,45 @@
+package marketplace.notificationservice.consumer;
+
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+/**
+ * El cuerpo del mensaje no es un RouteCompleteEvent válido. Lleva la causa clasificada, el campo
+ * involucrado (si se sabe) y un extracto del payload para el log y los headers del parking queue.
+ */
+public class InvalidRouteEventException extends MessageConversionException {
+
+  public enum Reason {
+    /** No es JSON, o está truncado. */
+    MALFORMED_JSON,
+    /** Un campo tiene un tipo que no corresponde (texto donde va un número, etc.). */
+    WRONG_TYPE,
+    /** Falta un campo obligatorio o está vacío. */
+    MISSING_FIELD,
+    /** El campo está pero su valor no tiene sentido (negativo, infinito). */
+    INVALID_VALUE
+  }
+
+  private final Reason reason;
+  private final String field;
+  private final String excerpt;
+
+  public InvalidRouteEventException(
+      Reason reason, String field, String detail, String excerpt, Throwable cause) {
+    super(reason + (field != null ? " (" + field + ")" : "") + ": " + detail, cause);
+    this.reason = reason;
+    this.field = field;
+    this.excerpt = excerpt;
+  }
+
+  public Reason getReason() {
+    return reason;
+  }
+
+  public String getField() {
+    return field;
+  }
+
+  public String getExcerpt() {
+    return excerpt;
+  }
+}
@@ -1,113 +1,447 @@
 package marketplace.notificationservice.consumer;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.activity.UserActivityIndex;
 import marketplace.notificationservice.config.RabbitMQConfig;
+import marketplace.notificationservice.consumer.RouteEventCoalescer.BufferedEvent;
+import marketplace.notificationservice.dedup.EventDeduplicator;
 import marketplace.notificationservice.dtos.RouteCompleteEvent;
 import marketplace.notificationservice.dtos.UserDTO;
-import marketplace.notificationservice.Service.GraphQLClientService;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.outbox.EmailOutbox;
+import marketplace.notificationservice.outbox.OutboxEmail;
+import marketplace.notificationservice.retry.DeadLetterReplayer;
+import marketplace.notificationservice.retry.NotificationRetryPublisher;
 import marketplace.notificationservice.Service.EmailService;
+import marketplace.notificationservice.Service.UserCache;
+import marketplace.notificationservice.template.EmailFormats;
+import marketplace.notificationservice.template.EmailTemplateEngine;
+import marketplace.notificationservice.template.TemplateModel;
+import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.TextStyle;
-import java.util.Locale;
+import reactor.core.publisher.Mono;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @Component
 @Slf4j
 public class NotificationConsumer {
 
-  private static final ObjectMapper objectMapper = new ObjectMapper();
-  private final GraphQLClientService graphQLClientService;
+  /** Id del listener bloqueante en RabbitListenerEndpointRegistry (ver ConsumerConcurrencyTuner). */
+  public static final String LISTENER_ID = "notificationConsumer";
+
+  // El converter y las plantillas compiladas son thread-safe: el listener puede correr con varios
+  // consumidores concurrentes (ver RabbitMQConfig) sin estado compartido mutable.
+  private static final RouteCompleteEventConverter converter = new RouteCompleteEventConverter();
+  private static final String SUBJECT = "🎉 ¡Felicidades! Has completado una ruta";
+  private static final String ROUTE_COMPLETED_TEMPLATE = "route-completed";
+  private static final String DIGEST_TEMPLATE = "route-digest";
+  private static final String DIGEST_ITEM_TEMPLATE = "route-digest-item";
+  private final UserCache userCache;
   private final EmailService emailService;
+  private final EmailOutbox outbox;
+  private final NotificationRetryPublisher retryPublisher;
+  private final EventDeduplicator deduplicator;
+  private final UserActivityIndex activity;
+  private final RouteEventCoalescer coalescer;
+  private final EmailTemplateEngine templates;
+  private final NotificationMetrics metrics;
+  private final boolean htmlEnabled;
 
-  public NotificationConsumer(GraphQLClientService graphQLClientService, EmailService emailService) {
-    this.graphQLClientService = graphQLClientService;
+  public NotificationConsumer(
+      UserCache userCache,
+      EmailService emailService,
+      EmailOutbox outbox,
+      NotificationRetryPublisher retryPublisher,
+      EventDeduplicator deduplicator,
+      UserActivityIndex activity,
+      RouteEventCoalescer coalescer,
+      EmailTemplateEngine templates,
+      NotificationMetrics metrics,
+      @Value("${notification.email.html-enabled:false}") boolean htmlEnabled) {
+    this.userCache = userCache;
     this.emailService = emailService;
+    this.outbox = outbox;
+    this.retryPublisher = retryPublisher;
+    this.deduplicator = deduplicator;
+    this.activity = activity;
+    this.coalescer = coalescer;
+    this.templates = templates;
+    this.metrics = metrics;
+    this.htmlEnabled = htmlEnabled;
+    coalescer.onFlush(this::deliverDigest);
   }
 
-  public static RouteCompleteEvent mapToRouteCompleteEvent(String message) {
+  /**
+   * Recibe el Message crudo: el cuerpo se convierte directo desde los bytes con
+   * RouteCompleteEventConverter. Un evento inválido no se reintenta (volvería a fallar igual): va
+   * al parking queue con el motivo en los headers y el original se confirma.
+   *
+   * <p>El container usa ack manual: el mensaje se confirma cuando se completa el future devuelto,
+   * y si falla vuelve a la cola. Salvo los que se agrupan para un resumen (que se confirman al
+   * despacharse, ver RouteEventCoalescer) el future ya está completo al retornar.
+   */
+  @RabbitListener(
+      id = LISTENER_ID,
+      queues = RabbitMQConfig.QUEUE_NAME,
+      autoStartup = "#{'${notification.consumer.mode:blocking}' != 'reactive'}")
+  public CompletableFuture<Void> consumeMessage(Message message) {
     try {
-      return objectMapper.readValue(message, RouteCompleteEvent.class);
-    } catch (Exception e) {
-      e.printStackTrace();
-      return null;
-    }
-  }
+      int attempt = attempts(message);
+      RouteCompleteEvent event;
+      try {
+        event = parse(message);
+      } catch (InvalidRouteEventException e) {
+        retryPublisher.park(message, e);
+        return CompletableFuture.completedFuture(null);
+      }
 
-  @RabbitListener(queues = RabbitMQConfig.QUEUE_NAME)
-  public void consumeMessage(String message) {
-    RouteCompleteEvent event = mapToRouteCompleteEvent(message);
+      log.info("Received Message: {} {}  ", event.eventType(), event.routeName());
 
-    if (event == null) {
-      log.error("Failed to parse message: " + event);
-      return;
-    }
+      if (isDuplicate(event, message)) {
+        return CompletableFuture.completedFuture(null);
+      }
 
-    log.info("Received Message: {} {}  ", event.eventType(), event.routeName());
+      if (coalescer.isEnabled()) {
+        // El resumen lo envía deliverDigest cuando se despacha el grupo del usuario
+        return coalescer.add(event, message.getBody(), attempt);
+      }
 
+      process(event, message.getBody(), attempt);
+      return CompletableFuture.completedFuture(null);
+    } catch (RuntimeException e) {
+      // Con ack manual una excepción no devuelve el mensaje a la cola; un future fallido sí
+      return CompletableFuture.failedFuture(e);
+    }
+  }
+
+  private void process(RouteCompleteEvent event, byte[] payload, int attempt) {
+    metrics.consumeStarted();
     try {
-      // Obtener datos del usuario usando GraphQL
-      UserDTO user = graphQLClientService.getUserData(event.userId());
+      // Obtener datos del usuario (cache, y si no está, GraphQL agrupado en lotes)
+      UserDTO user = userCache.get(event.userId()).join();
 
       if (user == null || user.getEmail() == null) {
         log.error("No se pudo obtener el email del usuario con ID: {}", event.userId());
+        metrics.recordFailure(NotificationMetrics.STAGE_CONSUME, "UserNotFound");
+        retryPublisher.deadLetter(payload, attempt, "UserNotFound", event.userId());
         return;
       }
 
       log.info("Usuario obtenido: {} - Email: {}", user.getAlias(), user.getEmail());
 
       // Enviar email carismático
-      String subject = "🎉 ¡Felicidades! Has completado una ruta";
       String emailBody = buildCarismaticEmail(event, user);
+      String htmlBody = htmlEnabled ? buildCarismaticHtmlEmail(event, user) : null;
 
-      emailService.sendSimpleEmail(user.getEmail(), subject, emailBody);
-
-      log.info("Email enviado exitosamente a: {}", user.getEmail());
+      deliver(user.getEmail(), SUBJECT, emailBody, htmlBody, List.of(payload));
+      deduplicator.markDelivered(event);
 
     } catch (Exception e) {
       log.error("Error al procesar el evento de ruta completada: {}", e.getMessage(), e);
+      metrics.recordFailure(NotificationMetrics.STAGE_CONSUME, unwrap(e));
+      // Se reprograma en una cola de espera (o va a la DLQ) y el original se confirma, sin
+      // retener el hilo del consumidor
+      retryPublisher.retryOrDeadLetter(payload, attempt, unwrap(e));
+    } finally {
+      // Sin envío la reserva de isDuplicate se libera, así el reintento no se toma como duplicado
+      deduplicator.release(event);
+      metrics.consumeFinished();
+    }
+  }
+
+  /**
+   * Envía el resumen de un grupo de RouteEventCoalescer: una consulta del usuario y un solo email
+   * con todas sus rutas. Un grupo de un solo evento se envía como el email normal. Si falla, cada
+   * evento se reprograma por separado con su payload original.
+   */
+  void deliverDigest(List<BufferedEvent> buffered) {
+    if (buffered.size() == 1) {
+      BufferedEvent single = buffered.get(0);
+      process(single.event(), single.payload(), single.attempt());
+      return;
+    }
+
+    List<RouteCompleteEvent> events = buffered.stream().map(BufferedEvent::event).toList();
+    String userId = events.get(0).userId();
+    metrics.consumeStarted();
+    try {
+      UserDTO user = userCache.get(userId).join();
+
+      if (user == null || user.getEmail() == null) {
+        log.error("No se pudo obtener el email del usuario con ID: {}", userId);
+        metrics.recordFailure(NotificationMetrics.STAGE_CONSUME, "UserNotFound");
+        for (BufferedEvent event : buffered) {
+          retryPublisher.deadLetter(event.payload(), event.attempt(), "UserNotFound", userId);
+        }
+        return;
+      }
+
+      String subject = "🎉 ¡Felicidades! Completaste " + events.size() + " rutas";
+      deliver(
+          user.getEmail(),
+          subject,
+          buildDigestEmail(events, user),
+          htmlEnabled ? buildDigestHtmlEmail(events, user) : null,
+          buffered.stream().map(BufferedEvent::payload).toList());
+      events.forEach(deduplicator::markDelivered);
+      log.info("Resumen de {} rutas para {}", events.size(), user.getEmail());
+
+    } catch (Exception e) {
+      log.error("Error al enviar el resumen del usuario {}: {}", userId, e.getMessage(), e);
+      metrics.recordFailure(NotificationMetrics.STAGE_CONSUME, unwrap(e));
+      for (BufferedEvent event : buffered) {
+        retryPublisher.retryOrDeadLetter(event.payload(), event.attempt(), unwrap(e));
+      }
+    } finally {
+      events.forEach(deduplicator::release);
+      metrics.consumeFinished();
+    }
+  }
+
+  private void deliver(
+      String to, String subject, String emailBody, String htmlBody, List<byte[]> sources) {
+    if (outbox.isEnabled()) {
+      // Queda en disco antes del ack; el envío SMTP lo hacen los workers del outbox
+      outbox.append(new OutboxEmail(to, subject, emailBody, htmlBody, sources)).join();
+      log.info("Email para {} guardado en el outbox", to);
+    } else {
+      emailService.sendEmail(to, subject, emailBody, htmlBody);
+      log.info("Email enviado exitosamente a: {}", to);
+    }
+  }
+
+  /**
+   * Modo reactivo (notification.consumer.mode=reactive): el hilo del listener sólo arma el
+   * pipeline y retorna. La consulta del usuario no bloquea y el envío SMTP corre en el scheduler
+   * acotado de EmailService. El container usa ack manual, así que el mensaje se confirma cuando el
+   * Mono termina y el prefetch limita los mensajes en vuelo (ver RabbitMQConfig).
+   */
+  @RabbitListener(
+      queues = RabbitMQConfig.QUEUE_NAME,
+      containerFactory = "reactiveListenerContainerFactory",
+      autoStartup = "#{'${notification.consumer.mode:blocking}' == 'reactive'}")
+  public Mono<Void> consumeMessageReactive(Message message) {
+    int attempt = attempts(message);
+    byte[] payload = message.getBody();
+    RouteCompleteEvent event;
+    try {
+      event = parse(message);
+    } catch (InvalidRouteEventException e) {
+      return retryPublisher.parkAsync(message, e);
+    }
+
+    log.info("Received Message: {} {}  ", event.eventType(), event.routeName());
+
+    if (isDuplicate(event, message)) {
+      return Mono.empty();
     }
+
+    if (coalescer.isEnabled()) {
+      return Mono.fromFuture(() -> coalescer.add(event, payload, attempt));
+    }
+
+    return Mono.fromFuture(() -> userCache.get(event.userId()))
+        .filter(user -> user.getEmail() != null)
+        .switchIfEmpty(
+            Mono.defer(
+                () -> {
+                  log.error("No se pudo obtener el email del usuario con ID: {}", event.userId());
+                  metrics.recordFailure(NotificationMetrics.STAGE_CONSUME, "UserNotFound");
+                  return retryPublisher
+                      .deadLetterAsync(payload, attempt, "UserNotFound", event.userId())
+                      .then(Mono.empty());
+                }))
+        .flatMap(
+            user ->
+                deliverAsync(
+                        user.getEmail(),
+                        buildCarismaticEmail(event, user),
+                        htmlEnabled ? buildCarismaticHtmlEmail(event, user) : null,
+                        payload)
+                    .doOnSuccess(ignored -> deduplicator.markDelivered(event)))
+        .onErrorResume(
+            e -> {
+              log.error("Error al procesar el evento de ruta completada: {}", e.getMessage(), e);
+              metrics.recordFailure(NotificationMetrics.STAGE_CONSUME, unwrap(e));
+              return retryPublisher.retryOrDeadLetterAsync(payload, attempt, unwrap(e));
+            })
+        .doFirst(metrics::consumeStarted)
+        .doFinally(
+            signal -> {
+              deduplicator.release(event);
+              metrics.consumeFinished();
+            })
+        .then();
   }
 
-  private String buildCarismaticEmail(RouteCompleteEvent event, UserDTO user) {
-    LocalDate today = LocalDate.now();
-    String dayName = today.getDayOfWeek().getDisplayName(TextStyle.FULL, new Locale("es", "ES"));
-    String formattedDate = today.format(DateTimeFormatter.ofPattern("dd/MM/yyyy"));
+  // Además de descartar los ya notificados, reserva el evento: hasta markDelivered (después del
+  // envío) o release (si falla) una copia concurrente también se descarta. Lo que reinyecta
+  // DeadLetterReplayer no se compara con el filtro: pudo marcarse antes de fallar en el outbox.
+  private boolean isDuplicate(RouteCompleteEvent event, Message message) {
+    boolean replayed =
+        message.getMessageProperties().getHeader(DeadLetterReplayer.REPLAYED_HEADER) != null;
+    if (deduplicator.tryClaim(event, replayed)) {
+      return false;
+    }
+    log.info(
+        "Evento duplicado descartado: ruta {} del usuario {} ({})",
+        event.routeId(),
+        event.userId(),
+        event.timestamp());
+    metrics.recordDuplicate();
+    return true;
+  }
 
+  private Mono<Void> deliverAsync(String to, String emailBody, String htmlBody, byte[] payload) {
+    if (outbox.isEnabled()) {
+      // Este Mono corre en el hilo que emitió el usuario (event loop de WebClient o el del
+      // UserBatchLoader): con el outbox lleno no se espera, el mensaje va a una cola de espera
+      return Mono.fromFuture(
+              () ->
+                  outbox.tryAppend(
+                      new OutboxEmail(to, SUBJECT, emailBody, htmlBody, List.of(payload))))
+          .doOnSuccess(ignored -> log.info("Email para {} guardado en el outbox", to));
+    }
+    return emailService
+        .sendEmailAsync(to, SUBJECT, emailBody, htmlBody)
+        .doOnSuccess(ignored -> log.info("Email enviado exitosamente a: {}", to));
+  }
+
+  private RouteCompleteEvent parse(Message message) {
+    try {
+      RouteCompleteEvent event = metrics.timeParse(() -> converter.fromMessage(message));
+      Instant occurredAt = event.occurredAt();
+      metrics.recordEventAge(occurredAt);
+      // Cualquier evento válido, aunque sea duplicado, muestra que el usuario estuvo activo cuando
+      // ocurrió, no cuando llegó: un reintento o una cola atrasada no lo cuentan como activo
+      // ahora. Sin timestamp legible (o con uno en el futuro) se toma ahora.
+      long now = System.currentTimeMillis();
+      activity.recordActivity(
+          event.userId(), occurredAt == null ? now : Math.min(now, occurredAt.toEpochMilli()));
+      return event;
+    } catch (InvalidRouteEventException e) {
+      log.error("Evento inválido: {} | payload: {}", e.getMessage(), e.getExcerpt());
+      metrics.recordFailure(NotificationMetrics.STAGE_CONSUME, "ParseError");
+      throw e;
+    }
+  }
+
+  private static int attempts(Message message) {
+    return message.getMessageProperties().getHeader(NotificationRetryPublisher.ATTEMPT_HEADER)
+            instanceof Number attempt
+        ? attempt.intValue()
+        : 0;
+  }
+
+  // join() envuelve la causa real en CompletionException
+  private static Throwable unwrap(Throwable error) {
+    return error instanceof CompletionException && error.getCause() != null
+        ? error.getCause()
+        : error;
+  }
+
+  String buildCarismaticEmail(RouteCompleteEvent event, UserDTO user) {
+    return templates.render(ROUTE_COMPLETED_TEMPLATE, routeCompletedModel(event, user));
+  }
+
+  String buildCarismaticHtmlEmail(RouteCompleteEvent event, UserDTO user) {
+    return templates.renderHtml(ROUTE_COMPLETED_TEMPLATE, routeCompletedModel(event, user));
+  }
+
+  String buildDigestEmail(List<RouteCompleteEvent> events, UserDTO user) {
+    StringBuilder routes = new StringBuilder();
+    for (RouteCompleteEvent event : events) {
+      routes.append(templates.render(DIGEST_ITEM_TEMPLATE, routeCompletedModel(event, user)));
+    }
+    return templates.render(DIGEST_TEMPLATE, digestModel(events, user, routes.toString()));
+  }
+
+  String buildDigestHtmlEmail(List<RouteCompleteEvent> events, UserDTO user) {
+    StringBuilder routes = new StringBuilder();
+    for (RouteCompleteEvent event : events) {
+      routes.append(templates.renderHtml(DIGEST_ITEM_TEMPLATE, routeCompletedModel(event, user)));
+    }
+    return templates.renderHtml(DIGEST_TEMPLATE, digestModel(events, user, routes.toString()));
+  }
+
+  // routes ya viene renderado con route-digest-item: las plantillas lo insertan con {{&routes}}
+  private static TemplateModel digestModel(
+      List<RouteCompleteEvent> events, UserDTO user, String routes) {
+    String greeting = user.getAlias() != null ? user.getAlias() : "Aventurero";
+    EmailFormats.Today today = EmailFormats.today();
+    int totalScore = 0;
+    double totalDistanceKm = 0;
+    int totalTimeDifference = 0;
+    for (RouteCompleteEvent event : events) {
+      totalScore += event.score();
+      totalDistanceKm += event.distanceKm();
+      totalTimeDifference += event.actualTimeMin() - event.estTimeMin();
+    }
+    int score = totalScore;
+    double distanceKm = totalDistanceKm;
+    int timeDifference = totalTimeDifference;
+
+    return (variable, out) -> {
+      switch (variable) {
+        case "greeting" -> out.append(greeting);
+        case "routeCount" -> out.append(events.size());
+        case "routes" -> out.append(routes);
+        case "totalScore" -> out.append(score);
+        case "totalDistanceKm" -> EmailFormats.appendTwoDecimals(out, distanceKm);
+        case "timeSummary" -> appendDigestTimeSummary(out, timeDifference);
+        case "dayName" -> out.append(today.dayName());
+        case "date" -> out.append(today.formattedDate());
+        default -> throw new IllegalArgumentException("Variable desconocida: " + variable);
+      }
+    };
+  }
+
+  private static TemplateModel routeCompletedModel(RouteCompleteEvent event, UserDTO user) {
     String greeting = user.getAlias() != null ? user.getAlias() : "Aventurero";
+    EmailFormats.Today today = EmailFormats.today();
 
-    StringBuilder emailBuilder = new StringBuilder();
-    emailBuilder.append("¡Hola ").append(greeting).append("! 🚀\n\n");
-    emailBuilder.append("¡Qué emoción! Has completado una ruta increíble. 🎊\n\n");
-    emailBuilder.append("═══════════════════════════════\n");
-    emailBuilder.append("📍 DETALLES DE TU AVENTURA\n");
-    emailBuilder.append("═══════════════════════════════\n\n");
-    emailBuilder.append("🗺️  Ruta: ").append(event.routeName()).append("\n");
-    emailBuilder.append("⭐ Puntuación: ").append(event.score()).append(" puntos\n");
-    emailBuilder.append("📏 Distancia recorrida: ").append(String.format("%.2f", event.distanceKm())).append(" km\n");
-    emailBuilder.append("⏱️  Tiempo estimado: ").append(event.estTimeMin()).append(" minutos\n");
-    emailBuilder.append("⏰ Tiempo real: ").append(event.actualTimeMin()).append(" minutos\n");
-
-    int timeDifference = event.actualTimeMin() - event.estTimeMin();
+    return (variable, out) -> {
+      switch (variable) {
+        case "greeting" -> out.append(greeting);
+        case "routeName" -> out.append(event.routeName());
+        case "score" -> out.append(event.score());
+        case "distanceKm" -> EmailFormats.appendTwoDecimals(out, event.distanceKm());
+        case "estTimeMin" -> out.append(event.estTimeMin());
+        case "actualTimeMin" -> out.append(event.actualTimeMin());
+        case "timeSummary" -> appendTimeSummary(out, event.actualTimeMin() - event.estTimeMin());
+        case "dayName" -> out.append(today.dayName());
+        case "date" -> out.append(today.formattedDate());
+        default -> throw new IllegalArgumentException("Variable desconocida: " + variable);
+      }
+    };
+  }
+
+  private static void appendDigestTimeSummary(StringBuilder out, int timeDifference) {
     if (timeDifference < 0) {
-      emailBuilder.append("🏆 ¡Increíble! Terminaste ").append(Math.abs(timeDifference))
-                  .append(" minutos antes de lo estimado. ¡Eres un campeón! 💪\n");
+      out.append("🏆 ¡Increíble! En total terminaste ").append(-timeDifference)
+          .append(" minutos antes de lo estimado. ¡Eres un campeón! 💪");
     } else if (timeDifference > 0) {
-      emailBuilder.append("👏 Completaste la ruta en ").append(timeDifference)
-                  .append(" minutos adicionales. ¡Lo importante es que lo lograste! 🌟\n");
+      out.append("👏 En total sumaste ").append(timeDifference)
+          .append(" minutos sobre lo estimado. ¡Lo importante es que lo lograste! 🌟");
     } else {
-      emailBuilder.append("🎯 ¡Perfecto! Terminaste exactamente en el tiempo estimado. 👌\n");
+      out.append("🎯 ¡Perfecto! En total, exactamente el tiempo estimado. 👌");
     }
+  }
 
-    emailBuilder.append("\n📅 Fecha de logro: ").append(dayName).append(", ").append(formattedDate).append("\n\n");
-    emailBuilder.append("═══════════════════════════════\n\n");
-    emailBuilder.append("Sigue así y alcanza nuevas metas. 🌄\n");
-    emailBuilder.append("¡Nos vemos en la próxima aventura! 🚴‍♂️🏃‍♀️\n\n");
-    emailBuilder.append("Con cariño,\n");
-    emailBuilder.append("El equipo de Marketplace Routes 💙\n");
-
-    return emailBuilder.toString();
+  private static void appendTimeSummary(StringBuilder out, int timeDifference) {
+    if (timeDifference < 0) {
+      out.append("🏆 ¡Increíble! Terminaste ").append(-timeDifference)
+          .append(" minutos antes de lo estimado. ¡Eres un campeón! 💪");
+    } else if (timeDifference > 0) {
+      out.append("👏 Completaste la ruta en ").append(timeDifference)
+          .append(" minutos adicionales. ¡Lo importante es que lo lograste! 🌟");
+    } else {
+      out.append("🎯 ¡Perfecto! Terminaste exactamente en el tiempo estimado. 👌");
+    }
   }
 }
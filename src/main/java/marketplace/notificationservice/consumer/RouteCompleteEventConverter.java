@@ -0,0 +1,156 @@
+package marketplace.notificationservice.consumer;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Collectors;
+import marketplace.notificationservice.consumer.InvalidRouteEventException.Reason;
+import marketplace.notificationservice.dtos.RouteCompleteEvent;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+/**
+ * Convierte el cuerpo AMQP directamente a RouteCompleteEvent: Jackson lee los bytes UTF-8 con un
+ * ObjectReader ya construido, sin pasar por un String intermedio. Después se valida el esquema y
+ * cualquier problema se informa como InvalidRouteEventException con la causa, el campo y un
+ * extracto del payload.
+ *
+ * <p>Los campos desconocidos se ignoran para que el productor pueda agregar campos sin romper el
+ * consumo. Es thread-safe: ObjectReader y ObjectWriter son inmutables.
+ */
+public class RouteCompleteEventConverter implements MessageConverter {
+
+  private static final int EXCERPT_BYTES = 200;
+
+  private final ObjectReader reader;
+  private final ObjectWriter writer;
+
+  public RouteCompleteEventConverter() {
+    ObjectMapper mapper = new ObjectMapper();
+    this.reader =
+        mapper
+            .readerFor(RouteCompleteEvent.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+            .with(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES)
+            .with(DeserializationFeature.FAIL_ON_TRAILING_TOKENS);
+    this.writer = mapper.writerFor(RouteCompleteEvent.class);
+  }
+
+  @Override
+  public RouteCompleteEvent fromMessage(Message message) throws MessageConversionException {
+    return fromBytes(message.getBody());
+  }
+
+  public RouteCompleteEvent fromBytes(byte[] body) {
+    if (body == null || body.length == 0) {
+      throw new InvalidRouteEventException(
+          Reason.MALFORMED_JSON, null, "cuerpo vacío", "", null);
+    }
+
+    RouteCompleteEvent event;
+    try {
+      event = reader.readValue(body);
+    } catch (JsonParseException e) {
+      throw new InvalidRouteEventException(
+          Reason.MALFORMED_JSON, null, e.getOriginalMessage(), excerpt(body), e);
+    } catch (MismatchedInputException e) {
+      throw new InvalidRouteEventException(
+          Reason.WRONG_TYPE, path(e), e.getOriginalMessage(), excerpt(body), e);
+    } catch (JsonProcessingException e) {
+      throw new InvalidRouteEventException(
+          Reason.MALFORMED_JSON, null, e.getOriginalMessage(), excerpt(body), e);
+    } catch (IOException e) {
+      throw new InvalidRouteEventException(
+          Reason.MALFORMED_JSON, null, e.getMessage(), excerpt(body), e);
+    }
+    if (event == null) {
+      throw new InvalidRouteEventException(Reason.MALFORMED_JSON, null, "null", excerpt(body), null);
+    }
+
+    validate(event, body);
+    return event;
+  }
+
+  private static void validate(RouteCompleteEvent event, byte[] body) {
+    require(event.eventType(), "eventType", body);
+    require(event.routeId(), "routeId", body);
+    require(event.routeName(), "routeName", body);
+    require(event.userId(), "userId", body);
+    require(event.timestamp(), "timestamp", body);
+    if (event.score() < 0) {
+      invalid("score", "negativo", body);
+    }
+    if (!Double.isFinite(event.distanceKm()) || event.distanceKm() < 0) {
+      invalid("distanceKm", "debe ser un número finito >= 0", body);
+    }
+    if (event.estTimeMin() < 0) {
+      invalid("estTimeMin", "negativo", body);
+    }
+    if (event.actualTimeMin() < 0) {
+      invalid("actualTimeMin", "negativo", body);
+    }
+  }
+
+  private static void require(String value, String field, byte[] body) {
+    if (value == null || value.isBlank()) {
+      throw new InvalidRouteEventException(
+          Reason.MISSING_FIELD, field, "obligatorio", excerpt(body), null);
+    }
+  }
+
+  private static void invalid(String field, String detail, byte[] body) {
+    throw new InvalidRouteEventException(Reason.INVALID_VALUE, field, detail, excerpt(body), null);
+  }
+
+  private static String path(JsonMappingException e) {
+    return e.getPath().stream()
+        .map(
+            reference ->
+                reference.getFieldName() != null
+                    ? reference.getFieldName()
+                    : "[" + reference.getIndex() + "]")
+        .collect(Collectors.joining("."));
+  }
+
+  /** Primeros bytes del payload, con los caracteres de control escapados para el log. */
+  static String excerpt(byte[] body) {
+    int length = Math.min(body.length, EXCERPT_BYTES);
+    String text = new String(body, 0, length, StandardCharsets.UTF_8);
+    StringBuilder out = new StringBuilder(text.length() + 8);
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '\n') {
+        out.append("\\n");
+      } else if (Character.isISOControl(c)) {
+        out.append(String.format("\\u%04x", (int) c));
+      } else {
+        out.append(c);
+      }
+    }
+    if (body.length > EXCERPT_BYTES) {
+      out.append("…");
+    }
+    return out.toString();
+  }
+
+  @Override
+  public Message toMessage(Object object, MessageProperties messageProperties)
+      throws MessageConversionException {
+    try {
+      messageProperties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+      messageProperties.setContentEncoding(StandardCharsets.UTF_8.name());
+      return new Message(writer.writeValueAsBytes(object), messageProperties);
+    } catch (JsonProcessingException e) {
+      throw new MessageConversionException("No se pudo serializar " + object, e);
+    }
+  }
+}
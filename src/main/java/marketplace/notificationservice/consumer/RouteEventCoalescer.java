@@ -0,0 +1,242 @@
+package marketplace.notificationservice.consumer;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.dtos.RouteCompleteEvent;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Agrupa por userId los RouteCompleteEvents que llegan dentro de una ventana, para mandar un solo
+ * email resumen con todas las rutas en vez de uno por evento (una consulta GraphQL y un envío
+ * SMTP por usuario y ventana).
+ *
+ * <p>El grupo de un usuario se despacha cuando pasan window-seconds desde su primer evento o cuando
+ * junta max-events-per-user. La memoria está acotada por max-users y max-buffered-events: si se
+ * alcanza alguno de los dos, se despacha antes de tiempo el grupo más viejo.
+ *
+ * <p>Los mensajes no se confirman al agruparse: add devuelve un future que se completa cuando el
+ * resumen que los incluye quedó en manos del outbox (o del SMTP, o de la cola de reintentos), y
+ * recién ahí el listener los confirma. Si el despacho falla, el future falla y el mensaje vuelve a
+ * la cola. Un corte, abrupto o no, deja los mensajes de la ventana en curso sin confirmar y el
+ * broker los vuelve a entregar. Como los mensajes agrupados ocupan prefetch, RabbitMQConfig lo
+ * agranda en max-buffered-events.
+ *
+ * <p>Los grupos despachados, vencidos o desalojados por tamaño, se envían en un pool de
+ * flush-concurrency hilos: ni el hilo que revisa las ventanas ni el listener que agregó el evento
+ * esperan la consulta del usuario y el outbox de cada resumen.
+ */
+@Component
+@Slf4j
+public class RouteEventCoalescer implements MeterBinder {
+
+  /** Evento agrupado junto con su payload original, para reprogramarlo si el envío falla. */
+  public record BufferedEvent(RouteCompleteEvent event, byte[] payload, int attempt) {}
+
+  private static final class Buffer {
+    final long openedAt;
+    final List<BufferedEvent> events = new ArrayList<>();
+    // Uno por mensaje recibido, incluidas las redeliveries que no se agregan al resumen
+    final List<CompletableFuture<Void>> handled = new ArrayList<>();
+
+    Buffer(long openedAt) {
+      this.openedAt = openedAt;
+    }
+  }
+
+  private final boolean enabled;
+  private final long windowMillis;
+  private final int maxEventsPerUser;
+  private final int maxUsers;
+  private final int maxBufferedEvents;
+  private final int flushConcurrency;
+  // Orden de inserción = orden de apertura: los grupos vencidos siempre están al principio
+  private final LinkedHashMap<String, Buffer> buffers = new LinkedHashMap<>();
+  private int bufferedEvents;
+  private volatile Consumer<List<BufferedEvent>> flushHandler = events -> {};
+  private ScheduledExecutorService flusher;
+  private ExecutorService flushPool;
+  // Hasta start() (o sin digest) los grupos se envían en el hilo que los despacha
+  private volatile Executor dispatcher = Runnable::run;
+
+  public RouteEventCoalescer(
+      @Value("${notification.digest.enabled:false}") boolean enabled,
+      @Value("${notification.digest.window-seconds:120}") long windowSeconds,
+      @Value("${notification.digest.max-events-per-user:10}") int maxEventsPerUser,
+      @Value("${notification.digest.max-users:10000}") int maxUsers,
+      @Value("${notification.digest.max-buffered-events:1000}") int maxBufferedEvents,
+      @Value("${notification.digest.flush-concurrency:4}") int flushConcurrency) {
+    this.enabled = enabled;
+    this.windowMillis = TimeUnit.SECONDS.toMillis(windowSeconds);
+    this.maxEventsPerUser = Math.max(1, maxEventsPerUser);
+    this.maxUsers = Math.max(1, maxUsers);
+    this.maxBufferedEvents = Math.max(1, maxBufferedEvents);
+    this.flushConcurrency = Math.max(1, flushConcurrency);
+  }
+
+  public int maxBufferedEvents() {
+    return maxBufferedEvents;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    long tick = Math.max(100, windowMillis / 10);
+    flushPool =
+        Executors.newFixedThreadPool(
+            flushConcurrency, Thread.ofPlatform().name("digest-flush-", 0).daemon().factory());
+    dispatcher = flushPool;
+    flusher =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("digest-flusher").daemon().factory());
+    flusher.scheduleWithFixedDelay(this::flushExpired, tick, tick, TimeUnit.MILLISECONDS);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Quién envía cada grupo despachado; lo registra NotificationConsumer. */
+  public void onFlush(Consumer<List<BufferedEvent>> handler) {
+    this.flushHandler = handler;
+  }
+
+  /**
+   * Agrupa el evento. El future se completa cuando se despachó el resumen que lo incluye; el
+   * mensaje de origen se confirma recién entonces.
+   */
+  public CompletableFuture<Void> add(RouteCompleteEvent event, byte[] payload, int attempt) {
+    List<Buffer> ready = new ArrayList<>(2);
+    CompletableFuture<Void> handled = new CompletableFuture<>();
+    synchronized (buffers) {
+      Buffer buffer = buffers.get(event.userId());
+      while (!buffers.isEmpty()
+          && (bufferedEvents >= maxBufferedEvents
+              || (buffer == null && buffers.size() >= maxUsers))) {
+        Iterator<Buffer> oldest = buffers.values().iterator();
+        Buffer evicted = oldest.next();
+        oldest.remove();
+        ready.add(take(evicted));
+        if (evicted == buffer) {
+          buffer = null;
+        }
+      }
+      if (buffer == null) {
+        buffer = new Buffer(System.currentTimeMillis());
+        buffers.put(event.userId(), buffer);
+      }
+      // Una redelivery dentro de la misma ventana no aparece dos veces en el resumen
+      if (buffer.events.stream().noneMatch(buffered -> buffered.event().equals(event))) {
+        buffer.events.add(new BufferedEvent(event, payload, attempt));
+      }
+      buffer.handled.add(handled);
+      bufferedEvents++;
+      if (buffer.events.size() >= maxEventsPerUser) {
+        buffers.remove(event.userId());
+        ready.add(take(buffer));
+      }
+    }
+    ready.forEach(this::dispatch);
+    return handled;
+  }
+
+  void flushExpired() {
+    long now = System.currentTimeMillis();
+    List<Buffer> ready = new ArrayList<>();
+    synchronized (buffers) {
+      Iterator<Buffer> iterator = buffers.values().iterator();
+      while (iterator.hasNext()) {
+        Buffer buffer = iterator.next();
+        if (now - buffer.openedAt < windowMillis) {
+          break;
+        }
+        ready.add(take(buffer));
+        iterator.remove();
+      }
+    }
+    ready.forEach(this::dispatch);
+  }
+
+  // Llamar con el lock de buffers tomado
+  private Buffer take(Buffer buffer) {
+    bufferedEvents -= buffer.handled.size();
+    return buffer;
+  }
+
+  private void dispatch(Buffer buffer) {
+    try {
+      dispatcher.execute(() -> flush(buffer));
+    } catch (RejectedExecutionException e) {
+      // El pool ya se apagó: el grupo se envía en este hilo antes que perderlo
+      flush(buffer);
+    }
+  }
+
+  private void flush(Buffer buffer) {
+    try {
+      flushHandler.accept(buffer.events);
+    } catch (RuntimeException e) {
+      log.error(
+          "Error al despachar el resumen del usuario {}: {}",
+          buffer.events.get(0).event().userId(),
+          e.getMessage(),
+          e);
+      buffer.handled.forEach(handled -> handled.completeExceptionally(e));
+      return;
+    }
+    buffer.handled.forEach(handled -> handled.complete(null));
+  }
+
+  public int bufferedUsers() {
+    synchronized (buffers) {
+      return buffers.size();
+    }
+  }
+
+  /** Mensajes agrupados todavía sin confirmar. */
+  public int bufferedEvents() {
+    synchronized (buffers) {
+      return bufferedEvents;
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    if (flusher != null) {
+      flusher.shutdown();
+      flusher.awaitTermination(10, TimeUnit.SECONDS);
+    }
+    if (flushPool != null) {
+      flushPool.shutdown();
+      flushPool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("notification.digest.buffered_users", this, RouteEventCoalescer::bufferedUsers)
+        .description("Usuarios con eventos agrupados esperando su resumen")
+        .register(registry);
+    Gauge.builder("notification.digest.buffered_events", this, RouteEventCoalescer::bufferedEvents)
+        .description("Mensajes agrupados sin confirmar, esperando su resumen")
+        .register(registry);
+  }
+}
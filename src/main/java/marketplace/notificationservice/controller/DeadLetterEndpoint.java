@@ -0,0 +1,38 @@
+package marketplace.notificationservice.controller;
+
+import java.util.Map;
+import marketplace.notificationservice.config.RabbitMQConfig;
+import marketplace.notificationservice.retry.DeadLetterReplayer;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+/**
+ * Operación de la DLQ: cuántos mensajes hay (GET /actuator/dlq) y reinyección masiva a
+ * notification-queue (POST /actuator/dlq con {"max": n, "reason": "..."}, ambos opcionales). Es un
+ * endpoint de actuator y no un controller para que quede en management.server.port, fuera del
+ * puerto de la aplicación: reinyectar la DLQ dispara reenvíos de emails.
+ */
+@Component
+@Endpoint(id = "dlq")
+public class DeadLetterEndpoint {
+
+  private final DeadLetterReplayer replayer;
+
+  public DeadLetterEndpoint(DeadLetterReplayer replayer) {
+    this.replayer = replayer;
+  }
+
+  @ReadOperation
+  public Map<String, Object> status() {
+    return Map.of(
+        "queue", RabbitMQConfig.DEAD_LETTER_QUEUE_NAME, "messages", replayer.pendingCount());
+  }
+
+  @WriteOperation
+  public Map<String, Object> replay(@Nullable Integer max, @Nullable String reason) {
+    return Map.of("replayed", replayer.replay(max, reason));
+  }
+}
@@ -0,0 +1,32 @@
+package marketplace.notificationservice.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import marketplace.notificationservice.scheduler.CampaignCheckpointStore;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Progreso de la campaña de engagement (GET /actuator/engagement): corridas en curso en esta
+ * réplica y la última terminada. Como DeadLetterEndpoint, queda en management.server.port: expone
+ * userIds y el ritmo de envío, que no tienen por qué salir por el puerto de la aplicación.
+ */
+@Component
+@Endpoint(id = "engagement")
+public class EngagementRunEndpoint {
+
+  private final CampaignCheckpointStore checkpoints;
+
+  public EngagementRunEndpoint(CampaignCheckpointStore checkpoints) {
+    this.checkpoints = checkpoints;
+  }
+
+  @ReadOperation
+  public Map<String, Object> progress() {
+    Map<String, Object> progress = new LinkedHashMap<>();
+    progress.put("active", checkpoints.activeRuns());
+    progress.put("lastFinished", checkpoints.lastFinished().orElse(null));
+    return progress;
+  }
+}
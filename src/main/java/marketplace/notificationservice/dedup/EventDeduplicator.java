@@ -0,0 +1,320 @@
+package marketplace.notificationservice.dedup;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.dtos.RouteCompleteEvent;
+import marketplace.notificationservice.index.Hash64;
+import marketplace.notificationservice.index.IndexSnapshot;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Descarta RouteCompleteEvents ya notificados (redeliveries de RabbitMQ, reintentos del
+ * productor). La clave es (eventType, routeId, userId, timestamp) y se guarda en un Bloom filter
+ * rotativo: la ventana se divide en generaciones, se inserta en la más nueva y se consulta en
+ * todas; cuando la más nueva cumple window/generations se descarta la más vieja. Con los valores
+ * por defecto (2M eventos por ventana, 1e-4 de falsos positivos) ocupa unos 5 MB.
+ *
+ * <p>Un falso positivo significa un email que no se envía, por eso false-positive-rate es bajo. La
+ * clave se marca cuando el email se envió o quedó en el outbox: un mensaje que falla antes y se
+ * reintenta no se toma como duplicado. Mientras tanto el evento queda reservado (tryClaim), así
+ * una copia que llega durante el envío, a otro consumidor, no pasa el filtro también.
+ *
+ * <p>Si el que se rinde es el outbox, el evento ya está marcado y un Bloom filter no puede
+ * borrarlo: el payload va a la DLQ y, al reinyectarlo DeadLetterReplayer, el consumidor lo
+ * reserva sin consultar el filtro (tryClaim con replayed en true).
+ *
+ * <p>Si snapshot-path está configurado, el filtro se guarda periódicamente y al apagar, y se carga
+ * al arrancar descartando las generaciones vencidas.
+ */
+@Component
+@Slf4j
+public class EventDeduplicator {
+
+  private static final int SNAPSHOT_MAGIC = 0x4E444450; // "NDDP"
+  private static final int SNAPSHOT_VERSION = 1;
+
+  private final boolean enabled;
+  private final long generationMillis;
+  private final int generationCount;
+  private final int bitsPerGeneration;
+  private final int hashFunctions;
+  private final IndexSnapshot snapshots;
+  private final long snapshotIntervalSeconds;
+
+  // La más nueva primero; todo acceso bajo el lock de this
+  private final Deque<Generation> generations = new ArrayDeque<>();
+  // Eventos reservados por tryClaim hasta markDelivered o release
+  private final ConcurrentHashMap<Key, Boolean> inFlight = new ConcurrentHashMap<>();
+
+  /** La misma clave que se guarda en el filtro. */
+  private record Key(String eventType, String routeId, String userId, String timestamp) {
+    static Key of(RouteCompleteEvent event) {
+      return new Key(event.eventType(), event.routeId(), event.userId(), event.timestamp());
+    }
+  }
+
+  private static final class Generation {
+    final long createdAt;
+    final long[] words;
+
+    Generation(long createdAt, long[] words) {
+      this.createdAt = createdAt;
+      this.words = words;
+    }
+  }
+
+  public EventDeduplicator(
+      @Value("${notification.dedup.enabled:false}") boolean enabled,
+      @Value("${notification.dedup.window-minutes:1440}") long windowMinutes,
+      @Value("${notification.dedup.generations:4}") int generations,
+      @Value("${notification.dedup.expected-events:2000000}") long expectedEvents,
+      @Value("${notification.dedup.false-positive-rate:0.0001}") double falsePositiveRate,
+      @Value("${notification.dedup.snapshot-path:}") String snapshotPath,
+      @Value("${notification.dedup.snapshot-interval-seconds:60}") long snapshotIntervalSeconds) {
+    this.enabled = enabled;
+    this.generationCount = Math.max(1, generations);
+    this.generationMillis =
+        Math.max(1, Duration.ofMinutes(windowMinutes).toMillis() / generationCount);
+
+    // Cada consulta revisa todas las generaciones: se reparte la tasa de falsos positivos entre
+    // ellas y cada una dimensiona para su parte de los eventos
+    long perGeneration = Math.max(1, expectedEvents / generationCount);
+    double perGenerationRate = falsePositiveRate / generationCount;
+    long bits =
+        (long) Math.ceil(-perGeneration * Math.log(perGenerationRate) / (Math.log(2) * Math.log(2)));
+    this.bitsPerGeneration = (int) Math.min(Integer.MAX_VALUE - 63, Math.max(64, bits));
+    this.hashFunctions =
+        Math.max(1, (int) Math.round((double) bitsPerGeneration / perGeneration * Math.log(2)));
+
+    this.snapshots =
+        snapshotPath.isBlank()
+            ? null
+            : new IndexSnapshot(
+                Path.of(snapshotPath), SNAPSHOT_MAGIC, SNAPSHOT_VERSION, "dedup-snapshot");
+    this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+  }
+
+  @PostConstruct
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    synchronized (this) {
+      if (snapshots != null) {
+        load(System.currentTimeMillis());
+      }
+      if (generations.isEmpty()) {
+        generations.addFirst(newGeneration(System.currentTimeMillis()));
+      }
+    }
+    log.info(
+        "Deduplicación activa: {} generaciones de {} KB, {} funciones hash",
+        generationCount,
+        bitsPerGeneration / 8 / 1024,
+        hashFunctions);
+
+    if (snapshots != null) {
+      snapshots.scheduleEvery(snapshotIntervalSeconds, this::snapshot);
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** true si el evento ya fue notificado dentro de la ventana (o es un falso positivo). */
+  public boolean isDuplicate(RouteCompleteEvent event) {
+    if (!enabled) {
+      return false;
+    }
+    long h1 = hash(event, 0x9E3779B97F4A7C15L);
+    long h2 = hash(event, 0xC2B2AE3D27D4EB4FL) | 1;
+    synchronized (this) {
+      rotateIfDue(System.currentTimeMillis());
+      for (Generation generation : generations) {
+        if (contains(generation.words, h1, h2)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Reserva el evento para quien llama: false si ya fue notificado (ver isDuplicate) o si otro
+   * consumidor lo tiene reservado, por ejemplo el original de una redelivery que todavía se está
+   * enviando. La reserva se libera con markDelivered o, si el envío falla, con release.
+   */
+  public boolean tryClaim(RouteCompleteEvent event) {
+    return tryClaim(event, false);
+  }
+
+  /**
+   * Como tryClaim(event), pero con replayed en true no consulta el filtro: el evento viene de la
+   * DLQ y pudo quedar marcado antes de que el outbox se rindiera. La reserva sí se respeta.
+   */
+  public boolean tryClaim(RouteCompleteEvent event, boolean replayed) {
+    if (!enabled) {
+      return true;
+    }
+    Key key = Key.of(event);
+    if (inFlight.putIfAbsent(key, Boolean.TRUE) != null) {
+      return false;
+    }
+    if (!replayed && isDuplicate(event)) {
+      inFlight.remove(key);
+      return false;
+    }
+    return true;
+  }
+
+  /** Libera la reserva de tryClaim sin marcar el evento; no hace nada si ya se marcó. */
+  public void release(RouteCompleteEvent event) {
+    if (enabled) {
+      inFlight.remove(Key.of(event));
+    }
+  }
+
+  /** Registra el evento como notificado y libera su reserva. */
+  public void markDelivered(RouteCompleteEvent event) {
+    if (!enabled) {
+      return;
+    }
+    long h1 = hash(event, 0x9E3779B97F4A7C15L);
+    long h2 = hash(event, 0xC2B2AE3D27D4EB4FL) | 1;
+    synchronized (this) {
+      rotateIfDue(System.currentTimeMillis());
+      long[] words = generations.peekFirst().words;
+      for (int i = 0; i < hashFunctions; i++) {
+        int bit = index(h1, h2, i);
+        words[bit >>> 6] |= 1L << bit;
+      }
+    }
+    // Después de marcar: no hay un momento en que el evento no esté ni reservado ni en el filtro
+    inFlight.remove(Key.of(event));
+  }
+
+  synchronized void rotateIfDue(long now) {
+    Generation newest = generations.peekFirst();
+    if (newest != null && now - newest.createdAt < generationMillis) {
+      return;
+    }
+    generations.addFirst(newGeneration(now));
+    while (generations.size() > generationCount) {
+      generations.removeLast();
+    }
+  }
+
+  private boolean contains(long[] words, long h1, long h2) {
+    for (int i = 0; i < hashFunctions; i++) {
+      int bit = index(h1, h2, i);
+      if ((words[bit >>> 6] & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Doble hashing (Kirsch-Mitzenmacher): k índices a partir de dos hashes de 64 bits
+  private int index(long h1, long h2, int i) {
+    return (int) Long.remainderUnsigned(h1 + i * h2, bitsPerGeneration);
+  }
+
+  private Generation newGeneration(long now) {
+    return new Generation(now, new long[(bitsPerGeneration + 63) >>> 6]);
+  }
+
+  private static long hash(RouteCompleteEvent event, long seed) {
+    long h = seed;
+    h = hash(h, event.eventType());
+    h = hash(h, event.routeId());
+    h = hash(h, event.userId());
+    h = hash(h, event.timestamp());
+    return Hash64.mix(h);
+  }
+
+  private static long hash(long h, String value) {
+    if (value == null) {
+      return Hash64.mix(h ^ 0x5BD1E995L);
+    }
+    // separador, para que ("ab","c") y ("a","bc") no colisionen
+    return Hash64.mix(Hash64.fnv1a(h, value) ^ value.length());
+  }
+
+  /** Guarda el filtro en snapshot-path (ver IndexSnapshot). */
+  public void snapshot() {
+    if (!enabled || snapshots == null) {
+      return;
+    }
+    // Se copia bajo el lock (unos pocos MB) y se escribe sin frenar a los consumidores
+    List<Generation> copy = new ArrayList<>(generationCount);
+    synchronized (this) {
+      for (Generation generation : generations) {
+        copy.add(new Generation(generation.createdAt, generation.words.clone()));
+      }
+    }
+    try {
+      snapshots.write(
+          out -> {
+            out.writeInt(bitsPerGeneration);
+            out.writeInt(hashFunctions);
+            out.writeInt(copy.size());
+            for (Generation generation : copy) {
+              out.writeLong(generation.createdAt);
+              for (long word : generation.words) {
+                out.writeLong(word);
+              }
+            }
+          });
+    } catch (IOException e) {
+      log.warn("No se pudo guardar el índice de deduplicación: {}", e.getMessage());
+    }
+  }
+
+  private void load(long now) {
+    try {
+      boolean loaded =
+          snapshots.read(
+              in -> {
+                if (in.readInt() != bitsPerGeneration || in.readInt() != hashFunctions) {
+                  throw new IOException("el snapshot guardado no coincide con la configuración");
+                }
+                int count = in.readInt();
+                long window = generationMillis * generationCount;
+                for (int g = 0; g < count; g++) {
+                  Generation generation = newGeneration(in.readLong());
+                  for (int w = 0; w < generation.words.length; w++) {
+                    generation.words[w] = in.readLong();
+                  }
+                  if (now - generation.createdAt < window) {
+                    generations.addLast(generation);
+                  }
+                }
+              });
+      if (loaded) {
+        log.info("Índice de deduplicación cargado: {} generaciones vigentes", generations.size());
+      }
+    } catch (IOException e) {
+      log.warn("No se pudo leer el índice de deduplicación: {}", e.getMessage());
+      generations.clear();
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    if (snapshots != null) {
+      snapshots.stop();
+    }
+    snapshot();
+  }
+}
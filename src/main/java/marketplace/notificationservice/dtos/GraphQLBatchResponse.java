@@ -0,0 +1,15 @@
+package marketplace.notificationservice.dtos;
+
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Respuesta de una consulta con alias (u0: getUser(...), u1: getUser(...), ...): cada alias
+// queda como llave del mapa y su valor es null cuando el usuario no existe.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class GraphQLBatchResponse {
+  private Map<String, UserDTO> data;
+}
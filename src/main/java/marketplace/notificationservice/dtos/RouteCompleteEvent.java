@@ -1,5 +1,11 @@
 package marketplace.notificationservice.dtos;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
 public record RouteCompleteEvent(
     String eventType,
     String routeId,
@@ -11,4 +17,22 @@ public record RouteCompleteEvent(
     double distanceKm,
     int estTimeMin,
     int actualTimeMin,
-    String timestamp) {}
+    String timestamp) {
+
+  /** Cuándo ocurrió el evento según timestamp, o null si falta o no se puede leer. */
+  public Instant occurredAt() {
+    if (timestamp == null || timestamp.isBlank()) {
+      return null;
+    }
+    try {
+      return OffsetDateTime.parse(timestamp).toInstant();
+    } catch (DateTimeParseException ignored) {
+      // sin zona: se interpreta en la zona del servidor
+    }
+    try {
+      return LocalDateTime.parse(timestamp).atZone(ZoneId.systemDefault()).toInstant();
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
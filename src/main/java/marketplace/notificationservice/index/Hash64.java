@@ -0,0 +1,39 @@
+package marketplace.notificationservice.index;
+
+/**
+ * Hash de 64 bits de strings para los índices en memoria: FNV-1a sobre los chars seguido del
+ * mezclado final de MurmurHash3. FNV-1a solo reparte mal claves que difieren en el último char
+ * (userIds secuenciales); el mezclado lo corrige. No es criptográfico.
+ */
+public final class Hash64 {
+
+  /** Valor inicial de FNV-1a de 64 bits. */
+  public static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+
+  private static final long FNV_PRIME = 0x100000001B3L;
+
+  private Hash64() {}
+
+  /** Hash de value. */
+  public static long hash(String value) {
+    return mix(fnv1a(FNV_OFFSET_BASIS, value));
+  }
+
+  /** Sigue el FNV-1a h con los chars de value, sin mezclar; para encadenar varios campos. */
+  public static long fnv1a(long h, String value) {
+    for (int i = 0; i < value.length(); i++) {
+      h = (h ^ value.charAt(i)) * FNV_PRIME;
+    }
+    return h;
+  }
+
+  /** Mezclado final de MurmurHash3 (fmix64). */
+  public static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
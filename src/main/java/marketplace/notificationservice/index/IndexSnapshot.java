@@ -0,0 +1,101 @@
+package marketplace.notificationservice.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Archivo donde un índice en memoria (EventDeduplicator, UserActivityIndex) se guarda entre
+ * reinicios. Cada índice define su contenido; acá van el encabezado (magic y versión del formato),
+ * el guardado periódico y la escritura: se escribe entero en path.tmp y se reemplaza path con
+ * ATOMIC_MOVE, así path siempre tiene un snapshot completo aunque el proceso muera escribiendo.
+ */
+public final class IndexSnapshot {
+
+  /** Escribe el contenido del índice después del encabezado. */
+  @FunctionalInterface
+  public interface Writer {
+    void write(DataOutputStream out) throws IOException;
+  }
+
+  /** Lee el contenido del índice después del encabezado. */
+  @FunctionalInterface
+  public interface Reader {
+    void read(DataInputStream in) throws IOException;
+  }
+
+  private final Path path;
+  private final int magic;
+  private final int version;
+  private final String threadName;
+  private ScheduledExecutorService scheduler;
+
+  public IndexSnapshot(Path path, int magic, int version, String threadName) {
+    this.path = path;
+    this.magic = magic;
+    this.version = version;
+    this.threadName = threadName;
+  }
+
+  public Path path() {
+    return path;
+  }
+
+  public void write(Writer content) throws IOException {
+    if (path.getParent() != null) {
+      Files.createDirectories(path.getParent());
+    }
+    Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+      out.writeInt(magic);
+      out.writeInt(version);
+      content.write(out);
+    }
+    Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Lee el snapshot guardado. Un archivo de otro formato falla con IOException, como uno ilegible.
+   *
+   * @return false si no hay snapshot guardado
+   */
+  public boolean read(Reader content) throws IOException {
+    if (!Files.exists(path)) {
+      return false;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+      if (in.readInt() != magic || in.readInt() != version) {
+        throw new IOException("el snapshot guardado tiene otro formato");
+      }
+      content.read(in);
+    }
+    return true;
+  }
+
+  /** Ejecuta snapshot cada intervalSeconds en un hilo propio; con 0 sólo se guarda al apagar. */
+  public void scheduleEvery(long intervalSeconds, Runnable snapshot) {
+    if (intervalSeconds <= 0) {
+      return;
+    }
+    scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name(threadName).daemon().factory());
+    scheduler.scheduleWithFixedDelay(snapshot, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+  }
+
+  public void stop() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+  }
+}
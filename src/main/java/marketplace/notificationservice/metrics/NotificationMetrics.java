@@ -0,0 +1,194 @@
+package marketplace.notificationservice.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Métricas de las etapas del procesamiento: parseo del mensaje, consultas GraphQL, envío SMTP y
+ * edad del evento al llegar. Se exponen en /actuator/prometheus junto con fallas por causa y
+ * gauges del trabajo en vuelo por etapa.
+ */
+@Component
+public class NotificationMetrics {
+
+  public static final String STAGE_CONSUME = "consume";
+  public static final String STAGE_GRAPHQL = "graphql";
+  public static final String STAGE_SMTP = "smtp";
+  public static final String STAGE_OUTBOX = "outbox";
+
+  private final MeterRegistry registry;
+  private final Timer parseTimer;
+  private final Timer eventAgeTimer;
+  private final AtomicInteger consumeInFlight = new AtomicInteger();
+  private final AtomicInteger graphqlInFlight = new AtomicInteger();
+  private final AtomicInteger smtpInFlight = new AtomicInteger();
+
+  public NotificationMetrics(MeterRegistry registry) {
+    this.registry = registry;
+    this.parseTimer =
+        Timer.builder("notification.parse")
+            .description("Tiempo de parseo del mensaje AMQP a RouteCompleteEvent")
+            .publishPercentileHistogram()
+            .register(registry);
+    this.eventAgeTimer =
+        Timer.builder("notification.event.age")
+            .description("Tiempo entre RouteCompleteEvent.timestamp y su consumo")
+            .publishPercentileHistogram()
+            .maximumExpectedValue(Duration.ofHours(1))
+            .register(registry);
+
+    registerInFlight(STAGE_CONSUME, consumeInFlight);
+    registerInFlight(STAGE_GRAPHQL, graphqlInFlight);
+    registerInFlight(STAGE_SMTP, smtpInFlight);
+  }
+
+  private void registerInFlight(String stage, AtomicInteger value) {
+    Gauge.builder("notification.inflight", value, AtomicInteger::get)
+        .description("Trabajo en vuelo por etapa")
+        .tag("stage", stage)
+        .register(registry);
+  }
+
+  public <T> T timeParse(Supplier<T> parse) {
+    return parseTimer.record(parse);
+  }
+
+  /**
+   * Registra la edad del evento a partir de su momento de ocurrencia. eventTime null (evento sin
+   * timestamp legible) no se registra.
+   */
+  public void recordEventAge(Instant eventTime) {
+    if (eventTime != null) {
+      Duration age = Duration.between(eventTime, Instant.now());
+      eventAgeTimer.record(age.isNegative() ? Duration.ZERO : age);
+    }
+  }
+
+  public void consumeStarted() {
+    consumeInFlight.incrementAndGet();
+  }
+
+  public void consumeFinished() {
+    consumeInFlight.decrementAndGet();
+  }
+
+  /** Mide una consulta GraphQL (operation = getUserData, getAllUsers, ...) desde su suscripción. */
+  public <T> Mono<T> timeGraphQL(String operation, Mono<T> call) {
+    return Mono.defer(
+        () -> {
+          Timer.Sample sample = Timer.start(registry);
+          graphqlInFlight.incrementAndGet();
+          return call.doOnSuccess(value -> sample.stop(graphqlTimer(operation, "success")))
+              .doOnError(
+                  error -> {
+                    sample.stop(graphqlTimer(operation, "error"));
+                    recordFailure(STAGE_GRAPHQL, error);
+                  })
+              .doFinally(signal -> graphqlInFlight.decrementAndGet());
+        });
+  }
+
+  /** Mide un envío SMTP bloqueante; las excepciones se cuentan y se relanzan. */
+  public void timeSmtp(Runnable send) {
+    Timer.Sample sample = Timer.start(registry);
+    smtpInFlight.incrementAndGet();
+    try {
+      send.run();
+      sample.stop(smtpTimer("success"));
+    } catch (RuntimeException e) {
+      sample.stop(smtpTimer("error"));
+      recordFailure(STAGE_SMTP, e);
+      throw e;
+    } finally {
+      smtpInFlight.decrementAndGet();
+    }
+  }
+
+  /** Tiempo que un envío esperó su lugar en el carril SMTP (ver SmtpLaneScheduler). */
+  public void recordLaneWait(String lane, long nanos) {
+    Timer.builder("notification.email.lane.wait")
+        .description("Espera de un envío por un lugar en su carril SMTP")
+        .tag("lane", lane)
+        .publishPercentileHistogram()
+        .register(registry)
+        .record(nanos, TimeUnit.NANOSECONDS);
+  }
+
+  public void recordFailure(String stage, Throwable cause) {
+    recordFailure(stage, cause.getClass().getSimpleName());
+  }
+
+  public void recordFailure(String stage, String cause) {
+    Counter.builder("notification.failures")
+        .description("Fallas por etapa y causa")
+        .tag("stage", stage)
+        .tag("cause", cause)
+        .register(registry)
+        .increment();
+  }
+
+  public void recordEngagementEmail(boolean success) {
+    Counter.builder("notification.engagement.emails")
+        .description("Emails de la campaña de engagement por resultado")
+        .tag("outcome", success ? "success" : "failure")
+        .register(registry)
+        .increment();
+  }
+
+  public void recordDuplicate() {
+    Counter.builder("notification.duplicates")
+        .description("Eventos descartados por ya haber sido notificados")
+        .register(registry)
+        .increment();
+  }
+
+  public void recordParked(String reason) {
+    Counter.builder("notification.parked")
+        .description("Mensajes con un evento inválido apartados en el parking queue")
+        .tag("reason", reason)
+        .register(registry)
+        .increment();
+  }
+
+  public void recordRetry(int attempt) {
+    Counter.builder("notification.retries")
+        .description("Mensajes reprogramados en las colas de espera, por número de intento")
+        .tag("attempt", Integer.toString(attempt))
+        .register(registry)
+        .increment();
+  }
+
+  public void recordDeadLetter(String reason) {
+    Counter.builder("notification.dead_letters")
+        .description("Mensajes enviados a la DLQ por causa")
+        .tag("reason", reason)
+        .register(registry)
+        .increment();
+  }
+
+  private Timer graphqlTimer(String operation, String outcome) {
+    return Timer.builder("notification.graphql.latency")
+        .description("Latencia de las consultas al authentication-service")
+        .tag("operation", operation)
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .register(registry);
+  }
+
+  private Timer smtpTimer(String outcome) {
+    return Timer.builder("notification.smtp.send")
+        .description("Latencia de los envíos SMTP")
+        .tag("outcome", outcome)
+        .publishPercentileHistogram()
+        .register(registry);
+  }
+}
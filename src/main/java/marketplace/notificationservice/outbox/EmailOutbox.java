@@ -0,0 +1,721 @@
+package marketplace.notificationservice.outbox;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.Service.EmailService;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.retry.FailureClassifier;
+import marketplace.notificationservice.retry.NotificationRetryPublisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Outbox local y durable para los emails ya renderizados. El consumidor agrega el email al journal
+ * y confirma el mensaje AMQP en cuanto el registro está en disco; un pool de workers lo envía por
+ * SMTP después, con reintentos, así que la latencia o las caídas del SMTP ya no afectan el ack.
+ *
+ * <p>El journal son archivos segment-N.log de sólo-append. Cada registro lleva longitud, CRC32 y
+ * número de secuencia. Un único hilo escritor junta todo lo que se acumuló mientras hacía el fsync
+ * anterior y lo persiste con un solo force() (group commit). Los envíos exitosos se anotan en
+ * segment-N.ack; cuando un segmento sellado no tiene pendientes se borran ambos archivos. Al
+ * arrancar se leen los segmentos secuencialmente, se descarta una cola truncada por un corte a
+ * mitad de escritura y se reencolan los registros sin confirmar.
+ *
+ * <p>Un email que falla de forma permanente o agota max-attempts no se descarta: sus payloads de
+ * origen se publican en notification-queue.dlq y el registro se confirma recién cuando el broker
+ * confirmó esa publicación. Si la publicación falla, se vuelve a intentar con el mismo backoff.
+ */
+@Component
+@Slf4j
+public class EmailOutbox implements MeterBinder {
+
+  private static final int HEADER_BYTES = Integer.BYTES + Integer.BYTES + Long.BYTES;
+  private static final int MAX_BATCH = 1024;
+  private static final long MAX_RETRY_DELAY_MS = TimeUnit.MINUTES.toMillis(5);
+
+  private record PendingAppend(OutboxEmail email, CompletableFuture<Void> written) {}
+
+  /** Motivo por el que el email va a la DLQ en vez de volver a enviarse. */
+  private record Failure(String reason, String detail, int attempts) {}
+
+  private record Entry(
+      long sequence, OutboxEmail email, OutboxSegment segment, int attempt, Failure failure) {
+    Entry nextAttempt() {
+      return new Entry(sequence, email, segment, attempt + 1, failure);
+    }
+
+    Entry failed(Failure failure) {
+      return new Entry(sequence, email, segment, 0, failure);
+    }
+  }
+
+  private final EmailService emailService;
+  private final NotificationMetrics metrics;
+  private final NotificationRetryPublisher retryPublisher;
+  private final boolean enabled;
+  private final Path directory;
+  private final long segmentBytes;
+  private final int maxPending;
+  private final int senders;
+  private final int maxAttempts;
+  private final long retryDelayMs;
+
+  private final BlockingQueue<PendingAppend> appendQueue = new LinkedBlockingQueue<>();
+  private final BlockingQueue<Entry> sendQueue = new LinkedBlockingQueue<>();
+  private final ConcurrentSkipListMap<Long, OutboxSegment> segments = new ConcurrentSkipListMap<>();
+  private final AtomicInteger pendingCount = new AtomicInteger();
+  private final CRC32 crc = new CRC32();
+
+  private volatile boolean running;
+  private volatile Semaphore pendingPermits;
+  private volatile Timer commitTimer;
+  private volatile DistributionSummary commitBatchSize;
+  private Thread writer;
+  private ExecutorService senderPool;
+  private ScheduledExecutorService retryScheduler;
+  // Sólo los usa el hilo escritor una vez arrancado
+  private OutboxSegment active;
+  private long nextSequence;
+
+  public EmailOutbox(
+      EmailService emailService,
+      NotificationMetrics metrics,
+      NotificationRetryPublisher retryPublisher,
+      @Value("${notification.outbox.enabled:false}") boolean enabled,
+      @Value("${notification.outbox.dir:data/outbox}") String directory,
+      @Value("${notification.outbox.segment-bytes:67108864}") long segmentBytes,
+      @Value("${notification.outbox.max-pending:100000}") int maxPending,
+      @Value("${notification.outbox.senders:8}") int senders,
+      @Value("${notification.outbox.max-attempts:10}") int maxAttempts,
+      @Value("${notification.outbox.retry-delay-ms:1000}") long retryDelayMs) {
+    this.emailService = emailService;
+    this.metrics = metrics;
+    this.retryPublisher = retryPublisher;
+    this.enabled = enabled;
+    this.directory = Path.of(directory);
+    this.segmentBytes = segmentBytes;
+    this.maxPending = maxPending;
+    this.senders = senders;
+    this.maxAttempts = maxAttempts;
+    this.retryDelayMs = retryDelayMs;
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    if (!enabled) {
+      return;
+    }
+    Files.createDirectories(directory);
+
+    long started = System.nanoTime();
+    List<Entry> replayed = replay();
+    active = OutboxSegment.create(directory, nextSequence);
+    segments.put(active.firstSequence, active);
+    log.info(
+        "Outbox en {}: {} emails pendientes recuperados de {} segmentos en {} ms",
+        directory.toAbsolutePath(),
+        replayed.size(),
+        segments.size() - 1,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+    // Los pendientes recuperados ocupan lugar: si superan max-pending, append espera a que se
+    // envíen (el semáforo puede arrancar en negativo)
+    pendingCount.set(replayed.size());
+    pendingPermits = new Semaphore(maxPending - replayed.size());
+    sendQueue.addAll(replayed);
+
+    running = true;
+    writer = Thread.ofPlatform().name("outbox-writer").daemon().start(this::writeLoop);
+    retryScheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("outbox-retry").daemon().factory());
+    senderPool =
+        Executors.newFixedThreadPool(
+            senders, Thread.ofPlatform().name("outbox-sender-", 0).daemon().factory());
+    for (int i = 0; i < senders; i++) {
+      senderPool.submit(this::sendLoop);
+    }
+  }
+
+  /**
+   * Agrega el email al journal. El future se completa cuando el registro quedó en disco (después
+   * del fsync de su grupo); recién entonces se puede confirmar el mensaje de origen. Si el outbox
+   * tiene max-pending emails sin enviar, espera a que se libere lugar, de modo que la
+   * contrapresión llega hasta RabbitMQ en vez de crecer en memoria. Si el outbox se apaga mientras
+   * espera, falla con OutboxWriteException y el mensaje de origen vuelve a la cola.
+   */
+  public CompletableFuture<Void> append(OutboxEmail email) {
+    try {
+      // Con el outbox lleno nadie libera lugar después de shutdown(): se vuelve a mirar running
+      while (!pendingPermits.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+        if (!running) {
+          return CompletableFuture.failedFuture(
+              new OutboxWriteException("El outbox no está activo", null));
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return CompletableFuture.failedFuture(
+          new OutboxWriteException("Interrumpido esperando lugar en el outbox", e));
+    }
+    if (!running) {
+      pendingPermits.release();
+      return CompletableFuture.failedFuture(
+          new OutboxWriteException("El outbox no está activo", null));
+    }
+    return enqueue(email);
+  }
+
+  /**
+   * Igual que {@link #append} pero nunca bloquea: si el outbox está lleno falla al instante con
+   * OutboxWriteException (transitoria, el mensaje de origen va a una cola de espera). Es la
+   * variante para hilos que no pueden esperar, como el event loop de WebClient en el modo
+   * reactivo del consumidor.
+   */
+  public CompletableFuture<Void> tryAppend(OutboxEmail email) {
+    if (!running) {
+      return CompletableFuture.failedFuture(
+          new OutboxWriteException("El outbox no está activo", null));
+    }
+    if (!pendingPermits.tryAcquire()) {
+      return CompletableFuture.failedFuture(
+          new OutboxWriteException("El outbox tiene " + maxPending + " emails sin enviar", null));
+    }
+    return enqueue(email);
+  }
+
+  private CompletableFuture<Void> enqueue(OutboxEmail email) {
+    pendingCount.incrementAndGet();
+    CompletableFuture<Void> written = new CompletableFuture<>();
+    appendQueue.add(new PendingAppend(email, written));
+    return written;
+  }
+
+  private void writeLoop() {
+    List<PendingAppend> batch = new ArrayList<>(MAX_BATCH);
+    while (running || !appendQueue.isEmpty()) {
+      try {
+        PendingAppend first = appendQueue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        // Todo lo que llegó durante el fsync anterior va en este mismo grupo
+        batch.add(first);
+        appendQueue.drainTo(batch, MAX_BATCH - 1);
+        commit(batch);
+      } catch (InterruptedException e) {
+        if (!running) {
+          break;
+        }
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void commit(List<PendingAppend> batch) {
+    long started = System.nanoTime();
+    OutboxSegment batchSegment = active;
+    long batchStart = active.size;
+    List<Entry> entries = new ArrayList<>(batch.size());
+    try {
+      for (PendingAppend pending : batch) {
+        entries.add(write(pending.email()));
+      }
+      active.logChannel.force(false);
+    } catch (IOException e) {
+      log.error("Error al escribir {} emails en el outbox: {}", batch.size(), e.getMessage(), e);
+      metrics.recordFailure(NotificationMetrics.STAGE_OUTBOX, e);
+      for (Entry entry : entries) {
+        entry.segment().pending.decrementAndGet();
+      }
+      discardBatch(batchSegment, batchStart);
+      for (PendingAppend pending : batch) {
+        release();
+        pending.written().completeExceptionally(
+            new OutboxWriteException("No se pudo persistir el email en el outbox", e));
+      }
+      return;
+    }
+
+    if (commitTimer != null) {
+      commitTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+      commitBatchSize.record(batch.size());
+    }
+    for (PendingAppend pending : batch) {
+      pending.written().complete(null);
+    }
+    sendQueue.addAll(entries);
+  }
+
+  private Entry write(OutboxEmail email) throws IOException {
+    byte[] payload = encode(email);
+    int recordBytes = HEADER_BYTES + payload.length;
+    // Un segmento sellado sigue activo sólo si falló la creación del siguiente
+    if (active.sealed || (active.size > 0 && active.size + recordBytes > segmentBytes)) {
+      roll();
+    }
+
+    long sequence = nextSequence++;
+    crc.reset();
+    crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+    crc.update(payload);
+
+    ByteBuffer record = ByteBuffer.allocate(recordBytes);
+    record.putInt(payload.length).putInt((int) crc.getValue()).putLong(sequence).put(payload);
+    record.flip();
+    while (record.hasRemaining()) {
+      active.logChannel.write(record);
+    }
+    active.size += recordBytes;
+    active.pending.incrementAndGet();
+    return new Entry(sequence, email, active, 0, null);
+  }
+
+  private void roll() throws IOException {
+    OutboxSegment sealed = active;
+    if (!sealed.sealed) {
+      sealed.seal();
+    }
+    active = OutboxSegment.create(directory, nextSequence);
+    segments.put(active.firstSequence, active);
+    compactIfDone(sealed);
+  }
+
+  /**
+   * Deshace un grupo que falló a mitad de camino. Sus appends fallan y los mensajes de origen
+   * vuelven a la cola, así que los registros que alcanzaron a escribirse no pueden quedar en el
+   * journal: al arrancar se enviarían además del reintento. El segmento donde empezó el grupo
+   * vuelve a su tamaño anterior y los que el grupo abrió al rotar se borran enteros.
+   */
+  private void discardBatch(OutboxSegment batchSegment, long batchStart) {
+    for (OutboxSegment opened :
+        List.copyOf(segments.tailMap(batchSegment.firstSequence, false).values())) {
+      try {
+        opened.delete();
+      } catch (IOException e) {
+        log.warn("No se pudo borrar el segmento {}: {}", opened.logPath, e.getMessage());
+      }
+      segments.remove(opened.firstSequence);
+    }
+    if (active == batchSegment && !batchSegment.sealed) {
+      try {
+        batchSegment.truncate(batchStart);
+      } catch (IOException e) {
+        log.error(
+            "No se pudo descartar el grupo fallido de {}: {}",
+            batchSegment.logPath.getFileName(),
+            e.getMessage());
+        abandonActiveSegment();
+      }
+      return;
+    }
+
+    // roll() ya selló el segmento del grupo: se recorta (si el grupo llegó a escribir en él) y se
+    // sigue en uno nuevo
+    if (batchSegment.size > batchStart) {
+      try {
+        batchSegment.truncate(batchStart);
+      } catch (IOException e) {
+        log.error(
+            "No se pudo descartar el grupo fallido de {}: {}",
+            batchSegment.logPath.getFileName(),
+            e.getMessage());
+      }
+    }
+    active = batchSegment;
+    openNextSegment(batchSegment);
+  }
+
+  /**
+   * Si ni siquiera se puede truncar, el segmento activo puede terminar en un registro a medias; al
+   * reproducirlo, la lectura se cortaría ahí. Se sella tal cual y se sigue en un segmento nuevo.
+   */
+  private void abandonActiveSegment() {
+    OutboxSegment failed = active;
+    try {
+      failed.seal();
+    } catch (IOException ignored) {
+      failed.sealed = true;
+    }
+    openNextSegment(failed);
+  }
+
+  private void openNextSegment(OutboxSegment failed) {
+    try {
+      active = OutboxSegment.create(directory, nextSequence);
+      segments.put(active.firstSequence, active);
+    } catch (IOException e) {
+      // Queda activo el anterior, ya sellado: el próximo grupo volverá a intentarlo (ver write)
+      log.error("No se pudo crear un segmento nuevo del outbox: {}", e.getMessage());
+      active = failed;
+      return;
+    }
+    compactIfDone(failed);
+  }
+
+  private void sendLoop() {
+    while (running) {
+      Entry entry;
+      try {
+        entry = sendQueue.poll(100, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        return;
+      }
+      if (entry == null) {
+        continue;
+      }
+      if (entry.failure() != null) {
+        deadLetter(entry);
+      } else {
+        send(entry);
+      }
+    }
+  }
+
+  private void send(Entry entry) {
+    OutboxEmail email = entry.email();
+    try {
+      emailService.sendEmail(email.to(), email.subject(), email.text(), email.htmlBody());
+      log.info("Email enviado exitosamente a: {}", email.to());
+      acknowledge(entry);
+    } catch (Exception e) {
+      // Una dirección rechazada o un email mal formado no se arreglan reintentando
+      boolean permanent = !FailureClassifier.isTransient(e);
+      if (permanent || entry.attempt() + 1 >= maxAttempts) {
+        log.error(
+            "No se pudo enviar el email a {} después de {} intentos, va a la DLQ: {}",
+            email.to(),
+            entry.attempt() + 1,
+            e.getMessage(),
+            e);
+        metrics.recordFailure(
+            NotificationMetrics.STAGE_OUTBOX, permanent ? "PermanentFailure" : "MaxAttempts");
+        String detail = (permanent ? "" : "Sin más intentos: ") + e.getMessage();
+        deadLetter(
+            entry.failed(new Failure(e.getClass().getSimpleName(), detail, entry.attempt() + 1)));
+        return;
+      }
+      long delay = retryDelay(entry.attempt());
+      log.warn(
+          "Falló el envío a {} (intento {}), se reintenta en {} ms: {}",
+          email.to(),
+          entry.attempt() + 1,
+          delay,
+          e.getMessage());
+      scheduleRetry(entry.nextAttempt(), delay);
+    }
+  }
+
+  /**
+   * Publica los payloads de origen en la DLQ y recién entonces confirma el registro. Si el broker
+   * no confirma, el registro sigue pendiente y se vuelve a publicar más tarde (nunca se reenvía el
+   * email). Un reintento después de una publicación parcial puede duplicar mensajes en la DLQ.
+   */
+  private void deadLetter(Entry entry) {
+    Failure failure = entry.failure();
+    try {
+      for (byte[] source : entry.email().sources()) {
+        retryPublisher.deadLetter(source, failure.attempts(), failure.reason(), failure.detail());
+      }
+    } catch (RuntimeException e) {
+      long delay = retryDelay(entry.attempt());
+      log.warn(
+          "No se pudo publicar en la DLQ el email a {} (intento {}), se reintenta en {} ms: {}",
+          entry.email().to(),
+          entry.attempt() + 1,
+          delay,
+          e.getMessage());
+      scheduleRetry(entry.nextAttempt(), delay);
+      return;
+    }
+    acknowledge(entry);
+  }
+
+  private long retryDelay(int attempt) {
+    return Math.min(retryDelayMs << Math.min(attempt, 20), MAX_RETRY_DELAY_MS);
+  }
+
+  // Si el outbox se está apagando el registro queda sin confirmar y se retoma al arrancar
+  private void scheduleRetry(Entry entry, long delay) {
+    if (running) {
+      retryScheduler.schedule(() -> sendQueue.add(entry), delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void acknowledge(Entry entry) {
+    OutboxSegment segment = entry.segment();
+    try {
+      segment.acknowledge(entry.sequence());
+    } catch (IOException e) {
+      // El email se reenviará al reiniciar; no es motivo para frenar los envíos
+      log.warn("No se pudo registrar el envío {} en el outbox: {}", entry.sequence(), e.getMessage());
+    }
+    release();
+    if (segment.pending.decrementAndGet() == 0) {
+      compactIfDone(segment);
+    }
+  }
+
+  private void release() {
+    pendingCount.decrementAndGet();
+    pendingPermits.release();
+  }
+
+  private void compactIfDone(OutboxSegment segment) {
+    if (!segment.isCompactable()) {
+      return;
+    }
+    try {
+      if (segment.delete()) {
+        segments.remove(segment.firstSequence);
+        log.debug("Segmento del outbox {} compactado", segment.logPath.getFileName());
+      }
+    } catch (IOException e) {
+      log.warn("No se pudo borrar el segmento {}: {}", segment.logPath, e.getMessage());
+    }
+  }
+
+  private List<Entry> replay() throws IOException {
+    List<Path> logs;
+    try (Stream<Path> files = Files.list(directory)) {
+      logs = files.filter(OutboxSegment::isSegmentLog).sorted().toList();
+    }
+
+    List<Entry> replayed = new ArrayList<>();
+    for (Path logPath : logs) {
+      OutboxSegment segment = OutboxSegment.open(logPath);
+      Set<Long> acked = readAcks(segment.ackPath);
+      int before = replayed.size();
+      readRecords(segment, acked, replayed);
+      segment.pending.set(replayed.size() - before);
+      if (segment.pending.get() == 0) {
+        segment.delete();
+      } else {
+        segments.put(segment.firstSequence, segment);
+      }
+    }
+    return replayed;
+  }
+
+  private void readRecords(OutboxSegment segment, Set<Long> acked, List<Entry> out)
+      throws IOException {
+    long validBytes = 0;
+    nextSequence = Math.max(nextSequence, segment.firstSequence);
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(segment.logPath), 1 << 16))) {
+      while (true) {
+        int length;
+        try {
+          length = in.readInt();
+        } catch (EOFException end) {
+          break;
+        }
+        if (length < 0 || length > segmentBytes) {
+          break;
+        }
+        int checksum = in.readInt();
+        long sequence = in.readLong();
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+
+        crc.reset();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+          break;
+        }
+        validBytes += HEADER_BYTES + length;
+        nextSequence = Math.max(nextSequence, sequence + 1);
+        if (!acked.contains(sequence)) {
+          out.add(new Entry(sequence, decode(segment, sequence, payload), segment, 0, null));
+        }
+      }
+    } catch (EOFException truncated) {
+      // registro a medio escribir al final del segmento: se descarta abajo
+    }
+
+    if (validBytes < Files.size(segment.logPath)) {
+      log.warn(
+          "Segmento {} truncado en {} bytes (escritura incompleta)",
+          segment.logPath.getFileName(),
+          validBytes);
+      try (FileChannel channel = FileChannel.open(segment.logPath, StandardOpenOption.WRITE)) {
+        channel.truncate(validBytes);
+      }
+    }
+  }
+
+  private static Set<Long> readAcks(Path ackPath) throws IOException {
+    Set<Long> acked = new HashSet<>();
+    if (!Files.exists(ackPath)) {
+      return acked;
+    }
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(ackPath), 1 << 16))) {
+      while (true) {
+        acked.add(in.readLong());
+      }
+    } catch (EOFException end) {
+      return acked;
+    }
+  }
+
+  private static byte[] encode(OutboxEmail email) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + email.text().length() * 2);
+    DataOutputStream out = new DataOutputStream(bytes);
+    writeString(out, email.to());
+    writeString(out, email.subject());
+    writeString(out, email.text());
+    writeString(out, email.htmlBody());
+    out.writeInt(email.sources().size());
+    for (byte[] source : email.sources()) {
+      out.writeInt(source.length);
+      out.write(source);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Un registro con CRC válido que no alcanza para un email completo no es una escritura cortada
+   * (esas no pasan el CRC): se corta el arranque en vez de enviar o descartar algo a medias.
+   */
+  private static OutboxEmail decode(OutboxSegment segment, long sequence, byte[] payload)
+      throws IOException {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+      String to = readString(in);
+      String subject = readString(in);
+      String text = readString(in);
+      String htmlBody = readString(in);
+      int count = in.readInt();
+      if (count < 0 || in.available() < (long) count * Integer.BYTES) {
+        throw new EOFException("cantidad de payloads de origen inválida: " + count);
+      }
+      List<byte[]> sources = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        byte[] source = new byte[in.readInt()];
+        in.readFully(source);
+        sources.add(source);
+      }
+      if (in.available() > 0) {
+        throw new IOException(in.available() + " bytes de más");
+      }
+      return new OutboxEmail(to, subject, text, htmlBody, sources);
+    } catch (IOException | NegativeArraySizeException e) {
+      throw new IOException(
+          "Registro "
+              + sequence
+              + " de "
+              + segment.logPath.getFileName()
+              + " ilegible: "
+              + e.getMessage(),
+          e);
+    }
+  }
+
+  // writeUTF está limitado a 64 KB, los cuerpos HTML pueden ser más largos
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  public int pendingCount() {
+    return pendingCount.get();
+  }
+
+  @PreDestroy
+  public void shutdown() throws InterruptedException {
+    if (!running) {
+      return;
+    }
+    // Los appends en curso se terminan de persistir; los envíos pendientes quedan en el journal y
+    // se retoman en el próximo arranque
+    running = false;
+    writer.join(TimeUnit.SECONDS.toMillis(10));
+    senderPool.shutdown();
+    retryScheduler.shutdownNow();
+    if (!senderPool.awaitTermination(30, TimeUnit.SECONDS)) {
+      senderPool.shutdownNow();
+    }
+    for (OutboxSegment segment : segments.values()) {
+      try {
+        segment.close();
+      } catch (IOException e) {
+        log.warn("No se pudo cerrar el segmento {}: {}", segment.logPath, e.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    Gauge.builder("notification.outbox.pending", pendingCount, AtomicInteger::get)
+        .description("Emails en el outbox esperando envío")
+        .register(registry);
+    Gauge.builder("notification.outbox.segments", segments, ConcurrentSkipListMap::size)
+        .description("Segmentos del journal del outbox en disco")
+        .register(registry);
+    commitBatchSize =
+        DistributionSummary.builder("notification.outbox.commit.batch")
+            .description("Emails persistidos por cada fsync (group commit)")
+            .register(registry);
+    commitTimer =
+        Timer.builder("notification.outbox.commit")
+            .description("Tiempo de escritura y fsync de cada grupo del outbox")
+            .publishPercentileHistogram()
+            .register(registry);
+  }
+}
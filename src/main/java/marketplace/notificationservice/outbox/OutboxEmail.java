@@ -0,0 +1,16 @@
+package marketplace.notificationservice.outbox;
+
+import java.util.List;
+
+/**
+ * Email ya renderizado, listo para enviarse. htmlBody es null cuando sólo hay texto plano. sources
+ * son los payloads AMQP de los eventos que lo originaron (varios en un resumen): si el email no se
+ * puede enviar, van a notification-queue.dlq para poder reinyectarlos.
+ */
+public record OutboxEmail(
+    String to, String subject, String text, String htmlBody, List<byte[]> sources) {
+
+  public OutboxEmail(String to, String subject, String text, String htmlBody) {
+    this(to, subject, text, htmlBody, List.of());
+  }
+}
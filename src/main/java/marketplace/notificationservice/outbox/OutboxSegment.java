@@ -0,0 +1,127 @@
+package marketplace.notificationservice.outbox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Un archivo del journal (segment-N.log) con su archivo de confirmaciones (segment-N.ack). El log
+ * sólo crece mientras el segmento está activo; cuando se sella y todos sus emails quedaron
+ * enviados, ambos archivos se borran.
+ */
+final class OutboxSegment {
+
+  private static final String PREFIX = "segment-";
+
+  final long firstSequence;
+  final Path logPath;
+  final Path ackPath;
+  final AtomicInteger pending = new AtomicInteger();
+  private final AtomicBoolean deleted = new AtomicBoolean();
+  private final FileChannel ackChannel;
+  private final ByteBuffer ackBuffer = ByteBuffer.allocate(Long.BYTES);
+  // Sólo el hilo escritor usa logChannel y size
+  FileChannel logChannel;
+  long size;
+  volatile boolean sealed;
+
+  private OutboxSegment(long firstSequence, Path logPath, Path ackPath) throws IOException {
+    this.firstSequence = firstSequence;
+    this.logPath = logPath;
+    this.ackPath = ackPath;
+    this.ackChannel =
+        FileChannel.open(
+            ackPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+
+  static OutboxSegment create(Path dir, long firstSequence) throws IOException {
+    String base = PREFIX + String.format("%020d", firstSequence);
+    OutboxSegment segment =
+        new OutboxSegment(firstSequence, dir.resolve(base + ".log"), dir.resolve(base + ".ack"));
+    segment.logChannel =
+        FileChannel.open(
+            segment.logPath,
+            StandardOpenOption.CREATE_NEW,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+    return segment;
+  }
+
+  /** Segmento existente encontrado al arrancar; queda sellado, sólo se le agregan confirmaciones. */
+  static OutboxSegment open(Path logPath) throws IOException {
+    String filename = logPath.getFileName().toString();
+    String base = filename.substring(0, filename.length() - ".log".length());
+    long firstSequence = Long.parseLong(base.substring(PREFIX.length()));
+    OutboxSegment segment =
+        new OutboxSegment(firstSequence, logPath, logPath.resolveSibling(base + ".ack"));
+    segment.sealed = true;
+    return segment;
+  }
+
+  static boolean isSegmentLog(Path path) {
+    String filename = path.getFileName().toString();
+    return filename.startsWith(PREFIX) && filename.endsWith(".log");
+  }
+
+  /**
+   * Registra que el email se envió. No se hace fsync: si se pierde una confirmación el email se
+   * reenvía al arrancar (al menos una vez), pero nunca se pierde.
+   */
+  synchronized void acknowledge(long sequence) throws IOException {
+    ackBuffer.clear();
+    ackBuffer.putLong(sequence).flip();
+    while (ackBuffer.hasRemaining()) {
+      ackChannel.write(ackBuffer);
+    }
+  }
+
+  /** Descarta lo escrito después de size, esté el segmento activo o ya sellado. */
+  void truncate(long size) throws IOException {
+    if (logChannel != null) {
+      logChannel.truncate(size);
+      logChannel.force(false);
+    } else {
+      try (FileChannel channel = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+        channel.truncate(size);
+        channel.force(false);
+      }
+    }
+    this.size = size;
+  }
+
+  void seal() throws IOException {
+    logChannel.force(false);
+    logChannel.close();
+    logChannel = null;
+    sealed = true;
+  }
+
+  boolean isCompactable() {
+    return sealed && pending.get() == 0 && !deleted.get();
+  }
+
+  /** Borra el segmento; es idempotente porque el sellado y la última confirmación compiten. */
+  boolean delete() throws IOException {
+    if (!deleted.compareAndSet(false, true)) {
+      return false;
+    }
+    close();
+    Files.deleteIfExists(logPath);
+    Files.deleteIfExists(ackPath);
+    return true;
+  }
+
+  void close() throws IOException {
+    synchronized (this) {
+      ackChannel.close();
+    }
+    if (logChannel != null) {
+      logChannel.close();
+    }
+  }
+}
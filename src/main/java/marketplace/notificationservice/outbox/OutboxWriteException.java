@@ -0,0 +1,12 @@
+package marketplace.notificationservice.outbox;
+
+/**
+ * No se pudo persistir un email en el outbox. Es una falla transitoria: el consumidor reprograma
+ * el mensaje de origen en una cola de espera (ver NotificationRetryPublisher).
+ */
+public class OutboxWriteException extends RuntimeException {
+
+  public OutboxWriteException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,115 @@
+package marketplace.notificationservice.retry;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.GetResponse;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.config.RabbitMQConfig;
+import org.springframework.amqp.core.AmqpAdmin;
+import org.springframework.amqp.core.QueueInformation;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Devuelve mensajes de notification-queue.dlq a notification-exchange, por ejemplo después de
+ * corregir la causa de una falla masiva. Trabaja en lotes sobre un mismo canal: basicGet sin ack,
+ * publica, espera las confirmaciones del lote y recién entonces confirma los mensajes tomados de
+ * la DLQ, así que una caída a mitad de camino puede duplicar un lote pero no perderlo.
+ *
+ * <p>Los reinyectados llevan el header x-dlq-replayed: si el email había quedado en el outbox y
+ * el outbox se rindió, el evento ya figura como notificado en EventDeduplicator y sin el header
+ * el consumidor lo descartaría como duplicado.
+ */
+@Component
+@Slf4j
+public class DeadLetterReplayer {
+
+  public static final String REPLAYED_HEADER = "x-dlq-replayed";
+
+  private static final int BATCH_SIZE = 100;
+  private static final long CONFIRM_TIMEOUT_MS = 10_000;
+
+  private final RabbitTemplate rabbitTemplate;
+  private final AmqpAdmin amqpAdmin;
+
+  public DeadLetterReplayer(RabbitTemplate rabbitTemplate, AmqpAdmin amqpAdmin) {
+    this.rabbitTemplate = rabbitTemplate;
+    this.amqpAdmin = amqpAdmin;
+  }
+
+  public long pendingCount() {
+    QueueInformation info = amqpAdmin.getQueueInfo(RabbitMQConfig.DEAD_LETTER_QUEUE_NAME);
+    return info == null ? 0 : info.getMessageCount();
+  }
+
+  /**
+   * Reinyecta hasta max mensajes (null = todos), opcionalmente sólo los de un x-failure-reason.
+   * Los que no coinciden con el filtro vuelven a la DLQ. Los reinyectados arrancan de nuevo con
+   * todos sus intentos.
+   */
+  public int replay(Integer max, String reason) {
+    int limit = max == null ? Integer.MAX_VALUE : max;
+    int replayed =
+        rabbitTemplate.execute(
+            channel -> {
+              channel.confirmSelect();
+              int total = 0;
+              int inspected = 0;
+              // Con filtro, no revisar más mensajes de los que había al empezar: los que se
+              // devuelven a la DLQ quedan al final y se volverían a leer
+              long available = channel.messageCount(RabbitMQConfig.DEAD_LETTER_QUEUE_NAME);
+              while (total < limit && inspected < available) {
+                long lastTag = -1;
+                int batch = 0;
+                while (batch < BATCH_SIZE && total + batch < limit && inspected < available) {
+                  GetResponse response =
+                      channel.basicGet(RabbitMQConfig.DEAD_LETTER_QUEUE_NAME, false);
+                  if (response == null) {
+                    available = inspected;
+                    break;
+                  }
+                  inspected++;
+                  lastTag = response.getEnvelope().getDeliveryTag();
+                  Map<String, Object> headers = headers(response.getProps());
+                  if (reason != null
+                      && !reason.equals(String.valueOf(
+                          headers.get(NotificationRetryPublisher.FAILURE_REASON_HEADER)))) {
+                    channel.basicPublish(
+                        "",
+                        RabbitMQConfig.DEAD_LETTER_QUEUE_NAME,
+                        response.getProps(),
+                        response.getBody());
+                    continue;
+                  }
+                  headers.remove(NotificationRetryPublisher.ATTEMPT_HEADER);
+                  headers.remove(NotificationRetryPublisher.FAILURE_REASON_HEADER);
+                  headers.remove(NotificationRetryPublisher.FAILURE_MESSAGE_HEADER);
+                  headers.remove(NotificationRetryPublisher.FAILED_AT_HEADER);
+                  headers.put(REPLAYED_HEADER, System.currentTimeMillis());
+                  channel.basicPublish(
+                      RabbitMQConfig.EXCHANGE_NAME,
+                      RabbitMQConfig.ROUTING_KEY,
+                      response.getProps().builder().headers(headers).build(),
+                      response.getBody());
+                  batch++;
+                }
+                if (lastTag < 0) {
+                  break;
+                }
+                channel.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MS);
+                channel.basicAck(lastTag, true);
+                total += batch;
+              }
+              return total;
+            });
+    log.info("Reinyectados {} mensajes desde {}", replayed, RabbitMQConfig.DEAD_LETTER_QUEUE_NAME);
+    return replayed;
+  }
+
+  private static Map<String, Object> headers(AMQP.BasicProperties properties) {
+    return properties.getHeaders() == null
+        ? new HashMap<>()
+        : new HashMap<>(properties.getHeaders());
+  }
+}
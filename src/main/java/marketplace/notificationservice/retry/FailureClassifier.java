@@ -0,0 +1,129 @@
+package marketplace.notificationservice.retry;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+import marketplace.notificationservice.Service.ConcurrencyLimitExceededException;
+import marketplace.notificationservice.outbox.OutboxWriteException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailPreparationException;
+import org.springframework.mail.MailSendException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+/**
+ * Decide si vale la pena reintentar una falla. Transitorias: red, timeouts, 5xx/429 del
+ * authentication-service, SMTP caído o sin autenticar. Permanentes: 4xx de GraphQL, direcciones
+ * rechazadas por el servidor SMTP y emails o payloads mal formados. Lo que no se reconoce se trata
+ * como transitorio, max-attempts lo termina mandando a la DLQ.
+ */
+public final class FailureClassifier {
+
+  private FailureClassifier() {}
+
+  public static boolean isTransient(Throwable failure) {
+    if (isBackPressure(failure)) {
+      return true;
+    }
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof WebClientResponseException response) {
+        return response.getStatusCode().is5xxServerError()
+            || response.getStatusCode().value() == 429;
+      }
+      if (cause instanceof MailSendException send) {
+        return send.getFailedMessages().values().stream().noneMatch(FailureClassifier::isRejected);
+      }
+      if (cause instanceof SendFailedException rejected) {
+        return !isRejected(rejected);
+      }
+      if (cause instanceof MailParseException
+          || cause instanceof MailPreparationException
+          || cause instanceof JsonProcessingException
+          || cause instanceof IllegalArgumentException) {
+        return false;
+      }
+      if (cause instanceof WebClientRequestException
+          || cause instanceof IOException
+          || cause instanceof TimeoutException
+          || cause instanceof OutboxWriteException) {
+        return true;
+      }
+      if (cause.getCause() == cause) {
+        break;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Circuit breaker abierto, bulkhead lleno o límite adaptativo alcanzado: el mensaje ni siquiera llegó a intentarse, así que no
+   * cuenta como intento (ver NotificationRetryPublisher).
+   */
+  public static boolean isBackPressure(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof CallNotPermittedException
+          || cause instanceof BulkheadFullException
+          || cause instanceof ConcurrencyLimitExceededException) {
+        return true;
+      }
+      if (cause.getCause() == cause) {
+        break;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * El servidor está sobrecargado y lo dice: 429/503 del authentication-service, respuestas SMTP
+   * 4xx (421 "try again later", 450/451/452 de cuota) o un timeout. Es la señal para que
+   * AdaptiveLimit baje la concurrencia. Las excepciones SMTP de Jakarta Mail traen la respuesta
+   * del servidor al principio del mensaje, de ahí se lee el código.
+   */
+  public static boolean isOverload(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof WebClientResponseException response) {
+        int status = response.getStatusCode().value();
+        return status == 429 || status == 503;
+      }
+      if (cause instanceof TimeoutException) {
+        return true;
+      }
+      if (cause instanceof MailSendException send
+          && send.getFailedMessages().values().stream().anyMatch(FailureClassifier::isOverload)) {
+        return true;
+      }
+      if (cause instanceof MessagingException messaging) {
+        for (Exception next = messaging; next != null; ) {
+          if (isSmtpTransientReply(next.getMessage())) {
+            return true;
+          }
+          next = next instanceof MessagingException chained ? chained.getNextException() : null;
+        }
+      }
+      if (cause.getCause() == cause) {
+        break;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isSmtpTransientReply(String message) {
+    return message != null
+        && message.length() >= 3
+        && message.charAt(0) == '4'
+        && Character.isDigit(message.charAt(1))
+        && Character.isDigit(message.charAt(2))
+        && (message.length() == 3 || !Character.isDigit(message.charAt(3)));
+  }
+
+  // El servidor rechazó alguna dirección: reenviar el mismo email no va a cambiar la respuesta
+  private static boolean isRejected(Exception failure) {
+    return failure instanceof SendFailedException sendFailed
+        && sendFailed.getInvalidAddresses() != null
+        && sendFailed.getInvalidAddresses().length > 0;
+  }
+}
@@ -0,0 +1,170 @@
+package marketplace.notificationservice.retry;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.config.RabbitMQConfig;
+import marketplace.notificationservice.consumer.InvalidRouteEventException;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Reintentos sin dormir en el consumidor: el mensaje fallido se vuelve a publicar en la cola de
+ * espera que corresponde a su intento (ver RabbitMQConfig.retryTopology) y el original se
+ * confirma. El intento viaja en el header x-retry-attempt. Las fallas permanentes y las que
+ * agotan max-attempts van a notification-queue.dlq con la causa en los headers. Los mensajes que
+ * ni siquiera son un evento válido van aparte, a notification-queue.parking (ver park).
+ *
+ * <p>Se espera la confirmación del broker antes de retornar; si la publicación falla la excepción
+ * llega al listener y el mensaje original no se confirma, así que no se pierde.
+ */
+@Component
+@Slf4j
+public class NotificationRetryPublisher {
+
+  public static final String ATTEMPT_HEADER = "x-retry-attempt";
+  public static final String FAILURE_REASON_HEADER = "x-failure-reason";
+  public static final String FAILURE_MESSAGE_HEADER = "x-failure-message";
+  public static final String FAILED_AT_HEADER = "x-failed-at";
+  public static final String INVALID_FIELD_HEADER = "x-invalid-field";
+  public static final String PAYLOAD_EXCERPT_HEADER = "x-payload-excerpt";
+
+  private static final long CONFIRM_TIMEOUT_MS = 5_000;
+
+  private final RabbitTemplate rabbitTemplate;
+  private final NotificationMetrics metrics;
+  private final long[] delays;
+  private final int maxAttempts;
+  private final double jitter;
+
+  public NotificationRetryPublisher(
+      RabbitTemplate rabbitTemplate,
+      NotificationMetrics metrics,
+      @Value("${notification.retry.delays-ms:1000,5000,30000,120000,600000}") long[] delays,
+      @Value("${notification.retry.max-attempts:5}") int maxAttempts,
+      @Value("${notification.retry.jitter:0.2}") double jitter) {
+    this.rabbitTemplate = rabbitTemplate;
+    this.metrics = metrics;
+    this.delays = delays;
+    this.maxAttempts = maxAttempts;
+    this.jitter = jitter;
+  }
+
+  /**
+   * Programa el siguiente intento si la falla es transitoria y quedan intentos; si no, manda el
+   * mensaje a la DLQ. attempt es el número de reintentos ya hechos (0 en la primera entrega).
+   */
+  public void retryOrDeadLetter(byte[] payload, int attempt, Throwable failure) {
+    String reason = failure.getClass().getSimpleName();
+    if (FailureClassifier.isBackPressure(failure)) {
+      // Mientras el breaker esté abierto el mensaje da vueltas por las colas de espera sin gastar
+      // intentos
+      scheduleRetry(payload, attempt, Math.max(1, attempt), reason);
+    } else if (!FailureClassifier.isTransient(failure)) {
+      deadLetter(payload, attempt, reason, failure.getMessage());
+    } else if (attempt + 1 >= maxAttempts) {
+      deadLetter(payload, attempt, reason, "Sin más intentos: " + failure.getMessage());
+    } else {
+      scheduleRetry(payload, attempt + 1, attempt + 1, reason);
+    }
+  }
+
+  /** Igual que retryOrDeadLetter, publicando fuera del hilo que llama (modo reactivo). */
+  public Mono<Void> retryOrDeadLetterAsync(byte[] payload, int attempt, Throwable failure) {
+    return Mono.<Void>fromRunnable(() -> retryOrDeadLetter(payload, attempt, failure))
+        .subscribeOn(Schedulers.boundedElastic());
+  }
+
+  public void deadLetter(byte[] payload, int attempt, String reason, String detail) {
+    MessageProperties properties = properties(attempt);
+    properties.setHeader(FAILURE_REASON_HEADER, reason);
+    if (detail != null) {
+      properties.setHeader(FAILURE_MESSAGE_HEADER, detail);
+    }
+    properties.setHeader(FAILED_AT_HEADER, System.currentTimeMillis());
+
+    publish(RabbitMQConfig.DEAD_LETTER_QUEUE_NAME, new Message(payload, properties));
+    metrics.recordDeadLetter(reason);
+    log.error(
+        "Mensaje enviado a {} ({}, intento {}): {}",
+        RabbitMQConfig.DEAD_LETTER_QUEUE_NAME,
+        reason,
+        attempt,
+        detail);
+  }
+
+  public Mono<Void> deadLetterAsync(byte[] payload, int attempt, String reason, String detail) {
+    return Mono.<Void>fromRunnable(() -> deadLetter(payload, attempt, reason, detail))
+        .subscribeOn(Schedulers.boundedElastic());
+  }
+
+  /**
+   * Aparta un mensaje cuyo cuerpo no es un RouteCompleteEvent válido. Se copia tal cual llegó
+   * (cuerpo y headers) para poder inspeccionarlo o corregirlo y volver a publicarlo; el motivo, el
+   * campo y un extracto van en headers. No se reintenta: fallaría igual.
+   */
+  public void park(Message failed, InvalidRouteEventException error) {
+    MessageProperties properties = new MessageProperties();
+    properties.getHeaders().putAll(failed.getMessageProperties().getHeaders());
+    properties.setContentType(failed.getMessageProperties().getContentType());
+    properties.setContentEncoding(failed.getMessageProperties().getContentEncoding());
+    properties.setDeliveryMode(MessageProperties.DEFAULT_DELIVERY_MODE);
+    properties.setHeader(FAILURE_REASON_HEADER, error.getReason().name());
+    properties.setHeader(FAILURE_MESSAGE_HEADER, error.getMessage());
+    if (error.getField() != null) {
+      properties.setHeader(INVALID_FIELD_HEADER, error.getField());
+    }
+    properties.setHeader(PAYLOAD_EXCERPT_HEADER, error.getExcerpt());
+    properties.setHeader(FAILED_AT_HEADER, System.currentTimeMillis());
+
+    publish(RabbitMQConfig.PARKING_QUEUE_NAME, new Message(failed.getBody(), properties));
+    metrics.recordParked(error.getReason().name());
+    log.warn(
+        "Mensaje apartado en {} ({}, campo {})",
+        RabbitMQConfig.PARKING_QUEUE_NAME,
+        error.getReason(),
+        error.getField());
+  }
+
+  public Mono<Void> parkAsync(Message failed, InvalidRouteEventException error) {
+    return Mono.<Void>fromRunnable(() -> park(failed, error))
+        .subscribeOn(Schedulers.boundedElastic());
+  }
+
+  private void scheduleRetry(byte[] payload, int attempt, int tier, String reason) {
+    long tierDelay = delays[Math.min(tier, delays.length) - 1];
+    // Expiración por mensaje <= TTL de la cola: el jitter reparte los reintentos de una misma
+    // caída sin que ninguno espere más que su nivel
+    long delay = tierDelay - (long) (tierDelay * jitter * ThreadLocalRandom.current().nextDouble());
+
+    MessageProperties properties = properties(attempt);
+    properties.setExpiration(Long.toString(delay));
+    publish(RabbitMQConfig.retryQueueName(tierDelay), new Message(payload, properties));
+    metrics.recordRetry(attempt);
+    log.warn("Reintento {} en {} ms por {}", attempt, delay, reason);
+  }
+
+  private void publish(String routingKey, Message message) {
+    rabbitTemplate.invoke(
+        operations -> {
+          operations.send(RabbitMQConfig.RETRY_EXCHANGE_NAME, routingKey, message);
+          operations.waitForConfirmsOrDie(CONFIRM_TIMEOUT_MS);
+          return null;
+        });
+  }
+
+  private static MessageProperties properties(int attempt) {
+    MessageProperties properties = new MessageProperties();
+    properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+    properties.setContentEncoding(StandardCharsets.UTF_8.name());
+    properties.setDeliveryMode(MessageProperties.DEFAULT_DELIVERY_MODE);
+    properties.setHeader(ATTEMPT_HEADER, attempt);
+    return properties;
+  }
+}
@@ -0,0 +1,142 @@
+package marketplace.notificationservice.scheduler;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.scheduler.CampaignRun.Progress;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checkpoints de las corridas de engagement: un archivo por corrida en checkpoint.dir (ver
+ * CampaignRun). Los archivos se conservan después de terminar, así un shard reentregado sabe que
+ * ya se hizo, y se borran al arrancar cuando superan max-age-hours. Una corrida sin terminar que
+ * empezó hace más de max-age-hours tampoco se retoma: sin ese límite una corrida que falla en
+ * cada cron (authentication-service caído) se retomaría para siempre y nunca empezaría otra. Con
+ * dir vacío las corridas no se persisten.
+ */
+@Component
+@Slf4j
+public class CampaignCheckpointStore {
+
+  private static final String SUFFIX = ".ckpt";
+
+  private final Path dir;
+  private final Duration maxAge;
+  private final Map<String, CampaignRun> active = new ConcurrentHashMap<>();
+  private volatile Progress lastFinished;
+
+  public CampaignCheckpointStore(
+      @Value("${scheduler.engagement.checkpoint.dir:data/campaign}") String dir,
+      @Value("${scheduler.engagement.checkpoint.max-age-hours:48}") long maxAgeHours) {
+    this.dir = dir.isBlank() ? null : Path.of(dir);
+    this.maxAge = Duration.ofHours(maxAgeHours);
+  }
+
+  @PostConstruct
+  public void start() throws IOException {
+    if (dir == null) {
+      return;
+    }
+    Files.createDirectories(dir);
+    FileTime cutoff = FileTime.from(Instant.now().minus(maxAge));
+    try (Stream<Path> files = Files.list(dir)) {
+      for (Path file : files.filter(this::isCheckpoint).toList()) {
+        if (Files.getLastModifiedTime(file).compareTo(cutoff) < 0) {
+          Files.deleteIfExists(file);
+          log.info("Checkpoint vencido borrado: {}", file.getFileName());
+        }
+      }
+    }
+  }
+
+  /**
+   * Abre (o retoma) la corrida runId y la registra como activa hasta close. Si el checkpoint no se
+   * puede abrir la corrida sigue sólo en memoria, degradada, como cuando falla una escritura.
+   */
+  public CampaignRun open(String runId) {
+    CampaignRun run;
+    try {
+      run = CampaignRun.open(runId, dir != null ? dir.resolve(fileName(runId)) : null);
+    } catch (IOException e) {
+      log.error(
+          "No se pudo abrir el checkpoint de {}, la corrida sigue sin persistir su progreso: {}",
+          runId,
+          e.getMessage());
+      run = CampaignRun.inMemory(runId);
+      run.markDegraded();
+    }
+    active.put(runId, run);
+    return run;
+  }
+
+  public void close(CampaignRun run) {
+    active.remove(run.runId());
+    if (run.isFinished()) {
+      lastFinished = run.progress();
+    }
+    try {
+      run.close();
+    } catch (IOException e) {
+      log.warn("No se pudo cerrar el checkpoint de {}: {}", run.runId(), e.getMessage());
+    }
+  }
+
+  /**
+   * La corrida sin terminar más reciente cuyo runId empieza con prefix y que empezó hace menos de
+   * max-age-hours (según el header: el mtime lo renueva cada registro), si hay.
+   */
+  public Optional<String> findUnfinished(String prefix) {
+    if (dir == null) {
+      return Optional.empty();
+    }
+    long startedAfter = System.currentTimeMillis() - maxAge.toMillis();
+    try (Stream<Path> files = Files.list(dir)) {
+      return files
+          .filter(this::isCheckpoint)
+          .sorted(Comparator.comparing(CampaignCheckpointStore::lastModified).reversed())
+          .map(file -> CampaignRun.unfinishedRunId(file, startedAfter))
+          .filter(runId -> runId != null && runId.startsWith(prefix))
+          .filter(runId -> !active.containsKey(runId))
+          .findFirst();
+    } catch (IOException e) {
+      log.warn("No se pudo listar {}: {}", dir, e.getMessage());
+      return Optional.empty();
+    }
+  }
+
+  public List<Progress> activeRuns() {
+    return active.values().stream().map(CampaignRun::progress).toList();
+  }
+
+  public Optional<Progress> lastFinished() {
+    return Optional.ofNullable(lastFinished);
+  }
+
+  private boolean isCheckpoint(Path file) {
+    return file.getFileName().toString().endsWith(SUFFIX);
+  }
+
+  private static FileTime lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file);
+    } catch (IOException e) {
+      return FileTime.fromMillis(0);
+    }
+  }
+
+  static String fileName(String runId) {
+    return runId.replaceAll("[^A-Za-z0-9._-]", "_") + SUFFIX;
+  }
+}
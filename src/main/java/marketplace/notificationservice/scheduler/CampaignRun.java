@@ -0,0 +1,385 @@
+package marketplace.notificationservice.scheduler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Estado de una corrida de engagement (o de un shard) con checkpoint en disco. El archivo es un
+ * log de sólo-agregado: un header con el runId y después un registro por usuario enviado o
+ * fallido, y cada tanto el cursor. Al reabrir una corrida se relee el log (un registro cortado al
+ * final se descarta) y se retoma: los usuarios ya enviados se saltan y la paginación arranca desde
+ * la página del cursor.
+ *
+ * <p>Sin archivo (checkpoint deshabilitado) el estado sólo vive en memoria. Lo mismo pasa desde
+ * que una escritura falla (markDegraded): la corrida sigue y el archivo queda en el último registro
+ * completo, así que un reinicio la retoma desde ahí y puede repetir los envíos posteriores.
+ *
+ * <p>El cursor es la cantidad de posiciones del listado de usuarios ya resueltas de forma
+ * contigua. Los envíos terminan fuera de orden (corren en paralelo), así que las posiciones
+ * resueltas más allá del cursor se llevan en un BitSet hasta que el hueco se cierra.
+ */
+@Slf4j
+public class CampaignRun implements Closeable {
+
+  static final int MAGIC = 0x4E434B50; // "NCKP"
+  static final int VERSION = 1;
+
+  private static final byte SENT = 1;
+  private static final byte FAILED = 2;
+  private static final byte CURSOR = 3;
+  private static final byte FINISHED = 4;
+
+  private static final int CURSOR_EVERY = 256;
+
+  /**
+   * Foto del progreso para GET /actuator/engagement. degraded: el checkpoint dejó de escribirse.
+   */
+  public record Progress(
+      String runId,
+      long startedAt,
+      Long finishedAt,
+      boolean resumed,
+      long cursor,
+      String lastUserId,
+      int sent,
+      int failed,
+      int processedThisSession,
+      double emailsPerSecond,
+      boolean degraded) {}
+
+  private final String runId;
+  private final Path file;
+  private final Set<String> sent = new HashSet<>();
+  private final Set<String> failed = new HashSet<>();
+  private final BitSet resolvedAhead = new BitSet();
+  private final long sessionStartNanos = System.nanoTime();
+  private long sessionEndNanos;
+  private final boolean resumed;
+  private long startedAt;
+  private long cursor;
+  private long writtenCursor;
+  private String lastUserId;
+  private int processedThisSession;
+  private Long finishedAt;
+  private boolean degraded;
+  private DataOutputStream out;
+
+  private CampaignRun(String runId, Path file, boolean resumed) {
+    this.runId = runId;
+    this.file = file;
+    this.resumed = resumed;
+  }
+
+  /** Abre la corrida runId en file: la retoma si el archivo existe, si no la crea. */
+  static CampaignRun open(String runId, Path file) throws IOException {
+    if (file == null) {
+      return inMemory(runId);
+    }
+    boolean exists = Files.exists(file);
+    CampaignRun run = new CampaignRun(runId, file, exists);
+    if (exists) {
+      run.replay();
+      run.out =
+          new DataOutputStream(
+              new BufferedOutputStream(
+                  Files.newOutputStream(file, StandardOpenOption.APPEND), 1 << 12));
+    } else {
+      run.startedAt = System.currentTimeMillis();
+      run.out =
+          new DataOutputStream(
+              new BufferedOutputStream(
+                  Files.newOutputStream(file, StandardOpenOption.CREATE_NEW), 1 << 12));
+      run.out.writeInt(MAGIC);
+      run.out.writeByte(VERSION);
+      run.out.writeUTF(runId);
+      run.out.writeLong(run.startedAt);
+      run.out.flush();
+    }
+    run.writtenCursor = run.cursor;
+    return run;
+  }
+
+  /** Una corrida nueva sin checkpoint: el estado sólo vive en memoria. */
+  static CampaignRun inMemory(String runId) {
+    CampaignRun run = new CampaignRun(runId, null, false);
+    run.startedAt = System.currentTimeMillis();
+    return run;
+  }
+
+  /**
+   * Lee sólo el header: runId y si la corrida ya terminó. null si el archivo no es válido, si la
+   * corrida terminó o si empezó antes de startedAfter (epoch ms).
+   */
+  static String unfinishedRunId(Path file, long startedAfter) {
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 12))) {
+      if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+        return null;
+      }
+      String runId = in.readUTF();
+      if (in.readLong() < startedAfter) {
+        return null;
+      }
+      try {
+        while (true) {
+          switch (in.readByte()) {
+            case SENT, FAILED -> in.readUTF();
+            case CURSOR -> {
+              in.readLong();
+              in.readUTF();
+            }
+            case FINISHED -> {
+              return null;
+            }
+            default -> {
+              return runId;
+            }
+          }
+        }
+      } catch (EOFException e) {
+        return runId;
+      }
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  private void replay() throws IOException {
+    long validBytes;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+      if (in.readInt() != MAGIC || in.readByte() != VERSION || !runId.equals(in.readUTF())) {
+        throw new IOException("Checkpoint de otra corrida o versión: " + file);
+      }
+      startedAt = in.readLong();
+      validBytes = 4 + 1 + 2 + utfLength(runId) + 8;
+
+      try {
+        while (true) {
+          byte type = in.readByte();
+          switch (type) {
+            case SENT -> {
+              String userId = in.readUTF();
+              sent.add(userId);
+              failed.remove(userId);
+              validBytes += 1 + 2 + utfLength(userId);
+            }
+            case FAILED -> {
+              String userId = in.readUTF();
+              failed.add(userId);
+              validBytes += 1 + 2 + utfLength(userId);
+            }
+            case CURSOR -> {
+              cursor = in.readLong();
+              lastUserId = in.readUTF();
+              validBytes += 1 + 8 + 2 + utfLength(lastUserId);
+            }
+            case FINISHED -> {
+              finishedAt = in.readLong();
+              validBytes += 1 + 8;
+            }
+            default -> throw new EOFException("Registro desconocido " + type);
+          }
+        }
+      } catch (EOFException e) {
+        // Fin del log, o un registro a medio escribir por un corte: se descarta
+      }
+    }
+    if (validBytes < Files.size(file)) {
+      log.warn("Checkpoint {} con cola incompleta, se trunca a {} bytes", file, validBytes);
+      try (var channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+        channel.truncate(validBytes);
+      }
+    }
+    log.info(
+        "Retomando corrida {}: {} enviados, {} fallidos, cursor {}",
+        runId,
+        sent.size(),
+        failed.size(),
+        cursor);
+  }
+
+  private static int utfLength(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      length += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+    }
+    return length;
+  }
+
+  public String runId() {
+    return runId;
+  }
+
+  public synchronized long cursor() {
+    return cursor;
+  }
+
+  public synchronized boolean isFinished() {
+    return finishedAt != null;
+  }
+
+  /** Si el usuario ya recibió el email en una sesión anterior de esta corrida. */
+  public synchronized boolean alreadySent(String userId) {
+    return userId != null && sent.contains(userId);
+  }
+
+  /** La posición no necesita envío (otro shard, o ya enviado antes): sólo avanza el cursor. */
+  public synchronized void skip(long position) {
+    resolve(position);
+  }
+
+  /**
+   * Registra el resultado del envío. Si el checkpoint no se puede escribir lanza
+   * UncheckedIOException, pero el estado en memoria (enviados, cursor) ya quedó actualizado.
+   */
+  public synchronized void record(long position, String userId, boolean success) {
+    processedThisSession++;
+    try {
+      if (userId != null) {
+        if (success) {
+          sent.add(userId);
+          failed.remove(userId);
+        } else {
+          failed.add(userId);
+        }
+        lastUserId = userId;
+        write(success ? SENT : FAILED, userId);
+      }
+    } finally {
+      resolve(position);
+    }
+  }
+
+  /**
+   * Deja de escribir el checkpoint después de un error de escritura; el resto de la corrida sólo
+   * se lleva en memoria.
+   *
+   * @return false si la corrida ya estaba degradada
+   */
+  public synchronized boolean markDegraded() {
+    if (degraded) {
+      return false;
+    }
+    degraded = true;
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException ignored) {
+        // el stream ya había fallado
+      }
+      out = null;
+    }
+    return true;
+  }
+
+  public synchronized boolean isDegraded() {
+    return degraded;
+  }
+
+  private void resolve(long position) {
+    if (position < cursor) {
+      return;
+    }
+    resolvedAhead.set((int) (position - cursor));
+    int advance = resolvedAhead.nextClearBit(0);
+    if (advance > 0) {
+      cursor += advance;
+      BitSet shifted = resolvedAhead.get(advance, Math.max(advance, resolvedAhead.length()));
+      resolvedAhead.clear();
+      resolvedAhead.or(shifted);
+    }
+    if (cursor - writtenCursor >= CURSOR_EVERY) {
+      writeCursor();
+    }
+  }
+
+  private void write(byte type, String userId) {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.writeByte(type);
+      out.writeUTF(userId);
+      // Sin fsync: un corte del proceso no pierde lo que ya está en el page cache, y un corte de
+      // máquina a lo sumo repite los últimos envíos
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo escribir el checkpoint " + file, e);
+    }
+  }
+
+  private void writeCursor() {
+    writtenCursor = cursor;
+    if (out == null) {
+      return;
+    }
+    try {
+      out.writeByte(CURSOR);
+      out.writeLong(cursor);
+      out.writeUTF(lastUserId != null ? lastUserId : "");
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo escribir el checkpoint " + file, e);
+    }
+  }
+
+  /** Marca la corrida como terminada; una corrida terminada no se retoma. */
+  public synchronized void finish() {
+    writeCursor();
+    finishedAt = System.currentTimeMillis();
+    sessionEndNanos = System.nanoTime();
+    if (out == null) {
+      return;
+    }
+    try {
+      out.writeByte(FINISHED);
+      out.writeLong(finishedAt);
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudo escribir el checkpoint " + file, e);
+    }
+  }
+
+  public synchronized Progress progress() {
+    long endNanos = finishedAt != null ? sessionEndNanos : System.nanoTime();
+    double elapsedSeconds = Math.max(1e-3, (endNanos - sessionStartNanos) / 1e9);
+    return new Progress(
+        runId,
+        startedAt,
+        finishedAt,
+        resumed,
+        cursor,
+        lastUserId,
+        sent.size(),
+        failed.size(),
+        processedThisSession,
+        processedThisSession / elapsedSeconds,
+        degraded);
+  }
+
+  Path file() {
+    return file;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    if (out != null) {
+      out.close();
+    }
+  }
+}
@@ -0,0 +1,188 @@
+package marketplace.notificationservice.scheduler;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConversionException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Coordina la campaña de engagement entre réplicas (scheduler.engagement.mode=sharded). Cada
+ * corrida se parte en shards por hash del userId; una sola réplica, la líder, publica un mensaje
+ * por shard en notification-campaign y todas las réplicas los consumen de a uno (prefetch 1), así
+ * cada usuario recibe un solo email y agregar réplicas reparte los shards entre más nodos. El hash
+ * no depende de la posición del usuario en listUsers: altas y bajas durante la corrida no mueven
+ * a nadie de shard.
+ *
+ * <p>Un shard que falla no vuelve directo a la cola: se publica en notification-campaign.retry,
+ * que lo devuelve al vencer su TTL (ver RabbitMQConfig.campaignRetryQueue), con los userIds que ya
+ * recibieron el email en los intentos anteriores. La réplica que lo retome, sea cual sea, los
+ * saltea. Si una réplica se cae sin alcanzar a publicarlo, el broker reentrega el mensaje con el
+ * progreso de los intentos anteriores: lo que se puede repetir es lo que esa réplica envió en ese
+ * intento, acotado por el tamaño del shard.
+ *
+ * <p>El liderazgo es la cola exclusiva notification-campaign.leader: RabbitMQ sólo deja
+ * declararla a una conexión y la borra cuando esa conexión se cae, así que si la líder muere la
+ * próxima réplica que dispare el cron toma su lugar. Las demás reciben RESOURCE_LOCKED y no
+ * publican nada.
+ */
+@Component
+@Slf4j
+public class EngagementCampaignCoordinator {
+
+  public static final String CAMPAIGN_QUEUE_NAME = "notification-campaign";
+  public static final String LEADER_QUEUE_NAME = CAMPAIGN_QUEUE_NAME + ".leader";
+  public static final String RETRY_QUEUE_NAME = CAMPAIGN_QUEUE_NAME + ".retry";
+
+  /**
+   * Un shard de una corrida: procesar los usuarios con shardOf(userId, shards) == shard antes de
+   * expiresAt. sent son los userIds del shard que ya recibieron el email en intentos anteriores.
+   */
+  public record CampaignShard(
+      String runId, int shard, int shards, long expiresAt, int attempt, List<String> sent) {
+
+    public CampaignShard {
+      sent = sent != null ? List.copyOf(sent) : List.of();
+    }
+
+    @JsonIgnore
+    public boolean isExpired() {
+      return System.currentTimeMillis() >= expiresAt;
+    }
+  }
+
+  private static final ObjectMapper objectMapper = new ObjectMapper();
+
+  private final RabbitTemplate rabbitTemplate;
+  private final int shards;
+  private final long shardTtlMs;
+
+  public EngagementCampaignCoordinator(
+      RabbitTemplate rabbitTemplate,
+      @Value("${scheduler.engagement.shards:32}") int shards,
+      @Value("${scheduler.engagement.shard-ttl-ms:3000000}") long shardTtlMs) {
+    this.rabbitTemplate = rabbitTemplate;
+    this.shards = Math.max(1, shards);
+    this.shardTtlMs = shardTtlMs;
+  }
+
+  /**
+   * Declarar la cola exclusiva otra vez desde la conexión que ya la tiene es válido, así que la
+   * líder lo sigue siendo en cada corrida mientras su conexión viva.
+   */
+  boolean tryAcquireLeadership() {
+    try {
+      rabbitTemplate.execute(
+          channel -> channel.queueDeclare(LEADER_QUEUE_NAME, false, true, false, null));
+      return true;
+    } catch (AmqpException e) {
+      log.info("Otra réplica coordina la campaña de engagement ({})", e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Publica los shards de la corrida runId si esta réplica es la líder. Los shards vencen a los
+   * shard-ttl-ms: si quedan sin consumir hasta la corrida siguiente no se acumulan.
+   *
+   * @return cantidad de shards publicados (0 si otra réplica coordina)
+   */
+  public int plan(String runId) {
+    if (!tryAcquireLeadership()) {
+      return 0;
+    }
+    long expiresAt = System.currentTimeMillis() + shardTtlMs;
+    for (int shard = 0; shard < shards; shard++) {
+      publish(CAMPAIGN_QUEUE_NAME, new CampaignShard(runId, shard, shards, expiresAt, 0, null));
+    }
+    log.info("Corrida {} de engagement repartida en {} shards", runId, shards);
+    return shards;
+  }
+
+  /**
+   * Programa otro intento del shard con el progreso acumulado: vuelve a notification-campaign
+   * después del TTL de notification-campaign.retry, no al instante, así un breaker abierto no
+   * pone a todas las réplicas a girar sobre el mismo shard. Un shard vencido se descarta.
+   *
+   * @return false si el shard ya venció y no se reintenta
+   */
+  public boolean retry(CampaignShard shard, Collection<String> sent) {
+    return republish(RETRY_QUEUE_NAME, shard, sent);
+  }
+
+  /** Devuelve el shard a notification-campaign sin espera (apagado a mitad del shard). */
+  public boolean requeue(CampaignShard shard, Collection<String> sent) {
+    return republish(CAMPAIGN_QUEUE_NAME, shard, sent);
+  }
+
+  private boolean republish(String queue, CampaignShard shard, Collection<String> sent) {
+    if (shard.isExpired()) {
+      log.warn("Shard {} de {} vencido, no se reintenta", shard.shard(), shard.runId());
+      return false;
+    }
+    publish(
+        queue,
+        new CampaignShard(
+            shard.runId(),
+            shard.shard(),
+            shard.shards(),
+            shard.expiresAt(),
+            shard.attempt() + 1,
+            List.copyOf(sent)));
+    return true;
+  }
+
+  private void publish(String queue, CampaignShard shard) {
+    MessageProperties properties = new MessageProperties();
+    properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+    properties.setDeliveryMode(MessageProperties.DEFAULT_DELIVERY_MODE);
+    // En la cola de espera manda el TTL de la cola; al volver, RabbitMQ ya quitó la expiración y
+    // el vencimiento lo controla expiresAt
+    if (CAMPAIGN_QUEUE_NAME.equals(queue)) {
+      long remainingMs = Math.max(1, shard.expiresAt() - System.currentTimeMillis());
+      properties.setExpiration(Long.toString(remainingMs));
+    }
+    rabbitTemplate.send("", queue, new Message(toBytes(shard), properties));
+  }
+
+  public CampaignShard read(Message message) {
+    try {
+      return objectMapper.readValue(message.getBody(), CampaignShard.class);
+    } catch (IOException e) {
+      throw new MessageConversionException("Shard de campaña inválido", e);
+    }
+  }
+
+  private static byte[] toBytes(CampaignShard shard) {
+    try {
+      return objectMapper.writeValueAsBytes(shard);
+    } catch (IOException e) {
+      throw new MessageConversionException("No se pudo serializar " + shard, e);
+    }
+  }
+
+  /**
+   * Shard de un usuario. String.hashCode está especificado, así que todas las réplicas calculan lo
+   * mismo; el mezclado final (fmix32 de MurmurHash3) reparte bien ids secuenciales.
+   */
+  public static int shardOf(String userId, int shards) {
+    if (userId == null) {
+      return 0;
+    }
+    int h = userId.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return Math.floorMod(h, shards);
+  }
+}
@@ -0,0 +1,54 @@
+package marketplace.notificationservice.scheduler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket para respetar la cuota del proveedor SMTP: se reponen permitsPerSecond tokens por
+ * segundo hasta un máximo de burst. acquire() reserva un token y, si el bucket quedó en negativo,
+ * duerme lo necesario; así los llamadores concurrentes se reparten la tasa sin esperar turnos
+ * bajo el lock.
+ */
+public class TokenBucketRateLimiter {
+
+  private final double permitsPerNano;
+  private final double capacity;
+  private final LongSupplier clock;
+
+  // Protegidos por this
+  private double tokens;
+  private long lastRefillNanos;
+
+  public TokenBucketRateLimiter(double permitsPerSecond, int burst) {
+    this(permitsPerSecond, burst, System::nanoTime);
+  }
+
+  TokenBucketRateLimiter(double permitsPerSecond, int burst, LongSupplier clock) {
+    if (permitsPerSecond <= 0) {
+      throw new IllegalArgumentException("permitsPerSecond debe ser positivo: " + permitsPerSecond);
+    }
+    this.permitsPerNano = permitsPerSecond / TimeUnit.SECONDS.toNanos(1);
+    this.capacity = Math.max(1, burst);
+    this.clock = clock;
+    this.tokens = capacity;
+    this.lastRefillNanos = clock.getAsLong();
+  }
+
+  public void acquire() throws InterruptedException {
+    long waitNanos = reserve();
+    if (waitNanos > 0) {
+      TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+  }
+
+  /** Reserva un token y devuelve cuántos nanos hay que esperar antes de usarlo. */
+  long reserve() {
+    synchronized (this) {
+      long now = clock.getAsLong();
+      tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * permitsPerNano);
+      lastRefillNanos = now;
+      tokens -= 1;
+      return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano);
+    }
+  }
+}
@@ -1,28 +1,140 @@
 package marketplace.notificationservice.scheduler;
 
 import lombok.extern.slf4j.Slf4j;
+import marketplace.notificationservice.Service.AdaptiveConcurrency;
 import marketplace.notificationservice.Service.EmailService;
 import marketplace.notificationservice.Service.GraphQLClientService;
+import marketplace.notificationservice.Service.MailLane;
+import marketplace.notificationservice.Service.UserCache;
+import marketplace.notificationservice.activity.UserActivityIndex;
 import marketplace.notificationservice.dtos.UserDTO;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.scheduler.EngagementCampaignCoordinator.CampaignShard;
+import marketplace.notificationservice.template.EmailTemplateEngine;
+import marketplace.notificationservice.template.TemplateModel;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.io.UncheckedIOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
 import java.time.format.DateTimeFormatter;
-import java.util.List;
-import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 @Component
 @Slf4j
 public class UserEngagementScheduler {
 
+  private static final String ENGAGEMENT_TEMPLATE = "engagement";
+  private static final String LOCAL_RUN_PREFIX = "engagement-";
+
+  // Expresión regular simple para validar formato de email, compilada una sola vez
+  private static final Pattern EMAIL_PATTERN =
+      Pattern.compile("^[a-zA-Z0-9._-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,4}$");
+
+  private static final String[] SUBJECTS = {
+      "🏃‍♂️ ¡Tus zapatillas te extrañan!",
+      "🚶‍♀️ ¿Olvidaste que tienes piernas?",
+      "⏰ ¡Es hora de mover esas piernas!",
+      "🎯 Tu próxima aventura te está esperando",
+      "👟 ¡Las rutas te están llamando!",
+      "🌟 ¿Cuándo vuelves a conquistar rutas?",
+      "🏆 ¡Tus récords te están esperando!"
+  };
+
+  private static final String[] FUNNY_MESSAGES = {
+      "¿Sigues vivo? ¡Hace tiempo que no te vemos correr por nuestra app! 🏃‍♂️💨",
+      "Tus zapatillas nos preguntaron por ti... ¿Cuándo vuelves? 👟😢",
+      "Las rutas están aburridas sin ti. ¡Vuelve a conquistarlas! 🗺️✨",
+      "¿Te perdiste en alguna ruta? ¡Porque hace rato no sabemos de ti! 🧭😅",
+      "Tus pasos nos hacen falta... ¿Cuándo vuelves a caminar con nosotros? 🚶‍♀️💚"
+  };
+
+  private static final String[] FACTS = {
+      "Caminar 30 minutos al día reduce el riesgo de enfermedades cardíacas en un 35%. ❤️",
+      "El ser humano promedio camina aproximadamente 160,000 kilómetros en toda su vida. ¡Eso es 4 vueltas al mundo! 🌍",
+      "Caminar mejora tu creatividad en un 60%. ¡Las mejores ideas surgen mientras caminas! 💡",
+      "10,000 pasos al día equivalen a quemar aproximadamente 500 calorías. 🔥",
+      "Caminar descalzo por 30 minutos puede reducir el estrés significativamente. 🦶✨",
+      "Las personas que caminan regularmente tienen mejor memoria que las sedentarias. 🧠💪"
+  };
+
   private final GraphQLClientService graphQLClientService;
   private final EmailService emailService;
-  private final Random random = new Random();
+  private final UserCache userCache;
+  private final UserActivityIndex activity;
+  private final EmailTemplateEngine templates;
+  private final NotificationMetrics metrics;
+  private final EngagementCampaignCoordinator coordinator;
+  private final CampaignCheckpointStore checkpoints;
+  private final boolean sharded;
+  private final boolean htmlEnabled;
+  private final boolean warmCache;
+  // Uno por réplica, compartido por los shards que corren en ella: en modo sharded la tasa total
+  // es la configurada por la cantidad de réplicas
+  private final TokenBucketRateLimiter rateLimiter;
+  private final int maxConcurrency;
+  // Envíos en vuelo entre todas las corridas de la réplica; sigue al límite adaptativo de SMTP
+  private final ResizableSemaphore fanOut;
+  private final int progressEvery;
+  private final int pageSize;
+  private final long inactiveAfterMillis;
+  private final AtomicBoolean running = new AtomicBoolean();
 
-  public UserEngagementScheduler(GraphQLClientService graphQLClientService, EmailService emailService) {
+  public UserEngagementScheduler(
+      GraphQLClientService graphQLClientService,
+      EmailService emailService,
+      UserCache userCache,
+      UserActivityIndex activity,
+      EmailTemplateEngine templates,
+      NotificationMetrics metrics,
+      EngagementCampaignCoordinator coordinator,
+      CampaignCheckpointStore checkpoints,
+      AdaptiveConcurrency adaptive,
+      @Value("${scheduler.engagement.mode:local}") String mode,
+      @Value("${notification.email.html-enabled:false}") boolean htmlEnabled,
+      @Value("${cache.users.warm-on-engagement:true}") boolean warmCache,
+      @Value("${scheduler.engagement.rate-per-second:10}") double ratePerSecond,
+      @Value("${scheduler.engagement.burst:10}") int burst,
+      @Value("${scheduler.engagement.max-concurrency:8}") int maxConcurrency,
+      @Value("${scheduler.engagement.progress-every:100}") int progressEvery,
+      @Value("${scheduler.engagement.page-size:500}") int pageSize,
+      @Value("${scheduler.engagement.inactive-after-hours:24}") long inactiveAfterHours) {
     this.graphQLClientService = graphQLClientService;
     this.emailService = emailService;
+    this.userCache = userCache;
+    this.activity = activity;
+    this.templates = templates;
+    this.metrics = metrics;
+    this.coordinator = coordinator;
+    this.checkpoints = checkpoints;
+    this.sharded = "sharded".equalsIgnoreCase(mode);
+    this.htmlEnabled = htmlEnabled;
+    this.warmCache = warmCache;
+    this.rateLimiter = new TokenBucketRateLimiter(ratePerSecond, burst);
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    this.fanOut = new ResizableSemaphore(this.maxConcurrency);
+    if (adaptive.isEnabled()) {
+      fanOut.resize(Math.min(this.maxConcurrency, adaptive.smtp().getLimit()));
+      adaptive.smtp().onChange(limit -> fanOut.resize(Math.min(this.maxConcurrency, limit)));
+    }
+    this.progressEvery = Math.max(1, progressEvery);
+    this.pageSize = pageSize;
+    this.inactiveAfterMillis = TimeUnit.HOURS.toMillis(Math.max(0, inactiveAfterHours));
   }
 
   // Ejecutar según la configuración en application.properties
@@ -30,128 +142,291 @@ public class UserEngagementScheduler {
   // Cron format: segundo minuto hora día mes día-semana
   @Scheduled(cron = "${scheduler.engagement.cron}")
   public void sendEngagementEmails() {
-    log.info("===== Iniciando envío de emails de engagement =====");
-    log.info("Fecha y hora: {}", LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss")));
+    if (sharded) {
+      // Todas las réplicas disparan el cron; sólo la líder reparte la corrida y el envío lo hacen
+      // los shards que consume cada réplica (ver runShard)
+      coordinator.plan(Instant.now().truncatedTo(ChronoUnit.MINUTES).toString());
+      return;
+    }
+
+    // Una corrida grande puede durar más que el intervalo del cron: nunca solapar dos corridas
+    if (!running.compareAndSet(false, true)) {
+      log.warn("La corrida anterior de engagement sigue en curso. Se omite esta ejecución.");
+      return;
+    }
 
     try {
-      // Obtener todos los usuarios
-      List<UserDTO> users = graphQLClientService.getAllUsers();
+      // Si la corrida anterior quedó a medias (caída, redeploy) se retoma en vez de empezar otra
+      String runId =
+          checkpoints
+              .findUnfinished(LOCAL_RUN_PREFIX)
+              .orElseGet(() -> LOCAL_RUN_PREFIX + Instant.now().truncatedTo(ChronoUnit.MINUTES));
+      runEngagementCampaign(runId, user -> true, ConcurrentHashMap.newKeySet());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      log.error("Envío de emails de engagement interrumpido");
+    } catch (Exception e) {
+      // El checkpoint queda sin terminar: la próxima corrida la retoma
+      log.error("Error general en el proceso de envío de emails: {}", e.getMessage(), e);
+    } finally {
+      running.set(false);
+    }
+  }
 
-      if (users.isEmpty()) {
-        log.warn("No se encontraron usuarios para enviar emails");
-        return;
-      }
+  /**
+   * Modo sharded: procesa un shard publicado por EngagementCampaignCoordinator. Cada shard recorre
+   * el listado de usuarios y envía sólo a los que le tocan por hash, salteando los que ya
+   * recibieron el email en intentos anteriores del shard (vienen en el mensaje) o en esta réplica
+   * (checkpoint local). El mensaje se confirma siempre: si el shard falla (p. ej. el breaker del
+   * authentication-service está abierto) se publica otro intento con el progreso acumulado, que
+   * vuelve después de la espera de notification-campaign.retry y lo toma cualquier réplica.
+   */
+  @RabbitListener(
+      queues = EngagementCampaignCoordinator.CAMPAIGN_QUEUE_NAME,
+      containerFactory = "campaignListenerContainerFactory",
+      autoStartup = "#{'${scheduler.engagement.mode:local}' == 'sharded'}")
+  public void runShard(Message message) {
+    CampaignShard shard = coordinator.read(message);
+    if (shard.isExpired()) {
+      log.warn("Shard {} de {} vencido. Se descarta.", shard.shard(), shard.runId());
+      return;
+    }
+    Predicate<UserDTO> assigned =
+        user -> EngagementCampaignCoordinator.shardOf(user.getId(), shard.shards()) == shard.shard();
+    Set<String> sent = ConcurrentHashMap.newKeySet();
+    sent.addAll(shard.sent());
+    try {
+      runEngagementCampaign(
+          "shard-" + shard.shard() + "of" + shard.shards() + "-" + shard.runId(), assigned, sent);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      // Apagado a mitad del shard: que lo termine otra réplica
+      coordinator.requeue(shard, sent);
+    } catch (RuntimeException e) {
+      log.error(
+          "Falló el shard {} de {} (intento {}), {} enviados hasta ahora: {}",
+          shard.shard(),
+          shard.runId(),
+          shard.attempt(),
+          sent.size(),
+          e.getMessage(),
+          e);
+      coordinator.retry(shard, sent);
+    }
+  }
+
+  /**
+   * Envía a los usuarios del listado que cumplen assigned y no están en delivered ni en el
+   * checkpoint; cada envío exitoso se agrega a delivered. Un error al leer los usuarios deja el
+   * checkpoint sin terminar y se propaga, con delivered al día con lo que salió.
+   */
+  private void runEngagementCampaign(
+      String runId, Predicate<UserDTO> assigned, Set<String> delivered)
+      throws InterruptedException {
+    CampaignRun run = checkpoints.open(runId);
+    if (run.isFinished()) {
+      log.info("La corrida {} ya había terminado. Se omite.", runId);
+      checkpoints.close(run);
+      return;
+    }
 
-      log.info("Se encontraron {} usuarios. Iniciando envío de emails...", users.size());
+    log.info("===== Iniciando envío de emails de engagement ({}) =====", runId);
+    log.info("Fecha y hora: {}", LocalDateTime.now().format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm:ss")));
 
-      int successCount = 0;
-      int failCount = 0;
+    try {
+      long startNanos = System.nanoTime();
+      AtomicInteger successCount = new AtomicInteger();
+      AtomicInteger failCount = new AtomicInteger();
+      AtomicInteger processed = new AtomicInteger();
+      int recentlyActive = 0;
+      // Sólo reciben el email quienes no completaron una ruta en las últimas inactive-after-hours
+      // (ver UserActivityIndex); con 0 se envía a todos
+      long activeSince =
+          inactiveAfterMillis > 0 ? System.currentTimeMillis() - inactiveAfterMillis : 0;
 
-      for (UserDTO user : users) {
-        try {
-          // Validar que el usuario tenga email válido
-          if (user.getEmail() == null || user.getEmail().isBlank() || !isValidEmail(user.getEmail())) {
-            log.warn("⚠️ Usuario {} ({}) no tiene email válido registrado. Email: '{}'. Saltando...",
-                user.getId(), user.getAlias(), user.getEmail());
-            failCount++;
+      // Un hilo virtual por envío, con a lo sumo fanOut envíos en vuelo. La tasa la
+      // controla el token bucket según la cuota del proveedor SMTP. Los usuarios llegan página a
+      // página: se empieza a enviar con la primera y sólo se mantiene en memoria la página actual
+      // más las que se piden por adelantado.
+      // Al retomar, la paginación arranca en la página del cursor y los ya enviados se saltan
+      int startOffset = pageSize > 0 ? (int) (run.cursor() / pageSize * pageSize) : 0;
+      long position = startOffset;
+      try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        for (UserDTO user : graphQLClientService.streamAllUsers(pageSize, startOffset).toIterable(Math.max(1, pageSize))) {
+          long userPosition = position++;
+          if (!assigned.test(user)) {
+            run.skip(userPosition);
+            continue;
+          }
+          String userId = user.getId();
+          if (userId != null && (run.alreadySent(userId) || delivered.contains(userId))) {
+            delivered.add(userId);
+            run.skip(userPosition);
+            continue;
+          }
+          if (activeSince > 0 && !activity.isInactiveSince(user.getId(), activeSince)) {
+            recentlyActive++;
+            run.skip(userPosition);
             continue;
           }
 
-          // Construir y enviar email gracioso
-          String subject = getRandomSubject();
-          String emailBody = buildFunnyEngagementEmail(user);
+          // Aprovechar el recorrido para precargar el cache que usa NotificationConsumer
+          if (warmCache) {
+            userCache.put(user);
+          }
+
+          fanOut.acquire();
+          executor.execute(
+              () -> {
+                try {
+                  boolean sent = sendEngagementEmail(user);
+                  metrics.recordEngagementEmail(sent);
+                  if (sent && user.getId() != null) {
+                    delivered.add(user.getId());
+                  }
+                  recordResult(run, userPosition, user.getId(), sent);
+                  if (sent) {
+                    successCount.incrementAndGet();
+                  } else {
+                    failCount.incrementAndGet();
+                  }
+                } finally {
+                  fanOut.release();
+                  int done = processed.incrementAndGet();
+                  if (done % progressEvery == 0) {
+                    logProgress(done, startNanos);
+                  }
+                }
+              });
+        }
+      }
+      run.finish();
 
-          emailService.sendSimpleEmail(user.getEmail(), subject, emailBody);
+      if (recentlyActive > 0) {
+        log.info("Se omitieron {} usuarios con actividad reciente", recentlyActive);
+      }
+      int total = processed.get();
+      if (total == 0) {
+        log.warn("No se encontraron usuarios para enviar emails");
+        return;
+      }
 
-          log.info("✅ Email enviado exitosamente a: {} ({})", user.getAlias(), user.getEmail());
-          successCount++;
+      long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+      log.info("===== Envío de emails completado =====");
+      log.info("✅ Exitosos: {} | ❌ Fallidos: {} | Total: {}", successCount.get(), failCount.get(), total);
+      log.info("⏱️ Duración: {} ms ({} emails/s)", elapsedMs, String.format("%.1f", total * 1000.0 / Math.max(1, elapsedMs)));
 
-          // Pequeña pausa entre emails para no saturar el servidor SMTP
-          Thread.sleep(100);
+    } finally {
+      checkpoints.close(run);
+    }
+  }
 
-        } catch (Exception e) {
-          log.error("❌ Error al enviar email a usuario {} ({}): {}",
-              user.getId(), user.getEmail(), e.getMessage(), e);
-          failCount++;
-        }
+  private boolean sendEngagementEmail(UserDTO user) {
+    try {
+      // Validar que el usuario tenga email válido
+      if (user.getEmail() == null || user.getEmail().isBlank() || !isValidEmail(user.getEmail())) {
+        log.warn("⚠️ Usuario {} ({}) no tiene email válido registrado. Email: '{}'. Saltando...",
+            user.getId(), user.getAlias(), user.getEmail());
+        return false;
       }
 
-      log.info("===== Envío de emails completado =====");
-      log.info("✅ Exitosos: {} | ❌ Fallidos: {} | Total: {}", successCount, failCount, users.size());
+      // Construir y enviar email gracioso (el mismo modelo alimenta texto y HTML)
+      String subject = getRandomSubject();
+      TemplateModel model = engagementModel(user);
+      String emailBody = templates.render(ENGAGEMENT_TEMPLATE, model);
+      String htmlBody = htmlEnabled ? templates.renderHtml(ENGAGEMENT_TEMPLATE, model) : null;
+
+      // Esperar turno según la cuota del servidor SMTP
+      rateLimiter.acquire();
+      emailService.sendEmail(user.getEmail(), subject, emailBody, htmlBody, MailLane.BULK);
 
+      log.info("✅ Email enviado exitosamente a: {} ({})", user.getAlias(), user.getEmail());
+      return true;
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
     } catch (Exception e) {
-      log.error("Error general en el proceso de envío de emails: {}", e.getMessage(), e);
+      log.error("❌ Error al enviar email a usuario {} ({}): {}",
+          user.getId(), user.getEmail(), e.getMessage(), e);
+      return false;
     }
   }
 
-  private String getRandomSubject() {
-    String[] subjects = {
-        "🏃‍♂️ ¡Tus zapatillas te extrañan!",
-        "🚶‍♀️ ¿Olvidaste que tienes piernas?",
-        "⏰ ¡Es hora de mover esas piernas!",
-        "🎯 Tu próxima aventura te está esperando",
-        "👟 ¡Las rutas te están llamando!",
-        "🌟 ¿Cuándo vuelves a conquistar rutas?",
-        "🏆 ¡Tus récords te están esperando!"
-    };
-    return subjects[random.nextInt(subjects.length)];
+  /**
+   * El email ya salió (o ya falló) cuando se anota: un error al escribir el checkpoint no lo
+   * convierte en un fallo ni corta la corrida, que sigue con el checkpoint sólo en memoria.
+   */
+  private static void recordResult(CampaignRun run, long position, String userId, boolean sent) {
+    try {
+      run.record(position, userId, sent);
+    } catch (UncheckedIOException e) {
+      if (run.markDegraded()) {
+        log.error(
+            "No se pudo escribir el checkpoint de {}, la corrida sigue sin checkpoint"
+                + " (un reinicio puede repetir los envíos desde acá): {}",
+            run.runId(),
+            e.getMessage(),
+            e);
+      }
+    }
+  }
+
+  private void logProgress(int done, long startNanos) {
+    long elapsedMs = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    log.info("📨 Progreso engagement: {} usuarios procesados ({} emails/s)", done, String.format("%.1f", done * 1000.0 / elapsedMs));
+  }
+
+  private static String getRandomSubject() {
+    return SUBJECTS[ThreadLocalRandom.current().nextInt(SUBJECTS.length)];
+  }
+
+  String buildFunnyEngagementEmail(UserDTO user) {
+    return templates.render(ENGAGEMENT_TEMPLATE, engagementModel(user));
   }
 
-  private String buildFunnyEngagementEmail(UserDTO user) {
+  private static TemplateModel engagementModel(UserDTO user) {
     String greeting = (user.getAlias() != null && !user.getAlias().isBlank())
         ? user.getAlias()
         : "Aventurero";
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    String message = FUNNY_MESSAGES[random.nextInt(FUNNY_MESSAGES.length)];
+    String fact = FACTS[random.nextInt(FACTS.length)];
 
-    String[] funnyMessages = {
-        "¿Sigues vivo? ¡Hace tiempo que no te vemos correr por nuestra app! 🏃‍♂️💨",
-        "Tus zapatillas nos preguntaron por ti... ¿Cuándo vuelves? 👟😢",
-        "Las rutas están aburridas sin ti. ¡Vuelve a conquistarlas! 🗺️✨",
-        "¿Te perdiste en alguna ruta? ¡Porque hace rato no sabemos de ti! 🧭😅",
-        "Tus pasos nos hacen falta... ¿Cuándo vuelves a caminar con nosotros? 🚶‍♀️💚"
+    return (variable, out) -> {
+      switch (variable) {
+        case "greeting" -> out.append(greeting);
+        case "message" -> out.append(message);
+        case "fact" -> out.append(fact);
+        default -> throw new IllegalArgumentException("Variable desconocida: " + variable);
+      }
     };
-
-    String randomMessage = funnyMessages[random.nextInt(funnyMessages.length)];
-
-    StringBuilder emailBuilder = new StringBuilder();
-    emailBuilder.append("¡Hola ").append(greeting).append("! 👋\n\n");
-    emailBuilder.append(randomMessage).append("\n\n");
-    emailBuilder.append("══════════════════════════════════════\n");
-    emailBuilder.append("🌟 ¡TE ESTAMOS EXTRAÑANDO!\n");
-    emailBuilder.append("══════════════════════════════════════\n\n");
-    emailBuilder.append("Sabemos que la vida está ocupada, pero tus metas no se van a cumplir solas. 💪\n\n");
-    emailBuilder.append("🔥 ¿Qué puedes hacer HOY?\n\n");
-    emailBuilder.append("   ✅ Registra tus pasos diarios\n");
-    emailBuilder.append("   ✅ Descubre nuevas rutas cerca de ti\n");
-    emailBuilder.append("   ✅ Completa desafíos y gana puntos\n");
-    emailBuilder.append("   ✅ Supera tus propios récords\n\n");
-    emailBuilder.append("No importa si son 10 minutos o una hora, ¡cada paso cuenta! 👣\n\n");
-    emailBuilder.append("══════════════════════════════════════\n");
-    emailBuilder.append("💡 DATO CURIOSO\n");
-    emailBuilder.append("══════════════════════════════════════\n");
-    emailBuilder.append(getRandomFact()).append("\n\n");
-    emailBuilder.append("Así que ya sabes... ¡abre la app y empieza a moverte! 🚀\n\n");
-    emailBuilder.append("¡Nos vemos en las rutas! 🌄🏃‍♀️\n\n");
-    emailBuilder.append("Con cariño (y un poco de preocupación 😅),\n");
-    emailBuilder.append("P.D.: Si no vuelves pronto, enviaremos a tus zapatillas a buscarte. 👟🔍");
-
-    return emailBuilder.toString();
   }
 
-  private String getRandomFact() {
-    String[] facts = {
-        "Caminar 30 minutos al día reduce el riesgo de enfermedades cardíacas en un 35%. ❤️",
-        "El ser humano promedio camina aproximadamente 160,000 kilómetros en toda su vida. ¡Eso es 4 vueltas al mundo! 🌍",
-        "Caminar mejora tu creatividad en un 60%. ¡Las mejores ideas surgen mientras caminas! 💡",
-        "10,000 pasos al día equivalen a quemar aproximadamente 500 calorías. 🔥",
-        "Caminar descalzo por 30 minutos puede reducir el estrés significativamente. 🦶✨",
-        "Las personas que caminan regularmente tienen mejor memoria que las sedentarias. 🧠💪"
-    };
-    return facts[random.nextInt(facts.length)];
+  static boolean isValidEmail(String email) {
+    return EMAIL_PATTERN.matcher(email).matches();
   }
 
-  private boolean isValidEmail(String email) {
-    // Expresión regular simple para validar formato de email
-    String emailRegex = "^[a-zA-Z0-9._-]+@[a-zA-Z0-9.-]+\\.[a-zA-Z]{2,4}$";
-    return email.matches(emailRegex);
+  /**
+   * Semáforo cuyo total de permisos se puede cambiar en caliente. Al achicarlo los envíos en curso
+   * terminan normalmente; simplemente no entran nuevos hasta que haya lugar bajo el nuevo total.
+   */
+  static final class ResizableSemaphore extends Semaphore {
+    private int size;
+
+    ResizableSemaphore(int size) {
+      super(size);
+      this.size = size;
+    }
+
+    synchronized void resize(int newSize) {
+      int delta = Math.max(1, newSize) - size;
+      if (delta > 0) {
+        release(delta);
+      } else if (delta < 0) {
+        reducePermits(-delta);
+      }
+      size += delta;
+    }
   }
 }
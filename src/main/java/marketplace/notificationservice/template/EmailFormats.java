@@ -0,0 +1,53 @@
+package marketplace.notificationservice.template;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.TextStyle;
+import java.util.Locale;
+
+/** Formateo de valores para las plantillas sin pasar por String.format. */
+public final class EmailFormats {
+
+  private static final Locale SPANISH = Locale.of("es", "ES");
+  private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+  /** Nombre del día y fecha de hoy en español, calculados una sola vez por día. */
+  public record Today(LocalDate date, String dayName, String formattedDate) {}
+
+  private static volatile Today today = computeToday(LocalDate.now());
+
+  private EmailFormats() {}
+
+  public static Today today() {
+    LocalDate now = LocalDate.now();
+    Today current = today;
+    if (!current.date().equals(now)) {
+      current = computeToday(now);
+      today = current;
+    }
+    return current;
+  }
+
+  private static Today computeToday(LocalDate date) {
+    return new Today(
+        date, date.getDayOfWeek().getDisplayName(TextStyle.FULL, SPANISH), date.format(DATE_FORMATTER));
+  }
+
+  /** Equivale a String.format("%.2f", value) con punto decimal, sin crear objetos intermedios. */
+  public static void appendTwoDecimals(StringBuilder out, double value) {
+    if (!Double.isFinite(value) || Math.abs(value) >= 1e15) {
+      out.append(String.format(Locale.ROOT, "%.2f", value));
+      return;
+    }
+    long scaled = Math.round(Math.abs(value) * 100);
+    if (value < 0 && scaled != 0) {
+      out.append('-');
+    }
+    out.append(scaled / 100).append('.');
+    long cents = scaled % 100;
+    if (cents < 10) {
+      out.append('0');
+    }
+    out.append(cents);
+  }
+}
@@ -0,0 +1,116 @@
+package marketplace.notificationservice.template;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plantilla ya compilada: el texto fuente se separa una sola vez en literales y variables
+ * ({{nombre}}), de modo que renderizar es sólo recorrer los segmentos y copiarlos al buffer. En las
+ * plantillas HTML los valores de las variables se escapan, salvo los marcados como {{&nombre}}
+ * (fragmentos ya renderizados por otra plantilla).
+ */
+public final class EmailTemplate {
+
+  private static final String OPEN = "{{";
+  private static final String CLOSE = "}}";
+  private static final char RAW = '&';
+
+  // literals.length == variables.length + 1: literal, variable, literal, ..., literal
+  private final String[] literals;
+  private final String[] variables;
+  private final boolean[] raw;
+  private final boolean html;
+  private final int literalLength;
+
+  private EmailTemplate(String[] literals, String[] variables, boolean[] raw, boolean html) {
+    this.literals = literals;
+    this.variables = variables;
+    this.raw = raw;
+    this.html = html;
+    int length = 0;
+    for (String literal : literals) {
+      length += literal.length();
+    }
+    this.literalLength = length;
+  }
+
+  public static EmailTemplate compile(String source, boolean html) {
+    List<String> literals = new ArrayList<>();
+    List<String> variables = new ArrayList<>();
+    List<Boolean> raw = new ArrayList<>();
+
+    int position = 0;
+    int open;
+    while ((open = source.indexOf(OPEN, position)) >= 0) {
+      int close = source.indexOf(CLOSE, open + OPEN.length());
+      if (close < 0) {
+        throw new IllegalArgumentException("Variable sin cerrar en la posición " + open);
+      }
+      String variable = source.substring(open + OPEN.length(), close).trim();
+      boolean unescaped = !variable.isEmpty() && variable.charAt(0) == RAW;
+      if (unescaped) {
+        variable = variable.substring(1).trim();
+      }
+      if (variable.isEmpty()) {
+        throw new IllegalArgumentException("Variable vacía en la posición " + open);
+      }
+      literals.add(source.substring(position, open));
+      variables.add(variable.intern());
+      raw.add(unescaped);
+      position = close + CLOSE.length();
+    }
+    literals.add(source.substring(position));
+
+    boolean[] rawFlags = new boolean[raw.size()];
+    for (int i = 0; i < rawFlags.length; i++) {
+      rawFlags[i] = raw.get(i);
+    }
+    return new EmailTemplate(
+        literals.toArray(new String[0]), variables.toArray(new String[0]), rawFlags, html);
+  }
+
+  public boolean isHtml() {
+    return html;
+  }
+
+  public List<String> variables() {
+    return List.of(variables);
+  }
+
+  /** Tamaño del texto fijo, útil para dimensionar el buffer de salida. */
+  public int literalLength() {
+    return literalLength;
+  }
+
+  /**
+   * Escribe la plantilla en out. scratch es un buffer auxiliar reutilizable que sólo se usa en
+   * plantillas HTML para escapar cada valor.
+   */
+  public void renderTo(StringBuilder out, TemplateModel model, StringBuilder scratch) {
+    for (int i = 0; i < variables.length; i++) {
+      out.append(literals[i]);
+      if (html && !raw[i]) {
+        scratch.setLength(0);
+        model.appendValue(variables[i], scratch);
+        appendEscaped(out, scratch);
+      } else {
+        model.appendValue(variables[i], out);
+      }
+    }
+    out.append(literals[variables.length]);
+  }
+
+  private static void appendEscaped(StringBuilder out, CharSequence value) {
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '<' -> out.append("&lt;");
+        case '>' -> out.append("&gt;");
+        case '&' -> out.append("&amp;");
+        case '"' -> out.append("&quot;");
+        case '\'' -> out.append("&#39;");
+        default -> out.append(c);
+      }
+    }
+  }
+}
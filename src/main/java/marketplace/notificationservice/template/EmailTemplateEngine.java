@@ -0,0 +1,106 @@
+package marketplace.notificationservice.template;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+/**
+ * Carga y compila al arrancar todas las plantillas de classpath:templates/email/. Cada plantilla
+ * tiene una variante de texto plano (nombre.txt) y opcionalmente una HTML (nombre.html). Los
+ * buffers de salida salen de un pool chico y compartido, así que renderizar sólo asigna el String
+ * final. No son por hilo: la campaña renderiza cada email en un virtual thread nuevo, y un
+ * ThreadLocal se perdería con cada uno. Renderizar no bloquea, así que alcanza con un par de
+ * buffers por procesador.
+ */
+@Component
+@Slf4j
+public class EmailTemplateEngine {
+
+  private static final String LOCATION = "classpath*:templates/email/*.*";
+  private static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+  private static final int POOLED_BUFFERS = 2 * Runtime.getRuntime().availableProcessors();
+
+  private record Buffers(StringBuilder out, StringBuilder scratch) {}
+
+  // Si el pool está vacío se crean buffers nuevos; si está lleno, los devueltos se descartan
+  private static final BlockingQueue<Buffers> BUFFERS = new ArrayBlockingQueue<>(POOLED_BUFFERS);
+
+  private final Map<String, EmailTemplate> textTemplates = new HashMap<>();
+  private final Map<String, EmailTemplate> htmlTemplates = new HashMap<>();
+
+  public EmailTemplateEngine() {
+    try {
+      for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+        register(resource);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("No se pudieron cargar las plantillas de email", e);
+    }
+    log.info(
+        "Plantillas de email compiladas: {} de texto, {} HTML",
+        textTemplates.size(),
+        htmlTemplates.size());
+  }
+
+  private void register(Resource resource) throws IOException {
+    String filename = resource.getFilename();
+    if (filename == null) {
+      return;
+    }
+    int dot = filename.lastIndexOf('.');
+    String name = filename.substring(0, dot);
+    String extension = filename.substring(dot + 1);
+
+    String source;
+    try (InputStream in = resource.getInputStream()) {
+      source = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    switch (extension) {
+      case "txt" -> textTemplates.put(name, EmailTemplate.compile(source, false));
+      case "html" -> htmlTemplates.put(name, EmailTemplate.compile(source, true));
+      default -> log.warn("Plantilla ignorada, extensión desconocida: {}", filename);
+    }
+  }
+
+  public String render(String name, TemplateModel model) {
+    EmailTemplate template = textTemplates.get(name);
+    if (template == null) {
+      throw new IllegalArgumentException("No existe la plantilla de texto: " + name);
+    }
+    return render(template, model);
+  }
+
+  /** Variante HTML de la plantilla, o null si la plantilla no tiene una. */
+  public String renderHtml(String name, TemplateModel model) {
+    EmailTemplate template = htmlTemplates.get(name);
+    return template != null ? render(template, model) : null;
+  }
+
+  private static String render(EmailTemplate template, TemplateModel model) {
+    Buffers buffers = BUFFERS.poll();
+    if (buffers == null) {
+      buffers = new Buffers(new StringBuilder(4096), new StringBuilder(256));
+    }
+    StringBuilder out = buffers.out();
+    out.setLength(0);
+    out.ensureCapacity(template.literalLength() + 256);
+    template.renderTo(out, model, buffers.scratch());
+    String rendered = out.toString();
+    if (out.capacity() <= MAX_RETAINED_BUFFER
+        && buffers.scratch().capacity() <= MAX_RETAINED_BUFFER) {
+      BUFFERS.offer(buffers);
+    }
+    return rendered;
+  }
+}
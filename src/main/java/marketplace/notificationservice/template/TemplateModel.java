@@ -0,0 +1,10 @@
+package marketplace.notificationservice.template;
+
+/**
+ * Valores de una plantilla para un mensaje concreto. Se escriben directo sobre el buffer de salida
+ * (números incluidos) para no crear Strings intermedios por variable.
+ */
+@FunctionalInterface
+public interface TemplateModel {
+  void appendValue(String variable, StringBuilder out);
+}
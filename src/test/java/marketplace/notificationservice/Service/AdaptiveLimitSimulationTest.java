@@ -0,0 +1,236 @@
+package marketplace.notificationservice.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.support.GraphQLStubServer;
+import marketplace.notificationservice.support.SmtpStubServer;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * El límite adaptativo contra servidores simulados: primero un modelo determinista con reloj
+ * falso (el servidor encola lo que excede su capacidad), después EmailService contra un SMTP que
+ * responde 421 y GraphQLClientService contra el stub HTTP con latencia variable.
+ */
+class AdaptiveLimitSimulationTest {
+
+  private static final long MS = 1_000_000;
+
+  private long now;
+
+  /**
+   * Cliente de lazo cerrado: en cada ronda hay limit llamadas en vuelo y todas tardan lo mismo.
+   * Por encima de capacity la latencia crece en proporción a la cola.
+   */
+  private void run(
+      AdaptiveLimit limit, int rounds, long baseNanos, int capacity, boolean throttle) {
+    for (int round = 0; round < rounds; round++) {
+      int inFlight = limit.getLimit();
+      long rtt = (long) (baseNanos * Math.max(1.0, (double) inFlight / capacity));
+      for (int i = 0; i < inFlight; i++) {
+        limit.onSample(rtt, inFlight, throttle && inFlight > capacity);
+      }
+      now += rtt;
+    }
+  }
+
+  @Test
+  void limitGrowsUntilQueueingAndSettlesNearTolerance() {
+    AdaptiveLimit limit = new AdaptiveLimit("test", 4, 1, 64, 2.0, 0.9, () -> now);
+
+    run(limit, 10, 10 * MS, 20, false);
+    assertThat(limit.getLimit()).isGreaterThan(10);
+
+    // Con tolerance 2 el límite oscila alrededor de donde la cola duplica la latencia (2x20)
+    run(limit, 300, 10 * MS, 20, false);
+    assertThat(limit.getLimit()).isBetween(30, 45);
+  }
+
+  @Test
+  void slowerServerLowersTheLimitAndThenBecomesTheNewBaseline() {
+    AdaptiveLimit limit = new AdaptiveLimit("test", 4, 1, 64, 2.0, 0.9, () -> now);
+    run(limit, 300, 10 * MS, 20, false);
+    int before = limit.getLimit();
+
+    run(limit, 15, 40 * MS, 20, false);
+    assertThat(limit.getLimit()).isLessThan(before / 2);
+
+    // Sin cola propia la latencia de 40 ms pasa a ser la base y el límite vuelve a subir
+    run(limit, 300, 40 * MS, 20, false);
+    assertThat(limit.getLimit()).isBetween(30, 45);
+  }
+
+  @Test
+  void throttlingHoldsTheLimitNearCapacity() {
+    AdaptiveLimit limit = new AdaptiveLimit("test", 32, 1, 64, 2.0, 0.9, () -> now);
+
+    // Un SMTP que responde 421 por encima de 5 conexiones, sin que la latencia cambie
+    run(limit, 200, 10 * MS, 5, true);
+
+    assertThat(limit.getLimit()).isBetween(4, 8);
+  }
+
+  @Test
+  void decreasesAtMostOncePerRoundTrip() {
+    AdaptiveLimit limit = new AdaptiveLimit("test", 20, 1, 64, 2.0, 0.5, () -> now);
+    limit.onSample(10 * MS, 20, false);
+
+    for (int i = 0; i < 20; i++) {
+      limit.onSample(10 * MS, 20, true);
+    }
+    assertThat(limit.getLimit()).isEqualTo(10);
+
+    now += 10 * MS;
+    limit.onSample(10 * MS, 10, true);
+    assertThat(limit.getLimit()).isEqualTo(5);
+  }
+
+  @Test
+  void tryAcquireEnforcesTheCurrentLimit() {
+    AdaptiveLimit limit = new AdaptiveLimit("test", 2, 1, 4, 2.0, 0.9, () -> now);
+
+    assertThat(limit.tryAcquire()).isTrue();
+    assertThat(limit.tryAcquire()).isTrue();
+    assertThat(limit.tryAcquire()).isFalse();
+    limit.release();
+    assertThat(limit.tryAcquire()).isTrue();
+    assertThat(limit.inFlight()).isEqualTo(2);
+  }
+
+  @Test
+  void listenersEndOnTheCurrentLimit() throws Exception {
+    AdaptiveLimit limit = new AdaptiveLimit("test", 32, 1, 64, 2.0, 0.5, System::nanoTime);
+    AtomicInteger lastSeen = new AtomicInteger(limit.getLimit());
+    limit.onChange(lastSeen::set);
+
+    // Muchos hilos bajando y subiendo el límite a la vez: el último aviso debe ser el vigente
+    try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+      for (int thread = 0; thread < 8; thread++) {
+        boolean throttle = thread % 2 == 0;
+        executor.execute(
+            () -> {
+              for (int i = 0; i < 20_000; i++) {
+                limit.onSample(1_000, 64, throttle && i % 50 == 0);
+              }
+            });
+      }
+    }
+
+    assertThat(lastSeen.get()).isEqualTo(limit.getLimit());
+  }
+
+  @Test
+  void smtpLimitBacksOffWhenTheServerAnswers421() throws Exception {
+    try (SmtpStubServer smtp = SmtpStubServer.start(0)) {
+      // Proveedor que acepta 6 mensajes a la vez y rechaza el resto con 421
+      smtp.throttleAbove(6);
+      smtp.messageDelayMs(5);
+      NotificationMetrics metrics = new NotificationMetrics(new SimpleMeterRegistry());
+      AdaptiveConcurrency adaptive = new AdaptiveConcurrency(true, 2.0, 0.9, 32, 1, 64, 16, 2, 64);
+      SmtpLaneScheduler lanes = new SmtpLaneScheduler(true, 32, 0, 4, 1, false, 0, metrics);
+      JavaMailSenderImpl sender = new JavaMailSenderImpl();
+      sender.setHost(smtp.host());
+      sender.setPort(smtp.port());
+      EmailProperties properties = new EmailProperties();
+      properties.setUsername("noreply@example.com");
+      EmailService emailService =
+          new EmailService(sender, properties, null, metrics, lanes, adaptive, null);
+      emailService.followAdaptiveLimit();
+
+      long deadline = System.nanoTime() + Duration.ofMillis(1500).toNanos();
+      try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        for (int i = 0; i < 32; i++) {
+          String to = "user" + i + "@example.com";
+          executor.execute(
+              () -> {
+                while (System.nanoTime() < deadline) {
+                  try {
+                    emailService.sendEmail(to, "Prueba", "Hola", null, MailLane.BULK);
+                  } catch (RuntimeException e) {
+                    // 421: el límite ya lo registró; el próximo intento espera su lugar
+                  }
+                }
+              });
+        }
+      }
+
+      assertThat(smtp.throttledCount()).isPositive();
+      assertThat(smtp.messageCount()).isPositive();
+      assertThat(adaptive.smtp().getLimit()).isBetween(1, 12);
+      assertThat(lanes.capacity()).isEqualTo(adaptive.smtp().getLimit());
+    }
+  }
+
+  @Test
+  void graphqlLimitFollowsStubLatency() throws Exception {
+    try (GraphQLStubServer stub = GraphQLStubServer.start()) {
+      AdaptiveConcurrency adaptive = new AdaptiveConcurrency(true, 2.0, 0.9, 16, 2, 64, 16, 2, 64);
+      GraphQLClientService client =
+          new GraphQLClientService(
+              WebClient.builder(),
+              stub.endpoint(),
+              1,
+              10,
+              200,
+              500,
+              new NotificationMetrics(new SimpleMeterRegistry()),
+              CircuitBreakerRegistry.ofDefaults(),
+              BulkheadRegistry.of(
+                  BulkheadConfig.custom()
+                      .maxConcurrentCalls(200)
+                      .maxWaitDuration(Duration.ZERO)
+                      .build()),
+              TimeLimiterRegistry.of(
+                  TimeLimiterConfig.custom().timeoutDuration(Duration.ofSeconds(2)).build()),
+              adaptive);
+
+      stub.latencyMs(2);
+      load(client, Duration.ofSeconds(1));
+      int fast = adaptive.graphql().getLimit();
+
+      stub.latencyMs(40);
+      load(client, Duration.ofMillis(600));
+      int slow = adaptive.graphql().getLimit();
+
+      assertThat(slow).isLessThan(fast);
+      assertThat(stub.maxInFlight()).isLessThanOrEqualTo(64);
+    }
+  }
+
+  // 96 clientes consultando sin pausa; los rechazos del límite reintentan al milisegundo
+  private static void load(GraphQLClientService client, Duration duration) {
+    long deadline = System.nanoTime() + duration.toNanos();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < 96; i++) {
+        String userId = "u-" + i;
+        executor.execute(
+            () -> {
+              while (System.nanoTime() < deadline) {
+                try {
+                  client.fetchUser(userId).block(Duration.ofSeconds(5));
+                } catch (RuntimeException e) {
+                  try {
+                    TimeUnit.MILLISECONDS.sleep(1);
+                  } catch (InterruptedException interrupted) {
+                    return;
+                  }
+                }
+              }
+            });
+      }
+    }
+  }
+}
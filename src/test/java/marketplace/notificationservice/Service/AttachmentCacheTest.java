@@ -0,0 +1,125 @@
+package marketplace.notificationservice.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import jakarta.mail.BodyPart;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.Random;
+import marketplace.notificationservice.Service.AttachmentCache.EncodedAttachment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AttachmentCacheTest {
+
+  @TempDir Path dir;
+
+  @Test
+  void secondSendIsServedWithoutReadingTheFile() throws Exception {
+    Path pdf = write("reporte.pdf", bytes(100_000, 1));
+    AttachmentCache cache = new AttachmentCache(true, 1 << 20);
+
+    EncodedAttachment first = cache.get(pdf.toString());
+    EncodedAttachment second = cache.get(pdf.toString());
+
+    assertThat(second.base64()).isSameAs(first.base64());
+    assertThat(second.contentType()).isEqualTo("application/pdf");
+    assertThat(cache.bytesReadCount()).isEqualTo(100_000);
+    assertThat(cache.encodingCount()).isEqualTo(1);
+    assertThat(cache.hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  void changedFileIsReadAgain() throws Exception {
+    Path pdf = write("reporte.pdf", bytes(1_000, 1));
+    AttachmentCache cache = new AttachmentCache(true, 1 << 20);
+    EncodedAttachment before = cache.get(pdf.toString());
+
+    byte[] updated = bytes(1_000, 2);
+    Files.write(pdf, updated);
+    Files.setLastModifiedTime(
+        pdf, FileTime.fromMillis(Files.getLastModifiedTime(pdf).toMillis() + 2_000));
+    EncodedAttachment after = cache.get(pdf.toString());
+
+    assertThat(after.digest()).isNotEqualTo(before.digest());
+    assertThat(decode(after)).isEqualTo(updated);
+    assertThat(cache.encodingCount()).isEqualTo(2);
+  }
+
+  @Test
+  void identicalContentIsEncodedOnce() throws Exception {
+    byte[] content = bytes(5_000, 3);
+    Path first = write("a.pdf", content);
+    Path copy = write("b.pdf", content);
+    AttachmentCache cache = new AttachmentCache(true, 1 << 20);
+
+    cache.get(first.toString());
+    EncodedAttachment other = cache.get(copy.toString());
+
+    assertThat(other.fileName()).isEqualTo("b.pdf");
+    assertThat(cache.bytesReadCount()).isEqualTo(10_000);
+    assertThat(cache.encodingCount()).isEqualTo(1);
+  }
+
+  @Test
+  void cachedBytesStayWithinTheLimit() throws Exception {
+    AttachmentCache cache = new AttachmentCache(true, 20_000);
+    for (int i = 0; i < 5; i++) {
+      cache.get(write(i + ".bin", bytes(6_000, i)).toString());
+    }
+
+    assertThat(cache.cachedBytes()).isPositive().isLessThanOrEqualTo(20_000);
+    cache.get(dir.resolve("4.bin").toString());
+    assertThat(cache.hitCount()).isEqualTo(1);
+  }
+
+  @Test
+  void precomposedBodyRoundTrips() throws Exception {
+    byte[] content = bytes(50_000, 4);
+    AttachmentCache cache = new AttachmentCache(true, 1 << 20);
+    EncodedAttachment attachment = cache.get(write("ruta.pdf", content).toString());
+    MimeMultipart body = EmailService.precompose("<p>¡Hola! 🚀</p>", attachment);
+
+    Session session = Session.getInstance(new Properties());
+    ByteArrayOutputStream raw = new ByteArrayOutputStream();
+    for (String to : new String[] {"a@example.com", "b@example.com"}) {
+      MimeMessage message = new MimeMessage(session);
+      message.setRecipients(MimeMessage.RecipientType.TO, to);
+      message.setContent(body);
+      message.saveChanges();
+      raw.reset();
+      message.writeTo(raw);
+    }
+
+    MimeMessage parsed = new MimeMessage(session, new ByteArrayInputStream(raw.toByteArray()));
+    MimeMultipart parts = (MimeMultipart) parsed.getContent();
+    BodyPart html = parts.getBodyPart(0);
+    BodyPart pdf = parts.getBodyPart(1);
+    assertThat(parsed.getHeader("To", null)).isEqualTo("b@example.com");
+    assertThat(html.getContent()).isEqualTo("<p>¡Hola! 🚀</p>");
+    assertThat(pdf.getFileName()).isEqualTo("ruta.pdf");
+    assertThat(pdf.getInputStream().readAllBytes()).isEqualTo(content);
+  }
+
+  private Path write(String name, byte[] content) throws Exception {
+    return Files.write(dir.resolve(name), content);
+  }
+
+  private static byte[] bytes(int size, long seed) {
+    byte[] content = new byte[size];
+    new Random(seed).nextBytes(content);
+    return content;
+  }
+
+  private static byte[] decode(EncodedAttachment attachment) {
+    return Base64.getMimeDecoder().decode(attachment.base64());
+  }
+}
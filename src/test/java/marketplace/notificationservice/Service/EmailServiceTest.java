@@ -0,0 +1,115 @@
+package marketplace.notificationservice.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import marketplace.notificationservice.Service.EmailService.BulkRecipient;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+
+/** Los lotes se envían de a un mensaje: cada uno ocupa su lugar y una falla no corta el resto. */
+class EmailServiceTest {
+
+  @TempDir Path dir;
+
+  private final JavaMailSender mailSender = mock(JavaMailSender.class);
+  private final AdaptiveConcurrency adaptive =
+      new AdaptiveConcurrency(false, 2.0, 0.9, 8, 1, 32, 16, 2, 64);
+  private EmailService emailService;
+
+  @BeforeEach
+  void setUp() {
+    NotificationMetrics metrics = new NotificationMetrics(new SimpleMeterRegistry());
+    EmailProperties properties = new EmailProperties();
+    properties.setUsername("noreply@example.com");
+    when(mailSender.createMimeMessage())
+        .thenAnswer(invocation -> new MimeMessage(Session.getInstance(new Properties())));
+    emailService =
+        new EmailService(
+            mailSender,
+            properties,
+            null,
+            metrics,
+            new SmtpLaneScheduler(true, 8, 0, 4, 1, false, 0, metrics),
+            adaptive,
+            new AttachmentCache(true, 1 << 20));
+  }
+
+  @Test
+  void simpleBatchIsSentOneMessageAtATime() {
+    List<SimpleMailMessage> messages =
+        List.of(message("a@example.com"), message("b@example.com"), message("c@example.com"));
+    MailSendException rejected = new MailSendException("550 rechazado");
+    doThrow(rejected)
+        .when(mailSender)
+        .send(argThat((SimpleMailMessage sent) -> "b@example.com".equals(sent.getTo()[0])));
+
+    MailSendException failure =
+        catchThrowableOfType(
+            MailSendException.class, () -> emailService.sendSimpleEmails(messages));
+
+    verify(mailSender, times(3)).send(any(SimpleMailMessage.class));
+    assertThat(failure.getFailedMessages()).containsOnlyKeys(messages.get(1));
+    assertThat(messages).allMatch(sent -> "noreply@example.com".equals(sent.getFrom()));
+    assertThat(adaptive.smtp().inFlight()).isZero();
+  }
+
+  @Test
+  void attachmentBatchSharesThePrecomposedBody() throws Exception {
+    Path pdf = Files.write(dir.resolve("ruta.pdf"), new byte[] {1, 2, 3});
+
+    emailService.sendEmailsWithAttachment(
+        List.of(
+            new BulkRecipient("a@example.com", Map.of("List-Unsubscribe", "<https://x/a>")),
+            new BulkRecipient("b@example.com", Map.of())),
+        "Resumen",
+        "<p>Hola</p>",
+        pdf.toString(),
+        MailLane.BULK);
+
+    // Cada mensaje se arma recién cuando le toca enviarse
+    InOrder order = inOrder(mailSender);
+    order.verify(mailSender).createMimeMessage();
+    order.verify(mailSender).send(any(MimeMessage.class));
+    order.verify(mailSender).createMimeMessage();
+    order.verify(mailSender).send(any(MimeMessage.class));
+    ArgumentCaptor<MimeMessage> sent = ArgumentCaptor.forClass(MimeMessage.class);
+    verify(mailSender, times(2)).send(sent.capture());
+    MimeMessage first = sent.getAllValues().get(0);
+    MimeMessage second = sent.getAllValues().get(1);
+    assertThat(second.getContent()).isSameAs(first.getContent());
+    assertThat(first.getHeader("List-Unsubscribe", null)).isEqualTo("<https://x/a>");
+    assertThat(second.getHeader("To", null)).isEqualTo("b@example.com");
+  }
+
+  private static SimpleMailMessage message(String to) {
+    SimpleMailMessage message = new SimpleMailMessage();
+    message.setTo(to);
+    message.setSubject("Prueba");
+    message.setText("Hola");
+    return message;
+  }
+}
@@ -0,0 +1,150 @@
+package marketplace.notificationservice.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.retry.FailureClassifier;
+import marketplace.notificationservice.support.GraphQLStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/** Timeouts, circuit breaker y bulkhead de GraphQLClientService contra un stub HTTP local. */
+class GraphQLClientServiceResilienceTest {
+
+  private GraphQLStubServer stub;
+  private CircuitBreakerRegistry circuitBreakers;
+  private SimpleMeterRegistry meterRegistry;
+  private GraphQLClientService client;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    stub = GraphQLStubServer.start();
+    meterRegistry = new SimpleMeterRegistry();
+    circuitBreakers =
+        CircuitBreakerRegistry.of(
+            CircuitBreakerConfig.custom()
+                .slidingWindowSize(4)
+                .minimumNumberOfCalls(4)
+                .failureRateThreshold(50)
+                .waitDurationInOpenState(Duration.ofMinutes(1))
+                .build());
+    TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakers).bindTo(meterRegistry);
+    client =
+        new GraphQLClientService(
+            WebClient.builder(),
+            stub.endpoint(),
+            1,
+            10,
+            50,
+            500,
+            new NotificationMetrics(meterRegistry),
+            circuitBreakers,
+            BulkheadRegistry.of(
+                BulkheadConfig.custom()
+                    .maxConcurrentCalls(2)
+                    .maxWaitDuration(Duration.ZERO)
+                    .build()),
+            TimeLimiterRegistry.of(
+                TimeLimiterConfig.custom().timeoutDuration(Duration.ofMillis(300)).build()),
+            new AdaptiveConcurrency(false, 2.0, 0.9, 8, 1, 32, 16, 2, 64));
+  }
+
+  @AfterEach
+  void tearDown() {
+    stub.close();
+  }
+
+  private Throwable failure(Mono<?> call) {
+    return call.map(Object.class::cast)
+        .onErrorResume(Mono::just)
+        .cast(Throwable.class)
+        .block(Duration.ofSeconds(5));
+  }
+
+  @Test
+  void slowResponsesTimeOut() {
+    stub.latencyMs(2_000);
+
+    long start = System.nanoTime();
+    Throwable error = failure(client.fetchUser("u-1"));
+
+    assertThat(error).isInstanceOf(TimeoutException.class);
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(1));
+    assertThat(FailureClassifier.isTransient(error)).isTrue();
+  }
+
+  @Test
+  void breakerOpensOnErrorsAndFailsFastWithoutCallingTheService() {
+    stub.errorStatus(503);
+    for (int i = 0; i < 4; i++) {
+      failure(client.fetchUser("u-1"));
+    }
+    assertThat(client.circuitBreakerState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+    Throwable error = failure(client.fetchUser("u-1"));
+
+    assertThat(error).isInstanceOf(CallNotPermittedException.class);
+    assertThat(stub.requestCount()).isEqualTo(4);
+    assertThat(FailureClassifier.isBackPressure(error)).isTrue();
+    assertThat(
+            meterRegistry
+                .get("resilience4j.circuitbreaker.state")
+                .tag("name", GraphQLClientService.RESILIENCE_INSTANCE)
+                .tag("state", "open")
+                .gauge()
+                .value())
+        .isEqualTo(1.0);
+  }
+
+  @Test
+  void bulkheadRejectsCallsBeyondTheConcurrencyLimit() {
+    stub.latencyMs(200);
+
+    List<Object> results =
+        Flux.range(0, 6)
+            .flatMap(
+                i -> client.fetchUser("u-" + i).map(Object.class::cast).onErrorResume(Mono::just),
+                6)
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+    assertThat(results).filteredOn(BulkheadFullException.class::isInstance).hasSize(4);
+    assertThat(stub.maxInFlight()).isLessThanOrEqualTo(2);
+  }
+
+  @Test
+  void userScanWaitsForTheBulkheadInsteadOfAborting() {
+    stub.users(25);
+    stub.latencyMs(150);
+    // Las dos consultas del consumidor ocupan el bulkhead: la primera página se rechaza
+    Flux.range(0, 2).flatMap(i -> client.fetchUser("u-" + i)).subscribe();
+
+    List<String> ids =
+        client
+            .streamAllUsers(10)
+            .map(user -> user.getId())
+            .collectList()
+            .block(Duration.ofSeconds(5));
+
+    assertThat(ids).hasSize(25).startsWith("user-0").endsWith("user-24");
+    assertThat(stub.maxInFlight()).isLessThanOrEqualTo(2);
+  }
+}
@@ -0,0 +1,123 @@
+package marketplace.notificationservice.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import org.junit.jupiter.api.Test;
+
+class SmtpLaneSchedulerTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+  private SmtpLaneScheduler scheduler(int capacity, int reserved) {
+    return new SmtpLaneScheduler(
+        true, capacity, reserved, 4, 1, false, 0, new NotificationMetrics(registry));
+  }
+
+  private static void awaitQueued(SmtpLaneScheduler scheduler, MailLane lane, int expected)
+      throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (scheduler.queued(lane) < expected && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    assertThat(scheduler.queued(lane)).isEqualTo(expected);
+  }
+
+  @Test
+  void backloggedLanesShareCapacityByWeight() throws Exception {
+    SmtpLaneScheduler scheduler = scheduler(1, 0);
+    List<MailLane> granted = Collections.synchronizedList(new ArrayList<>());
+    scheduler.acquire(MailLane.TRANSACTIONAL);
+
+    try (ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < 20; i++) {
+        MailLane lane = i % 2 == 0 ? MailLane.TRANSACTIONAL : MailLane.BULK;
+        threads.execute(
+            () -> {
+              try {
+                scheduler.acquire(lane);
+                granted.add(lane);
+                scheduler.release(lane);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            });
+      }
+      awaitQueued(scheduler, MailLane.TRANSACTIONAL, 10);
+      awaitQueued(scheduler, MailLane.BULK, 10);
+
+      scheduler.release(MailLane.TRANSACTIONAL);
+    }
+
+    assertThat(granted).hasSize(20);
+    // Pesos 4:1 con ambos carriles llenos: ~8 transaccionales en los primeros 10 envíos
+    long transactionalFirst =
+        granted.subList(0, 10).stream().filter(lane -> lane == MailLane.TRANSACTIONAL).count();
+    assertThat(transactionalFirst).isBetween(7L, 9L);
+    assertThat(registry.find("notification.email.lane.wait").tag("lane", "bulk").timer().count())
+        .isEqualTo(10);
+  }
+
+  @Test
+  void bulkNeverTakesTheReservedSlots() throws Exception {
+    SmtpLaneScheduler scheduler = scheduler(3, 1);
+    scheduler.acquire(MailLane.BULK);
+    scheduler.acquire(MailLane.BULK);
+
+    Thread blocked = Thread.ofVirtual().start(() -> {
+      try {
+        scheduler.acquire(MailLane.BULK);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    awaitQueued(scheduler, MailLane.BULK, 1);
+
+    // El lugar reservado está libre para el transaccional aunque BULK tenga cola
+    scheduler.acquire(MailLane.TRANSACTIONAL);
+    assertThat(scheduler.inUse(MailLane.TRANSACTIONAL)).isEqualTo(1);
+
+    scheduler.release(MailLane.BULK);
+    blocked.join(5_000);
+    assertThat(scheduler.queued(MailLane.BULK)).isZero();
+    assertThat(scheduler.inUse(MailLane.BULK)).isEqualTo(2);
+  }
+
+  @Test
+  void capacityNeverExceedsThePool() throws Exception {
+    SmtpLaneScheduler scheduler =
+        new SmtpLaneScheduler(true, 8, 2, 4, 1, true, 8, new NotificationMetrics(registry));
+
+    // El límite adaptativo de SMTP puede subir hasta smtp.max, por encima del pool
+    scheduler.setCapacity(32);
+    assertThat(scheduler.capacity()).isEqualTo(8);
+
+    for (int i = 0; i < 6; i++) {
+      scheduler.acquire(MailLane.BULK);
+    }
+    Thread blocked = Thread.ofVirtual().start(() -> {
+      try {
+        scheduler.acquire(MailLane.BULK);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    });
+    awaitQueued(scheduler, MailLane.BULK, 1);
+
+    // BULK se queda en capacity - reserved y los lugares reservados siguen libres
+    scheduler.acquire(MailLane.TRANSACTIONAL);
+    scheduler.acquire(MailLane.TRANSACTIONAL);
+    assertThat(scheduler.inUse(MailLane.BULK)).isEqualTo(6);
+    assertThat(scheduler.inUse(MailLane.TRANSACTIONAL)).isEqualTo(2);
+
+    blocked.interrupt();
+    blocked.join(5_000);
+  }
+}
@@ -0,0 +1,121 @@
+package marketplace.notificationservice.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import marketplace.notificationservice.dtos.UserDTO;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.support.GraphQLStubServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/** Ventana, tamaño máximo, deduplicación y errores de UserBatchLoader contra un stub HTTP local. */
+class UserBatchLoaderTest {
+
+  private GraphQLStubServer stub;
+  private GraphQLClientService client;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    stub = GraphQLStubServer.start();
+    client =
+        new GraphQLClientService(
+            WebClient.builder(),
+            stub.endpoint(),
+            1,
+            10,
+            200,
+            500,
+            new NotificationMetrics(new SimpleMeterRegistry()),
+            CircuitBreakerRegistry.ofDefaults(),
+            BulkheadRegistry.ofDefaults(),
+            TimeLimiterRegistry.ofDefaults(),
+            new AdaptiveConcurrency(false, 2.0, 0.9, 8, 1, 32, 16, 2, 64));
+  }
+
+  @AfterEach
+  void tearDown() {
+    stub.close();
+  }
+
+  @Test
+  void flushesWhenTheWindowCloses() throws Exception {
+    // El lote nunca se llena: sólo la ventana puede despacharlo
+    UserBatchLoader loader = new UserBatchLoader(client, true, 50, 100);
+
+    CompletableFuture<UserDTO> first = loader.load("u-1");
+    CompletableFuture<UserDTO> second = loader.load("u-2");
+
+    assertThat(first.get(5, TimeUnit.SECONDS).getEmail()).isEqualTo("u-1@example.com");
+    assertThat(second.get(5, TimeUnit.SECONDS).getEmail()).isEqualTo("u-2@example.com");
+    assertThat(stub.requestCount()).isEqualTo(1);
+    assertThat(stub.queries().get(0))
+        .contains("getUser(userId: $u0)", "getUser(userId: $u1)")
+        .doesNotContain("u-1", "u-2");
+  }
+
+  @Test
+  void idsWithQuotesDoNotBreakTheBatch() throws Exception {
+    UserBatchLoader loader = new UserBatchLoader(client, true, 50, 100);
+
+    CompletableFuture<UserDTO> plain = loader.load("u-1");
+    CompletableFuture<UserDTO> quoted = loader.load("u-\"2\"\\");
+
+    assertThat(plain.get(5, TimeUnit.SECONDS).getId()).isEqualTo("u-1");
+    assertThat(quoted.get(5, TimeUnit.SECONDS).getId()).isEqualTo("u-\"2\"\\");
+    assertThat(stub.requestCount()).isEqualTo(1);
+  }
+
+  @Test
+  void flushesAsSoonAsTheBatchIsFull() throws Exception {
+    // Con una ventana de un minuto, sólo el tamaño máximo despacha antes del timeout
+    UserBatchLoader loader = new UserBatchLoader(client, true, 60_000, 3);
+
+    List<CompletableFuture<UserDTO>> futures =
+        List.of(loader.load("u-1"), loader.load("u-2"), loader.load("u-3"));
+
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+    assertThat(futures).allSatisfy(future -> assertThat(future.join()).isNotNull());
+    assertThat(stub.requestCount()).isEqualTo(1);
+    loader.shutdown();
+  }
+
+  @Test
+  void sameIdWithinABatchIsQueriedOnce() throws Exception {
+    stub.missingUsers("ghost");
+    UserBatchLoader loader = new UserBatchLoader(client, true, 50, 100);
+
+    CompletableFuture<UserDTO> first = loader.load("u-1");
+    CompletableFuture<UserDTO> again = loader.load("u-1");
+    CompletableFuture<UserDTO> missing = loader.load("ghost");
+
+    assertThat(again).isSameAs(first);
+    assertThat(first.get(5, TimeUnit.SECONDS).getId()).isEqualTo("u-1");
+    assertThat(missing.get(5, TimeUnit.SECONDS)).isNull();
+    String query = stub.queries().get(0);
+    assertThat(query.split("getUser\\(", -1)).hasSize(3);
+  }
+
+  @Test
+  void failuresReachEveryWaiter() throws Exception {
+    stub.errorStatus(500);
+    UserBatchLoader loader = new UserBatchLoader(client, true, 50, 100);
+
+    List<CompletableFuture<UserDTO>> futures =
+        List.of(loader.load("u-1"), loader.load("u-2"), loader.load("u-1"));
+
+    CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+        .handle((ignored, error) -> null)
+        .get(5, TimeUnit.SECONDS);
+    assertThat(futures).allSatisfy(future -> assertThat(future).isCompletedExceptionally());
+    assertThat(stub.requestCount()).isEqualTo(1);
+  }
+}
@@ -0,0 +1,64 @@
+package marketplace.notificationservice.Service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import marketplace.notificationservice.dtos.UserDTO;
+import org.junit.jupiter.api.Test;
+
+class UserCacheTest {
+
+  private final UserBatchLoader loader = mock(UserBatchLoader.class);
+
+  @Test
+  void concurrentMissesShareOneLookup() {
+    CompletableFuture<UserDTO> pending = new CompletableFuture<>();
+    when(loader.load("u-1")).thenReturn(pending);
+    UserCache cache = new UserCache(loader, true, 10, 60, 5);
+
+    CompletableFuture<UserDTO> first = cache.get("u-1");
+    CompletableFuture<UserDTO> second = cache.get("u-1");
+    pending.complete(new UserDTO("u-1", "a@example.com", "A", null));
+
+    assertThat(first.join().getEmail()).isEqualTo("a@example.com");
+    assertThat(second.join()).isSameAs(first.join());
+    assertThat(cache.get("u-1").join()).isSameAs(first.join());
+    verify(loader, times(1)).load("u-1");
+    assertThat(cache.hitCount()).isEqualTo(1);
+    assertThat(cache.missCount()).isEqualTo(2);
+  }
+
+  @Test
+  void missingUsersAreCachedButErrorsAreNot() {
+    when(loader.load("missing")).thenReturn(CompletableFuture.completedFuture(null));
+    when(loader.load("broken"))
+        .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("boom")));
+    UserCache cache = new UserCache(loader, true, 10, 60, 5);
+
+    assertThat(cache.get("missing").join()).isNull();
+    assertThat(cache.get("missing").join()).isNull();
+    assertThat(cache.get("broken")).isCompletedExceptionally();
+    assertThat(cache.get("broken")).isCompletedExceptionally();
+
+    verify(loader, times(1)).load("missing");
+    verify(loader, times(2)).load("broken");
+  }
+
+  @Test
+  void evictsLeastRecentlyUsedBeyondMaxSize() {
+    UserCache cache = new UserCache(loader, true, 2, 60, 5);
+    cache.putAll(
+        List.of(
+            new UserDTO("u-1", "1@example.com", "1", null),
+            new UserDTO("u-2", "2@example.com", "2", null),
+            new UserDTO("u-3", "3@example.com", "3", null)));
+
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.evictionCount()).isEqualTo(1);
+  }
+}
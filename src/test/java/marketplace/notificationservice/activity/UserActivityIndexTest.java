@@ -0,0 +1,88 @@
+package marketplace.notificationservice.activity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class UserActivityIndexTest {
+
+  private static final long NOW = 1_760_000_000_000L;
+  private static final long DAY = Duration.ofDays(1).toMillis();
+
+  @TempDir Path directory;
+
+  private UserActivityIndex index(String snapshotPath) {
+    UserActivityIndex index = new UserActivityIndex(true, 16, 30, snapshotPath, 0);
+    index.start();
+    return index;
+  }
+
+  @Test
+  void keepsTheLatestActivityPerUser() {
+    UserActivityIndex index = index("");
+    index.recordActivity("u-1", NOW);
+    // Un reintento atrasado no hace retroceder la última actividad
+    index.recordActivity("u-1", NOW - DAY);
+
+    assertThat(index.lastActivity("u-1")).isEqualTo(NOW);
+    assertThat(index.lastActivity("u-2")).isZero();
+    assertThat(index.isInactiveSince("u-1", NOW - DAY)).isFalse();
+    assertThat(index.isInactiveSince("u-1", NOW + 1_000)).isTrue();
+    // Al desconocido se le manda el email
+    assertThat(index.isInactiveSince("u-2", NOW - DAY)).isTrue();
+  }
+
+  @Test
+  void growsBeyondTheExpectedUsers() {
+    UserActivityIndex index = index("");
+    for (int i = 0; i < 10_000; i++) {
+      index.recordActivity("u-" + i, NOW + i * 1_000L);
+    }
+
+    assertThat(index.size()).isEqualTo(10_000);
+    assertThat(index.capacity()).isGreaterThanOrEqualTo(index.size() * 4 / 3);
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(index.lastActivity("u-" + i)).isEqualTo(NOW + i * 1_000L);
+    }
+  }
+
+  @Test
+  void entriesOlderThanTheRetentionAreDroppedWhenTheTableGrows() {
+    UserActivityIndex index = index("");
+    index.recordActivity("viejo", NOW - 40 * DAY);
+    for (int i = 0; i < 100; i++) {
+      index.recordActivity("u-" + i, NOW);
+    }
+
+    assertThat(index.lastActivity("viejo")).isZero();
+    assertThat(index.size()).isEqualTo(100);
+  }
+
+  @Test
+  void snapshotSurvivesRestart() {
+    String snapshot = directory.resolve("activity/index.bin").toString();
+    UserActivityIndex first = index(snapshot);
+    first.recordActivity("u-1", System.currentTimeMillis());
+    first.recordActivity("u-2", System.currentTimeMillis() - 40 * DAY);
+    first.shutdown();
+
+    UserActivityIndex second = index(snapshot);
+
+    assertThat(second.isInactiveSince("u-1", System.currentTimeMillis() - DAY)).isFalse();
+    // Vencida al cargar
+    assertThat(second.lastActivity("u-2")).isZero();
+    assertThat(second.size()).isEqualTo(1);
+  }
+
+  @Test
+  void disabledIndexTreatsEveryoneAsInactive() {
+    UserActivityIndex index = new UserActivityIndex(false, 16, 30, "", 0);
+    index.start();
+    index.recordActivity("u-1", NOW);
+
+    assertThat(index.isInactiveSince("u-1", NOW - DAY)).isTrue();
+  }
+}
@@ -0,0 +1,68 @@
+package marketplace.notificationservice.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Properties;
+import marketplace.notificationservice.support.SmtpStubServer;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+/**
+ * Compara cuántas conexiones SMTP abre JavaMailSenderImpl (una por mensaje) contra
+ * PooledJavaMailSender (reutilizadas) usando un servidor SMTP local. Se cuentan conexiones y no
+ * tiempos, que en una máquina de CI cargada no son reproducibles.
+ */
+class PooledJavaMailSenderTest {
+
+  private static final int MESSAGES = 50;
+
+  @Test
+  void pooledSenderReusesConnections() throws Exception {
+    try (SmtpStubServer smtp = SmtpStubServer.start(0)) {
+      sendOneByOne(configure(new JavaMailSenderImpl(), smtp));
+      int perMessageConnections = smtp.connectionCount();
+
+      PooledJavaMailSender pooledSender =
+          configure(new PooledJavaMailSender(4, 30_000, 600_000, 2_000), smtp);
+      sendOneByOne(pooledSender);
+      int pooledConnections = smtp.connectionCount() - perMessageConnections;
+
+      pooledSender.send(messages());
+      pooledSender.destroy();
+
+      assertThat(perMessageConnections).isEqualTo(MESSAGES);
+      assertThat(pooledConnections).isEqualTo(1);
+      assertThat(smtp.connectionCount()).isEqualTo(MESSAGES + 1);
+      assertThat(smtp.messageCount()).isEqualTo(MESSAGES * 3);
+    }
+  }
+
+  private static void sendOneByOne(JavaMailSenderImpl sender) {
+    for (SimpleMailMessage message : messages()) {
+      sender.send(message);
+    }
+  }
+
+  private static SimpleMailMessage[] messages() {
+    SimpleMailMessage[] messages = new SimpleMailMessage[MESSAGES];
+    for (int i = 0; i < MESSAGES; i++) {
+      SimpleMailMessage message = new SimpleMailMessage();
+      message.setFrom("noreply@example.com");
+      message.setTo("user" + i + "@example.com");
+      message.setSubject("Prueba " + i);
+      message.setText("Hola " + i);
+      messages[i] = message;
+    }
+    return messages;
+  }
+
+  private static <T extends JavaMailSenderImpl> T configure(T sender, SmtpStubServer smtp) {
+    sender.setHost(smtp.host());
+    sender.setPort(smtp.port());
+    Properties props = sender.getJavaMailProperties();
+    props.put("mail.transport.protocol", "smtp");
+    props.put("mail.smtp.auth", "false");
+    return sender;
+  }
+}
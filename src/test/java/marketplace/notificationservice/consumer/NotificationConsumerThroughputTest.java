@@ -0,0 +1,228 @@
+package marketplace.notificationservice.consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import marketplace.notificationservice.Service.EmailService;
+import marketplace.notificationservice.Service.GraphQLClientService;
+import marketplace.notificationservice.Service.UserBatchLoader;
+import marketplace.notificationservice.Service.UserCache;
+import marketplace.notificationservice.activity.UserActivityIndex;
+import marketplace.notificationservice.config.RabbitMQConfig;
+import marketplace.notificationservice.dedup.EventDeduplicator;
+import marketplace.notificationservice.dtos.UserDTO;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.outbox.EmailOutbox;
+import marketplace.notificationservice.retry.NotificationRetryPublisher;
+import marketplace.notificationservice.support.EmbeddedBroker;
+import marketplace.notificationservice.template.EmailTemplateEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.MethodRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.boot.autoconfigure.amqp.RabbitProperties;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+import reactor.core.publisher.Mono;
+
+/**
+ * Verifica que {@link NotificationConsumer} procesa en paralelo con 1, 8 y 64 consumidores. Los
+ * mensajes pasan por un broker AMQP embebido y los consume un container creado con
+ * RabbitMQConfig.rabbitListenerContainerFactory (concurrencia, prefetch, ack manual y, con 64,
+ * virtual threads), el mismo camino que el listener en producción. GraphQL y SMTP simulan su
+ * latencia con un sleep.
+ *
+ * <p>Se compara la concurrencia observada en el SMTP falso y no el tiempo transcurrido, que en una
+ * máquina de CI cargada no es reproducible. Los primeros envíos esperan en una barrera hasta que
+ * llegan tantos como consumidores hay (o vence un timeout), así el máximo en vuelo sólo alcanza ese
+ * número si los consumidores realmente corren a la vez. El throughput va al log como referencia.
+ */
+class NotificationConsumerThroughputTest {
+
+  private static final Logger log =
+      LoggerFactory.getLogger(NotificationConsumerThroughputTest.class);
+
+  private static final int MESSAGES = 512;
+  private static final int PREFETCH = 250;
+  private static final long LOOKUP_LATENCY_MS = 2;
+  private static final long SMTP_LATENCY_MS = 3;
+
+  private static final String MESSAGE =
+      """
+      {"eventType":"ROUTE_COMPLETED","routeId":"r-1","routeName":"Cerro de Monserrate",
+       "creatorId":"c-1","userId":"u-1","completed":true,"score":120,"distanceKm":4.5,
+       "estTimeMin":60,"actualTimeMin":55,"timestamp":"2025-10-18T10:00:00Z"}
+      """;
+
+  private EmbeddedBroker broker;
+  private CachingConnectionFactory connectionFactory;
+  private RabbitAdmin admin;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    broker = EmbeddedBroker.start();
+    connectionFactory = new CachingConnectionFactory(broker.uri());
+    admin = new RabbitAdmin(connectionFactory);
+    admin.declareQueue(new RabbitMQConfig().notificationQueue());
+  }
+
+  @AfterEach
+  void tearDown() {
+    connectionFactory.destroy();
+    broker.close();
+  }
+
+  @Test
+  void concurrencyScalesWithConsumers() throws Exception {
+    for (int consumers : new int[] {1, 8, 64}) {
+      boolean virtualThreads = consumers == 64;
+      Result result = measure(consumers, virtualThreads);
+      log.info(
+          "NotificationConsumer con {} consumidores{}: {} msg/s, {} envíos simultáneos",
+          consumers,
+          virtualThreads ? " (virtual threads)" : "",
+          Math.round(result.throughput()),
+          result.maxInFlight());
+
+      assertThat(result.maxInFlight()).isEqualTo(consumers);
+    }
+  }
+
+  private record Result(double throughput, int maxInFlight) {}
+
+  private Result measure(int consumers, boolean virtualThreads) throws Exception {
+    AtomicInteger sent = new AtomicInteger();
+    AtomicInteger inFlight = new AtomicInteger();
+    AtomicInteger maxInFlight = new AtomicInteger();
+    CountDownLatch gate = new CountDownLatch(consumers);
+    NotificationMetrics metrics = new NotificationMetrics(new SimpleMeterRegistry());
+    NotificationConsumer consumer =
+        new NotificationConsumer(
+            new UserCache(new UserBatchLoader(stubGraphQL(), false, 10, 100), false, 0, 0, 0),
+            stubEmail(sent, inFlight, maxInFlight, gate),
+            new EmailOutbox(null, metrics, null, false, "", 0, 0, 0, 0, 0),
+            mock(NotificationRetryPublisher.class),
+            new EventDeduplicator(false, 0, 1, 1, 0.01, "", 0),
+            new UserActivityIndex(false, 1, 1, "", 0),
+            new RouteEventCoalescer(false, 0, 1, 1, 1, 1),
+            new EmailTemplateEngine(),
+            metrics,
+            false);
+    SimpleMessageListenerContainer container = container(consumer, consumers, virtualThreads);
+
+    // Se publica con todos los consumidores registrados: el broker reparte en round robin y
+    // ninguno se lleva todo el lote en su prefetch
+    container.start();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (container.getActiveConsumerCount() < consumers && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+    RabbitTemplate template = new RabbitTemplate(connectionFactory);
+    long start = System.nanoTime();
+    for (int i = 0; i < MESSAGES; i++) {
+      template.send(
+          "",
+          RabbitMQConfig.QUEUE_NAME,
+          new Message(MESSAGE.getBytes(StandardCharsets.UTF_8), new MessageProperties()));
+    }
+
+    deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+    while (sent.get() < MESSAGES && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    long elapsed = System.nanoTime() - start;
+    container.stop();
+
+    assertThat(sent.get()).isEqualTo(MESSAGES);
+    // Al parar, lo entregado sin confirmar vuelve a la cola: vacía significa que todo se confirmó
+    assertThat(queued()).isZero();
+    return new Result(MESSAGES / (elapsed / 1_000_000_000.0), maxInFlight.get());
+  }
+
+  // El mismo endpoint que arma @RabbitListener sobre consumeMessage, en la factory de producción
+  private SimpleMessageListenerContainer container(
+      NotificationConsumer consumer, int consumers, boolean virtualThreads) throws Exception {
+    SimpleRabbitListenerContainerFactory factory =
+        new RabbitMQConfig()
+            .rabbitListenerContainerFactory(
+                new SimpleRabbitListenerContainerFactoryConfigurer(new RabbitProperties()),
+                connectionFactory,
+                consumers,
+                consumers,
+                PREFETCH,
+                virtualThreads,
+                false,
+                0);
+    DefaultMessageHandlerMethodFactory handlerMethodFactory =
+        new DefaultMessageHandlerMethodFactory();
+    handlerMethodFactory.afterPropertiesSet();
+    MethodRabbitListenerEndpoint endpoint = new MethodRabbitListenerEndpoint();
+    endpoint.setId(NotificationConsumer.LISTENER_ID);
+    endpoint.setQueueNames(RabbitMQConfig.QUEUE_NAME);
+    endpoint.setBean(consumer);
+    endpoint.setMethod(NotificationConsumer.class.getMethod("consumeMessage", Message.class));
+    endpoint.setMessageHandlerMethodFactory(handlerMethodFactory);
+    SimpleMessageListenerContainer container = factory.createListenerContainer(endpoint);
+    container.afterPropertiesSet();
+    return container;
+  }
+
+  private int queued() {
+    Properties properties = admin.getQueueProperties(RabbitMQConfig.QUEUE_NAME);
+    return ((Number) properties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT)).intValue();
+  }
+
+  private static GraphQLClientService stubGraphQL() {
+    GraphQLClientService graphQL = mock(GraphQLClientService.class);
+    when(graphQL.fetchUser(anyString()))
+        .thenAnswer(
+            invocation ->
+                Mono.fromCallable(
+                    () -> {
+                      Thread.sleep(LOOKUP_LATENCY_MS);
+                      return new UserDTO(
+                          invocation.getArgument(0), "user@example.com", "Tester", null);
+                    }));
+    return graphQL;
+  }
+
+  private static EmailService stubEmail(
+      AtomicInteger sent, AtomicInteger inFlight, AtomicInteger maxInFlight, CountDownLatch gate) {
+    EmailService email = mock(EmailService.class);
+    doAnswer(
+            invocation -> {
+              maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+              try {
+                gate.countDown();
+                gate.await(10, TimeUnit.SECONDS);
+                Thread.sleep(SMTP_LATENCY_MS);
+                sent.incrementAndGet();
+              } finally {
+                inFlight.decrementAndGet();
+              }
+              return null;
+            })
+        .when(email)
+        .sendEmail(anyString(), anyString(), anyString(), isNull());
+    return email;
+  }
+}
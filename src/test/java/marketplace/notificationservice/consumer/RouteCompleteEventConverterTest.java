@@ -0,0 +1,85 @@
+package marketplace.notificationservice.consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import marketplace.notificationservice.consumer.InvalidRouteEventException.Reason;
+import marketplace.notificationservice.dtos.RouteCompleteEvent;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+class RouteCompleteEventConverterTest {
+
+  private static final String VALID =
+      """
+      {"eventType":"ROUTE_COMPLETED","routeId":"r-1","routeName":"Cerro de Monserrate",
+       "creatorId":"c-1","userId":"u-1","completed":true,"score":120,"distanceKm":4.5,
+       "estTimeMin":60,"actualTimeMin":55,"timestamp":"2025-10-18T10:00:00Z"}
+      """;
+
+  private final RouteCompleteEventConverter converter = new RouteCompleteEventConverter();
+
+  private static Message message(String body) {
+    return new Message(body.getBytes(StandardCharsets.UTF_8), new MessageProperties());
+  }
+
+  private InvalidRouteEventException reject(String body) {
+    try {
+      converter.fromMessage(message(body));
+    } catch (InvalidRouteEventException e) {
+      return e;
+    }
+    throw new AssertionError("Se esperaba un evento inválido: " + body);
+  }
+
+  @Test
+  void parsesValidEventsIgnoringUnknownFields() {
+    RouteCompleteEvent event =
+        converter.fromMessage(message(VALID.replace("\"completed\"", "\"extra\":[1],\"completed\"")));
+
+    assertThat(event.routeName()).isEqualTo("Cerro de Monserrate");
+    assertThat(event.userId()).isEqualTo("u-1");
+    assertThat(event.distanceKm()).isEqualTo(4.5);
+    assertThat(event.occurredAt()).isEqualTo(Instant.parse("2025-10-18T10:00:00Z"));
+  }
+
+  @Test
+  void unreadableTimestampHasNoOccurrenceTime() {
+    RouteCompleteEvent event =
+        converter.fromMessage(message(VALID.replace("2025-10-18T10:00:00Z", "ayer")));
+
+    assertThat(event.occurredAt()).isNull();
+  }
+
+  @Test
+  void classifiesInvalidPayloads() {
+    InvalidRouteEventException malformed = reject("{\"eventType\":\"ROUTE_COMPLETED\"");
+    assertThat(malformed.getReason()).isEqualTo(Reason.MALFORMED_JSON);
+
+    InvalidRouteEventException wrongType = reject(VALID.replace("120", "\"mucho\""));
+    assertThat(wrongType.getReason()).isEqualTo(Reason.WRONG_TYPE);
+    assertThat(wrongType.getField()).isEqualTo("score");
+
+    InvalidRouteEventException missing = reject(VALID.replace("\"u-1\"", "\" \""));
+    assertThat(missing.getReason()).isEqualTo(Reason.MISSING_FIELD);
+    assertThat(missing.getField()).isEqualTo("userId");
+
+    InvalidRouteEventException negative = reject(VALID.replace("4.5", "-1"));
+    assertThat(negative.getReason()).isEqualTo(Reason.INVALID_VALUE);
+    assertThat(negative.getField()).isEqualTo("distanceKm");
+
+    assertThatThrownBy(() -> converter.fromBytes(new byte[0]))
+        .isInstanceOf(InvalidRouteEventException.class);
+  }
+
+  @Test
+  void excerptIsTruncatedAndEscaped() {
+    String excerpt = RouteCompleteEventConverter.excerpt(("a\u0001\n" + "b".repeat(300)).getBytes());
+
+    assertThat(excerpt).startsWith("a\\u0001\\nbbb").endsWith("…");
+    assertThat(excerpt).doesNotContain("\n");
+  }
+}
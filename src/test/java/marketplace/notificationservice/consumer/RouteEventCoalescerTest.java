@@ -0,0 +1,192 @@
+package marketplace.notificationservice.consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import marketplace.notificationservice.consumer.RouteEventCoalescer.BufferedEvent;
+import marketplace.notificationservice.dtos.RouteCompleteEvent;
+import marketplace.notificationservice.dtos.UserDTO;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.template.EmailTemplateEngine;
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.AmqpException;
+
+class RouteEventCoalescerTest {
+
+  private final List<List<BufferedEvent>> flushed = new ArrayList<>();
+
+  private static RouteCompleteEvent event(String routeId, String userId, int est, int actual) {
+    return new RouteCompleteEvent(
+        "ROUTE_COMPLETED", routeId, "Ruta " + routeId, "c-1", userId, true, 100, 2.5, est, actual,
+        "2025-10-18T10:00:00Z");
+  }
+
+  private static byte[] bytes(String payload) {
+    return payload.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private RouteEventCoalescer coalescer(long windowSeconds, int maxEvents, int maxUsers) {
+    return coalescer(windowSeconds, maxEvents, maxUsers, 1000);
+  }
+
+  private RouteEventCoalescer coalescer(
+      long windowSeconds, int maxEvents, int maxUsers, int maxBufferedEvents) {
+    RouteEventCoalescer coalescer =
+        new RouteEventCoalescer(true, windowSeconds, maxEvents, maxUsers, maxBufferedEvents, 2);
+    coalescer.onFlush(flushed::add);
+    return coalescer;
+  }
+
+  @Test
+  void flushesAUserWhenItReachesMaxEvents() {
+    RouteEventCoalescer coalescer = coalescer(3600, 3, 100);
+    coalescer.add(event("r-1", "u-1", 60, 50), bytes("m1"), 0);
+    coalescer.add(event("r-2", "u-1", 60, 50), bytes("m2"), 0);
+    coalescer.add(event("r-1", "u-1", 60, 50), bytes("m1"), 0); // redelivery
+    coalescer.add(event("r-1", "u-2", 60, 50), bytes("m3"), 0);
+    assertThat(flushed).isEmpty();
+
+    coalescer.add(event("r-3", "u-1", 60, 50), bytes("m4"), 0);
+
+    assertThat(flushed).hasSize(1);
+    assertThat(flushed.get(0))
+        .extracting(buffered -> new String(buffered.payload(), StandardCharsets.UTF_8))
+        .containsExactly("m1", "m2", "m4");
+    assertThat(coalescer.bufferedUsers()).isEqualTo(1);
+  }
+
+  @Test
+  void boundsMemoryByFlushingTheOldestUserEarly() {
+    RouteEventCoalescer coalescer = coalescer(3600, 10, 2);
+    coalescer.add(event("r-1", "u-1", 60, 50), bytes("m1"), 0);
+    coalescer.add(event("r-1", "u-2", 60, 50), bytes("m2"), 0);
+    coalescer.add(event("r-1", "u-3", 60, 50), bytes("m3"), 0);
+
+    assertThat(flushed).hasSize(1);
+    assertThat(flushed.get(0).get(0).event().userId()).isEqualTo("u-1");
+    assertThat(coalescer.bufferedUsers()).isEqualTo(2);
+  }
+
+  @Test
+  void boundsUnackedMessagesByFlushingTheOldestUserEarly() {
+    RouteEventCoalescer coalescer = coalescer(3600, 10, 100, 3);
+    coalescer.add(event("r-1", "u-1", 60, 50), bytes("m1"), 0);
+    coalescer.add(event("r-2", "u-1", 60, 50), bytes("m2"), 0);
+    coalescer.add(event("r-1", "u-2", 60, 50), bytes("m3"), 0);
+    assertThat(flushed).isEmpty();
+
+    coalescer.add(event("r-2", "u-2", 60, 50), bytes("m4"), 0);
+
+    assertThat(flushed).hasSize(1);
+    assertThat(flushed.get(0))
+        .extracting(buffered -> buffered.event().userId())
+        .containsOnly("u-1");
+    assertThat(coalescer.bufferedEvents()).isEqualTo(2);
+  }
+
+  @Test
+  void messagesAreAckedOnlyOnceTheirDigestIsHandedOff() {
+    RouteEventCoalescer coalescer = coalescer(0, 10, 100);
+    CompletableFuture<Void> first = coalescer.add(event("r-1", "u-1", 60, 50), bytes("m1"), 0);
+    CompletableFuture<Void> redelivery =
+        coalescer.add(event("r-1", "u-1", 60, 50), bytes("m1"), 0);
+    assertThat(first).isNotDone();
+    assertThat(coalescer.bufferedEvents()).isEqualTo(2);
+
+    coalescer.flushExpired();
+
+    assertThat(first).isCompleted();
+    assertThat(redelivery).isCompleted();
+    assertThat(flushed.get(0)).hasSize(1);
+    assertThat(coalescer.bufferedEvents()).isZero();
+  }
+
+  @Test
+  void failedDigestsSendTheirMessagesBackToTheQueue() {
+    RouteEventCoalescer coalescer = coalescer(3600, 1, 100);
+    coalescer.onFlush(
+        events -> {
+          throw new AmqpException("Sin confirmación del broker");
+        });
+
+    // Con max-events-per-user 1 el grupo se despacha al agregarlo
+    CompletableFuture<Void> handled = coalescer.add(event("r-1", "u-1", 60, 50), bytes("m1"), 0);
+
+    assertThat(handled).isCompletedExceptionally();
+  }
+
+  @Test
+  void digestsAreSentOffTheListenerThread() throws Exception {
+    RouteEventCoalescer coalescer = coalescer(3600, 1, 100);
+    CountDownLatch release = new CountDownLatch(1);
+    List<String> threads = new CopyOnWriteArrayList<>();
+    coalescer.onFlush(
+        events -> {
+          threads.add(Thread.currentThread().getName());
+          try {
+            release.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    coalescer.start();
+    try {
+      // add retorna aunque el envío del resumen siga en curso
+      CompletableFuture<Void> handled =
+          coalescer.add(event("r-1", "u-1", 60, 50), bytes("m1"), 0);
+      assertThat(handled).isNotDone();
+
+      release.countDown();
+      handled.get(5, TimeUnit.SECONDS);
+      assertThat(threads).singleElement().asString().startsWith("digest-flush-");
+    } finally {
+      coalescer.shutdown();
+    }
+  }
+
+  @Test
+  void flushesOnlyExpiredWindows() {
+    RouteEventCoalescer expiring = coalescer(0, 10, 100);
+    expiring.add(event("r-1", "u-1", 60, 50), bytes("m1"), 0);
+    expiring.flushExpired();
+    assertThat(flushed).hasSize(1);
+
+    RouteEventCoalescer pending = coalescer(3600, 10, 100);
+    pending.add(event("r-1", "u-1", 60, 50), bytes("m1"), 0);
+    pending.add(event("r-1", "u-2", 60, 50), bytes("m2"), 0);
+    pending.flushExpired();
+    assertThat(flushed).hasSize(1);
+    // Sin flush al apagar: los mensajes quedan sin confirmar y el broker los vuelve a entregar
+    assertThat(pending.bufferedUsers()).isEqualTo(2);
+    assertThat(pending.bufferedEvents()).isEqualTo(2);
+  }
+
+  @Test
+  void digestListsEveryRouteWithTotals() {
+    NotificationConsumer consumer =
+        new NotificationConsumer(
+            null, null, null, null, null, null,
+            new RouteEventCoalescer(false, 0, 1, 1, 1, 1),
+            new EmailTemplateEngine(),
+            new NotificationMetrics(new SimpleMeterRegistry()),
+            true);
+    UserDTO user = new UserDTO("u-1", "user@example.com", "Tester", null);
+    List<RouteCompleteEvent> events =
+        List.of(event("r-1", "u-1", 60, 50), event("r-2", "u-1", 30, 35));
+
+    String text = consumer.buildDigestEmail(events, user);
+    String html = consumer.buildDigestHtmlEmail(events, user);
+
+    assertThat(text)
+        .contains("Completaste 2 rutas", "Ruta r-1", "Ruta r-2", "Puntuación total: 200 puntos")
+        .contains("Distancia total: 5.00 km", "terminaste 5 minutos antes");
+    assertThat(html).contains("<li><strong>Ruta r-1</strong>", "<li><strong>Ruta r-2</strong>");
+  }
+}
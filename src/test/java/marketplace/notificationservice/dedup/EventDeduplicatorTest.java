@@ -0,0 +1,106 @@
+package marketplace.notificationservice.dedup;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+import marketplace.notificationservice.dtos.RouteCompleteEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EventDeduplicatorTest {
+
+  @TempDir Path directory;
+
+  private static RouteCompleteEvent event(String routeId, String userId) {
+    return new RouteCompleteEvent(
+        "ROUTE_COMPLETED", routeId, "Ruta", "c-1", userId, true, 100, 5.0, 60, 55,
+        "2025-10-18T10:00:00Z");
+  }
+
+  private EventDeduplicator deduplicator(String snapshotPath) {
+    EventDeduplicator deduplicator =
+        new EventDeduplicator(true, 60, 4, 200_000, 0.0001, snapshotPath, 0);
+    deduplicator.start();
+    return deduplicator;
+  }
+
+  @Test
+  void onlyDeliveredEventsAreDuplicates() {
+    EventDeduplicator deduplicator = deduplicator("");
+    RouteCompleteEvent event = event("r-1", "u-1");
+
+    assertThat(deduplicator.isDuplicate(event)).isFalse();
+    // Si el envío falla no se marca y el reintento pasa
+    assertThat(deduplicator.isDuplicate(event)).isFalse();
+    deduplicator.markDelivered(event);
+
+    assertThat(deduplicator.isDuplicate(event)).isTrue();
+    assertThat(deduplicator.isDuplicate(event("r-1", "u-2"))).isFalse();
+    assertThat(deduplicator.isDuplicate(event("r-2", "u-1"))).isFalse();
+  }
+
+  @Test
+  void aClaimedEventIsSkippedUntilReleasedOrDelivered() {
+    EventDeduplicator deduplicator = deduplicator("");
+    RouteCompleteEvent event = event("r-1", "u-1");
+
+    assertThat(deduplicator.tryClaim(event)).isTrue();
+    // Una redelivery mientras el original se envía
+    assertThat(deduplicator.tryClaim(event)).isFalse();
+    assertThat(deduplicator.tryClaim(event("r-1", "u-2"))).isTrue();
+
+    // El envío falló: el reintento puede reservarlo otra vez
+    deduplicator.release(event);
+    assertThat(deduplicator.tryClaim(event)).isTrue();
+
+    deduplicator.markDelivered(event);
+    deduplicator.release(event);
+    assertThat(deduplicator.tryClaim(event)).isFalse();
+  }
+
+  @Test
+  void keysExpireWhenTheirGenerationRotatesOut() {
+    EventDeduplicator deduplicator = deduplicator("");
+    RouteCompleteEvent event = event("r-1", "u-1");
+    deduplicator.markDelivered(event);
+
+    long now = System.currentTimeMillis();
+    // Ventana de 60 minutos en 4 generaciones de 15
+    for (int i = 1; i <= 3; i++) {
+      deduplicator.rotateIfDue(now + i * 15 * 60_000L);
+      assertThat(deduplicator.isDuplicate(event)).isTrue();
+    }
+    deduplicator.rotateIfDue(now + 4 * 15 * 60_000L);
+    assertThat(deduplicator.isDuplicate(event)).isFalse();
+  }
+
+  @Test
+  void falsePositiveRateStaysNearTheConfiguredTarget() {
+    EventDeduplicator deduplicator = deduplicator("");
+    // 200k eventos por ventana en 4 generaciones: una generación llena
+    for (int i = 0; i < 50_000; i++) {
+      deduplicator.markDelivered(event("r-" + i, "u-" + (i % 1000)));
+    }
+
+    int falsePositives = 0;
+    for (int i = 0; i < 100_000; i++) {
+      if (deduplicator.isDuplicate(event("otra-" + i, "u-" + (i % 1000)))) {
+        falsePositives++;
+      }
+    }
+    // Objetivo 1e-4: unos 10 sobre 100k consultas
+    assertThat(falsePositives).isLessThan(50);
+  }
+
+  @Test
+  void snapshotSurvivesRestart() {
+    String snapshot = directory.resolve("dedup/index.bin").toString();
+    EventDeduplicator first = deduplicator(snapshot);
+    first.markDelivered(event("r-1", "u-1"));
+    first.shutdown();
+
+    EventDeduplicator second = deduplicator(snapshot);
+    assertThat(second.isDuplicate(event("r-1", "u-1"))).isTrue();
+    assertThat(second.isDuplicate(event("r-2", "u-1"))).isFalse();
+  }
+}
@@ -0,0 +1,40 @@
+package marketplace.notificationservice.index;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IndexSnapshotTest {
+
+  @TempDir Path directory;
+
+  @Test
+  void writesAndReadsTheContentAfterTheHeader() throws IOException {
+    IndexSnapshot snapshot =
+        new IndexSnapshot(directory.resolve("index/index.bin"), 0x54455354, 1, "test-snapshot");
+    AtomicLong read = new AtomicLong();
+    assertThat(snapshot.read(in -> read.set(in.readLong()))).isFalse();
+
+    snapshot.write(out -> out.writeLong(42));
+
+    assertThat(snapshot.read(in -> read.set(in.readLong()))).isTrue();
+    assertThat(read).hasValue(42);
+    assertThat(Files.exists(directory.resolve("index/index.bin.tmp"))).isFalse();
+  }
+
+  @Test
+  void rejectsSnapshotsOfAnotherFormat() throws IOException {
+    Path path = directory.resolve("index.bin");
+    new IndexSnapshot(path, 0x54455354, 1, "test-snapshot").write(out -> out.writeLong(42));
+
+    IndexSnapshot newer = new IndexSnapshot(path, 0x54455354, 2, "test-snapshot");
+
+    assertThatThrownBy(() -> newer.read(in -> in.readLong())).isInstanceOf(IOException.class);
+  }
+}
@@ -0,0 +1,237 @@
+package marketplace.notificationservice.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import marketplace.notificationservice.Service.EmailService;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.retry.NotificationRetryPublisher;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.AmqpException;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailSendException;
+
+class EmailOutboxTest {
+
+  @TempDir Path directory;
+
+  private final NotificationRetryPublisher retryPublisher = mock(NotificationRetryPublisher.class);
+
+  private EmailOutbox outbox(EmailService emailService, long segmentBytes) throws Exception {
+    return outbox(emailService, segmentBytes, 1000, 60_000);
+  }
+
+  private EmailOutbox outbox(
+      EmailService emailService, long segmentBytes, int maxPending, long retryDelayMs)
+      throws Exception {
+    EmailOutbox outbox =
+        new EmailOutbox(
+            emailService,
+            new NotificationMetrics(new SimpleMeterRegistry()),
+            retryPublisher,
+            true,
+            directory.toString(),
+            segmentBytes,
+            maxPending,
+            2,
+            10,
+            retryDelayMs);
+    outbox.start();
+    return outbox;
+  }
+
+  private static List<CompletableFuture<Void>> appendAll(EmailOutbox outbox, int count) {
+    List<CompletableFuture<Void>> written = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      written.add(
+          outbox.append(new OutboxEmail("user" + i + "@example.com", "Asunto", "Cuerpo " + i, null)));
+    }
+    return written;
+  }
+
+  private long segmentFiles() throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.filter(path -> path.toString().endsWith(".log")).count();
+    }
+  }
+
+  @Test
+  void sentEmailsCompactTheirSegments() throws Exception {
+    EmailService emailService = mock(EmailService.class);
+    EmailOutbox outbox = outbox(emailService, 256);
+
+    appendAll(outbox, 50).forEach(CompletableFuture::join);
+
+    verify(emailService, timeout(5_000).times(50))
+        .sendEmail(anyString(), anyString(), anyString(), any());
+    // La confirmación y la compactación ocurren justo después del envío
+    long deadline = System.currentTimeMillis() + 5_000;
+    while ((outbox.pendingCount() > 0 || segmentFiles() > 1)
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(outbox.pendingCount()).isZero();
+    // Sólo queda el segmento activo
+    assertThat(segmentFiles()).isEqualTo(1);
+    outbox.shutdown();
+  }
+
+  @Test
+  void tryAppendFailsFastWhenFull() throws Exception {
+    CountDownLatch smtp = new CountDownLatch(1);
+    EmailService blocked = mock(EmailService.class);
+    doAnswer(invocation -> smtp.await(5, TimeUnit.SECONDS))
+        .when(blocked)
+        .sendEmail(anyString(), anyString(), anyString(), any());
+    EmailOutbox outbox = outbox(blocked, 1 << 20, 2, 60_000);
+    appendAll(outbox, 2).forEach(CompletableFuture::join);
+
+    CompletableFuture<Void> rejected =
+        outbox.tryAppend(new OutboxEmail("full@example.com", "Asunto", "Cuerpo", null));
+
+    assertThat(rejected).isCompletedExceptionally();
+    assertThatThrownBy(rejected::join).hasCauseInstanceOf(OutboxWriteException.class);
+    smtp.countDown();
+    outbox.shutdown();
+  }
+
+  @Test
+  void appendWaitingForRoomFailsOnShutdown() throws Exception {
+    EmailService failing = mock(EmailService.class);
+    doThrow(new MailSendException("SMTP caído"))
+        .when(failing)
+        .sendEmail(anyString(), anyString(), anyString(), any());
+    // El reintento queda a un minuto: el único lugar del outbox no se libera
+    EmailOutbox outbox = outbox(failing, 1 << 20, 1, 60_000);
+    appendAll(outbox, 1).forEach(CompletableFuture::join);
+    CompletableFuture<CompletableFuture<Void>> waiting =
+        CompletableFuture.supplyAsync(
+            () -> outbox.append(new OutboxEmail("late@example.com", "Asunto", "Cuerpo", null)));
+    Thread.sleep(200);
+    assertThat(waiting).isNotDone();
+
+    outbox.shutdown();
+
+    CompletableFuture<Void> rejected = waiting.get(5, TimeUnit.SECONDS);
+    assertThatThrownBy(rejected::join).hasCauseInstanceOf(OutboxWriteException.class);
+  }
+
+  @Test
+  void failedEmailsAreDeadLetteredBeforeTheAck() throws Exception {
+    EmailService rejecting = mock(EmailService.class);
+    doThrow(new MailParseException("Dirección inválida"))
+        .when(rejecting)
+        .sendEmail(anyString(), anyString(), anyString(), any());
+    // La primera publicación no llega a confirmarse: el registro no se puede confirmar todavía
+    doThrow(new AmqpException("Sin confirmación del broker"))
+        .doNothing()
+        .when(retryPublisher)
+        .deadLetter(any(), anyInt(), anyString(), anyString());
+    EmailOutbox outbox = outbox(rejecting, 1 << 20, 1000, 10);
+    byte[] first = "{\"routeId\":\"r-1\"}".getBytes(StandardCharsets.UTF_8);
+    byte[] second = "{\"routeId\":\"r-2\"}".getBytes(StandardCharsets.UTF_8);
+
+    outbox
+        .append(new OutboxEmail("bad@", "Asunto", "Cuerpo", null, List.of(first, second)))
+        .join();
+
+    verify(retryPublisher, timeout(5_000).times(3))
+        .deadLetter(any(), eq(1), eq("MailParseException"), anyString());
+    verify(retryPublisher, times(2)).deadLetter(eq(first), anyInt(), anyString(), anyString());
+    verify(retryPublisher, times(1)).deadLetter(eq(second), anyInt(), anyString(), anyString());
+    verify(rejecting, times(1)).sendEmail(anyString(), anyString(), anyString(), any());
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (outbox.pendingCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(outbox.pendingCount()).isZero();
+    outbox.shutdown();
+  }
+
+  @Test
+  void unsentEmailsAreReplayedAfterRestart() throws Exception {
+    EmailService failing = mock(EmailService.class);
+    doThrow(new MailSendException("SMTP caído"))
+        .when(failing)
+        .sendEmail(anyString(), anyString(), anyString(), any());
+    EmailOutbox first = outbox(failing, 1 << 20);
+    appendAll(first, 5).forEach(CompletableFuture::join);
+    verify(failing, timeout(5_000).times(5)).sendEmail(anyString(), anyString(), anyString(), any());
+    first.shutdown();
+
+    // Un corte a mitad de escritura deja un registro incompleto al final del segmento
+    try (Stream<Path> files = Files.list(directory)) {
+      Path log = files.filter(path -> path.toString().endsWith(".log")).sorted().findFirst().get();
+      Files.write(log, new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+    }
+
+    EmailService working = mock(EmailService.class);
+    EmailOutbox second = outbox(working, 1 << 20);
+    verify(working, timeout(5_000).times(5)).sendEmail(anyString(), anyString(), anyString(), any());
+    verify(working, times(1)).sendEmail("user3@example.com", "Asunto", "Cuerpo 3", null);
+    second.shutdown();
+  }
+
+  @Test
+  void aRecordWithoutSourcesIsADecodeError() throws Exception {
+    EmailService failing = mock(EmailService.class);
+    doThrow(new MailSendException("SMTP caído"))
+        .when(failing)
+        .sendEmail(anyString(), anyString(), anyString(), any());
+    EmailOutbox first = outbox(failing, 1 << 20);
+    appendAll(first, 1).forEach(CompletableFuture::join);
+    first.shutdown();
+
+    // CRC válido pero cortado después de htmlBody: no es una escritura incompleta, no se adivina
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream payload = new DataOutputStream(bytes);
+    for (String value : new String[] {"user@example.com", "Asunto", "Cuerpo"}) {
+      byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+      payload.writeInt(utf8.length);
+      payload.write(utf8);
+    }
+    payload.writeInt(-1);
+    byte[] body = bytes.toByteArray();
+    long sequence = 1_000;
+    CRC32 crc = new CRC32();
+    crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+    crc.update(body);
+    ByteBuffer record = ByteBuffer.allocate(16 + body.length);
+    record.putInt(body.length).putInt((int) crc.getValue()).putLong(sequence).put(body);
+    try (Stream<Path> files = Files.list(directory)) {
+      Path log = files.filter(path -> path.toString().endsWith(".log")).sorted().findFirst().get();
+      Files.write(log, record.array(), StandardOpenOption.APPEND);
+    }
+
+    assertThatThrownBy(() -> outbox(mock(EmailService.class), 1 << 20))
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("Registro 1000");
+  }
+}
@@ -0,0 +1,181 @@
+package marketplace.notificationservice.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import marketplace.notificationservice.Service.EmailService;
+import marketplace.notificationservice.Service.GraphQLClientService;
+import marketplace.notificationservice.Service.UserBatchLoader;
+import marketplace.notificationservice.Service.UserCache;
+import marketplace.notificationservice.activity.UserActivityIndex;
+import marketplace.notificationservice.config.RabbitMQConfig;
+import marketplace.notificationservice.consumer.NotificationConsumer;
+import marketplace.notificationservice.consumer.RouteEventCoalescer;
+import marketplace.notificationservice.dedup.EventDeduplicator;
+import marketplace.notificationservice.dtos.UserDTO;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.outbox.EmailOutbox;
+import marketplace.notificationservice.support.EmbeddedBroker;
+import marketplace.notificationservice.template.EmailTemplateEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Binding;
+import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.mail.MailParseException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Un email que quedó en el outbox y el outbox no pudo enviar vuelve por la DLQ: el evento ya
+ * figura como notificado en EventDeduplicator, así que una copia común se descarta, pero la que
+ * reinyecta DeadLetterReplayer se envía. Broker AMQP embebido, outbox en disco y deduplicador
+ * reales; SMTP y GraphQL simulados.
+ */
+class DeadLetterReplayIntegrationTest {
+
+  private static final String MESSAGE =
+      """
+      {"eventType":"ROUTE_COMPLETED","routeId":"r-1","routeName":"Cerro de Monserrate",
+       "creatorId":"c-1","userId":"u-1","completed":true,"score":120,"distanceKm":4.5,
+       "estTimeMin":60,"actualTimeMin":55,"timestamp":"2025-10-18T10:00:00Z"}
+      """;
+
+  @TempDir Path directory;
+
+  private EmbeddedBroker broker;
+  private CachingConnectionFactory connectionFactory;
+  private RabbitTemplate template;
+  private EmailOutbox outbox;
+
+  @BeforeEach
+  void setUp() throws Exception {
+    broker = EmbeddedBroker.start();
+    connectionFactory = new CachingConnectionFactory(broker.uri());
+    // NotificationRetryPublisher espera la confirmación de cada publicación
+    connectionFactory.setPublisherConfirmType(CachingConnectionFactory.ConfirmType.SIMPLE);
+    template = new RabbitTemplate(connectionFactory);
+
+    RabbitMQConfig config = new RabbitMQConfig();
+    RabbitAdmin admin = new RabbitAdmin(connectionFactory);
+    Queue queue = config.notificationQueue();
+    DirectExchange exchange = config.notificationExchange();
+    admin.declareQueue(queue);
+    admin.declareExchange(exchange);
+    admin.declareBinding(config.notificationBinding(queue, exchange));
+    // De la topología de reintentos alcanza con la DLQ
+    DirectExchange retryExchange = new DirectExchange(RabbitMQConfig.RETRY_EXCHANGE_NAME);
+    Queue deadLetters = new Queue(RabbitMQConfig.DEAD_LETTER_QUEUE_NAME);
+    admin.declareExchange(retryExchange);
+    admin.declareQueue(deadLetters);
+    Binding binding =
+        BindingBuilder.bind(deadLetters)
+            .to(retryExchange)
+            .with(RabbitMQConfig.DEAD_LETTER_QUEUE_NAME);
+    admin.declareBinding(binding);
+  }
+
+  @AfterEach
+  void tearDown() throws Exception {
+    if (outbox != null) {
+      outbox.shutdown();
+    }
+    connectionFactory.destroy();
+    broker.close();
+  }
+
+  @Test
+  void anEventDeadLetteredByTheOutboxIsDeliveredWhenReplayed() throws Exception {
+    NotificationMetrics metrics = new NotificationMetrics(new SimpleMeterRegistry());
+    NotificationRetryPublisher retryPublisher =
+        new NotificationRetryPublisher(template, metrics, new long[] {1000}, 3, 0.2);
+    EmailService emailService = mock(EmailService.class);
+    // El primer envío lo rechaza el servidor SMTP: falla permanente, el outbox se rinde
+    doThrow(new MailParseException("Dirección rechazada"))
+        .doNothing()
+        .when(emailService)
+        .sendEmail(anyString(), anyString(), anyString(), any());
+    outbox =
+        new EmailOutbox(
+            emailService, metrics, retryPublisher, true, directory.toString(), 1 << 20, 100, 1,
+            3, 10);
+    outbox.start();
+    EventDeduplicator deduplicator =
+        new EventDeduplicator(true, 1440, 4, 200_000, 0.0001, "", 0);
+    deduplicator.start();
+    NotificationConsumer consumer =
+        new NotificationConsumer(
+            new UserCache(new UserBatchLoader(stubGraphQL(), false, 10, 100), false, 0, 0, 0),
+            emailService,
+            outbox,
+            retryPublisher,
+            deduplicator,
+            new UserActivityIndex(false, 1, 1, "", 0),
+            new RouteEventCoalescer(false, 0, 1, 1, 1, 1),
+            new EmailTemplateEngine(),
+            metrics,
+            false);
+    DeadLetterReplayer replayer =
+        new DeadLetterReplayer(template, new RabbitAdmin(connectionFactory));
+
+    consumer.consumeMessage(message()).join();
+    verify(emailService, timeout(5_000))
+        .sendEmail(eq("user@example.com"), anyString(), anyString(), any());
+    long deadline = System.currentTimeMillis() + 5_000;
+    while (replayer.pendingCount() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(replayer.pendingCount()).isEqualTo(1);
+
+    // Quedó marcado al entrar al outbox: otra copia del mismo evento se descarta
+    consumer.consumeMessage(message()).join();
+    Thread.sleep(200);
+    verify(emailService, times(1)).sendEmail(anyString(), anyString(), anyString(), any());
+
+    assertThat(replayer.replay(null, null)).isEqualTo(1);
+    Message replayed = template.receive(RabbitMQConfig.QUEUE_NAME, 5_000);
+    assertThat(replayed).isNotNull();
+    consumer.consumeMessage(replayed).join();
+
+    verify(emailService, timeout(5_000).times(2))
+        .sendEmail(eq("user@example.com"), anyString(), anyString(), any());
+    deadline = System.currentTimeMillis() + 5_000;
+    while (outbox.pendingCount() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertThat(outbox.pendingCount()).isZero();
+    assertThat(replayer.pendingCount()).isZero();
+  }
+
+  private static Message message() {
+    return new Message(MESSAGE.getBytes(StandardCharsets.UTF_8), new MessageProperties());
+  }
+
+  private static GraphQLClientService stubGraphQL() {
+    GraphQLClientService graphQL = mock(GraphQLClientService.class);
+    when(graphQL.fetchUser(anyString()))
+        .thenAnswer(
+            invocation ->
+                Mono.just(
+                    new UserDTO(invocation.getArgument(0), "user@example.com", "Tester", null)));
+    return graphQL;
+  }
+}
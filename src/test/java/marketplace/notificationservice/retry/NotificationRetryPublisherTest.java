@@ -0,0 +1,119 @@
+package marketplace.notificationservice.retry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import marketplace.notificationservice.config.RabbitMQConfig;
+import marketplace.notificationservice.consumer.InvalidRouteEventException;
+import marketplace.notificationservice.consumer.InvalidRouteEventException.Reason;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.http.HttpStatus;
+import org.springframework.mail.MailParseException;
+import org.springframework.mail.MailSendException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+class NotificationRetryPublisherTest {
+
+  private static final byte[] PAYLOAD = "{\"userId\":\"u-1\"}".getBytes(StandardCharsets.UTF_8);
+
+  private final RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+  private final NotificationRetryPublisher publisher =
+      new NotificationRetryPublisher(
+          rabbitTemplate,
+          new NotificationMetrics(new SimpleMeterRegistry()),
+          new long[] {1000, 5000, 30000},
+          4,
+          0.2);
+
+  NotificationRetryPublisherTest() {
+    when(rabbitTemplate.invoke(any(RabbitOperations.OperationsCallback.class)))
+        .thenAnswer(
+            invocation ->
+                invocation
+                    .<RabbitOperations.OperationsCallback<?>>getArgument(0)
+                    .doInRabbit(rabbitTemplate));
+  }
+
+  private Message published(String routingKey) {
+    ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+    verify(rabbitTemplate)
+        .send(eq(RabbitMQConfig.RETRY_EXCHANGE_NAME), eq(routingKey), message.capture());
+    return message.getValue();
+  }
+
+  @Test
+  void transientFailuresGoToTheNextDelayTierWithJitter() {
+    publisher.retryOrDeadLetter(
+        PAYLOAD, 1, new MailSendException("timeout", new ConnectException()));
+
+    Message message = published(RabbitMQConfig.retryQueueName(5000));
+    assertThat(message.getMessageProperties().<Integer>getHeader(
+            NotificationRetryPublisher.ATTEMPT_HEADER))
+        .isEqualTo(2);
+    assertThat(Long.parseLong(message.getMessageProperties().getExpiration()))
+        .isBetween(4000L, 5000L);
+    assertThat(message.getBody()).isEqualTo(PAYLOAD);
+    assertThat(message.getMessageProperties().getContentType())
+        .isEqualTo(MessageProperties.CONTENT_TYPE_JSON);
+  }
+
+  @Test
+  void permanentFailuresAreDeadLettered() {
+    publisher.retryOrDeadLetter(
+        PAYLOAD,
+        0,
+        WebClientResponseException.create(
+            HttpStatus.BAD_REQUEST.value(), "Bad Request", null, null, null));
+
+    Message message = published(RabbitMQConfig.DEAD_LETTER_QUEUE_NAME);
+    assertThat(message.getMessageProperties().<String>getHeader(
+            NotificationRetryPublisher.FAILURE_REASON_HEADER))
+        .isEqualTo("BadRequest");
+  }
+
+  @Test
+  void invalidEventsAreParkedWithTheOriginalBodyAndHeaders() {
+    MessageProperties received = new MessageProperties();
+    received.setHeader("x-trace-id", "t-1");
+    byte[] body = "{\"userId\":".getBytes(StandardCharsets.UTF_8);
+
+    publisher.park(
+        new Message(body, received),
+        new InvalidRouteEventException(Reason.MISSING_FIELD, "routeId", "obligatorio", "{", null));
+
+    Message message = published(RabbitMQConfig.PARKING_QUEUE_NAME);
+    MessageProperties properties = message.getMessageProperties();
+    assertThat(message.getBody()).isEqualTo(body);
+    assertThat(properties.<String>getHeader("x-trace-id")).isEqualTo("t-1");
+    assertThat(properties.<String>getHeader(NotificationRetryPublisher.FAILURE_REASON_HEADER))
+        .isEqualTo("MISSING_FIELD");
+    assertThat(properties.<String>getHeader(NotificationRetryPublisher.INVALID_FIELD_HEADER))
+        .isEqualTo("routeId");
+  }
+
+  @Test
+  void classifiesFailures() {
+    assertThat(FailureClassifier.isTransient(new MailSendException("conexión rechazada"))).isTrue();
+    assertThat(
+            FailureClassifier.isTransient(
+                WebClientResponseException.create(503, "Unavailable", null, null, null)))
+        .isTrue();
+    assertThat(FailureClassifier.isTransient(new MailParseException("dirección inválida")))
+        .isFalse();
+    assertThat(FailureClassifier.isTransient(new RuntimeException(new MailParseException("x"))))
+        .isFalse();
+  }
+}
@@ -0,0 +1,137 @@
+package marketplace.notificationservice.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CampaignRunTest {
+
+  private static final String RUN_ID = "engagement-2025-10-18T10:00:00Z";
+
+  @TempDir Path dir;
+
+  @Test
+  void resumesFromTheCheckpointAfterACrash() throws Exception {
+    Path file = dir.resolve(CampaignCheckpointStore.fileName(RUN_ID));
+    try (CampaignRun run = CampaignRun.open(RUN_ID, file)) {
+      // Los envíos terminan fuera de orden: el cursor avanza recién cuando se cierra el hueco
+      for (int position = 299; position >= 0; position--) {
+        if (position % 2 == 0) {
+          run.record(position, "u-" + position, position != 10);
+        } else {
+          run.skip(position);
+        }
+      }
+      assertThat(run.cursor()).isEqualTo(300);
+    }
+    // Registro a medio escribir al final del archivo
+    try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.APPEND)) {
+      out.write(new byte[] {1, 0, 9, 'u'});
+    }
+
+    assertThat(CampaignRun.unfinishedRunId(file, 0)).isEqualTo(RUN_ID);
+    try (CampaignRun resumed = CampaignRun.open(RUN_ID, file)) {
+      assertThat(resumed.alreadySent("u-0")).isTrue();
+      assertThat(resumed.alreadySent("u-298")).isTrue();
+      assertThat(resumed.alreadySent("u-10")).isFalse();
+      assertThat(resumed.cursor()).isEqualTo(300);
+      assertThat(resumed.progress().resumed()).isTrue();
+      assertThat(resumed.progress().sent()).isEqualTo(149);
+      assertThat(resumed.progress().failed()).isEqualTo(1);
+
+      resumed.record(300, "u-10", true);
+      resumed.finish();
+    }
+
+    assertThat(CampaignRun.unfinishedRunId(file, 0)).isNull();
+    try (CampaignRun finished = CampaignRun.open(RUN_ID, file)) {
+      assertThat(finished.isFinished()).isTrue();
+      assertThat(finished.progress().failed()).isZero();
+    }
+  }
+
+  @Test
+  void aFailedCheckpointWriteDegradesTheRunButKeepsItsProgress() throws Exception {
+    Path file = dir.resolve(CampaignCheckpointStore.fileName(RUN_ID));
+    CampaignRun run = CampaignRun.open(RUN_ID, file);
+    // Con el archivo cerrado la próxima escritura falla
+    run.close();
+
+    assertThatThrownBy(() -> run.record(0, "u-0", true)).isInstanceOf(UncheckedIOException.class);
+    assertThat(run.alreadySent("u-0")).isTrue();
+    assertThat(run.cursor()).isEqualTo(1);
+
+    assertThat(run.markDegraded()).isTrue();
+    assertThat(run.markDegraded()).isFalse();
+    run.record(1, "u-1", true);
+    run.finish();
+    assertThat(run.progress().degraded()).isTrue();
+    assertThat(run.progress().sent()).isEqualTo(2);
+    assertThat(run.cursor()).isEqualTo(2);
+  }
+
+  @Test
+  void storeFindsTheLatestUnfinishedRun() throws Exception {
+    CampaignCheckpointStore store = new CampaignCheckpointStore(dir.toString(), 48);
+    store.start();
+
+    CampaignRun done = store.open("engagement-a");
+    done.finish();
+    store.close(done);
+    CampaignRun cut = store.open("engagement-b");
+    cut.record(0, "u-1", true);
+    store.close(cut);
+    CampaignRun shard = store.open("shard-0of4-c");
+    store.close(shard);
+
+    assertThat(store.findUnfinished("engagement-")).contains("engagement-b");
+    assertThat(store.lastFinished())
+        .hasValueSatisfying(progress -> assertThat(progress.runId()).isEqualTo("engagement-a"));
+    assertThat(store.activeRuns()).isEmpty();
+  }
+
+  @Test
+  void storeDoesNotResumeRunsStartedBeforeMaxAge() throws Exception {
+    CampaignCheckpointStore store = new CampaignCheckpointStore(dir.toString(), 48);
+    store.start();
+    // Recién escrito (mtime actual) pero empezado hace 49 horas: una corrida que falla en cada cron
+    Path stale = dir.resolve(CampaignCheckpointStore.fileName("engagement-old"));
+    try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(stale))) {
+      out.writeInt(CampaignRun.MAGIC);
+      out.writeByte(CampaignRun.VERSION);
+      out.writeUTF("engagement-old");
+      out.writeLong(System.currentTimeMillis() - Duration.ofHours(49).toMillis());
+    }
+
+    assertThat(store.findUnfinished("engagement-")).isEmpty();
+
+    CampaignRun fresh = store.open("engagement-new");
+    store.close(fresh);
+    assertThat(store.findUnfinished("engagement-")).contains("engagement-new");
+  }
+
+  @Test
+  void aCheckpointThatCannotBeOpenedDegradesTheRun() throws Exception {
+    CampaignCheckpointStore store = new CampaignCheckpointStore(dir.toString(), 48);
+    store.start();
+    // Un directorio en el lugar del archivo: no se puede leer ni escribir
+    Files.createDirectory(dir.resolve(CampaignCheckpointStore.fileName(RUN_ID)));
+
+    CampaignRun run = store.open(RUN_ID);
+    run.record(0, "u-0", true);
+
+    assertThat(run.isDegraded()).isTrue();
+    assertThat(run.alreadySent("u-0")).isTrue();
+    assertThat(store.activeRuns()).hasSize(1);
+    store.close(run);
+  }
+}
@@ -0,0 +1,100 @@
+package marketplace.notificationservice.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Set;
+import marketplace.notificationservice.scheduler.EngagementCampaignCoordinator.CampaignShard;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.core.ChannelCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+
+class EngagementCampaignCoordinatorTest {
+
+  @Test
+  void shardsPartitionUsersEvenly() {
+    int shards = 32;
+    int users = 100_000;
+    int[] counts = new int[shards];
+    for (int i = 0; i < users; i++) {
+      counts[EngagementCampaignCoordinator.shardOf("u-" + i, shards)]++;
+    }
+
+    int expected = users / shards;
+    for (int count : counts) {
+      assertThat(count).isBetween((int) (expected * 0.9), (int) (expected * 1.1));
+    }
+    assertThat(EngagementCampaignCoordinator.shardOf(null, shards)).isZero();
+  }
+
+  @Test
+  void onlyTheLeaderPublishesShards() {
+    RabbitTemplate leaderTemplate = mock(RabbitTemplate.class);
+    RabbitTemplate followerTemplate = mock(RabbitTemplate.class);
+    when(followerTemplate.execute(any(ChannelCallback.class)))
+        .thenThrow(new AmqpException("RESOURCE_LOCKED"));
+    EngagementCampaignCoordinator leader =
+        new EngagementCampaignCoordinator(leaderTemplate, 8, 60_000);
+    EngagementCampaignCoordinator follower =
+        new EngagementCampaignCoordinator(followerTemplate, 8, 60_000);
+
+    assertThat(leader.plan("2025-10-18T10:00:00Z")).isEqualTo(8);
+    assertThat(follower.plan("2025-10-18T10:00:00Z")).isZero();
+
+    ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+    verify(leaderTemplate, times(8))
+        .send(eq(""), eq(EngagementCampaignCoordinator.CAMPAIGN_QUEUE_NAME), messages.capture());
+    verify(followerTemplate, never()).send(anyString(), anyString(), any(Message.class));
+
+    List<CampaignShard> shards = messages.getAllValues().stream().map(leader::read).toList();
+    assertThat(shards).extracting(CampaignShard::shard).containsExactly(0, 1, 2, 3, 4, 5, 6, 7);
+    assertThat(shards).allMatch(shard -> shard.shards() == 8 && shard.sent().isEmpty());
+    assertThat(Long.parseLong(messages.getValue().getMessageProperties().getExpiration()))
+        .isBetween(50_000L, 60_000L);
+  }
+
+  @Test
+  void failedShardsWaitInTheRetryQueueWithTheirProgress() {
+    RabbitTemplate template = mock(RabbitTemplate.class);
+    EngagementCampaignCoordinator coordinator =
+        new EngagementCampaignCoordinator(template, 8, 60_000);
+    CampaignShard shard =
+        new CampaignShard("run", 3, 8, System.currentTimeMillis() + 60_000, 0, List.of("u-1"));
+
+    assertThat(coordinator.retry(shard, Set.of("u-1", "u-2"))).isTrue();
+
+    ArgumentCaptor<Message> message = ArgumentCaptor.forClass(Message.class);
+    verify(template)
+        .send(eq(""), eq(EngagementCampaignCoordinator.RETRY_QUEUE_NAME), message.capture());
+    CampaignShard retried = coordinator.read(message.getValue());
+    assertThat(retried.shard()).isEqualTo(3);
+    assertThat(retried.attempt()).isEqualTo(1);
+    assertThat(retried.expiresAt()).isEqualTo(shard.expiresAt());
+    assertThat(retried.sent()).containsExactlyInAnyOrder("u-1", "u-2");
+    // La espera la fija el TTL de la cola, no el mensaje
+    assertThat(message.getValue().getMessageProperties().getExpiration()).isNull();
+  }
+
+  @Test
+  void expiredShardsAreNotRetried() {
+    RabbitTemplate template = mock(RabbitTemplate.class);
+    EngagementCampaignCoordinator coordinator =
+        new EngagementCampaignCoordinator(template, 8, 60_000);
+    CampaignShard shard =
+        new CampaignShard("run", 3, 8, System.currentTimeMillis() - 1, 4, List.of());
+
+    assertThat(coordinator.retry(shard, Set.of())).isFalse();
+    verify(template, never()).send(anyString(), anyString(), any(Message.class));
+  }
+}
@@ -0,0 +1,208 @@
+package marketplace.notificationservice.scheduler;
+
+import static marketplace.notificationservice.scheduler.EngagementCampaignCoordinator.CAMPAIGN_QUEUE_NAME;
+import static marketplace.notificationservice.scheduler.EngagementCampaignCoordinator.RETRY_QUEUE_NAME;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.timelimiter.TimeLimiterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.stream.IntStream;
+import marketplace.notificationservice.Service.AdaptiveConcurrency;
+import marketplace.notificationservice.Service.EmailService;
+import marketplace.notificationservice.Service.GraphQLClientService;
+import marketplace.notificationservice.Service.MailLane;
+import marketplace.notificationservice.config.RabbitMQConfig;
+import marketplace.notificationservice.metrics.NotificationMetrics;
+import marketplace.notificationservice.scheduler.EngagementCampaignCoordinator.CampaignShard;
+import marketplace.notificationservice.support.EmbeddedBroker;
+import marketplace.notificationservice.support.GraphQLStubServer;
+import marketplace.notificationservice.template.EmailTemplateEngine;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.core.RabbitAdmin;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.listener.SimpleMessageListenerContainer;
+import org.springframework.web.reactive.function.client.WebClient;
+
+/**
+ * Dos réplicas en modo sharded contra un broker AMQP embebido y un GraphQL local: sólo una reparte
+ * la corrida, las dos consumen shards y un shard que falla a mitad de camino vuelve, con lo que ya
+ * envió, sin perder ni repetir usuarios aunque lo retome la otra réplica.
+ */
+class ShardedCampaignIntegrationTest {
+
+  private static final int USERS = 250;
+  private static final int SHARDS = 4;
+  private static final int PAGE_SIZE = 50;
+
+  @TempDir Path dir;
+
+  private EmbeddedBroker broker;
+  private GraphQLStubServer stub;
+  private RabbitAdmin admin;
+  private final List<Replica> replicas = new ArrayList<>();
+
+  @BeforeEach
+  void setUp() throws Exception {
+    broker = EmbeddedBroker.start();
+    stub = GraphQLStubServer.start();
+    stub.users(USERS);
+    for (int i = 0; i < 2; i++) {
+      replicas.add(new Replica(dir.resolve("replica-" + i)));
+    }
+    admin = new RabbitAdmin(replicas.get(0).connectionFactory);
+    admin.declareQueue(new RabbitMQConfig().campaignQueue());
+    // Qpid no implementa el TTL con dead-letter de RabbitMQ: la prueba devuelve los shards de la
+    // cola de espera a notification-campaign por su cuenta
+    admin.declareQueue(new org.springframework.amqp.core.Queue(RETRY_QUEUE_NAME));
+  }
+
+  @AfterEach
+  void tearDown() {
+    replicas.forEach(Replica::close);
+    stub.close();
+    broker.close();
+  }
+
+  @Test
+  void everyUserIsEmailedOnceAcrossReplicas() throws Exception {
+    Replica first = replicas.get(0);
+    Replica second = replicas.get(1);
+
+    // Las dos disparan el cron; sólo la que obtiene la cola exclusiva publica los shards
+    first.scheduler.sendEngagementEmails();
+    second.scheduler.sendEngagementEmails();
+    assertThat(queuedShards(CAMPAIGN_QUEUE_NAME)).isEqualTo(SHARDS);
+
+    // La tercera página falla para el primer shard que la pida (sin reintentos en el cliente),
+    // después de haber enviado a sus usuarios de las dos primeras
+    stub.failPageAt(2 * PAGE_SIZE, 500);
+    replicas.forEach(replica -> replica.container.start());
+
+    RabbitTemplate template = new RabbitTemplate(first.connectionFactory);
+    List<CampaignShard> retried = new ArrayList<>();
+    long deadline = System.nanoTime() + 30_000_000_000L;
+    while ((sentCount() < USERS
+            || queuedShards(CAMPAIGN_QUEUE_NAME) > 0
+            || queuedShards(RETRY_QUEUE_NAME) > 0)
+        && System.nanoTime() < deadline) {
+      Message waiting = template.receive(RETRY_QUEUE_NAME);
+      if (waiting != null) {
+        retried.add(first.coordinator.read(waiting));
+        template.send("", CAMPAIGN_QUEUE_NAME, waiting);
+      }
+      Thread.sleep(50);
+    }
+    replicas.forEach(replica -> replica.container.stop());
+
+    List<String> sent = new ArrayList<>();
+    replicas.forEach(replica -> sent.addAll(replica.sent));
+    assertThat(sent)
+        .containsExactlyInAnyOrderElementsOf(
+            IntStream.range(0, USERS).mapToObj(i -> "user-" + i + "@example.com").toList());
+    assertThat(first.sent).isNotEmpty();
+    assertThat(second.sent).isNotEmpty();
+    assertThat(retried).hasSize(1);
+    assertThat(retried.get(0).attempt()).isEqualTo(1);
+    assertThat(retried.get(0).sent())
+        .isNotEmpty()
+        .allMatch(
+            userId ->
+                EngagementCampaignCoordinator.shardOf(userId, SHARDS) == retried.get(0).shard());
+  }
+
+  private int sentCount() {
+    return replicas.stream().mapToInt(replica -> replica.sent.size()).sum();
+  }
+
+  private int queuedShards(String queue) {
+    Properties properties = admin.getQueueProperties(queue);
+    return ((Number) properties.get(RabbitAdmin.QUEUE_MESSAGE_COUNT)).intValue();
+  }
+
+  /** Una instancia del servicio: su propia conexión, cliente GraphQL, checkpoints y consumidor. */
+  private final class Replica {
+
+    final CachingConnectionFactory connectionFactory = new CachingConnectionFactory(broker.uri());
+    final Queue<String> sent = new ConcurrentLinkedQueue<>();
+    final EngagementCampaignCoordinator coordinator;
+    final UserEngagementScheduler scheduler;
+    final SimpleMessageListenerContainer container;
+
+    Replica(Path checkpointDir) throws Exception {
+      NotificationMetrics metrics = new NotificationMetrics(new SimpleMeterRegistry());
+      AdaptiveConcurrency adaptive = new AdaptiveConcurrency(false, 2.0, 0.9, 8, 1, 32, 16, 2, 64);
+      GraphQLClientService graphql =
+          new GraphQLClientService(
+              WebClient.builder(),
+              stub.endpoint(),
+              1,
+              0,
+              50,
+              500,
+              metrics,
+              CircuitBreakerRegistry.ofDefaults(),
+              BulkheadRegistry.ofDefaults(),
+              TimeLimiterRegistry.ofDefaults(),
+              adaptive);
+      EmailService emailService = mock(EmailService.class);
+      doAnswer(invocation -> sent.add(invocation.getArgument(0)))
+          .when(emailService)
+          .sendEmail(anyString(), anyString(), anyString(), any(), eq(MailLane.BULK));
+      CampaignCheckpointStore checkpoints =
+          new CampaignCheckpointStore(checkpointDir.toString(), 48);
+      checkpoints.start();
+      coordinator =
+          new EngagementCampaignCoordinator(new RabbitTemplate(connectionFactory), SHARDS, 60_000);
+      // 200 emails/s por réplica: un shard tarda lo suficiente como para que la otra tome el suyo
+      scheduler =
+          new UserEngagementScheduler(
+              graphql,
+              emailService,
+              null,
+              null,
+              new EmailTemplateEngine(),
+              metrics,
+              coordinator,
+              checkpoints,
+              adaptive,
+              "sharded",
+              false,
+              false,
+              200,
+              1,
+              8,
+              100,
+              PAGE_SIZE,
+              0);
+
+      container = new SimpleMessageListenerContainer(connectionFactory);
+      container.setQueueNames(CAMPAIGN_QUEUE_NAME);
+      container.setPrefetchCount(1);
+      container.setMessageListener(scheduler::runShard);
+      container.afterPropertiesSet();
+    }
+
+    void close() {
+      container.stop();
+      connectionFactory.destroy();
+    }
+  }
+}
@@ -0,0 +1,51 @@
+package marketplace.notificationservice.scheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/** Ráfaga y tasa sostenida de TokenBucketRateLimiter con un reloj simulado. */
+class TokenBucketRateLimiterTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final AtomicLong now = new AtomicLong();
+  private final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 5, now::get);
+
+  @Test
+  void burstIsServedImmediately() {
+    for (int i = 0; i < 5; i++) {
+      assertThat(limiter.reserve()).isZero();
+    }
+    // Sin tokens, cada reserva espera un intervalo más que la anterior
+    assertThat(limiter.reserve()).isEqualTo(SECOND / 10);
+    assertThat(limiter.reserve()).isEqualTo(2 * SECOND / 10);
+  }
+
+  @Test
+  void sustainedRateMatchesPermitsPerSecond() {
+    int permits = 0;
+    // Un llamador que duerme lo que indica cada reserva, durante 10 s simulados
+    while (now.get() < 10 * SECOND) {
+      now.addAndGet(limiter.reserve());
+      permits++;
+    }
+    // La ráfaga inicial más 10 por segundo
+    assertThat(permits).isBetween(104, 106);
+  }
+
+  @Test
+  void idleTimeRefillsOnlyUpToTheBurst() {
+    for (int i = 0; i < 5; i++) {
+      limiter.reserve();
+    }
+    now.addAndGet(TimeUnit.HOURS.toNanos(1));
+
+    for (int i = 0; i < 5; i++) {
+      assertThat(limiter.reserve()).isZero();
+    }
+    assertThat(limiter.reserve()).isPositive();
+  }
+}
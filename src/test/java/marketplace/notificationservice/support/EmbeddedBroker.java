@@ -0,0 +1,54 @@
+package marketplace.notificationservice.support;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.qpid.server.SystemLauncher;
+import org.apache.qpid.server.model.SystemConfig;
+
+/**
+ * Broker AMQP 0-9-1 en memoria (Qpid Broker-J) dentro del mismo proceso, para las pruebas y para
+ * src/loadTest: colas, exchanges directos, colas exclusivas, prefetch, acks, reencolado y
+ * publisher confirms. Las colas de espera de los reintentos usan argumentos propios de RabbitMQ
+ * (x-message-ttl, x-dead-letter-exchange) que acá no tienen efecto.
+ */
+public final class EmbeddedBroker implements AutoCloseable {
+
+  private final SystemLauncher launcher = new SystemLauncher();
+  private final int port;
+
+  private EmbeddedBroker(int port) throws Exception {
+    this.port = port;
+    URL config = EmbeddedBroker.class.getResource("/support/qpid-config.json");
+    Map<String, Object> attributes = new HashMap<>();
+    attributes.put(SystemConfig.TYPE, "Memory");
+    attributes.put(SystemConfig.INITIAL_CONFIGURATION_LOCATION, config.toExternalForm());
+    attributes.put(SystemConfig.STARTUP_LOGGED_TO_SYSTEM_OUT, false);
+    attributes.put(SystemConfig.CONTEXT, Map.of("qpid.amqp_port", port));
+    launcher.startup(attributes);
+  }
+
+  public static EmbeddedBroker start() throws Exception {
+    return new EmbeddedBroker(freePort());
+  }
+
+  public URI uri() {
+    return URI.create(
+        "amqp://guest:guest@" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + port);
+  }
+
+  private static int freePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      return socket.getLocalPort();
+    }
+  }
+
+  @Override
+  public void close() {
+    launcher.shutdown();
+  }
+}
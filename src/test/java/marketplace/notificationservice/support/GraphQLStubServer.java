@@ -0,0 +1,205 @@
+package marketplace.notificationservice.support;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * authentication-service falso para pruebas: responde getUser con un usuario fijo, los lotes con
+ * alias (u0: getUser(userId: $u0), ...) con un usuario por ID tomado de las variables y
+ * listUsers(limit, offset) sobre users usuarios (user-0 … user-(users-1)). Permite inyectar
+ * latencia y errores HTTP, también en una página puntual de listUsers. Registra las consultas
+ * recibidas y el máximo de requests simultáneos.
+ */
+public final class GraphQLStubServer implements AutoCloseable {
+
+  private static final byte[] USER_RESPONSE =
+      """
+      {"data":{"getUser":{"id":"u-1","email":"user@example.com","alias":"Tester","photoUrl":null}}}
+      """
+          .getBytes(StandardCharsets.UTF_8);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final Pattern ALIASED_GET_USER =
+      Pattern.compile("(\\w+):\\s*getUser\\(userId:\\s*\\$(\\w+)\\)");
+  private static final Pattern LIST_USERS_PAGE =
+      Pattern.compile("listUsers\\(limit:\\s*(\\d+),\\s*offset:\\s*(\\d+)\\)");
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+  private final AtomicInteger requests = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicInteger maxInFlight = new AtomicInteger();
+  private volatile long latencyMs;
+  private volatile int errorStatus;
+  private final AtomicInteger failuresLeft = new AtomicInteger();
+  private volatile int failureStatus;
+  private final AtomicInteger failingPageOffset = new AtomicInteger(-1);
+  private volatile int users;
+  private final Set<String> missingUsers = ConcurrentHashMap.newKeySet();
+  private final List<String> queries = new CopyOnWriteArrayList<>();
+
+  private GraphQLStubServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+    server.setExecutor(executor);
+    server.createContext("/graphql", this::handle);
+    server.start();
+  }
+
+  public static GraphQLStubServer start() throws IOException {
+    return new GraphQLStubServer();
+  }
+
+  public String endpoint() {
+    return "http://"
+        + server.getAddress().getAddress().getHostAddress()
+        + ":"
+        + server.getAddress().getPort()
+        + "/graphql";
+  }
+
+  public void latencyMs(long latencyMs) {
+    this.latencyMs = latencyMs;
+  }
+
+  /** 0 responde normalmente; cualquier otro valor se devuelve como status HTTP. */
+  public void errorStatus(int errorStatus) {
+    this.errorStatus = errorStatus;
+  }
+
+  /** Los próximos count requests responden con status; después vuelve a responder normalmente. */
+  public void failNext(int count, int status) {
+    this.failureStatus = status;
+    failuresLeft.set(count);
+  }
+
+  /** El próximo listUsers con este offset responde con status; los demás, normalmente. */
+  public void failPageAt(int offset, int status) {
+    this.failureStatus = status;
+    failingPageOffset.set(offset);
+  }
+
+  /** Cantidad de usuarios que devuelve listUsers. */
+  public void users(int users) {
+    this.users = users;
+  }
+
+  /** En los lotes con alias, estos IDs se responden como inexistentes (null). */
+  public void missingUsers(String... userIds) {
+    missingUsers.addAll(List.of(userIds));
+  }
+
+  /** Texto de cada consulta GraphQL recibida, en orden de llegada. */
+  public List<String> queries() {
+    return List.copyOf(queries);
+  }
+
+  public int requestCount() {
+    return requests.get();
+  }
+
+  public int maxInFlight() {
+    return maxInFlight.get();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.incrementAndGet();
+    maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+    try (exchange) {
+      JsonNode request = MAPPER.readTree(exchange.getRequestBody());
+      String query = request.path("query").asText();
+      queries.add(query);
+      if (latencyMs > 0) {
+        Thread.sleep(latencyMs);
+      }
+      int status = errorStatus;
+      if (status == 0 && failuresLeft.getAndUpdate(left -> Math.max(0, left - 1)) > 0) {
+        status = failureStatus;
+      }
+      if (status == 0 && failingPageOffset.get() >= 0) {
+        Matcher page = LIST_USERS_PAGE.matcher(query);
+        if (page.find()
+            && failingPageOffset.compareAndSet(Integer.parseInt(page.group(2)), -1)) {
+          status = failureStatus;
+        }
+      }
+      if (status != 0) {
+        exchange.sendResponseHeaders(status, -1);
+        return;
+      }
+      byte[] response = respond(query, request.path("variables"));
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, response.length);
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(response);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      inFlight.decrementAndGet();
+    }
+  }
+
+  private byte[] respond(String query, JsonNode variables) {
+    StringBuilder json = new StringBuilder("{\"data\":{");
+    Matcher page = LIST_USERS_PAGE.matcher(query);
+    Matcher aliased = ALIASED_GET_USER.matcher(query);
+    if (page.find()) {
+      int offset = Integer.parseInt(page.group(2));
+      int to = Math.min(users, offset + Integer.parseInt(page.group(1)));
+      json.append("\"listUsers\":[");
+      for (int i = offset; i < to; i++) {
+        json.append(i > offset ? "," : "");
+        appendUser(json, "user-" + i);
+      }
+      json.append(']');
+    } else if (aliased.find()) {
+      do {
+        json.append(json.charAt(json.length() - 1) == '{' ? "" : ",");
+        json.append('"').append(aliased.group(1)).append("\":");
+        String userId = variables.path(aliased.group(2)).asText();
+        if (missingUsers.contains(userId)) {
+          json.append("null");
+        } else {
+          appendUser(json, userId);
+        }
+      } while (aliased.find());
+    } else {
+      return USER_RESPONSE;
+    }
+    return json.append("}}").toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static void appendUser(StringBuilder json, String userId) {
+    char[] quoted = JsonStringEncoder.getInstance().quoteAsString(userId);
+    json.append("{\"id\":\"")
+        .append(quoted)
+        .append("\",\"email\":\"")
+        .append(quoted)
+        .append("@example.com\",\"alias\":\"")
+        .append(quoted)
+        .append("\",\"photoUrl\":null}");
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
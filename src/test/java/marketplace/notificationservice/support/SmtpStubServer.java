@@ -0,0 +1,164 @@
+package marketplace.notificationservice.support;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servidor SMTP mínimo para pruebas: acepta todo, no hace TLS ni AUTH y cuenta conexiones y
+ * mensajes. handshakeDelayMs simula el costo de establecer la conexión (TCP + STARTTLS + AUTH en
+ * el servidor real). Con throttleAbove responde 421 al MAIL FROM de los mensajes que excedan esa
+ * cantidad en curso, como un proveedor que limita los envíos simultáneos.
+ */
+public final class SmtpStubServer implements AutoCloseable {
+
+  private final ServerSocket serverSocket;
+  private final long handshakeDelayMs;
+  private final ExecutorService executor =
+      Executors.newCachedThreadPool(
+          runnable -> {
+            Thread thread = new Thread(runnable, "smtp-stub");
+            thread.setDaemon(true);
+            return thread;
+          });
+  private final AtomicInteger connections = new AtomicInteger();
+  private final AtomicInteger messages = new AtomicInteger();
+  private final AtomicInteger active = new AtomicInteger();
+  private final AtomicInteger throttled = new AtomicInteger();
+  private volatile int throttleAbove;
+  private volatile long messageDelayMs;
+
+  private SmtpStubServer(long handshakeDelayMs) throws IOException {
+    this.handshakeDelayMs = handshakeDelayMs;
+    this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+    executor.execute(this::acceptLoop);
+  }
+
+  public static SmtpStubServer start(long handshakeDelayMs) {
+    try {
+      return new SmtpStubServer(handshakeDelayMs);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  public String host() {
+    return serverSocket.getInetAddress().getHostAddress();
+  }
+
+  public int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  public int connectionCount() {
+    return connections.get();
+  }
+
+  public int messageCount() {
+    return messages.get();
+  }
+
+  /** Mensajes simultáneos (de MAIL FROM al fin de DATA) que acepta; 0 es sin límite. */
+  public void throttleAbove(int messages) {
+    this.throttleAbove = messages;
+  }
+
+  /** Demora en aceptar cada mensaje una vez recibido el contenido. */
+  public void messageDelayMs(long messageDelayMs) {
+    this.messageDelayMs = messageDelayMs;
+  }
+
+  public int throttledCount() {
+    return throttled.get();
+  }
+
+  private void acceptLoop() {
+    while (!serverSocket.isClosed()) {
+      try {
+        Socket socket = serverSocket.accept();
+        executor.execute(() -> handle(socket));
+      } catch (IOException e) {
+        return;
+      }
+    }
+  }
+
+  private void handle(Socket socket) {
+    connections.incrementAndGet();
+    try (socket;
+        BufferedReader in =
+            new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+        OutputStream out = socket.getOutputStream()) {
+      Thread.sleep(handshakeDelayMs);
+      reply(out, "220 localhost SMTP stub");
+
+      String line;
+      boolean inMessage = false;
+      try {
+        while ((line = in.readLine()) != null) {
+          String command = line.length() >= 4 ? line.substring(0, 4).toUpperCase() : line;
+          switch (command) {
+            case "MAIL" -> {
+              int limit = throttleAbove;
+              if (limit > 0 && active.incrementAndGet() > limit) {
+                active.decrementAndGet();
+                throttled.incrementAndGet();
+                reply(out, "421 4.7.0 Too many concurrent messages, try again later");
+              } else {
+                inMessage = limit > 0;
+                reply(out, "250 OK");
+              }
+            }
+            case "DATA" -> {
+              reply(out, "354 End data with <CR><LF>.<CR><LF>");
+              while ((line = in.readLine()) != null && !line.equals(".")) {
+                // descartar el contenido
+              }
+              Thread.sleep(messageDelayMs);
+              messages.incrementAndGet();
+              if (inMessage) {
+                active.decrementAndGet();
+                inMessage = false;
+              }
+              reply(out, "250 OK");
+            }
+            case "QUIT" -> {
+              reply(out, "221 Bye");
+              return;
+            }
+            default -> reply(out, "250 OK");
+          }
+        }
+      } finally {
+        if (inMessage) {
+          active.decrementAndGet();
+        }
+      }
+    } catch (IOException e) {
+      // el cliente cerró la conexión
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void reply(OutputStream out, String line) throws IOException {
+    out.write((line + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    executor.shutdownNow();
+  }
+}
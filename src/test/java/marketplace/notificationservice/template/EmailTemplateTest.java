@@ -0,0 +1,106 @@
+package marketplace.notificationservice.template;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Test;
+
+class EmailTemplateTest {
+
+  private static final TemplateModel MODEL =
+      (variable, out) -> {
+        switch (variable) {
+          case "name" -> out.append("Ana & <Luis>");
+          case "km" -> EmailFormats.appendTwoDecimals(out, 4.537);
+          default -> throw new IllegalArgumentException(variable);
+        }
+      };
+
+  @Test
+  void rendersLiteralsAndVariablesInOrder() {
+    EmailTemplate template = EmailTemplate.compile("Hola {{name}}, {{ km }} km.", false);
+
+    StringBuilder out = new StringBuilder();
+    template.renderTo(out, MODEL, new StringBuilder());
+
+    assertThat(template.variables()).containsExactly("name", "km");
+    assertThat(out).hasToString("Hola Ana & <Luis>, 4.54 km.");
+  }
+
+  @Test
+  void escapesValuesInHtmlTemplates() {
+    EmailTemplate template = EmailTemplate.compile("<p>{{name}}</p>", true);
+
+    StringBuilder out = new StringBuilder();
+    template.renderTo(out, MODEL, new StringBuilder());
+
+    assertThat(out).hasToString("<p>Ana &amp; &lt;Luis&gt;</p>");
+  }
+
+  @Test
+  void rawVariablesAreNotEscaped() {
+    EmailTemplate template = EmailTemplate.compile("<ul>{{& items }}</ul><p>{{name}}</p>", true);
+
+    StringBuilder out = new StringBuilder();
+    template.renderTo(
+        out,
+        (variable, value) ->
+            value.append(variable.equals("items") ? "<li>A &amp; B</li>" : "<b>"),
+        new StringBuilder());
+
+    assertThat(template.variables()).containsExactly("items", "name");
+    assertThat(out).hasToString("<ul><li>A &amp; B</li></ul><p>&lt;b&gt;</p>");
+  }
+
+  @Test
+  void rejectsUnterminatedVariables() {
+    assertThatThrownBy(() -> EmailTemplate.compile("Hola {{name", false))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void formatsTwoDecimalsLikeStringFormat() {
+    for (double value : new double[] {0, 0.004, 0.005, 1.5, 4.537, 12.999, -3.456, 1234.5}) {
+      StringBuilder out = new StringBuilder();
+      EmailFormats.appendTwoDecimals(out, value);
+      assertThat(out.toString())
+          .isEqualTo(String.format(java.util.Locale.ROOT, "%.2f", value));
+    }
+  }
+
+  @Test
+  void loadsBundledTemplates() {
+    EmailTemplateEngine engine = new EmailTemplateEngine();
+
+    String text =
+        engine.render(
+            "engagement",
+            (variable, out) -> out.append('[').append(variable).append(']'));
+
+    assertThat(text).startsWith("¡Hola [greeting]! 👋").contains("[fact]");
+    assertThat(engine.renderHtml("engagement", (variable, out) -> {})).contains("<html");
+  }
+
+  @Test
+  void concurrentRendersOnVirtualThreadsDoNotShareBuffers() throws Exception {
+    EmailTemplateEngine engine = new EmailTemplateEngine();
+    List<Future<String>> rendered = new ArrayList<>();
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      for (int i = 0; i < 500; i++) {
+        String greeting = "user-" + i;
+        TemplateModel model =
+            (variable, out) -> out.append("greeting".equals(variable) ? greeting : "");
+        rendered.add(executor.submit(() -> engine.render("engagement", model)));
+      }
+    }
+
+    for (int i = 0; i < rendered.size(); i++) {
+      assertThat(rendered.get(i).get()).startsWith("¡Hola user-" + i + "! 👋");
+    }
+  }
+}